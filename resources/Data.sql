@@ -18,6 +18,30 @@ create table ticket(
  FOREIGN KEY (PARKING_NUMBER)
  REFERENCES parking(PARKING_NUMBER));
 
+create table vehicle_profile(
+ VEHICLE_REG_NUMBER varchar(10) PRIMARY KEY,
+ VISIT_COUNT int NOT NULL,
+ TOTAL_SPENT double NOT NULL,
+ LAST_VISIT DATETIME NOT NULL);
+
+create table ticket_archive(
+ ID int PRIMARY KEY,
+ PARKING_NUMBER int NOT NULL,
+ VEHICLE_REG_NUMBER varchar(10) NOT NULL,
+ PRICE double,
+ IN_TIME DATETIME NOT NULL,
+ OUT_TIME DATETIME NOT NULL,
+ INDEX IDX_TICKET_ARCHIVE_VEHICLE_IN_TIME (VEHICLE_REG_NUMBER, IN_TIME));
+
+create table hourly_rollup(
+ BUCKET_HOUR DATETIME NOT NULL,
+ TYPE varchar(10) NOT NULL,
+ ENTRIES int NOT NULL,
+ EXITS int NOT NULL,
+ REVENUE_CENTS bigint NOT NULL,
+ OCCUPIED_MINUTES double NOT NULL,
+ PRIMARY KEY (BUCKET_HOUR, TYPE));
+
 insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(1,true,'CAR');
 insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(2,true,'CAR');
 insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(3,true,'CAR');
@@ -45,6 +69,30 @@ create table ticket(
  FOREIGN KEY (PARKING_NUMBER)
  REFERENCES parking(PARKING_NUMBER));
 
+create table vehicle_profile(
+ VEHICLE_REG_NUMBER varchar(10) PRIMARY KEY,
+ VISIT_COUNT int NOT NULL,
+ TOTAL_SPENT double NOT NULL,
+ LAST_VISIT DATETIME NOT NULL);
+
+create table ticket_archive(
+ ID int PRIMARY KEY,
+ PARKING_NUMBER int NOT NULL,
+ VEHICLE_REG_NUMBER varchar(10) NOT NULL,
+ PRICE double,
+ IN_TIME DATETIME NOT NULL,
+ OUT_TIME DATETIME NOT NULL,
+ INDEX IDX_TICKET_ARCHIVE_VEHICLE_IN_TIME (VEHICLE_REG_NUMBER, IN_TIME));
+
+create table hourly_rollup(
+ BUCKET_HOUR DATETIME NOT NULL,
+ TYPE varchar(10) NOT NULL,
+ ENTRIES int NOT NULL,
+ EXITS int NOT NULL,
+ REVENUE_CENTS bigint NOT NULL,
+ OCCUPIED_MINUTES double NOT NULL,
+ PRIMARY KEY (BUCKET_HOUR, TYPE));
+
 insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(1,true,'CAR');
 insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(2,true,'CAR');
 insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(3,true,'CAR');
@@ -0,0 +1,79 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.config.ConnectionPool;
+import com.parkit.parkingsystem.config.DataBaseConfig;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A stand-in for the MySQL database : an in-memory H2 database in MySQL mode, with the schema of Data.sql
+ * and the indexes of the migrations, behind the same connection pool as the application.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class BenchmarkDataBaseConfig extends DataBaseConfig {
+
+    private static final AtomicInteger DATABASE_COUNT = new AtomicInteger();
+
+    private static final String[] SCHEMA = {
+        "create table parking(PARKING_NUMBER int PRIMARY KEY, AVAILABLE bool NOT NULL, TYPE varchar(10) NOT NULL)",
+        "create table ticket(ID int PRIMARY KEY AUTO_INCREMENT, PARKING_NUMBER int NOT NULL, VEHICLE_REG_NUMBER varchar(10) NOT NULL,"
+                + " PRICE double, IN_TIME DATETIME NOT NULL, OUT_TIME DATETIME, FOREIGN KEY (PARKING_NUMBER) REFERENCES parking(PARKING_NUMBER))",
+        "create table vehicle_profile(VEHICLE_REG_NUMBER varchar(10) PRIMARY KEY, VISIT_COUNT int NOT NULL, TOTAL_SPENT double NOT NULL,"
+                + " LAST_VISIT DATETIME NOT NULL)",
+        "create index IDX_TICKET_VEHICLE_IN_TIME on ticket(VEHICLE_REG_NUMBER, IN_TIME)",
+        "create index IDX_PARKING_TYPE_AVAILABLE on parking(TYPE, AVAILABLE, PARKING_NUMBER)",
+        "create index IDX_TICKET_OUT_TIME on ticket(OUT_TIME)"
+    };
+
+    private final ConnectionPool connectionPool;
+
+    /**
+     * Creates a new empty database with the given number of car and bike spots, all available.
+     */
+    public BenchmarkDataBaseConfig(int carSpots, int bikeSpots) throws SQLException {
+        this(carSpots, bikeSpots, 0);
+    }
+
+    /**
+     * @param statementCacheSize the prepared statements kept per connection by the pool.
+     */
+    public BenchmarkDataBaseConfig(int carSpots, int bikeSpots, int statementCacheSize) throws SQLException {
+        // each instance has its own database, so that trials do not see each other's tickets.
+        String url = "jdbc:h2:mem:parking" + DATABASE_COUNT.incrementAndGet() + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+        connectionPool = new ConnectionPool(() -> DriverManager.getConnection(url, "sa", ""), 2, 16, 300000, 5000, 2,
+                statementCacheSize);
+        connectionPool.start();
+
+        try (Connection con = connectionPool.borrow()) {
+            try (Statement statement = con.createStatement()) {
+                for (String sql : SCHEMA) {
+                    statement.execute(sql);
+                }
+            }
+            try (PreparedStatement ps = con.prepareStatement("insert into parking(PARKING_NUMBER, AVAILABLE, TYPE) values(?,true,?)")) {
+                for (int i = 1; i <= carSpots + bikeSpots; i++) {
+                    ps.setInt(1, i);
+                    ps.setString(2, (i <= carSpots) ? "CAR" : "BIKE");
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+    }
+
+    @Override
+    protected Connection openConnection() throws SQLException {
+        return connectionPool.borrow();
+    }
+
+    public void close() {
+        connectionPool.close();
+    }
+}
@@ -0,0 +1,43 @@
+package com.parkit.parkingsystem.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Runs the benchmarks with the usual JMH options, but writes the results as JSON by default, in a file named
+ * after the start time, so that two runs can be compared (for example with jmh.morethan.io).
+ *
+ * java -jar target/benchmarks.jar [JMH options]
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        if (commandLineOptions.shouldHelp() || commandLineOptions.shouldList() || commandLineOptions.shouldListProfilers()
+                || commandLineOptions.shouldListResultFormats() || commandLineOptions.shouldListWithParams()) {
+            // nothing to run : JMH prints what was asked.
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        OptionsBuilder options = new OptionsBuilder();
+        options.parent(commandLineOptions);
+        if (!commandLineOptions.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+            if (!commandLineOptions.getResult().hasValue()) {
+                String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+                options.result("jmh-result-" + timestamp + ".json");
+            }
+        }
+        Options built = options.build();
+        new Runner(built).run();
+    }
+}
@@ -0,0 +1,122 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the DAO calls of an entry and an exit, against an in-memory H2 database. The absolute numbers are
+ * not those of MySQL, but the difference between two versions of a DAO is.
+ *
+ * With cached=true the parking spot allocator and the open ticket index are loaded, as InteractiveShell does.
+ * With statementCacheSize=32 the pool keeps the prepared statements : the database parses each query once
+ * per connection instead of once per call. H2 runs in the benchmark process, so the time saved is database CPU.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DaoBenchmark {
+
+    private static final int VEHICLES = 1000;
+    private static final int SPOTS = 100;
+
+    @Param({"false", "true"})
+    private boolean cached;
+
+    @Param({"0", "32"})
+    private int statementCacheSize;
+
+    private BenchmarkDataBaseConfig dataBaseConfig;
+    private ParkingSpotDAO parkingSpotDAO;
+    private TicketDAO ticketDAO;
+    private String[] vehicleRegNumbers;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dataBaseConfig = new BenchmarkDataBaseConfig(SPOTS, SPOTS, statementCacheSize);
+        parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+
+        // every vehicle came once before and is parked now.
+        vehicleRegNumbers = new String[VEHICLES];
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < VEHICLES; i++) {
+            vehicleRegNumbers[i] = "DAO" + i;
+            Ticket closed = newTicket(vehicleRegNumbers[i], 1 + i % SPOTS, new Date(now - 7200000));
+            closed.setOutTime(new Date(now - 3600000));
+            closed.setPrice(1.5);
+            ticketDAO.saveTicket(closed);
+            ticketDAO.saveTicket(newTicket(vehicleRegNumbers[i], 1 + i % SPOTS, new Date(now - 600000)));
+        }
+        if (cached && !(parkingSpotDAO.loadParkingSpotAllocator() && ticketDAO.loadOpenTicketIndex())) {
+            throw new IllegalStateException("Unable to load the caches");
+        }
+    }
+
+    private static Ticket newTicket(String vehicleRegNumber, int parkingNumber, Date inTime) {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(parkingNumber, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(inTime);
+        return ticket;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataBaseConfig.close();
+    }
+
+    private String nextVehicleRegNumber() {
+        index = (index + 1) % VEHICLES;
+        return vehicleRegNumbers[index];
+    }
+
+    @Benchmark
+    public Ticket getTicket() {
+        return ticketDAO.getTicket(nextVehicleRegNumber());
+    }
+
+    @Benchmark
+    public int getNbTicket() {
+        return ticketDAO.getNbTicket(nextVehicleRegNumber());
+    }
+
+    @Benchmark
+    public int getNextAvailableSlot() {
+        return parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR);
+    }
+
+    @Benchmark
+    public boolean claimAndFreeSlot() {
+        int parkingNumber = parkingSpotDAO.claimNextAvailableSlot(ParkingType.BIKE);
+        return parkingSpotDAO.updateParking(new ParkingSpot(parkingNumber, ParkingType.BIKE, true));
+    }
+}
@@ -0,0 +1,104 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one fare, in cents and on a ticket, for several mixes of durations and discounts. Run with the gc
+ * profiler to check that a fare in cents allocates nothing : gc.alloc.rate.norm must stay at 0 B/op.
+ *
+ * java -jar target/benchmarks.jar FareCalculatorBenchmark -prof gc
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FareCalculatorBenchmark {
+
+    private static final int SIZE = 1024;
+    private static final int MINUTE = 60 * 1000;
+
+    /**
+     * SHORT : up to 45 minutes, about a third free. HOURS : 30 minutes to 8 hours. DAYS : 1 to 3 days.
+     */
+    @Param({"SHORT", "HOURS", "DAYS"})
+    private String durationMix;
+
+    /**
+     * Share of the fares with the recurring user discount, in percent.
+     */
+    @Param({"0", "50", "100"})
+    private int discountPercent;
+
+    private final FareCalculatorService fareCalculatorService = new FareCalculatorService();
+    private final long[] inTimes = new long[SIZE];
+    private final long[] outTimes = new long[SIZE];
+    private final int[] parkingTypes = new int[SIZE];
+    private final boolean[] discounts = new boolean[SIZE];
+    private final Ticket[] tickets = new Ticket[SIZE];
+    private int index;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < SIZE; i++) {
+            inTimes[i] = now - randomDuration(random);
+            outTimes[i] = now;
+            parkingTypes[i] = random.nextInt(ParkingType.values().length);
+            discounts[i] = random.nextInt(100) < discountPercent;
+            tickets[i] = new Ticket();
+            tickets[i].setParkingSpot(new ParkingSpot(1, ParkingType.values()[parkingTypes[i]], false));
+            tickets[i].setInTimeMillis(inTimes[i]);
+            tickets[i].setOutTimeMillis(outTimes[i]);
+        }
+    }
+
+    private long randomDuration(Random random) {
+        switch (durationMix) {
+            case "SHORT":
+                return (long) random.nextInt(45 * MINUTE);
+            case "HOURS":
+                return 30L * MINUTE + random.nextInt((8 * 60 - 30) * MINUTE);
+            case "DAYS":
+                return 24L * 60 * MINUTE + (long) random.nextInt(2 * 24 * 60) * MINUTE;
+            default:
+                throw new IllegalArgumentException("Unknown duration mix : " + durationMix);
+        }
+    }
+
+    @Benchmark
+    public long calculateFareCents() {
+        int i = index++ & (SIZE - 1);
+        return fareCalculatorService.calculateFareCents(inTimes[i], outTimes[i], parkingTypes[i], discounts[i]);
+    }
+
+    @Benchmark
+    public double calculateFare() {
+        int i = index++ & (SIZE - 1);
+        fareCalculatorService.calculateFare(tickets[i], discounts[i]);
+        return tickets[i].getPrice();
+    }
+}
@@ -0,0 +1,55 @@
+package com.parkit.parkingsystem.benchmark;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.util.Unbox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one log line for a gate thread, with the development logging (synchronous, location in the
+ * layout, message built by concatenation) and with the production logging (asynchronous loggers,
+ * garbage-free layout, parameterized message with unboxed numbers). Four gates log at the same time.
+ * Run with the gc profiler to compare the allocations per line too.
+ *
+ * java -jar target/benchmarks.jar LoggingBenchmark -prof gc
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+public class LoggingBenchmark {
+
+    private static final Logger logger = LogManager.getLogger("LoggingBenchmark");
+
+    private final String vehicleRegNumber = "AB123CD";
+    private int parkingNumber;
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dlog4j2.configurationFile=log4j2-benchmark-sync.properties")
+    public void synchronousConcatenated() {
+        logger.info("Parking spot " + parkingNumber++ + " given to " + vehicleRegNumber);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dlog4j2.configurationFile=log4j2-production.properties")
+    public void asynchronousParameterized() {
+        logger.info("Parking spot {} given to {}", Unbox.box(parkingNumber++), vehicleRegNumber);
+    }
+}
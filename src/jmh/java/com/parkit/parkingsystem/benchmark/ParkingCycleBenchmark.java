@@ -0,0 +1,98 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.service.ParkingService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a full visit through ParkingService : the entry then the exit of a vehicle, answered by a scripted
+ * InputReaderUtil, against an in-memory H2 database. The console messages of ParkingService are discarded.
+ *
+ * With cached=true the parking spot allocator and the open ticket index are loaded, as InteractiveShell does.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParkingCycleBenchmark {
+
+    private static final int SPOTS = 100;
+
+    /**
+     * Number of different vehicles : the fewer they are, the more often a vehicle comes back with a discount.
+     */
+    @Param({"100", "10000"})
+    private int vehicles;
+
+    @Param({"false", "true"})
+    private boolean cached;
+
+    private BenchmarkDataBaseConfig dataBaseConfig;
+    private ScriptedInputReaderUtil inputReaderUtil;
+    private ParkingService parkingService;
+    private PrintStream console;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dataBaseConfig = new BenchmarkDataBaseConfig(SPOTS, SPOTS);
+        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+        TicketDAO ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+        if (cached && !(parkingSpotDAO.loadParkingSpotAllocator() && ticketDAO.loadOpenTicketIndex())) {
+            throw new IllegalStateException("Unable to load the caches");
+        }
+        inputReaderUtil = new ScriptedInputReaderUtil();
+        parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
+
+        console = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(console);
+        dataBaseConfig.close();
+    }
+
+    @Benchmark
+    public void entryAndExit() {
+        index = (index + 1) % vehicles;
+        // one car in two, one bike in two.
+        inputReaderUtil.script(1 + index % 2, "CYC" + index);
+        parkingService.processIncomingVehicle();
+        parkingService.processExitingVehicle();
+    }
+}
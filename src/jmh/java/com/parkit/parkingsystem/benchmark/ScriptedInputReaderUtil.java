@@ -0,0 +1,34 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.util.InputReaderUtil;
+
+/**
+ * Answers the questions of ParkingService with the values given beforehand instead of reading the console.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class ScriptedInputReaderUtil extends InputReaderUtil {
+
+    private int selection;
+    private String vehicleRegNumber;
+
+    /**
+     * @param selection the vehicle type : 1 for a car, 2 for a bike.
+     * @param vehicleRegNumber the registration number typed at the gate.
+     */
+    public void script(int selection, String vehicleRegNumber) {
+        this.selection = selection;
+        this.vehicleRegNumber = vehicleRegNumber;
+    }
+
+    @Override
+    public int readSelection() {
+        return selection;
+    }
+
+    @Override
+    public String readVehicleRegistrationNumber() {
+        return vehicleRegNumber;
+    }
+}
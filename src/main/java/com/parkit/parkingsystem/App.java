@@ -1,13 +1,267 @@
 package com.parkit.parkingsystem;
 
+import com.parkit.parkingsystem.config.AppConfig;
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.ShardRouter;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.ParkingSpotRepository;
+import com.parkit.parkingsystem.dao.RollupDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.TicketJournal;
+import com.parkit.parkingsystem.dao.TicketRepository;
+import com.parkit.parkingsystem.dao.TicketWriteBehind;
+import com.parkit.parkingsystem.dao.VehicleProfileDAO;
+import com.parkit.parkingsystem.model.RepricingReport;
+import com.parkit.parkingsystem.server.Facility;
+import com.parkit.parkingsystem.server.GateServer;
 import com.parkit.parkingsystem.service.InteractiveShell;
+import com.parkit.parkingsystem.service.OccupancyService;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.service.RepricingService;
+import com.parkit.parkingsystem.service.RollupService;
+import com.parkit.parkingsystem.service.TicketArchivingService;
+import com.parkit.parkingsystem.storage.EmbeddedParkingSpotRepository;
+import com.parkit.parkingsystem.storage.EmbeddedStore;
+import com.parkit.parkingsystem.storage.EmbeddedTicketRepository;
+import com.parkit.parkingsystem.tool.LoadGenerator;
+import com.parkit.parkingsystem.tool.LoadProfile;
+import com.parkit.parkingsystem.util.InputReaderUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 public class App {
     private static final Logger logger = LogManager.getLogger("App");
-    public static void main(String args[]){
+    public static void main(String args[]) throws Exception {
         logger.info("Initializing Parking System");
+        if (args.length > 0 && "--backfill-profiles".equals(args[0])) {
+            // one-off job : builds the vehicle profiles of the tickets recorded before they existed.
+            int rows = new VehicleProfileDAO().backfillVehicleProfiles();
+            System.out.println((rows < 0) ? "Vehicle profile backfill failed" : "Vehicle profile backfill done");
+            return;
+        }
+        if (args.length > 0 && "--reprice".equals(args[0])) {
+            // recomputes the price of the closed tickets : --dry-run only prints the changes, --resume continues an interrupted run.
+            List<String> options = Arrays.asList(args);
+            RepricingService repricingService = new RepricingService(
+                    AppConfig.getInt("repricing.batchSize", 1000),
+                    AppConfig.getInt("repricing.parallelism", Runtime.getRuntime().availableProcessors()),
+                    Paths.get(AppConfig.getString("repricing.checkpointFile", "repricing.checkpoint")));
+            RepricingReport report = repricingService.reprice(options.contains("--dry-run"), options.contains("--resume"), System.out);
+            System.out.println((report == null) ? "Repricing failed" : "Repricing done : " + report.getTicketsChanged()
+                    + " of " + report.getTicketsRead() + " tickets changed, difference " + (report.getPriceDifferenceCents() / 100.0));
+            return;
+        }
+        if (args.length > 0 && "--archive".equals(args[0])) {
+            // moves the tickets closed for longer than archive.minAgeDays to the archive table.
+            int archived = newTicketArchivingService().archive();
+            System.out.println((archived < 0) ? "Ticket archiving failed" : "Ticket archiving done : " + archived + " tickets archived");
+            return;
+        }
+        if (args.length > 0 && "--load-test".equals(args[0])) {
+            // simulates the gates described by the loadtest.* keys against the storage of config.properties.
+            EmbeddedStore store = openEmbeddedStore();
+            TicketWriteBehind writeBehind = (store == null) ? startWriteBehind() : null;
+            ParkingService parkingService;
+            if (store != null) {
+                parkingService = new ParkingService(new InputReaderUtil(), new EmbeddedParkingSpotRepository(store), new EmbeddedTicketRepository(store));
+            } else {
+                ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+                parkingSpotDAO.loadParkingSpotAllocator();
+                TicketDAO ticketDAO = new TicketDAO();
+                ticketDAO.loadOpenTicketIndex();
+                enableWriteBehind(writeBehind, parkingSpotDAO, ticketDAO);
+                parkingService = new ParkingService(new InputReaderUtil(), parkingSpotDAO, ticketDAO);
+            }
+            RollupService rollupService = (store == null) ? startRollupService(new DataBaseConfig()) : null;
+            parkingService.setRollupService(rollupService);
+            new LoadGenerator(parkingService).run(LoadProfile.fromConfig()).print(System.out);
+            if (rollupService != null) {
+                rollupService.close();
+            }
+            if (writeBehind != null) {
+                writeBehind.close();
+            }
+            if (store != null) {
+                store.close();
+            }
+            return;
+        }
+        if (args.length > 0 && "--server".equals(args[0])) {
+            // headless : every gate of the facilities talks to this process over HTTP.
+            ShardRouter shardRouter = ShardRouter.fromConfig();
+            // the embedded storage and the journal are those of a single lot.
+            if (shardRouter.isSharded() && (!"jdbc".equals(AppConfig.getString("storage.backend", "jdbc"))
+                    || AppConfig.getBoolean("journal.enabled", false))) {
+                throw new IllegalStateException("The facilities key needs storage.backend=jdbc and journal.enabled=false");
+            }
+            EmbeddedStore store = openEmbeddedStore();
+            TicketWriteBehind writeBehind = (store == null) ? startWriteBehind() : null;
+            Map<String, Facility> facilities = new LinkedHashMap<>();
+            List<AutoCloseable> services = new ArrayList<>();
+            for (String facilityId : shardRouter.getFacilityIds()) {
+                facilities.put(facilityId, openFacility(facilityId, shardRouter.getDataBaseConfig(facilityId), store, writeBehind, services));
+            }
+            // by default one thread per connection the facilities may open : more would wait for a connection.
+            int threads = 0;
+            for (String facilityId : shardRouter.getFacilityIds()) {
+                threads += shardRouter.getDataBaseConfig(facilityId).getPoolMaxSize();
+            }
+            GateServer gateServer = new GateServer(facilities);
+            gateServer.start(AppConfig.getInt("server.port", 8080), AppConfig.getInt("server.threads", threads),
+                    AppConfig.getBoolean("server.virtualThreads", false));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                gateServer.stop(5);
+                for (AutoCloseable service : services) {
+                    try {
+                        service.close();
+                    } catch (Exception e) {
+                        logger.error("Error closing {}", service, e);
+                    }
+                }
+                if (writeBehind != null) {
+                    writeBehind.close();
+                }
+                if (store != null) {
+                    store.close();
+                }
+            }));
+            return;
+        }
+        EmbeddedStore store = openEmbeddedStore();
+        if (store != null) {
+            try {
+                InteractiveShell.loadInterface(new EmbeddedParkingSpotRepository(store), new EmbeddedTicketRepository(store));
+            } finally {
+                store.close();
+            }
+            return;
+        }
         InteractiveShell.loadInterface();
     }
+
+    /**
+     * Builds what the gate server needs for one facility, and starts its background services.
+     *
+     * @param store the embedded storage, or null for the database of dataBaseConfig.
+     * @param writeBehind the journal of the default facility, or null.
+     * @param services where the background services to close on shutdown are added.
+     */
+    private static Facility openFacility(String facilityId, DataBaseConfig dataBaseConfig, EmbeddedStore store,
+                                         TicketWriteBehind writeBehind, List<AutoCloseable> services) {
+        ParkingSpotRepository parkingSpotRepository;
+        TicketRepository ticketRepository;
+        if (store != null) {
+            parkingSpotRepository = new EmbeddedParkingSpotRepository(store);
+            ticketRepository = new EmbeddedTicketRepository(store);
+        } else {
+            ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+            parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+            if (!parkingSpotDAO.loadParkingSpotAllocator()) {
+                logger.warn("Parking spot allocator of facility {} not loaded, parking spots will be read from the database", facilityId);
+            }
+            TicketDAO ticketDAO = new TicketDAO();
+            ticketDAO.dataBaseConfig = dataBaseConfig;
+            if (!ticketDAO.loadOpenTicketIndex()) {
+                logger.warn("Open ticket index of facility {} not loaded, exits will read tickets from the database", facilityId);
+            }
+            enableWriteBehind(writeBehind, parkingSpotDAO, ticketDAO);
+            parkingSpotRepository = parkingSpotDAO;
+            ticketRepository = ticketDAO;
+        }
+        ParkingService parkingService = new ParkingService(new InputReaderUtil(), parkingSpotRepository, ticketRepository);
+        OccupancyService occupancyService = new OccupancyService(parkingSpotRepository);
+        if (occupancyService.reconcile()) {
+            parkingService.setOccupancyService(occupancyService);
+        } else {
+            logger.warn("Occupancy counters of facility {} not loaded, the status will read the database", facilityId);
+        }
+        if (store == null) {
+            RollupService rollupService = startRollupService(dataBaseConfig);
+            if (rollupService != null) {
+                parkingService.setRollupService(rollupService);
+                services.add(rollupService);
+            }
+            long archiveIntervalMinutes = AppConfig.getLong("archive.intervalMinutes", 0);
+            if (archiveIntervalMinutes > 0) {
+                TicketArchivingService archivingService = newTicketArchivingService();
+                archivingService.dataBaseConfig = dataBaseConfig;
+                archivingService.start(archiveIntervalMinutes);
+                services.add(archivingService);
+            }
+        }
+        return new Facility(parkingService, parkingSpotRepository, ticketRepository);
+    }
+
+    private static TicketArchivingService newTicketArchivingService() {
+        return new TicketArchivingService(TimeUnit.DAYS.toMillis(AppConfig.getLong("archive.minAgeDays", 365)),
+                AppConfig.getInt("archive.batchSize", 1000), AppConfig.getLong("archive.pauseMillis", 100));
+    }
+
+    /**
+     * Hourly rollups (rollup.enabled) : revenue and occupancy per hour, flushed to the database in the background.
+     *
+     * @return null if the rollups are not enabled.
+     */
+    private static RollupService startRollupService(DataBaseConfig dataBaseConfig) {
+        if (!AppConfig.getBoolean("rollup.enabled", false)) {
+            return null;
+        }
+        RollupDAO rollupDAO = new RollupDAO();
+        rollupDAO.dataBaseConfig = dataBaseConfig;
+        RollupService rollupService = new RollupService(rollupDAO);
+        rollupService.start(AppConfig.getLong("rollup.flushIntervalMillis", 5000));
+        return rollupService;
+    }
+
+    /**
+     * Embedded storage (storage.backend=embedded) : the spots and tickets are kept by the application itself,
+     * in storage.embedded.directory, instead of the database.
+     *
+     * @return null if the storage is the database.
+     */
+    private static EmbeddedStore openEmbeddedStore() throws IOException {
+        if (!"embedded".equals(AppConfig.getString("storage.backend", "jdbc"))) {
+            return null;
+        }
+        EmbeddedStore store = new EmbeddedStore(Paths.get(AppConfig.getString("storage.embedded.directory", "data")),
+                AppConfig.getBoolean("storage.embedded.forceEachWrite", true), AppConfig.getLong("storage.embedded.snapshotIntervalSeconds", 300));
+        store.open(EmbeddedStore.layout(AppConfig.getInt("storage.embedded.carSpots", 3), AppConfig.getInt("storage.embedded.bikeSpots", 2)));
+        return store;
+    }
+
+    /**
+     * Write-behind (journal.enabled) : the gates append to a local journal, written to the database in the background.
+     * Replays what the previous run had not written, so it must run before the caches are loaded.
+     *
+     * @return null if write-behind is not enabled.
+     */
+    private static TicketWriteBehind startWriteBehind() {
+        if (!AppConfig.getBoolean("journal.enabled", false)) {
+            return null;
+        }
+        TicketJournal journal = new TicketJournal(Paths.get(AppConfig.getString("journal.directory", "journal")),
+                AppConfig.getInt("journal.segmentSize", 16 * 1024 * 1024), AppConfig.getBoolean("journal.forceEachRecord", true));
+        TicketWriteBehind writeBehind = new TicketWriteBehind(journal,
+                AppConfig.getInt("journal.batchSize", 500), AppConfig.getLong("journal.flushIntervalMillis", 200));
+        if (!writeBehind.start()) {
+            throw new IllegalStateException("Unable to replay the ticket journal");
+        }
+        return writeBehind;
+    }
+
+    private static void enableWriteBehind(TicketWriteBehind writeBehind, ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO) {
+        if (writeBehind != null && !(parkingSpotDAO.enableWriteBehind() && ticketDAO.enableWriteBehind(writeBehind))) {
+            writeBehind.close();
+            throw new IllegalStateException("Write-behind needs the parking spot allocator and the open ticket index");
+        }
+    }
 }
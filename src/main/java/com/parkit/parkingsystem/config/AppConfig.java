@@ -0,0 +1,86 @@
+package com.parkit.parkingsystem.config;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * The content of config.properties, read from disk only once.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class AppConfig {
+
+    private static final String CONFIG_FILE = "config.properties";
+
+    private static volatile Properties properties;
+
+    // prevent instantiation
+    private AppConfig() {
+    }
+
+    private static Properties getProperties() {
+        Properties result = properties;
+        if (result == null) {
+            synchronized (AppConfig.class) {
+                result = properties;
+                if (result == null) {
+                    result = load();
+                    properties = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static Properties load() {
+        Properties result = new Properties();
+        try (FileInputStream input = new FileInputStream(CONFIG_FILE)) {
+            result.load(input);
+        } catch (FileNotFoundException e) {
+            System.out.println("Unable to read source file : " + e.getMessage ());
+        } catch (IOException e) {
+            System.out.println("Error reading file : " + e.getMessage());
+        }
+        return result;
+    }
+
+    public static String getString(String key) {
+        return getProperties().getProperty(key);
+    }
+
+    public static String getString(String key, String defaultValue) {
+        return getProperties().getProperty(key, defaultValue);
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        String value = getString(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid integer for " + key + " : " + value, e);
+        }
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        String value = getString(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for " + key + " : " + value, e);
+        }
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key);
+        return (value == null || value.trim().isEmpty()) ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+}
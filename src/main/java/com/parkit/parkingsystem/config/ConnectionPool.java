@@ -0,0 +1,464 @@
+package com.parkit.parkingsystem.config;
+
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.metrics.PerFacility;
+import com.parkit.parkingsystem.metrics.Timer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Minimal JDBC connection pool.
+ *
+ * Physical connections are kept open and handed out as proxies : closing the proxy gives the
+ * physical connection back to the pool instead of closing it.
+ *
+ * Each physical connection can also keep its prepared statements : preparing the same SQL again returns the
+ * statement prepared by a previous borrower, and closing it keeps it for the next one. With server-side
+ * prepared statements, the database then parses and plans each query once per connection.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class ConnectionPool {
+
+    private static final Logger logger = LogManager.getLogger("ConnectionPool");
+
+    private static final PerFacility<Timer> BORROW_TIMER = Metrics.timers("ConnectionPool", "borrow");
+
+    /**
+     * Opens a new physical connection.
+     */
+    public interface ConnectionFactory {
+        Connection create() throws SQLException;
+    }
+
+    private final ConnectionFactory connectionFactory;
+    private final int minSize;
+    private final int maxSize;
+    private final long idleTimeoutMillis;
+    private final long acquireTimeoutMillis;
+    private final int validationTimeoutSeconds;
+    private final int statementCacheSize;
+
+    // one permit per connection that may be lent out.
+    private final Semaphore permits;
+    // most recently returned connections first, so the oldest ones are evicted.
+    private final LinkedBlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<>();
+
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicInteger totalCount = new AtomicInteger();
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+
+    // the timer of the facility whose database the pool connects to.
+    private volatile Timer borrowTimer = BORROW_TIMER.of(null);
+    private ScheduledExecutorService evictor;
+    private volatile boolean closed;
+
+    public ConnectionPool(ConnectionFactory connectionFactory, int minSize, int maxSize, long idleTimeoutMillis,
+            long acquireTimeoutMillis, int validationTimeoutSeconds) {
+        this(connectionFactory, minSize, maxSize, idleTimeoutMillis, acquireTimeoutMillis, validationTimeoutSeconds, 0);
+    }
+
+    /**
+     * @param statementCacheSize the prepared statements kept per physical connection, the least recently used
+     *        are closed beyond it. 0 to prepare each statement again.
+     */
+    public ConnectionPool(ConnectionFactory connectionFactory, int minSize, int maxSize, long idleTimeoutMillis,
+            long acquireTimeoutMillis, int validationTimeoutSeconds, int statementCacheSize) {
+        if (connectionFactory == null || minSize < 0 || maxSize <= 0 || minSize > maxSize || acquireTimeoutMillis < 0
+                || validationTimeoutSeconds < 0 || statementCacheSize < 0) {
+            throw new IllegalArgumentException("Invalid argument in ConnectionPool");
+        }
+        this.connectionFactory = connectionFactory;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    /**
+     * @param facilityId the facility whose database the pool connects to, null for the default facility.
+     *        Its connection acquisitions are timed apart from those of the other facilities.
+     */
+    public void setFacilityId(String facilityId) {
+        this.borrowTimer = BORROW_TIMER.of(facilityId);
+    }
+
+    /**
+     * Opens the minimum number of connections and starts the idle eviction task.
+     */
+    public void start() {
+        for (int i = totalCount.get(); i < minSize; i++) {
+            try {
+                idleConnections.offerLast(createPooledConnection());
+            } catch (SQLException e) {
+                logger.error("Unable to pre-fill the connection pool", e);
+                break;
+            }
+        }
+        if (idleTimeoutMillis > 0) {
+            evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "db-pool-evictor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long period = Math.max(1000, idleTimeoutMillis / 2);
+            evictor.scheduleWithFixedDelay(this::evictIdleConnections, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Borrows a connection, waiting at most the acquire timeout.
+     *
+     * @return a connection to close once the work is done.
+     * @throws SQLException if the pool is closed, exhausted, or a new connection cannot be opened.
+     */
+    public Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeoutCount.incrementAndGet();
+                borrowTimer.failed();
+                throw new SQLException("Timeout waiting for a DB connection after " + acquireTimeoutMillis + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a DB connection", e);
+        }
+        try {
+            PooledConnection pooledConnection = takeValidConnection();
+            activeCount.incrementAndGet();
+            borrowCount.incrementAndGet();
+            long waitNanos = System.nanoTime() - start;
+            recordWait(waitNanos);
+            borrowTimer.record(waitNanos);
+            return pooledConnection.newHandle();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            borrowTimer.failed();
+            throw e;
+        }
+    }
+
+    private PooledConnection takeValidConnection() throws SQLException {
+        PooledConnection pooledConnection;
+        while ((pooledConnection = idleConnections.pollFirst()) != null) {
+            if (isValid(pooledConnection)) {
+                return pooledConnection;
+            }
+            logger.warn("Discarding invalid DB connection");
+            discard(pooledConnection);
+        }
+        return createPooledConnection();
+    }
+
+    private boolean isValid(PooledConnection pooledConnection) {
+        try {
+            return pooledConnection.physicalConnection.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private PooledConnection createPooledConnection() throws SQLException {
+        Connection physicalConnection = connectionFactory.create();
+        if (physicalConnection == null) {
+            throw new SQLException("Connection factory returned no connection");
+        }
+        totalCount.incrementAndGet();
+        logger.debug("Create DB connection");
+        return new PooledConnection(physicalConnection);
+    }
+
+    private void recordWait(long waitNanos) {
+        totalWaitNanos.addAndGet(waitNanos);
+        long max;
+        while (waitNanos > (max = maxWaitNanos.get())) {
+            if (maxWaitNanos.compareAndSet(max, waitNanos)) {
+                break;
+            }
+        }
+    }
+
+    // called when a handle is closed.
+    private void giveBack(PooledConnection pooledConnection) {
+        activeCount.decrementAndGet();
+        try {
+            if (closed || pooledConnection.physicalConnection.isClosed()) {
+                discard(pooledConnection);
+                return;
+            }
+            // a borrower may have left statements open, or a transaction.
+            for (CachedStatement cached : pooledConnection.statements.values()) {
+                cached.release();
+            }
+            if (!pooledConnection.physicalConnection.getAutoCommit()) {
+                pooledConnection.physicalConnection.rollback();
+                pooledConnection.physicalConnection.setAutoCommit(true);
+            }
+            pooledConnection.lastUsedMillis = System.currentTimeMillis();
+            idleConnections.offerFirst(pooledConnection);
+        } catch (SQLException e) {
+            logger.error("Error while returning connection to the pool", e);
+            discard(pooledConnection);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void discard(PooledConnection pooledConnection) {
+        totalCount.decrementAndGet();
+        try {
+            pooledConnection.physicalConnection.close();
+            logger.debug("Closing DB connection");
+        } catch (SQLException e) {
+            logger.error("Error while closing connection", e);
+        }
+    }
+
+    /**
+     * Closes the connections that stayed idle longer than the idle timeout, keeping at least the minimum size.
+     */
+    public void evictIdleConnections() {
+        long limit = System.currentTimeMillis() - idleTimeoutMillis;
+        Iterator<PooledConnection> oldestFirst = idleConnections.descendingIterator();
+        while (oldestFirst.hasNext() && totalCount.get() > minSize) {
+            PooledConnection pooledConnection = oldestFirst.next();
+            if (pooledConnection.lastUsedMillis <= limit && idleConnections.removeLastOccurrence(pooledConnection)) {
+                discard(pooledConnection);
+            }
+        }
+    }
+
+    /**
+     * Closes every idle connection. Connections still lent out are closed when they are given back.
+     */
+    public void close() {
+        closed = true;
+        if (evictor != null) {
+            evictor.shutdownNow();
+        }
+        PooledConnection pooledConnection;
+        while ((pooledConnection = idleConnections.pollFirst()) != null) {
+            discard(pooledConnection);
+        }
+    }
+
+    public PoolStats getStats() {
+        return new PoolStats(activeCount.get(), idleConnections.size(), totalCount.get(), maxSize,
+                borrowCount.get(), timeoutCount.get(), totalWaitNanos.get(), maxWaitNanos.get(),
+                statementCacheHits.sum(), statementCacheMisses.sum());
+    }
+
+    /**
+     * A physical connection owned by the pool.
+     */
+    private final class PooledConnection {
+        private final Connection physicalConnection;
+        private volatile long lastUsedMillis = System.currentTimeMillis();
+        // by SQL, least recently used first. Only the borrower of the moment uses it.
+        private final LinkedHashMap<String, CachedStatement> statements = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() <= statementCacheSize) {
+                    return false;
+                }
+                eldest.getValue().evict();
+                return true;
+            }
+        };
+
+        private PooledConnection(Connection physicalConnection) {
+            this.physicalConnection = physicalConnection;
+        }
+
+        private Connection newHandle() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, new Handle(this));
+        }
+
+        private PreparedStatement prepareStatement(Connection handle, String sql, int autoGeneratedKeys) throws SQLException {
+            CachedStatement cached = statements.get(sql);
+            if (cached != null && !cached.inUse && cached.autoGeneratedKeys == autoGeneratedKeys) {
+                statementCacheHits.increment();
+                return cached.checkOut(handle);
+            }
+            statementCacheMisses.increment();
+            PreparedStatement statement = physicalConnection.prepareStatement(sql, autoGeneratedKeys);
+            if (cached != null) {
+                // the same SQL twice at once : the second statement is not kept.
+                return statement;
+            }
+            cached = new CachedStatement(statement, autoGeneratedKeys);
+            statements.put(sql, cached);
+            return cached.checkOut(handle);
+        }
+    }
+
+    /**
+     * What the borrower sees of a kept statement : close() clears it for the next borrower.
+     */
+    private static final class CachedStatement implements InvocationHandler {
+        private final PreparedStatement statement;
+        private final int autoGeneratedKeys;
+        private final PreparedStatement proxy;
+        private Connection handle;
+        private boolean inUse;
+        private boolean evicted;
+
+        private CachedStatement(PreparedStatement statement, int autoGeneratedKeys) {
+            this.statement = statement;
+            this.autoGeneratedKeys = autoGeneratedKeys;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class }, this);
+        }
+
+        private PreparedStatement checkOut(Connection handle) {
+            this.handle = handle;
+            inUse = true;
+            return proxy;
+        }
+
+        // out of the cache : closed now, or by its borrower.
+        private void evict() {
+            evicted = true;
+            if (!inUse) {
+                closeQuietly();
+            }
+        }
+
+        private void release() throws SQLException {
+            if (!inUse) {
+                return;
+            }
+            inUse = false;
+            handle = null;
+            if (evicted) {
+                closeQuietly();
+            } else {
+                statement.clearParameters();
+                statement.clearBatch();
+            }
+        }
+
+        private void closeQuietly() {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                logger.error("Error while closing prepared statement", e);
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    release();
+                    return null;
+                case "isClosed":
+                    return !inUse || statement.isClosed();
+                case "getConnection":
+                    return handle;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "CachedStatement[" + statement + "]";
+                default:
+                    break;
+            }
+            if (!inUse) {
+                throw new SQLException("Statement has been closed");
+            }
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * What the borrower sees : close() gives the connection back, once.
+     */
+    private final class Handle implements InvocationHandler {
+        private final PooledConnection pooledConnection;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Handle(PooledConnection pooledConnection) {
+            this.pooledConnection = pooledConnection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (released.compareAndSet(false, true)) {
+                        giveBack(pooledConnection);
+                    }
+                    return null;
+                case "isClosed":
+                    return released.get() || pooledConnection.physicalConnection.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + pooledConnection.physicalConnection + "]";
+                default:
+                    break;
+            }
+            if (released.get()) {
+                throw new SQLException("Connection has been returned to the pool");
+            }
+            if (statementCacheSize > 0 && "prepareStatement".equals(method.getName()) && isCacheable(args)) {
+                int autoGeneratedKeys = (args.length == 2) ? (Integer) args[1] : Statement.NO_GENERATED_KEYS;
+                return pooledConnection.prepareStatement((Connection) proxy, (String) args[0], autoGeneratedKeys);
+            }
+            try {
+                return method.invoke(pooledConnection.physicalConnection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        // prepareStatement(sql) and prepareStatement(sql, autoGeneratedKeys) : the others are not kept.
+        private boolean isCacheable(Object[] args) {
+            return (args.length == 1) || (args.length == 2 && args[1] instanceof Integer);
+        }
+    }
+}
@@ -2,40 +2,207 @@ package com.parkit.parkingsystem.config;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.util.Properties;
 
 import java.sql.*;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Where the DAOs get their connections. Each facility (parking lot) has its own database, pool and executor :
+ * the default facility is configured by the db.* keys, a facility of id X by the facility.X.db.* keys.
+ */
 public class DataBaseConfig {
 
     private static final Logger logger = LogManager.getLogger("DataBaseConfig");
 
-    public Connection getConnection() throws ClassNotFoundException, SQLException {
-        Properties properties = new Properties();
-        try (FileInputStream input = new FileInputStream("config.properties")) {
-            properties.load(input);
-        } catch (FileNotFoundException e) {
-            System.out.println("Unable to read source file : " + e.getMessage ());
-        } catch (IOException e) {
-            System.out.println("Error reading file : " + e.getMessage());
+    // the key of the default facility in connectionPools.
+    private static final String DEFAULT_FACILITY = "";
+
+    // one pool per facility database, each created on first use.
+    private static final ConcurrentHashMap<String, ConnectionPool> connectionPools = new ConcurrentHashMap<>();
+
+    // one lock per facility, so that the pool creation and schema migration of one facility do not hold up
+    // the gates of the others.
+    private static final ConcurrentHashMap<String, Object> poolLocks = new ConcurrentHashMap<>();
+
+    // one executor per facility running its asynchronous DAO calls, each created on first use.
+    private static final ConcurrentHashMap<String, ThreadPoolExecutor> executors = new ConcurrentHashMap<>();
+
+    // null for the default facility.
+    private final String facilityId;
+
+    /**
+     * The database of the default facility, configured by the db.* keys.
+     */
+    public DataBaseConfig() {
+        this(null);
+    }
+
+    /**
+     * @param facilityId the facility whose database is configured by the facility.[facilityId].db.* keys,
+     *        null for the default facility.
+     */
+    public DataBaseConfig(String facilityId) {
+        if (facilityId != null && facilityId.trim().isEmpty()) {
+            throw new IllegalArgumentException("Invalid facility id in DataBaseConfig");
+        }
+        this.facilityId = facilityId;
+    }
+
+    /**
+     * @return the facility of the database, or null for the default facility.
+     */
+    public String getFacilityId() {
+        return facilityId;
+    }
+
+    private String key() {
+        return (facilityId == null) ? DEFAULT_FACILITY : facilityId;
+    }
+
+    private ConnectionPool getConnectionPool() throws ClassNotFoundException {
+        String key = key();
+        ConnectionPool pool = connectionPools.get(key);
+        if (pool == null) {
+            synchronized (poolLocks.computeIfAbsent(key, k -> new Object())) {
+                pool = connectionPools.get(key);
+                if (pool == null) {
+                    pool = createConnectionPool(facilityId);
+                    connectionPools.put(key, pool);
+                }
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * @return the most connections the pool of the facility may open.
+     */
+    public int getPoolMaxSize() {
+        return getInt(prefix(facilityId), "pool.maxSize", 10);
+    }
+
+    private static String prefix(String facilityId) {
+        return (facilityId == null) ? "db." : "facility." + facilityId + ".db.";
+    }
+
+    private static ConnectionPool createConnectionPool(String facilityId) throws ClassNotFoundException {
+        String prefix = prefix(facilityId);
+        // never the database of another facility : the url has no default.
+        String url = AppConfig.getString(prefix + "url");
+        if (url == null) {
+            throw new IllegalStateException("No database configured for facility " + facilityId);
         }
-        String url = properties.getProperty("db.url");
-        String username = properties.getProperty("db.username");
-        String password = properties.getProperty("db.password");
-        
-        logger.info("Create DB connection");
+        String username = AppConfig.getString(prefix + "username", AppConfig.getString("db.username"));
+        String password = AppConfig.getString(prefix + "password", AppConfig.getString("db.password"));
+
         Class.forName("com.mysql.cj.jdbc.Driver");
-        return DriverManager.getConnection(url, username, password) ;
+        ConnectionPool pool = new ConnectionPool(
+                () -> DriverManager.getConnection(url, username, password),
+                getInt(prefix, "pool.minSize", 2),
+                getInt(prefix, "pool.maxSize", 10),
+                getLong(prefix, "pool.idleTimeoutMillis", 300000),
+                getLong(prefix, "pool.acquireTimeoutMillis", 5000),
+                getInt(prefix, "pool.validationTimeoutSeconds", 2),
+                getInt(prefix, "pool.statementCacheSize", 32));
+        pool.setFacilityId(facilityId);
+        pool.start();
+        logger.info("DB connection pool started for facility {}", (facilityId == null) ? "default" : facilityId);
+
+        if (AppConfig.getBoolean("db.migrate", true) && !new SchemaMigrator(pool::borrow).migrate()
+                && AppConfig.getBoolean("db.migrate.failOnError", true)) {
+            // the gates must not run on a schema in an unknown state.
+            pool.close();
+            throw new IllegalStateException("Schema migration failed for facility " + ((facilityId == null) ? "default" : facilityId));
+        }
+        if (AppConfig.getBoolean("db.checkQueryPlans", true)) {
+            new QueryPlanChecker(pool::borrow).check();
+        }
+        return pool;
+    }
+
+    // the setting of the facility, else the one of the db.* keys.
+    private static int getInt(String prefix, String name, int defaultValue) {
+        return AppConfig.getInt(prefix + name, AppConfig.getInt("db." + name, defaultValue));
+    }
+
+    private static long getLong(String prefix, String name, long defaultValue) {
+        return AppConfig.getLong(prefix + name, AppConfig.getLong("db." + name, defaultValue));
+    }
+
+    /**
+     * The threads on which the asynchronous DAO methods of the facility run. It is bounded : when its queue is
+     * full, the calling thread runs the query itself, so a burst slows the gates down instead of piling up tasks.
+     * It has no more threads than the pool of the facility has connections, since each query holds one.
+     */
+    public Executor getExecutor() {
+        String key = key();
+        ThreadPoolExecutor result = executors.get(key);
+        if (result == null) {
+            result = executors.computeIfAbsent(key, k -> createExecutor(facilityId));
+        }
+        return result;
+    }
+
+    private static ThreadPoolExecutor createExecutor(String facilityId) {
+        String prefix = prefix(facilityId);
+        int threads = getInt(prefix, "executor.threads", getInt(prefix, "pool.maxSize", 10));
+        String threadPrefix = (facilityId == null) ? "db-executor-" : "db-executor-" + facilityId + "-";
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor result = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(getInt(prefix, "executor.queueSize", 1000)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, threadPrefix + threadNumber.incrementAndGet());
+                    // never keeps the application alive.
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        result.allowCoreThreadTimeOut(true);
+        logger.info("DB executor started with {} threads for facility {}", threads,
+                (facilityId == null) ? "default" : facilityId);
+        return result;
+    }
+
+    /**
+     * @return the connection of the unit of work open on this thread if any, otherwise a connection of its own.
+     */
+    public Connection getConnection() throws ClassNotFoundException, SQLException {
+        UnitOfWork unitOfWork = UnitOfWork.current();
+        if (unitOfWork != null && unitOfWork.getConnection() != null) {
+            if (!Objects.equals(unitOfWork.getFacilityId(), facilityId)) {
+                throw new IllegalStateException("A unit of work of another facility is open on this thread");
+            }
+            return unitOfWork.getConnection();
+        }
+        return openConnection();
+    }
+
+    /**
+     * Opens a connection that is not shared with a unit of work.
+     */
+    protected Connection openConnection() throws ClassNotFoundException, SQLException {
+        return getConnectionPool().borrow();
+    }
+
+    /**
+     * @return the pool counters, or null if no connection has been requested yet.
+     */
+    public PoolStats getPoolStats() {
+        ConnectionPool pool = connectionPools.get(key());
+        return (pool == null) ? null : pool.getStats();
     }
 
     public void closeConnection(Connection con){
         if(con!=null){
             try {
                 con.close();
-                logger.info("Closing DB connection");
+                logger.debug("Closing DB connection");
             } catch (SQLException e) {
                 logger.error("Error while closing connection",e);
             }
@@ -46,7 +213,7 @@ public class DataBaseConfig {
         if(ps!=null){
             try {
                 ps.close();
-                logger.info("Closing Prepared Statement");
+                logger.debug("Closing Prepared Statement");
             } catch (SQLException e) {
                 logger.error("Error while closing prepared statement",e);
             }
@@ -57,7 +224,7 @@ public class DataBaseConfig {
         if(rs!=null){
             try {
                 rs.close();
-                logger.info("Closing Result Set");
+                logger.debug("Closing Result Set");
             } catch (SQLException e) {
                 logger.error("Error while closing result set",e);
             }
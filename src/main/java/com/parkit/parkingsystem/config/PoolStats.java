@@ -0,0 +1,99 @@
+package com.parkit.parkingsystem.config;
+
+/**
+ * Snapshot of the connection pool counters, to size the pool.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class PoolStats {
+
+    private final int active;
+    private final int idle;
+    private final int total;
+    private final int maxSize;
+    private final long borrowCount;
+    private final long timeoutCount;
+    private final long totalWaitNanos;
+    private final long maxWaitNanos;
+    private final long statementCacheHits;
+    private final long statementCacheMisses;
+
+    public PoolStats(int active, int idle, int total, int maxSize, long borrowCount, long timeoutCount,
+            long totalWaitNanos, long maxWaitNanos, long statementCacheHits, long statementCacheMisses) {
+        this.active = active;
+        this.idle = idle;
+        this.total = total;
+        this.maxSize = maxSize;
+        this.borrowCount = borrowCount;
+        this.timeoutCount = timeoutCount;
+        this.totalWaitNanos = totalWaitNanos;
+        this.maxWaitNanos = maxWaitNanos;
+        this.statementCacheHits = statementCacheHits;
+        this.statementCacheMisses = statementCacheMisses;
+    }
+
+    public int getActive() {
+        return active;
+    }
+
+    public int getIdle() {
+        return idle;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getBorrowCount() {
+        return borrowCount;
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount;
+    }
+
+    public long getTotalWaitNanos() {
+        return totalWaitNanos;
+    }
+
+    public long getMaxWaitNanos() {
+        return maxWaitNanos;
+    }
+
+    public double getAverageWaitMillis() {
+        return (borrowCount == 0) ? 0 : (double) totalWaitNanos / borrowCount / 1_000_000;
+    }
+
+    public long getStatementCacheHits() {
+        return statementCacheHits;
+    }
+
+    /**
+     * @return the statements prepared on the database, because they were not kept yet or were in use.
+     */
+    public long getStatementCacheMisses() {
+        return statementCacheMisses;
+    }
+
+    /**
+     * @return the share of the statements found prepared, between 0 and 1. 0 if none was asked.
+     */
+    public double getStatementCacheHitRate() {
+        long requests = statementCacheHits + statementCacheMisses;
+        return (requests == 0) ? 0 : (double) statementCacheHits / requests;
+    }
+
+    @Override
+    public String toString() {
+        return "PoolStats[active=" + active + ", idle=" + idle + ", total=" + total + "/" + maxSize
+                + ", borrows=" + borrowCount + ", timeouts=" + timeoutCount
+                + ", avgWaitMs=" + String.format("%.3f", getAverageWaitMillis())
+                + ", maxWaitMs=" + String.format("%.3f", maxWaitNanos / 1_000_000.0)
+                + ", statementCacheHitRate=" + String.format("%.3f", getStatementCacheHitRate()) + "]";
+    }
+}
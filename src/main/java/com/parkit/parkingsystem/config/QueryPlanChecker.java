@@ -0,0 +1,98 @@
+package com.parkit.parkingsystem.config;
+
+import com.parkit.parkingsystem.constants.DBConstants;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs EXPLAIN on each query of DBConstants at startup and warns when one reads a whole table
+ * or sorts its rows, which usually means a missing index.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class QueryPlanChecker {
+
+    private static final Logger logger = LogManager.getLogger("QueryPlanChecker");
+
+    private final ConnectionPool.ConnectionFactory connectionFactory;
+
+    public QueryPlanChecker(ConnectionPool.ConnectionFactory connectionFactory) {
+        if (connectionFactory == null) {
+            throw new IllegalArgumentException("Connection factory cannot be null");
+        }
+        this.connectionFactory = connectionFactory;
+    }
+
+    /**
+     * @return the number of queries with a warning, or -1 on error.
+     */
+    public int check() {
+        int warnings = 0;
+        try (Connection con = connectionFactory.create()) {
+            for (String query : getExplainableQueries()) {
+                if (!check(con, query)) {
+                    warnings++;
+                }
+            }
+        } catch (Exception ex) {
+            logger.error("Error check", ex);
+            return -1;
+        }
+        return warnings;
+    }
+
+    private boolean check(Connection con, String query) {
+        boolean result = true;
+        try (PreparedStatement ps = con.prepareStatement("explain " + query)) {
+            // the values do not matter for the plan, only the shape of the query.
+            int parameterCount = ps.getParameterMetaData().getParameterCount();
+            for (int i = 1; i <= parameterCount; i++) {
+                ps.setString(i, "0");
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String table = rs.getString("table");
+                    String extra = rs.getString("Extra");
+                    if ("ALL".equals(rs.getString("type"))) {
+                        logger.warn("Full scan of table {} ({} rows) for : {}", table, rs.getLong("rows"), query);
+                        result = false;
+                    } else if (extra != null && extra.contains("Using filesort")) {
+                        logger.warn("Sort without index on table {} for : {}", table, query);
+                        result = false;
+                    }
+                }
+            }
+        } catch (Exception ex) {
+            logger.error("Unable to explain : {}", query, ex);
+        }
+        return result;
+    }
+
+    /**
+     * @return the select and update queries of DBConstants that filter rows. Inserts and queries
+     *         meant to read a whole table are not checked.
+     */
+    static List<String> getExplainableQueries() throws IllegalAccessException {
+        List<String> result = new ArrayList<>();
+        for (Field field : DBConstants.class.getFields()) {
+            if (field.getType() == String.class && Modifier.isStatic(field.getModifiers())) {
+                String query = (String) field.get(null);
+                String verb = query.trim().toLowerCase();
+                if ((verb.startsWith("select") || verb.startsWith("update")) && verb.contains(" where ")) {
+                    result.add(query);
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,226 @@
+package com.parkit.parkingsystem.config;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Brings the database schema up to date at startup.
+ *
+ * The scripts are listed in order in db/migration/migrations.txt and named V{version}__{description}.sql.
+ * Each applied script is recorded in the schema_version table with its checksum, so a script is applied once
+ * and a script modified after being applied is reported.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class SchemaMigrator {
+
+    private static final Logger logger = LogManager.getLogger("SchemaMigrator");
+
+    private static final String MIGRATION_PATH = "db/migration/";
+    private static final String MIGRATION_INDEX = MIGRATION_PATH + "migrations.txt";
+    private static final Pattern MIGRATION_NAME = Pattern.compile("V(\\d+)__(\\w+)\\.sql");
+    // several instances may start together : only one migrates.
+    private static final String LOCK_NAME = "parking_schema_migration";
+    private static final int LOCK_TIMEOUT_SECONDS = 60;
+
+    private static final String CREATE_VERSION_TABLE = "create table if not exists schema_version("
+            + "VERSION int PRIMARY KEY, DESCRIPTION varchar(200) NOT NULL, CHECKSUM varchar(64) NOT NULL, APPLIED_ON DATETIME NOT NULL)";
+    private static final String GET_APPLIED_VERSIONS = "select VERSION, CHECKSUM from schema_version";
+    private static final String SAVE_VERSION = "insert into schema_version(VERSION, DESCRIPTION, CHECKSUM, APPLIED_ON) values(?,?,?,now())";
+
+    /**
+     * One migration script.
+     */
+    static class Migration {
+        final int version;
+        final String description;
+        final String script;
+        final String checksum;
+
+        Migration(int version, String description, String script) {
+            this.version = version;
+            this.description = description;
+            this.script = script;
+            this.checksum = checksum(script);
+        }
+    }
+
+    private final ConnectionPool.ConnectionFactory connectionFactory;
+
+    public SchemaMigrator(ConnectionPool.ConnectionFactory connectionFactory) {
+        if (connectionFactory == null) {
+            throw new IllegalArgumentException("Connection factory cannot be null");
+        }
+        this.connectionFactory = connectionFactory;
+    }
+
+    /**
+     * Applies the scripts not applied yet.
+     *
+     * @return true if the schema is up to date, false if a script failed or was modified after being applied.
+     */
+    public boolean migrate() {
+        try (Connection con = connectionFactory.create()) {
+            if (!acquireLock(con)) {
+                logger.error("Unable to get the schema migration lock");
+                return false;
+            }
+            try {
+                return migrate(con, loadMigrations());
+            } finally {
+                releaseLock(con);
+            }
+        } catch (Exception ex) {
+            logger.error("Error migrate", ex);
+            return false;
+        }
+    }
+
+    private boolean migrate(Connection con, List<Migration> migrations) throws SQLException {
+        try (Statement statement = con.createStatement()) {
+            statement.execute(CREATE_VERSION_TABLE);
+        }
+        Map<Integer, String> applied = getAppliedVersions(con);
+        boolean result = true;
+        for (Migration migration : migrations) {
+            String appliedChecksum = applied.get(migration.version);
+            if (appliedChecksum == null) {
+                apply(con, migration);
+            } else if (!appliedChecksum.equals(migration.checksum)) {
+                logger.error("Migration V{} was modified after being applied", migration.version);
+                result = false;
+            }
+        }
+        return result;
+    }
+
+    private Map<Integer, String> getAppliedVersions(Connection con) throws SQLException {
+        Map<Integer, String> result = new HashMap<>();
+        try (PreparedStatement ps = con.prepareStatement(GET_APPLIED_VERSIONS);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                result.put(rs.getInt(1), rs.getString(2));
+            }
+        }
+        return result;
+    }
+
+    private void apply(Connection con, Migration migration) throws SQLException {
+        logger.info("Applying migration V{} {}", migration.version, migration.description);
+        // DDL is committed by MySQL as it runs : a failed script stops the migration before being recorded.
+        try (Statement statement = con.createStatement()) {
+            for (String sql : splitStatements(migration.script)) {
+                statement.execute(sql);
+            }
+        }
+        try (PreparedStatement ps = con.prepareStatement(SAVE_VERSION)) {
+            ps.setInt(1, migration.version);
+            ps.setString(2, migration.description);
+            ps.setString(3, migration.checksum);
+            ps.executeUpdate();
+        }
+    }
+
+    private boolean acquireLock(Connection con) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement("select get_lock(?, ?)")) {
+            ps.setString(1, LOCK_NAME);
+            ps.setInt(2, LOCK_TIMEOUT_SECONDS);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+
+    private void releaseLock(Connection con) {
+        try (PreparedStatement ps = con.prepareStatement("select release_lock(?)")) {
+            ps.setString(1, LOCK_NAME);
+            ps.executeQuery().close();
+        } catch (SQLException e) {
+            logger.error("Error while releasing the schema migration lock", e);
+        }
+    }
+
+    static List<Migration> loadMigrations() throws IOException {
+        List<Migration> result = new ArrayList<>();
+        int previousVersion = 0;
+        for (String line : readResource(MIGRATION_INDEX).split("\n")) {
+            String name = line.trim();
+            if (name.isEmpty() || name.startsWith("#")) {
+                continue;
+            }
+            Matcher matcher = MIGRATION_NAME.matcher(name);
+            if (!matcher.matches()) {
+                throw new IllegalStateException("Invalid migration name : " + name);
+            }
+            int version = Integer.parseInt(matcher.group(1));
+            if (version <= previousVersion) {
+                throw new IllegalStateException("Migration versions must be increasing : " + name);
+            }
+            previousVersion = version;
+            result.add(new Migration(version, matcher.group(2), readResource(MIGRATION_PATH + name)));
+        }
+        return result;
+    }
+
+    private static String readResource(String name) throws IOException {
+        InputStream input = SchemaMigrator.class.getClassLoader().getResourceAsStream(name);
+        if (input == null) {
+            throw new IOException("Resource not found : " + name);
+        }
+        StringBuilder result = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                result.append(line).append('\n');
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * @return the statements of a script, without comments.
+     */
+    static List<String> splitStatements(String script) {
+        String withoutComments = script.replaceAll("(?s)/\\*.*?\\*/", "").replaceAll("(?m)^\\s*--.*$", "");
+        List<String> result = new ArrayList<>();
+        for (String sql : withoutComments.split(";")) {
+            if (!sql.trim().isEmpty()) {
+                result.add(sql.trim());
+            }
+        }
+        return result;
+    }
+
+    static String checksum(String script) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(script.getBytes(StandardCharsets.UTF_8));
+            StringBuilder result = new StringBuilder();
+            for (byte b : digest) {
+                result.append(String.format("%02x", b));
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
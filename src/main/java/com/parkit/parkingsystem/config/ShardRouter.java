@@ -0,0 +1,84 @@
+package com.parkit.parkingsystem.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maps each facility (parking lot) served by the application to its own database.
+ *
+ * The facilities are listed by the facilities key, each with its facility.[id].db.* keys. Without it the
+ * application serves a single facility, DEFAULT_FACILITY_ID, on the database of the db.* keys. As each
+ * facility has its own database and pool, the tables and queries are those of a single lot : the gates of
+ * a facility never wait on the rows or connections of another.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class ShardRouter {
+
+    public static final String DEFAULT_FACILITY_ID = "default";
+
+    private final Map<String, DataBaseConfig> dataBaseConfigs = new LinkedHashMap<>();
+    private final boolean sharded;
+
+    /**
+     * @param facilityIds the facilities, each with its facility.[id].db.* keys. If empty, the default facility only.
+     */
+    public ShardRouter(List<String> facilityIds) {
+        if (facilityIds == null) {
+            throw new IllegalArgumentException("Invalid argument in ShardRouter");
+        }
+        sharded = !facilityIds.isEmpty();
+        if (!sharded) {
+            dataBaseConfigs.put(DEFAULT_FACILITY_ID, new DataBaseConfig());
+        }
+        for (String facilityId : facilityIds) {
+            if (dataBaseConfigs.put(facilityId, new DataBaseConfig(facilityId)) != null) {
+                throw new IllegalArgumentException("Facility listed twice : " + facilityId);
+            }
+        }
+    }
+
+    /**
+     * @return the router of the facilities listed by the facilities key, comma separated.
+     */
+    public static ShardRouter fromConfig() {
+        String facilities = AppConfig.getString("facilities", "").trim();
+        List<String> facilityIds = new ArrayList<>();
+        if (!facilities.isEmpty()) {
+            for (String facilityId : facilities.split(",")) {
+                facilityIds.add(facilityId.trim());
+            }
+        }
+        return new ShardRouter(facilityIds);
+    }
+
+    /**
+     * @return false if the application serves the default facility only, with the db.* keys.
+     */
+    public boolean isSharded() {
+        return sharded;
+    }
+
+    /**
+     * @return the facilities, in the order they are listed.
+     */
+    public Set<String> getFacilityIds() {
+        return Collections.unmodifiableSet(dataBaseConfigs.keySet());
+    }
+
+    /**
+     * @throws IllegalArgumentException if the facility is not served.
+     */
+    public DataBaseConfig getDataBaseConfig(String facilityId) {
+        DataBaseConfig dataBaseConfig = dataBaseConfigs.get(facilityId);
+        if (dataBaseConfig == null) {
+            throw new IllegalArgumentException("Unknown facility : " + facilityId);
+        }
+        return dataBaseConfig;
+    }
+}
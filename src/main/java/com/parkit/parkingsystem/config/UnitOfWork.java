@@ -0,0 +1,239 @@
+package com.parkit.parkingsystem.config;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One connection and one transaction shared by all the DAO calls of an operation.
+ *
+ * While a unit of work is open on a thread, DataBaseConfig.getConnection() returns its connection
+ * (closing it does nothing), so the DAOs take part in the transaction without any change.
+ * Usage :
+ * <pre>
+ * try (UnitOfWork unitOfWork = UnitOfWork.begin(dataBaseConfig)) {
+ *     ... DAO calls ...
+ *     unitOfWork.commit();
+ * }
+ * </pre>
+ * Closing a unit of work that was not committed rolls it back.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class UnitOfWork implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("UnitOfWork");
+
+    private static final ThreadLocal<UnitOfWork> CURRENT = new ThreadLocal<>();
+
+    /**
+     * An action run by commit() before the transaction is committed. If it fails, nothing is committed.
+     */
+    public interface CommitAction {
+        void run() throws Exception;
+    }
+
+    private final Connection connection;
+    private final Connection sharedConnection;
+    // the facility of the connection : the DAOs of another facility must not use it.
+    private final String facilityId;
+    // false for the unit of work that does nothing, not bound to the thread.
+    private final boolean bound;
+    private final List<CommitAction> beforeCommitActions = new ArrayList<>();
+    private final List<Runnable> afterCommitActions = new ArrayList<>();
+    private final List<Runnable> afterRollbackActions = new ArrayList<>();
+    private boolean finished;
+
+    private UnitOfWork(Connection connection, String facilityId, boolean bound) {
+        this.connection = connection;
+        this.facilityId = facilityId;
+        this.bound = bound;
+        this.sharedConnection = (connection == null) ? null : (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+                (proxy, method, args) -> {
+                    // the unit of work closes the connection, not the DAOs.
+                    if ("close".equals(method.getName())) {
+                        return null;
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    /**
+     * Opens a transaction bound to the current thread.
+     *
+     * @param dataBaseConfig where to get the connection. If null (DAOs without database, as in unit tests),
+     *        the returned unit of work does nothing and the DAOs stay in autocommit mode.
+     * @return the unit of work, to close in all cases.
+     * @throws IllegalStateException if a unit of work is already open on this thread.
+     */
+    public static UnitOfWork begin(DataBaseConfig dataBaseConfig) throws ClassNotFoundException, SQLException {
+        if (CURRENT.get() != null) {
+            throw new IllegalStateException("A unit of work is already open on this thread");
+        }
+        if (dataBaseConfig == null) {
+            return new UnitOfWork(null, null, false);
+        }
+        Connection connection = dataBaseConfig.openConnection();
+        try {
+            connection.setAutoCommit(false);
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        UnitOfWork unitOfWork = new UnitOfWork(connection, dataBaseConfig.getFacilityId(), true);
+        CURRENT.set(unitOfWork);
+        return unitOfWork;
+    }
+
+    /**
+     * Opens a unit of work without connection, bound to the current thread : only its commit and rollback
+     * actions are kept. For operations that write nothing to the database themselves (write-behind),
+     * the DAOs then read with connections of their own.
+     *
+     * @throws IllegalStateException if a unit of work is already open on this thread.
+     */
+    public static UnitOfWork beginLocal() {
+        if (CURRENT.get() != null) {
+            throw new IllegalStateException("A unit of work is already open on this thread");
+        }
+        UnitOfWork unitOfWork = new UnitOfWork(null, null, true);
+        CURRENT.set(unitOfWork);
+        return unitOfWork;
+    }
+
+    /**
+     * @return the unit of work open on this thread, or null.
+     */
+    public static UnitOfWork current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Runs an action when the current unit of work commits, before its transaction, or now if there is none.
+     * Used for writes outside the database that must be done only if the operation succeeds (write-behind journal) :
+     * if the action fails, the unit of work is rolled back and commit() throws.
+     */
+    public static void beforeCommit(CommitAction action) throws Exception {
+        UnitOfWork unitOfWork = CURRENT.get();
+        if (unitOfWork == null) {
+            action.run();
+        } else {
+            unitOfWork.beforeCommitActions.add(action);
+        }
+    }
+
+    /**
+     * Runs an action once the current unit of work is committed, or now if there is none.
+     * Used to keep in-memory state in step with what is really written to the database.
+     */
+    public static void afterCommit(Runnable action) {
+        UnitOfWork unitOfWork = CURRENT.get();
+        if (unitOfWork == null) {
+            action.run();
+        } else {
+            unitOfWork.afterCommitActions.add(action);
+        }
+    }
+
+    /**
+     * Runs an action if the current unit of work is rolled back. Does nothing if there is none.
+     */
+    public static void onRollback(Runnable action) {
+        UnitOfWork unitOfWork = CURRENT.get();
+        if (unitOfWork != null) {
+            unitOfWork.afterRollbackActions.add(action);
+        }
+    }
+
+    Connection getConnection() {
+        return sharedConnection;
+    }
+
+    String getFacilityId() {
+        return facilityId;
+    }
+
+    public boolean isActive() {
+        return bound && !finished;
+    }
+
+    public void commit() throws SQLException {
+        if (!bound || finished) {
+            return;
+        }
+        for (CommitAction action : beforeCommitActions) {
+            try {
+                action.run();
+            } catch (Exception e) {
+                rollback();
+                throw new SQLException("Unit of work rolled back, a commit action failed", e);
+            }
+        }
+        if (connection != null) {
+            connection.commit();
+        }
+        finish(afterCommitActions);
+    }
+
+    public void rollback() {
+        if (!bound || finished) {
+            return;
+        }
+        if (connection != null) {
+            try {
+                connection.rollback();
+            } catch (SQLException e) {
+                logger.error("Error while rolling back unit of work", e);
+            }
+        }
+        finish(afterRollbackActions);
+    }
+
+    private void finish(List<Runnable> actions) {
+        finished = true;
+        CURRENT.remove();
+        for (Runnable action : actions) {
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                logger.error("Error in unit of work completion action", e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!bound) {
+            return;
+        }
+        if (!finished) {
+            rollback();
+        }
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            logger.error("Error while restoring autocommit", e);
+        } finally {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                logger.error("Error while closing connection", e);
+            }
+        }
+    }
+}
@@ -2,12 +2,48 @@ package com.parkit.parkingsystem.constants;
 
 public class DBConstants {
 
+    // the width of the VEHICLE_REG_NUMBER columns : a longer registration number cannot be written.
+    public static final int VEHICLE_REG_NUMBER_LENGTH = 10;
+
     public static final String GET_NEXT_PARKING_SPOT = "select min(PARKING_NUMBER) from parking where AVAILABLE = true and TYPE = ?";
     public static final String UPDATE_PARKING_SPOT = "update parking set available = ? where PARKING_NUMBER = ?";
+    // a locking read : the latest committed rows, not the snapshot of the transaction, without the spots other gates are claiming.
+    public static final String LOCK_NEXT_PARKING_SPOT = "select PARKING_NUMBER from parking where TYPE = ? and AVAILABLE = true order by PARKING_NUMBER limit 1 for update skip locked";
+    public static final String CLAIM_PARKING_SPOT = "update parking set AVAILABLE = false where PARKING_NUMBER = ? and AVAILABLE = true";
     public static final String GET_PARKING_SPOT = "select PARKING_NUMBER, AVAILABLE, TYPE from parking where PARKING_NUMBER = ?";
+    public static final String COUNT_AVAILABLE_PARKING_SPOTS = "select count(*) from parking where AVAILABLE = true and TYPE = ?";
+    public static final String GET_PARKING_SPOTS = "select PARKING_NUMBER, AVAILABLE, TYPE from parking";
 
     public static final String SAVE_TICKET = "insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values(?,?,?,?,?)";
-    public static final String UPDATE_TICKET = "update ticket set PRICE=?, OUT_TIME=? where ID=?";
+    // only an open ticket is closed : of two exits of the same vehicle, the second one updates no row.
+    public static final String UPDATE_TICKET = "update ticket set PRICE=?, OUT_TIME=? where ID=? and OUT_TIME is null";
     public static final String GET_TICKET = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE from ticket t,parking p where p.parking_number = t.parking_number and t.VEHICLE_REG_NUMBER=? order by t.IN_TIME desc limit 1";
-    public static final String VEHICLE_REG_NUMBER_COUNT_TICKETS = "select count(*) as total from ticket where VEHICLE_REG_NUMBER=?";
+    public static final String GET_OPEN_TICKETS = "select t.PARKING_NUMBER, t.ID, t.VEHICLE_REG_NUMBER, t.IN_TIME, p.TYPE from ticket t,parking p where p.parking_number = t.parking_number and t.OUT_TIME is null";
+    // a ticket was discounted when the vehicle had an earlier ticket.
+    public static final String GET_CLOSED_TICKETS_FROM = "select t.ID, t.VEHICLE_REG_NUMBER, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE, (exists(select 1 from ticket e where e.VEHICLE_REG_NUMBER = t.VEHICLE_REG_NUMBER and e.ID < t.ID) or exists(select 1 from ticket_archive e where e.VEHICLE_REG_NUMBER = t.VEHICLE_REG_NUMBER and e.ID < t.ID)) as DISCOUNT from ticket t,parking p where p.parking_number = t.parking_number and t.ID > ? and t.OUT_TIME is not null order by t.ID";
+    public static final String GET_CLOSED_ARCHIVED_TICKETS_FROM = "select t.ID, t.VEHICLE_REG_NUMBER, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE, (exists(select 1 from ticket e where e.VEHICLE_REG_NUMBER = t.VEHICLE_REG_NUMBER and e.ID < t.ID) or exists(select 1 from ticket_archive e where e.VEHICLE_REG_NUMBER = t.VEHICLE_REG_NUMBER and e.ID < t.ID)) as DISCOUNT from ticket_archive t,parking p where p.parking_number = t.parking_number and t.ID > ? order by t.ID";
+    public static final String REPRICE_TICKET = "update ticket set PRICE=? where ID=?";
+    public static final String REPRICE_ARCHIVED_TICKET = "update ticket_archive set PRICE=? where ID=?";
+    // write-behind : the journal has no ticket id. An entry is inserted once, known by its journal sequence, so a replay changes nothing.
+    public static final String SAVE_TICKET_IF_ABSENT = "insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME, JOURNAL_SEQ) select ?, ?, 0, ?, null, ? from dual where not exists (select 1 from ticket where JOURNAL_SEQ = ?)";
+    // an exit closes the oldest open ticket of the vehicle with this entry time : one ticket, even for two visits in the same second.
+    public static final String CLOSE_TICKET = "update ticket set PRICE=?, OUT_TIME=? where VEHICLE_REG_NUMBER=? and IN_TIME=? and OUT_TIME is null order by ID limit 1";
+    public static final String VEHICLE_REG_NUMBER_COUNT_TICKETS = "select (select count(*) from ticket where VEHICLE_REG_NUMBER=?) + (select count(*) from ticket_archive where VEHICLE_REG_NUMBER=?) as total";
+
+    // the archived tickets all left before the tickets still in the ticket table : it is only read when the vehicle has none there.
+    public static final String GET_ARCHIVED_TICKET = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE from ticket_archive t,parking p where p.parking_number = t.parking_number and t.VEHICLE_REG_NUMBER=? order by t.IN_TIME desc limit 1";
+    // a plain read : a locking range scan on OUT_TIME could block the inserts of the open tickets.
+    public static final String GET_TICKETS_TO_ARCHIVE = "select ID from ticket where OUT_TIME < ? order by OUT_TIME";
+    public static final String ARCHIVE_TICKET = "insert into ticket_archive(ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) select ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME from ticket where ID = ?";
+    public static final String DELETE_ARCHIVED_TICKET = "delete from ticket where ID = ?";
+
+    public static final String RECORD_VEHICLE_VISIT = "insert into vehicle_profile(VEHICLE_REG_NUMBER, VISIT_COUNT, TOTAL_SPENT, LAST_VISIT) values(?,1,0,?) on duplicate key update VISIT_COUNT = VISIT_COUNT + 1, LAST_VISIT = values(LAST_VISIT)";
+    public static final String RECORD_VEHICLE_SPEND = "update vehicle_profile set TOTAL_SPENT = TOTAL_SPENT + ?, LAST_VISIT = ? where VEHICLE_REG_NUMBER=?";
+    public static final String ADJUST_VEHICLE_SPEND = "update vehicle_profile set TOTAL_SPENT = TOTAL_SPENT + ? where VEHICLE_REG_NUMBER=?";
+    public static final String GET_VEHICLE_VISIT_COUNT = "select VISIT_COUNT as total from vehicle_profile where VEHICLE_REG_NUMBER=?";
+    public static final String GET_VEHICLE_PROFILE = "select VEHICLE_REG_NUMBER, VISIT_COUNT, TOTAL_SPENT, LAST_VISIT from vehicle_profile where VEHICLE_REG_NUMBER=?";
+    // the rollups are only added to : several flushes of the same hour sum up.
+    public static final String ADD_HOURLY_ROLLUP = "insert into hourly_rollup(BUCKET_HOUR, TYPE, ENTRIES, EXITS, REVENUE_CENTS, OCCUPIED_MINUTES) values(?,?,?,?,?,?) on duplicate key update ENTRIES = ENTRIES + values(ENTRIES), EXITS = EXITS + values(EXITS), REVENUE_CENTS = REVENUE_CENTS + values(REVENUE_CENTS), OCCUPIED_MINUTES = OCCUPIED_MINUTES + values(OCCUPIED_MINUTES)";
+    public static final String GET_HOURLY_ROLLUPS = "select BUCKET_HOUR, TYPE, ENTRIES, EXITS, REVENUE_CENTS, OCCUPIED_MINUTES from hourly_rollup where BUCKET_HOUR >= ? and BUCKET_HOUR < ? order by BUCKET_HOUR, TYPE";
+    public static final String BACKFILL_VEHICLE_PROFILES = "insert into vehicle_profile(VEHICLE_REG_NUMBER, VISIT_COUNT, TOTAL_SPENT, LAST_VISIT) select VEHICLE_REG_NUMBER, count(*), coalesce(sum(PRICE), 0), max(coalesce(OUT_TIME, IN_TIME)) from (select VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME from ticket union all select VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME from ticket_archive) t group by VEHICLE_REG_NUMBER on duplicate key update VISIT_COUNT = values(VISIT_COUNT), TOTAL_SPENT = values(TOTAL_SPENT), LAST_VISIT = values(LAST_VISIT)";
 }
@@ -0,0 +1,21 @@
+package com.parkit.parkingsystem.constants;
+
+/**
+ * Outcome of an entry or an exit at a gate.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public enum GateStatus {
+    OK,
+    // missing registration number or vehicle type.
+    INVALID_REQUEST,
+    // no spot left for this type of vehicle.
+    PARKING_FULL,
+    // exit of a vehicle without open ticket.
+    NOT_PARKED,
+    // entry of a vehicle that already has an open ticket.
+    ALREADY_PARKED,
+    // the database could not be read or written.
+    ERROR
+}
@@ -0,0 +1,140 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+
+
+/**
+ * A vehicle entry or exit written to the ticket journal, waiting to be applied to the database.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public final class JournalRecord {
+
+    public enum Type { ENTRY, EXIT }
+
+    private final Type type;
+    private final String vehicleRegNumber;
+    private final int parkingNumber;
+    private final ParkingType parkingType;
+    private final long inTime;
+    // 0 for an entry.
+    private final long outTime;
+    private final long priceCents;
+
+    // where the record ends in the journal and its sequence number, set when it is appended.
+    private long segment;
+    private int endOffset;
+    private long sequence;
+    // set once the record is in the database.
+    private volatile boolean written;
+
+    public JournalRecord(Type type, String vehicleRegNumber, int parkingNumber, ParkingType parkingType,
+            long inTime, long outTime, long priceCents) {
+        if (type == null || vehicleRegNumber == null || parkingType == null) {
+            throw new IllegalArgumentException("Invalid argument in JournalRecord");
+        }
+        this.type = type;
+        this.vehicleRegNumber = vehicleRegNumber;
+        this.parkingNumber = parkingNumber;
+        this.parkingType = parkingType;
+        this.inTime = inTime;
+        this.outTime = outTime;
+        this.priceCents = priceCents;
+    }
+
+    public static JournalRecord entry(Ticket ticket) {
+        return new JournalRecord(Type.ENTRY, ticket.getVehicleRegNumber(), ticket.getParkingSpot().getId(),
+                ticket.getParkingSpot().getParkingType(), ticket.getInTimeMillis(), 0, 0);
+    }
+
+    public static JournalRecord exit(Ticket ticket) {
+        return new JournalRecord(Type.EXIT, ticket.getVehicleRegNumber(), ticket.getParkingSpot().getId(),
+                ticket.getParkingSpot().getParkingType(), ticket.getInTimeMillis(), ticket.getOutTimeMillis(),
+                Math.round(ticket.getPrice() * 100.0));
+    }
+
+    /**
+     * @return true if the database accepts the record : the registration number fits its column, the spot is set.
+     */
+    public boolean isWritable() {
+        return vehicleRegNumber.trim().length() > 0 && vehicleRegNumber.length() <= DBConstants.VEHICLE_REG_NUMBER_LENGTH
+                && parkingNumber > 0 && priceCents >= 0;
+    }
+
+    /**
+     * @return the ticket as it is once the record is applied. Its id is 0 : the database gives it when flushed.
+     */
+    public Ticket toTicket() {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(parkingNumber, parkingType, type == Type.EXIT));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setPrice(priceCents / 100.0);
+        ticket.setInTimeMillis(inTime);
+        ticket.setOutTimeMillis((type == Type.EXIT) ? outTime : Ticket.NO_TIME);
+        return ticket;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getVehicleRegNumber() {
+        return vehicleRegNumber;
+    }
+
+    public int getParkingNumber() {
+        return parkingNumber;
+    }
+
+    public ParkingType getParkingType() {
+        return parkingType;
+    }
+
+    public long getInTime() {
+        return inTime;
+    }
+
+    public long getOutTime() {
+        return outTime;
+    }
+
+    public long getPriceCents() {
+        return priceCents;
+    }
+
+    long getSegment() {
+        return segment;
+    }
+
+    int getEndOffset() {
+        return endOffset;
+    }
+
+    void setPosition(long segment, int endOffset) {
+        this.segment = segment;
+        this.endOffset = endOffset;
+    }
+
+    /**
+     * @return the number given by the journal, unique : the ticket of an entry is inserted once under it.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    boolean isWritten() {
+        return written;
+    }
+
+    void setWritten() {
+        written = true;
+    }
+}
@@ -0,0 +1,107 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The tickets of the vehicles currently in the parking, by registration number,
+ * so that an exit does not need to read the ticket table.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class OpenTicketIndex {
+
+    /**
+     * What is needed to rebuild an open ticket.
+     */
+    private static final class OpenTicket {
+        private final int id;
+        private final int parkingNumber;
+        private final ParkingType parkingType;
+        private final long inTime;
+
+        private OpenTicket(Ticket ticket) {
+            this.id = ticket.getId();
+            this.parkingNumber = ticket.getParkingSpot().getId();
+            this.parkingType = ticket.getParkingSpot().getParkingType();
+            this.inTime = ticket.getInTimeMillis();
+        }
+    }
+
+    private final ConcurrentHashMap<String, OpenTicket> openTickets = new ConcurrentHashMap<>();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * Replaces the content with the given open tickets.
+     */
+    public void load(Collection<Ticket> tickets) {
+        if (tickets == null) {
+            throw new IllegalArgumentException("Tickets cannot be null");
+        }
+        openTickets.clear();
+        for (Ticket ticket : tickets) {
+            put(ticket);
+        }
+    }
+
+    /**
+     * Records a vehicle entry. If the vehicle already has an open ticket, the most recent one is kept,
+     * as the ticket table query does.
+     */
+    public void put(Ticket ticket) {
+        if (ticket == null || ticket.getVehicleRegNumber() == null || ticket.hasOutTime()) {
+            throw new IllegalArgumentException("Only open tickets can be indexed");
+        }
+        OpenTicket openTicket = new OpenTicket(ticket);
+        openTickets.merge(ticket.getVehicleRegNumber(), openTicket,
+                (previous, current) -> (current.inTime >= previous.inTime) ? current : previous);
+    }
+
+    /**
+     * Records a vehicle exit. A more recent open ticket of the same vehicle is left in place.
+     */
+    public void remove(Ticket ticket) {
+        if (ticket != null && ticket.getVehicleRegNumber() != null) {
+            openTickets.computeIfPresent(ticket.getVehicleRegNumber(),
+                    (vehicleRegNumber, openTicket) -> (openTicket.id == ticket.getId()) ? null : openTicket);
+        }
+    }
+
+    /**
+     * @return a new ticket built from the index, or null if the vehicle has no open ticket known.
+     */
+    public Ticket get(String vehicleRegNumber) {
+        OpenTicket openTicket = (vehicleRegNumber == null) ? null : openTickets.get(vehicleRegNumber);
+        if (openTicket == null) {
+            missCount.increment();
+            return null;
+        }
+        hitCount.increment();
+        Ticket ticket = new Ticket();
+        ticket.setId(openTicket.id);
+        ticket.setParkingSpot(new ParkingSpot(openTicket.parkingNumber, openTicket.parkingType, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setPrice(0);
+        ticket.setInTimeMillis(openTicket.inTime);
+        return ticket;
+    }
+
+    public int size() {
+        return openTickets.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+}
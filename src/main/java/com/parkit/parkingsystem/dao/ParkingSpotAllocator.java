@@ -0,0 +1,191 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * In-memory copy of the free parking spots, one sorted lock-free set per parking type.
+ * The lowest free spot is found in O(log n) without querying the database.
+ * The database stays the reference : this copy is loaded from it and can be reloaded at any time.
+ *
+ * A reload may run while the gates claim and free spots. beginLoad() is called before the parking table is
+ * read : from then on the changes are recorded, and load() replays them over what was read. The spots taken
+ * by units of work not committed yet are kept taken, since the read cannot see them.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class ParkingSpotAllocator {
+
+    // replaced as a whole on reload, so readers never see a half loaded state.
+    private volatile Map<ParkingType, ConcurrentSkipListSet<Integer>> freeSpots = newFreeSpots();
+
+    // the spots taken by units of work not committed yet.
+    private final Set<Integer> uncommitted = ConcurrentHashMap.newKeySet();
+
+    // true from beginLoad() to load() : the changes are then made under loadLock and recorded in changes.
+    private volatile boolean loading;
+    private final Object loadLock = new Object();
+    private List<ParkingSpot> changes;
+
+    private static Map<ParkingType, ConcurrentSkipListSet<Integer>> newFreeSpots() {
+        Map<ParkingType, ConcurrentSkipListSet<Integer>> result = new EnumMap<>(ParkingType.class);
+        for (ParkingType parkingType : ParkingType.values()) {
+            result.put(parkingType, new ConcurrentSkipListSet<>());
+        }
+        return result;
+    }
+
+    /**
+     * Starts recording the changes, to call before the parking table is read for load().
+     */
+    public void beginLoad() {
+        synchronized (loadLock) {
+            changes = new ArrayList<>();
+            loading = true;
+        }
+    }
+
+    /**
+     * Stops recording the changes when the parking table could not be read.
+     */
+    public void cancelLoad() {
+        synchronized (loadLock) {
+            changes = null;
+            loading = false;
+        }
+    }
+
+    /**
+     * Replaces the content with the given parking spots, then replays the changes recorded since beginLoad().
+     *
+     * @param parkingSpots all the spots of the parking table.
+     */
+    public void load(Collection<ParkingSpot> parkingSpots) {
+        if (parkingSpots == null) {
+            throw new IllegalArgumentException("Parking spots cannot be null");
+        }
+        Map<ParkingType, ConcurrentSkipListSet<Integer>> loaded = newFreeSpots();
+        for (ParkingSpot parkingSpot : parkingSpots) {
+            if (parkingSpot.isAvailable()) {
+                loaded.get(parkingSpot.getParkingType()).add(parkingSpot.getId());
+            }
+        }
+        synchronized (loadLock) {
+            if (changes != null) {
+                for (ParkingSpot change : changes) {
+                    apply(loaded, change);
+                }
+            }
+            for (ConcurrentSkipListSet<Integer> spots : loaded.values()) {
+                spots.removeAll(uncommitted);
+            }
+            freeSpots = loaded;
+            changes = null;
+            loading = false;
+        }
+    }
+
+    /**
+     * Records that a unit of work took the spot and has not committed yet : a reload keeps it taken.
+     */
+    public void addUncommitted(int parkingNumber) {
+        uncommitted.add(parkingNumber);
+    }
+
+    /**
+     * Records that the unit of work that took the spot was committed or rolled back. A reload in progress
+     * keeps the spot taken : on rollback, update() then frees it.
+     */
+    public void removeUncommitted(ParkingSpot parkingSpot) {
+        if (loading) {
+            synchronized (loadLock) {
+                record(new ParkingSpot(parkingSpot.getId(), parkingSpot.getParkingType(), false));
+                uncommitted.remove(parkingSpot.getId());
+            }
+            return;
+        }
+        uncommitted.remove(parkingSpot.getId());
+    }
+
+    /**
+     * @param parkingType the type of vehicle.
+     * @return the lowest free parking number, or -1 if there is none.
+     */
+    public int getLowestAvailable(ParkingType parkingType) {
+        if (parkingType == null) {
+            throw new IllegalArgumentException("ParkingType cannot be null");
+        }
+        Integer lowest = freeSpots.get(parkingType).ceiling(Integer.MIN_VALUE);
+        return (lowest == null) ? -1 : lowest;
+    }
+
+    /**
+     * Records an availability change already written to the database.
+     *
+     * @param parkingSpot the spot with its new availability.
+     */
+    public void update(ParkingSpot parkingSpot) {
+        if (parkingSpot == null) {
+            throw new IllegalArgumentException("ParkingSpot cannot be null");
+        }
+        if (loading) {
+            synchronized (loadLock) {
+                record(parkingSpot);
+                apply(freeSpots, parkingSpot);
+            }
+            return;
+        }
+        // a reload started meanwhile read the table after this change was written : it is not lost.
+        apply(freeSpots, parkingSpot);
+    }
+
+    /**
+     * Takes a spot if it is free, atomically : of several gates claiming the same spot, only one succeeds.
+     *
+     * @return true if this call took the spot.
+     */
+    public boolean claim(ParkingSpot parkingSpot) {
+        if (parkingSpot == null) {
+            throw new IllegalArgumentException("ParkingSpot cannot be null");
+        }
+        if (loading) {
+            synchronized (loadLock) {
+                boolean claimed = freeSpots.get(parkingSpot.getParkingType()).remove(parkingSpot.getId());
+                if (claimed) {
+                    record(new ParkingSpot(parkingSpot.getId(), parkingSpot.getParkingType(), false));
+                }
+                return claimed;
+            }
+        }
+        return freeSpots.get(parkingSpot.getParkingType()).remove(parkingSpot.getId());
+    }
+
+    public int getAvailableCount(ParkingType parkingType) {
+        return freeSpots.get(parkingType).size();
+    }
+
+    // under loadLock.
+    private void record(ParkingSpot parkingSpot) {
+        if (changes != null) {
+            changes.add(parkingSpot);
+        }
+    }
+
+    private static void apply(Map<ParkingType, ConcurrentSkipListSet<Integer>> spots, ParkingSpot parkingSpot) {
+        if (parkingSpot.isAvailable()) {
+            spots.get(parkingSpot.getParkingType()).add(parkingSpot.getId());
+        } else {
+            spots.get(parkingSpot.getParkingType()).remove(parkingSpot.getId());
+        }
+    }
+}
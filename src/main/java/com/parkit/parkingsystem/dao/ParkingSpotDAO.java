@@ -1,8 +1,12 @@
 package com.parkit.parkingsystem.dao;
 
 import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.UnitOfWork;
 import com.parkit.parkingsystem.constants.DBConstants;
 import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.metrics.PerFacility;
+import com.parkit.parkingsystem.metrics.Timer;
 import com.parkit.parkingsystem.model.ParkingSpot;
 
 import org.apache.logging.log4j.LogManager;
@@ -11,68 +15,392 @@ import org.apache.logging.log4j.Logger;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
-public class ParkingSpotDAO {
+public class ParkingSpotDAO implements ParkingSpotRepository {
     private static final Logger logger = LogManager.getLogger("ParkingSpotDAO");
 
+    private static final PerFacility<Timer> GET_PARKING_SPOT_TIMER = Metrics.timers("ParkingSpotDAO", "getParkingSpot");
+    private static final PerFacility<Timer> GET_PARKING_SPOTS_TIMER = Metrics.timers("ParkingSpotDAO", "getParkingSpots");
+    private static final PerFacility<Timer> GET_NEXT_AVAILABLE_SLOT_TIMER = Metrics.timers("ParkingSpotDAO", "getNextAvailableSlot");
+    private static final PerFacility<Timer> GET_AVAILABLE_SLOT_COUNT_TIMER = Metrics.timers("ParkingSpotDAO", "getAvailableSlotCount");
+    private static final PerFacility<Timer> CLAIM_PARKING_TIMER = Metrics.timers("ParkingSpotDAO", "claimParking");
+    private static final PerFacility<Timer> CLAIM_NEXT_AVAILABLE_SLOT_TIMER = Metrics.timers("ParkingSpotDAO", "claimNextAvailableSlot");
+    private static final PerFacility<Timer> UPDATE_PARKING_TIMER = Metrics.timers("ParkingSpotDAO", "updateParking");
+    private static final PerFacility<Timer> UPDATE_PARKINGS_TIMER = Metrics.timers("ParkingSpotDAO", "updateParkings");
+
+    // each conflict means another gate won the spot, so this only bounds a pathological loop.
+    private static final int MAX_CLAIM_ATTEMPTS = 20;
+
     public DataBaseConfig dataBaseConfig = new DataBaseConfig();
 
+    // null until loadParkingSpotAllocator() is called : the database is queried for each allocation.
+    private volatile ParkingSpotAllocator parkingSpotAllocator;
+
+    // true once enableWriteBehind() is called : the spots change in the allocator only,
+    // the ticket journal brings them to the database.
+    private volatile boolean writeBehind;
+
     public ParkingSpot getParkingSpot(int parkingNumber) {
-        ParkingSpot parkingSpot = null;
+        Timer timer = GET_PARKING_SPOT_TIMER.of(dataBaseConfig.getFacilityId());
+        long start = timer.start();
+        try {
+            ParkingSpot parkingSpot = null;
 
-        try (Connection con = dataBaseConfig.getConnection();
-             PreparedStatement ps = con.prepareStatement(DBConstants.GET_PARKING_SPOT)) {
+            try (Connection con = dataBaseConfig.getConnection();
+                 PreparedStatement ps = con.prepareStatement(DBConstants.GET_PARKING_SPOT)) {
             
-            ps.setInt(1, parkingNumber);
-            try (ResultSet rs = ps.executeQuery()) {
+                ps.setInt(1, parkingNumber);
+                try (ResultSet rs = ps.executeQuery()) {
                 
-                if (rs.next()) {
-                    parkingSpot = new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(3)), rs.getBoolean(2));
+                    if (rs.next()) {
+                        parkingSpot = new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(3)), rs.getBoolean(2));
+                    }
                 }
+
+            } catch (Exception ex) {
+                logger.error("Error getParkingSpot", ex);
+                timer.failed();
             }
+        
+            return parkingSpot;
+        } finally {
+            timer.stop(start);
+        }
+    }
 
-        } catch (Exception ex) {
-            logger.error("Error getParkingSpot", ex);
+    public List<ParkingSpot> getParkingSpots() {
+        Timer timer = GET_PARKING_SPOTS_TIMER.of(dataBaseConfig.getFacilityId());
+        long start = timer.start();
+        try {
+            List<ParkingSpot> parkingSpots = new ArrayList<>();
+
+            try (Connection con = dataBaseConfig.getConnection();
+                 PreparedStatement ps = con.prepareStatement(DBConstants.GET_PARKING_SPOTS);
+                 ResultSet rs = ps.executeQuery()) {
+
+                while (rs.next()) {
+                    parkingSpots.add(new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(3)), rs.getBoolean(2)));
+                }
+
+            } catch (Exception ex) {
+                logger.error("Error getParkingSpots", ex);
+                timer.failed();
+                return null;
+            }
+
+            return parkingSpots;
+        } finally {
+            timer.stop(start);
         }
-        
-        return parkingSpot;
+    }
+
+    /**
+     * Loads the parking table in memory so that the next available slot is found without SQL.
+     * Call it again to resynchronize after the parking table has been modified outside the application : the
+     * spots claimed and freed by the gates while the table is read are not lost.
+     *
+     * @return true if the parking table could be loaded.
+     */
+    public boolean loadParkingSpotAllocator() {
+        ParkingSpotAllocator allocator = (parkingSpotAllocator == null) ? new ParkingSpotAllocator() : parkingSpotAllocator;
+        allocator.beginLoad();
+        List<ParkingSpot> parkingSpots = getParkingSpots();
+        if (parkingSpots == null) {
+            allocator.cancelLoad();
+            return false;
+        }
+        allocator.load(parkingSpots);
+        parkingSpotAllocator = allocator;
+        logger.info("Parking spot allocator loaded with {} parking spots", parkingSpots.size());
+        return true;
+    }
+
+    /**
+     * From now on the spots are claimed and freed in the allocator only : the parking table is written
+     * from the ticket journal. The allocator must be loaded.
+     *
+     * @return false if the allocator is not loaded.
+     */
+    public boolean enableWriteBehind() {
+        if (parkingSpotAllocator == null) {
+            return false;
+        }
+        writeBehind = true;
+        return true;
+    }
+
+    public boolean isWriteBehind() {
+        return writeBehind;
     }
 
     public int getNextAvailableSlot(ParkingType parkingType){
-        int result=-1;
+        Timer timer = GET_NEXT_AVAILABLE_SLOT_TIMER.of(dataBaseConfig.getFacilityId());
+        long start = timer.start();
+        try {
+            ParkingSpotAllocator allocator = parkingSpotAllocator;
+            if (allocator != null) {
+                return allocator.getLowestAvailable(parkingType);
+            }
+
+            int result=-1;
         
-        try (Connection con = dataBaseConfig.getConnection();
-                PreparedStatement ps = con.prepareStatement(DBConstants.GET_NEXT_PARKING_SPOT)) {
+            try (Connection con = dataBaseConfig.getConnection();
+                    PreparedStatement ps = con.prepareStatement(DBConstants.GET_NEXT_PARKING_SPOT)) {
             
-            ps.setString(1, parkingType.toString());
-            try (ResultSet rs = ps.executeQuery()) {
+                ps.setString(1, parkingType.toString());
+                try (ResultSet rs = ps.executeQuery()) {
                 
-                if (rs.next()) {
-                    result = rs.getInt(1);;
+                    if (rs.next()) {
+                        result = rs.getInt(1);;
+                    }
+                }
+            } catch (Exception ex) {
+                logger.error("Error getNextAvailableSlot",ex);
+                timer.failed();
+            }
+        
+            return result;
+        } finally {
+            timer.stop(start);
+        }
+    }
+
+    /**
+     * @return the number of available spots of this type, or -1 on error.
+     */
+    public int getAvailableSlotCount(ParkingType parkingType) {
+        Timer timer = GET_AVAILABLE_SLOT_COUNT_TIMER.of(dataBaseConfig.getFacilityId());
+        long start = timer.start();
+        try {
+            ParkingSpotAllocator allocator = parkingSpotAllocator;
+            if (allocator != null) {
+                return allocator.getAvailableCount(parkingType);
+            }
+
+            try (Connection con = dataBaseConfig.getConnection();
+                    PreparedStatement ps = con.prepareStatement(DBConstants.COUNT_AVAILABLE_PARKING_SPOTS)) {
+
+                ps.setString(1, parkingType.toString());
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? rs.getInt(1) : -1;
+                }
+            } catch (Exception ex) {
+                logger.error("Error getAvailableSlotCount", ex);
+                timer.failed();
+                return -1;
+            }
+        } finally {
+            timer.stop(start);
+        }
+    }
+
+    /**
+     * Takes a parking spot only if it is still available, in a single statement.
+     *
+     * @param parkingSpot the spot to take.
+     * @return true if this call took the spot, false if it was already taken or on error.
+     */
+    public boolean claimParking(ParkingSpot parkingSpot) {
+        Timer timer = CLAIM_PARKING_TIMER.of(dataBaseConfig.getFacilityId());
+        long start = timer.start();
+        try {
+            if (writeBehind) {
+                ParkingSpotAllocator allocator = parkingSpotAllocator;
+                boolean claimed = allocator.claim(parkingSpot);
+                if (claimed) {
+                    UnitOfWork.onRollback(() -> allocator.update(
+                            new ParkingSpot(parkingSpot.getId(), parkingSpot.getParkingType(), true)));
                 }
+                return claimed;
+            }
+            try (Connection con = dataBaseConfig.getConnection();
+                    PreparedStatement ps = con.prepareStatement(DBConstants.CLAIM_PARKING_SPOT)) {
+
+                ps.setInt(1, parkingSpot.getId());
+                int updateRowCount = ps.executeUpdate();
+
+                // taken by this call or by someone else : either way it is no longer free.
+                ParkingSpot taken = new ParkingSpot(parkingSpot.getId(), parkingSpot.getParkingType(), false);
+                updateAllocator(taken, updateRowCount == 1);
+                return (updateRowCount == 1);
+
+            } catch (Exception ex) {
+                logger.error("Error claimParking", ex);
+                timer.failed();
+                return false;
+            }
+        } finally {
+            timer.stop(start);
+        }
+    }
+
+    /**
+     * Takes the lowest available spot of a type. If another gate takes the same spot first, the next one is tried.
+     * Without the allocator the spot is found by a locking read : a plain select inside a unit of work reads its
+     * snapshot, which keeps giving the spot another gate has just taken.
+     *
+     * @param parkingType the type of vehicle.
+     * @return the parking number taken, or -1 if there is no free spot or on error.
+     */
+    public int claimNextAvailableSlot(ParkingType parkingType) {
+        Timer timer = CLAIM_NEXT_AVAILABLE_SLOT_TIMER.of(dataBaseConfig.getFacilityId());
+        long start = timer.start();
+        try {
+            for (int attempt = 0; attempt < MAX_CLAIM_ATTEMPTS; attempt++) {
+                int parkingNumber = (parkingSpotAllocator != null) ? getNextAvailableSlot(parkingType) : lockNextAvailableSlot(parkingType);
+                if (parkingNumber <= 0) {
+                    return -1;
+                }
+                if (claimParking(new ParkingSpot(parkingNumber, parkingType, true))) {
+                    return parkingNumber;
+                }
+                logger.debug("Parking spot {} already taken, trying the next one", parkingNumber);
+            }
+            logger.error("Unable to claim a parking spot after {} attempts", MAX_CLAIM_ATTEMPTS);
+            timer.failed();
+            return -1;
+        } finally {
+            timer.stop(start);
+        }
+    }
+
+    // the lowest spot free and not being claimed by another gate, locked until the end of the transaction. -1 if none.
+    private int lockNextAvailableSlot(ParkingType parkingType) {
+        try (Connection con = dataBaseConfig.getConnection();
+                PreparedStatement ps = con.prepareStatement(DBConstants.LOCK_NEXT_PARKING_SPOT)) {
+
+            ps.setString(1, parkingType.toString());
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : -1;
             }
         } catch (Exception ex) {
-            logger.error("Error getNextAvailableSlot",ex);
+            logger.error("Error lockNextAvailableSlot", ex);
+            return -1;
         }
-        
-        return result;
     }
 
     //update the availability fo that parking slot
     public boolean updateParking(ParkingSpot parkingSpot){
-        try (Connection con = dataBaseConfig.getConnection();
-                PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_PARKING_SPOT)) {
+        Timer timer = UPDATE_PARKING_TIMER.of(dataBaseConfig.getFacilityId());
+        long start = timer.start();
+        try {
+            if (writeBehind) {
+                updateAllocator(new ParkingSpot(parkingSpot.getId(), parkingSpot.getParkingType(), parkingSpot.isAvailable()), true);
+                return true;
+            }
+            try (Connection con = dataBaseConfig.getConnection();
+                    PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_PARKING_SPOT)) {
             
-            ps.setBoolean(1, parkingSpot.isAvailable());
-            ps.setInt(2, parkingSpot.getId());
-            int updateRowCount = ps.executeUpdate();
+                ps.setBoolean(1, parkingSpot.isAvailable());
+                ps.setInt(2, parkingSpot.getId());
+                int updateRowCount = ps.executeUpdate();
 
-            return (updateRowCount == 1);
+                if (updateRowCount == 1) {
+                    updateAllocator(new ParkingSpot(parkingSpot.getId(), parkingSpot.getParkingType(), parkingSpot.isAvailable()), true);
+                }
+                return (updateRowCount == 1);
             
-        }catch (Exception ex){
-            logger.error("Error updateParking",ex);
-            return false;
+            }catch (Exception ex){
+                logger.error("Error updateParking",ex);
+                timer.failed();
+                return false;
+            }
+        } finally {
+            timer.stop(start);
+        }
+    }
+
+    /**
+     * Updates the availability of several parking spots in one JDBC batch.
+     *
+     * @param parkingSpots the spots with their new availability.
+     * @return for each spot, true if it was updated. null if the batch failed.
+     */
+    public boolean[] updateParkings(List<ParkingSpot> parkingSpots) {
+        Timer timer = UPDATE_PARKINGS_TIMER.of(dataBaseConfig.getFacilityId());
+        long start = timer.start();
+        try {
+            if (writeBehind) {
+                boolean[] result = new boolean[parkingSpots.size()];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = updateParking(parkingSpots.get(i));
+                }
+                return result;
+            }
+            try (Connection con = dataBaseConfig.getConnection();
+                    PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_PARKING_SPOT)) {
+
+                for (ParkingSpot parkingSpot : parkingSpots) {
+                    ps.setBoolean(1, parkingSpot.isAvailable());
+                    ps.setInt(2, parkingSpot.getId());
+                    ps.addBatch();
+                }
+                boolean[] result = TicketDAO.toSuccesses(ps.executeBatch(), parkingSpots.size());
+
+                for (int i = 0; i < result.length; i++) {
+                    if (result[i]) {
+                        ParkingSpot parkingSpot = parkingSpots.get(i);
+                        updateAllocator(new ParkingSpot(parkingSpot.getId(), parkingSpot.getParkingType(), parkingSpot.isAvailable()), true);
+                    }
+                }
+                return result;
+
+            }catch (Exception ex){
+                logger.error("Error updateParkings",ex);
+                timer.failed();
+                return null;
+            }
+        } finally {
+            timer.stop(start);
+        }
+    }
+
+    // The asynchronous variants run on the executor of dataBaseConfig, so outside any unit of work open
+    // on the calling thread : they read what is committed and write in autocommit mode.
+
+    public CompletableFuture<ParkingSpot> getParkingSpotAsync(int parkingNumber) {
+        return CompletableFuture.supplyAsync(() -> getParkingSpot(parkingNumber), dataBaseConfig.getExecutor());
+    }
+
+    public CompletableFuture<Integer> getNextAvailableSlotAsync(ParkingType parkingType) {
+        return CompletableFuture.supplyAsync(() -> getNextAvailableSlot(parkingType), dataBaseConfig.getExecutor());
+    }
+
+    public CompletableFuture<Integer> getAvailableSlotCountAsync(ParkingType parkingType) {
+        return CompletableFuture.supplyAsync(() -> getAvailableSlotCount(parkingType), dataBaseConfig.getExecutor());
+    }
+
+    public CompletableFuture<Integer> claimNextAvailableSlotAsync(ParkingType parkingType) {
+        return CompletableFuture.supplyAsync(() -> claimNextAvailableSlot(parkingType), dataBaseConfig.getExecutor());
+    }
+
+    public CompletableFuture<Boolean> updateParkingAsync(ParkingSpot parkingSpot) {
+        return CompletableFuture.supplyAsync(() -> updateParking(parkingSpot), dataBaseConfig.getExecutor());
+    }
+
+    // a spot is removed from the allocator at once so that no other gate picks it, and put back if the
+    // unit of work is rolled back. A freed spot is only offered once the release is committed.
+    // Until the unit of work ends, the spot is uncommitted : a reload, which cannot see it taken, keeps it so.
+    private void updateAllocator(ParkingSpot parkingSpot, boolean writtenByThisCall) {
+        ParkingSpotAllocator allocator = parkingSpotAllocator;
+        if (allocator == null) {
+            return;
+        }
+        if (parkingSpot.isAvailable()) {
+            UnitOfWork.afterCommit(() -> allocator.update(parkingSpot));
+        } else if (writtenByThisCall) {
+            allocator.addUncommitted(parkingSpot.getId());
+            allocator.update(parkingSpot);
+            UnitOfWork.afterCommit(() -> allocator.removeUncommitted(parkingSpot));
+            UnitOfWork.onRollback(() -> {
+                allocator.removeUncommitted(parkingSpot);
+                allocator.update(new ParkingSpot(parkingSpot.getId(), parkingSpot.getParkingType(), true));
+            });
+        } else {
+            allocator.update(parkingSpot);
         }
     }
-    
 }
@@ -0,0 +1,68 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Where the parking spots are kept : the parking table of the database (ParkingSpotDAO), or the embedded
+ * storage of the application. The services only use this interface.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public interface ParkingSpotRepository {
+
+    /**
+     * @return the spot, or null if it does not exist or on error.
+     */
+    ParkingSpot getParkingSpot(int parkingNumber);
+
+    /**
+     * @return every spot, or null on error.
+     */
+    List<ParkingSpot> getParkingSpots();
+
+    /**
+     * @return the lowest available spot of this type, or -1 if there is none or on error.
+     */
+    int getNextAvailableSlot(ParkingType parkingType);
+
+    /**
+     * @return the number of available spots of this type, or -1 on error.
+     */
+    int getAvailableSlotCount(ParkingType parkingType);
+
+    /**
+     * Takes a parking spot only if it is still available.
+     *
+     * @return true if this call took the spot, false if it was already taken or on error.
+     */
+    boolean claimParking(ParkingSpot parkingSpot);
+
+    /**
+     * Takes the lowest available spot of a type.
+     *
+     * @return the parking number taken, or -1 if there is no free spot or on error.
+     */
+    int claimNextAvailableSlot(ParkingType parkingType);
+
+    boolean updateParking(ParkingSpot parkingSpot);
+
+    /**
+     * @return for each spot, true if it was updated. null if the update failed.
+     */
+    boolean[] updateParkings(List<ParkingSpot> parkingSpots);
+
+    CompletableFuture<ParkingSpot> getParkingSpotAsync(int parkingNumber);
+
+    CompletableFuture<Integer> getNextAvailableSlotAsync(ParkingType parkingType);
+
+    CompletableFuture<Integer> getAvailableSlotCountAsync(ParkingType parkingType);
+
+    CompletableFuture<Integer> claimNextAvailableSlotAsync(ParkingType parkingType);
+
+    CompletableFuture<Boolean> updateParkingAsync(ParkingSpot parkingSpot);
+}
@@ -0,0 +1,104 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.metrics.PerFacility;
+import com.parkit.parkingsystem.metrics.Timer;
+import com.parkit.parkingsystem.model.HourlyRollup;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Reads and adds to the hourly rollups of revenue and occupancy.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class RollupDAO {
+
+    private static final Logger logger = LogManager.getLogger("RollupDAO");
+
+    private static final PerFacility<Timer> ADD_ROLLUPS_TIMER = Metrics.timers("RollupDAO", "addRollups");
+    private static final PerFacility<Timer> GET_ROLLUPS_TIMER = Metrics.timers("RollupDAO", "getRollups");
+
+    public DataBaseConfig dataBaseConfig = new DataBaseConfig();
+
+    /**
+     * Adds the counts, revenue and minutes of each rollup to those of its hour and type, in one batch.
+     *
+     * @return true if the whole batch was written.
+     */
+    public boolean addRollups(List<HourlyRollup> rollups) {
+        Timer timer = ADD_ROLLUPS_TIMER.of(dataBaseConfig.getFacilityId());
+        long start = timer.start();
+        try (Connection con = dataBaseConfig.getConnection();
+             PreparedStatement ps = con.prepareStatement(DBConstants.ADD_HOURLY_ROLLUP)) {
+
+            for (HourlyRollup rollup : rollups) {
+                ps.setTimestamp(1, new Timestamp(rollup.getHour().getTime()));
+                ps.setString(2, rollup.getParkingType().toString());
+                ps.setLong(3, rollup.getEntries());
+                ps.setLong(4, rollup.getExits());
+                ps.setLong(5, rollup.getRevenueCents());
+                ps.setDouble(6, rollup.getOccupiedMinutes());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            return true;
+
+        } catch (Exception ex) {
+            logger.error("Error addRollups", ex);
+            timer.failed();
+            return false;
+        } finally {
+            timer.stop(start);
+        }
+    }
+
+    /**
+     * @return the rollups of the hours from the first included to the second excluded, by hour then type,
+     *         or null on error.
+     */
+    public List<HourlyRollup> getRollups(Date from, Date to) {
+        Timer timer = GET_ROLLUPS_TIMER.of(dataBaseConfig.getFacilityId());
+        long start = timer.start();
+        try (Connection con = dataBaseConfig.getConnection();
+             PreparedStatement ps = con.prepareStatement(DBConstants.GET_HOURLY_ROLLUPS)) {
+
+            ps.setTimestamp(1, new Timestamp(from.getTime()));
+            ps.setTimestamp(2, new Timestamp(to.getTime()));
+            List<HourlyRollup> rollups = new ArrayList<>();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    HourlyRollup rollup = new HourlyRollup();
+                    rollup.setHour(new Date(rs.getTimestamp(1).getTime()));
+                    rollup.setParkingType(ParkingType.valueOf(rs.getString(2)));
+                    rollup.setEntries(rs.getLong(3));
+                    rollup.setExits(rs.getLong(4));
+                    rollup.setRevenueCents(rs.getLong(5));
+                    rollup.setOccupiedMinutes(rs.getDouble(6));
+                    rollups.add(rollup);
+                }
+            }
+            return rollups;
+
+        } catch (Exception ex) {
+            logger.error("Error getRollups", ex);
+            timer.failed();
+            return null;
+        } finally {
+            timer.stop(start);
+        }
+    }
+}
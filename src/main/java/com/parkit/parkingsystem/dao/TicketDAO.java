@@ -1,8 +1,12 @@
 package com.parkit.parkingsystem.dao;
 
 import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.UnitOfWork;
 import com.parkit.parkingsystem.constants.DBConstants;
 import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.metrics.PerFacility;
+import com.parkit.parkingsystem.metrics.Timer;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
 import org.apache.logging.log4j.LogManager;
@@ -11,97 +15,493 @@ import org.apache.logging.log4j.Logger;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
-public class TicketDAO {
+public class TicketDAO implements TicketRepository {
 
     private static final Logger logger = LogManager.getLogger("TicketDAO");
 
+    private static final PerFacility<Timer> SAVE_TICKET_TIMER = Metrics.timers("TicketDAO", "saveTicket");
+    private static final PerFacility<Timer> SAVE_TICKETS_TIMER = Metrics.timers("TicketDAO", "saveTickets");
+    private static final PerFacility<Timer> GET_TICKET_TIMER = Metrics.timers("TicketDAO", "getTicket");
+    private static final PerFacility<Timer> UPDATE_TICKET_TIMER = Metrics.timers("TicketDAO", "updateTicket");
+    private static final PerFacility<Timer> UPDATE_TICKETS_TIMER = Metrics.timers("TicketDAO", "updateTickets");
+    private static final PerFacility<Timer> GET_NB_TICKET_TIMER = Metrics.timers("TicketDAO", "getNbTicket");
+
     public DataBaseConfig dataBaseConfig = new DataBaseConfig();
 
-    public boolean saveTicket(Ticket ticket) {
-        try (Connection con = dataBaseConfig.getConnection();
-             PreparedStatement ps = con.prepareStatement(DBConstants.SAVE_TICKET)) {
+    // null until loadOpenTicketIndex() is called : every getTicket reads the database.
+    private volatile OpenTicketIndex openTicketIndex;
 
-            // ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
-            // ps.setInt(1, ticket.getId());
-            ps.setInt(1, ticket.getParkingSpot().getId());
-            ps.setString(2, ticket.getVehicleRegNumber());
-            ps.setDouble(3, ticket.getPrice());
-            ps.setTimestamp(4, new Timestamp(ticket.getInTime().getTime()));
-            ps.setTimestamp(5, (ticket.getOutTime() == null) ? null : new Timestamp(ticket.getOutTime().getTime()));
+    // null until enableWriteBehind() is called : the tickets are written to the database at once.
+    private volatile TicketWriteBehind writeBehind;
 
-            return ps.execute();
+    /**
+     * Loads the open tickets in memory so that exits find the ticket without reading the database.
+     * Call it again to resynchronize after the ticket table has been modified outside the application.
+     *
+     * @return true if the open tickets could be loaded.
+     */
+    public boolean loadOpenTicketIndex() {
+        List<Ticket> tickets = new ArrayList<>();
+
+        try (Connection con = dataBaseConfig.getConnection();
+             PreparedStatement ps = con.prepareStatement(DBConstants.GET_OPEN_TICKETS);
+             ResultSet rs = ps.executeQuery()) {
+
+            while (rs.next()) {
+                Ticket ticket = new Ticket();
+                ticket.setParkingSpot(new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(5)), false));
+                ticket.setId(rs.getInt(2));
+                ticket.setVehicleRegNumber(rs.getString(3));
+                ticket.setPrice(0);
+                ticket.setInTime(rs.getTimestamp(4));
+                tickets.add(ticket);
+            }
 
         } catch (Exception ex) {
-            logger.error("Error saveTicket", ex);
+            logger.error("Error loadOpenTicketIndex", ex);
             return false;
         }
+
+        OpenTicketIndex index = (openTicketIndex == null) ? new OpenTicketIndex() : openTicketIndex;
+        index.load(tickets);
+        openTicketIndex = index;
+        logger.info("Open ticket index loaded with {} tickets", tickets.size());
+        return true;
+    }
+
+    /**
+     * @return the open ticket index with its hit and miss counters, or null if not loaded.
+     */
+    public OpenTicketIndex getOpenTicketIndex() {
+        return openTicketIndex;
+    }
+
+    /**
+     * From now on the saved and updated tickets are appended to the journal of writeBehind, which writes
+     * them to the database later. Their ids stay 0. The open ticket index must be loaded : exits find the
+     * tickets not in the database yet there.
+     *
+     * @return false if the open ticket index is not loaded.
+     */
+    public boolean enableWriteBehind(TicketWriteBehind writeBehind) {
+        if (writeBehind == null || openTicketIndex == null) {
+            return false;
+        }
+        this.writeBehind = writeBehind;
+        logger.info("Tickets are written behind");
+        return true;
+    }
+
+    public boolean isWriteBehind() {
+        return writeBehind != null;
     }
 
+    @Override
+    public DataBaseConfig getDataBaseConfig() {
+        return dataBaseConfig;
+    }
+
+    @Override
+    public boolean writesOutsideTransaction() {
+        return isWriteBehind();
+    }
+
+    public boolean saveTicket(Ticket ticket) {
+        Timer timer = SAVE_TICKET_TIMER.of(dataBaseConfig.getFacilityId());
+        long start = timer.start();
+        try {
+            TicketWriteBehind journal = writeBehind;
+            if (journal != null) {
+                boolean[] result = journalTickets(journal, Collections.singletonList(ticket), true);
+                return result != null && result[0];
+            }
+            try (Connection con = dataBaseConfig.getConnection();
+                 PreparedStatement ps = con.prepareStatement(DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS)) {
+
+                // ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
+                // ps.setInt(1, ticket.getId());
+                ps.setInt(1, ticket.getParkingSpot().getId());
+                ps.setString(2, ticket.getVehicleRegNumber());
+                ps.setDouble(3, ticket.getPrice());
+                ps.setTimestamp(4, new Timestamp(ticket.getInTimeMillis()));
+                ps.setTimestamp(5, ticket.hasOutTime() ? new Timestamp(ticket.getOutTimeMillis()) : null);
+
+                if (ps.executeUpdate() != 1) {
+                    return false;
+                }
+                List<Ticket> saved = Collections.singletonList(ticket);
+                readGeneratedIds(ps, saved);
+                recordVisits(con, saved);
+                indexOpenTickets(saved);
+                return true;
+
+            } catch (Exception ex) {
+                logger.error("Error saveTicket", ex);
+                timer.failed();
+                return false;
+            }
+        } finally {
+            timer.stop(start);
+        }
+    }
+
+    /**
+     * Saves several tickets in one JDBC batch.
+     *
+     * @param tickets the tickets to insert.
+     * @return for each ticket, true if it was inserted. null if the batch failed.
+     */
+    public boolean[] saveTickets(List<Ticket> tickets) {
+        Timer timer = SAVE_TICKETS_TIMER.of(dataBaseConfig.getFacilityId());
+        long start = timer.start();
+        try {
+            TicketWriteBehind journal = writeBehind;
+            if (journal != null) {
+                return journalTickets(journal, tickets, true);
+            }
+            try (Connection con = dataBaseConfig.getConnection();
+                 PreparedStatement ps = con.prepareStatement(DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS)) {
+
+                for (Ticket ticket : tickets) {
+                    ps.setInt(1, ticket.getParkingSpot().getId());
+                    ps.setString(2, ticket.getVehicleRegNumber());
+                    ps.setDouble(3, ticket.getPrice());
+                    ps.setTimestamp(4, new Timestamp(ticket.getInTimeMillis()));
+                    ps.setTimestamp(5, ticket.hasOutTime() ? new Timestamp(ticket.getOutTimeMillis()) : null);
+                    ps.addBatch();
+                }
+                boolean[] result = toSuccesses(ps.executeBatch(), tickets.size());
+                List<Ticket> saved = succeeded(tickets, result);
+                if (saved.size() == tickets.size()) {
+                    // keys are returned for the inserted rows only, in order.
+                    readGeneratedIds(ps, saved);
+                }
+                recordVisits(con, saved);
+                indexOpenTickets(saved);
+                return result;
+
+            } catch (Exception ex) {
+                logger.error("Error saveTickets", ex);
+                timer.failed();
+                return null;
+            }
+        } finally {
+            timer.stop(start);
+        }
+    }
+
+    /**
+     * @return the most recent ticket of the vehicle, from the open ticket index when the vehicle is
+     *         in the parking, otherwise from the ticket table, then from the archive. null if the vehicle has no ticket.
+     */
     public Ticket getTicket(String vehicleRegNumber) {
-        Ticket ticket = null;
+        Timer timer = GET_TICKET_TIMER.of(dataBaseConfig.getFacilityId());
+        long start = timer.start();
+        try {
+            OpenTicketIndex index = openTicketIndex;
+            if (index != null) {
+                Ticket indexed = index.get(vehicleRegNumber);
+                if (indexed != null) {
+                    return indexed;
+                }
+            }
+            TicketWriteBehind journal = writeBehind;
+            if (journal != null) {
+                // an exit not written yet : the database would still show the ticket open.
+                Ticket journaled = journal.getPendingTicket(vehicleRegNumber);
+                if (journaled != null) {
+                    return journaled;
+                }
+            }
 
-        try (Connection con = dataBaseConfig.getConnection();
-             PreparedStatement ps = con.prepareStatement(DBConstants.GET_TICKET)) {
+            Ticket ticket = null;
+
+            try (Connection con = dataBaseConfig.getConnection()) {
+                ticket = readTicket(con, DBConstants.GET_TICKET, vehicleRegNumber);
+                if (ticket == null) {
+                    // a vehicle not seen since its tickets were archived.
+                    ticket = readTicket(con, DBConstants.GET_ARCHIVED_TICKET, vehicleRegNumber);
+                }
+            } catch (Exception ex) {
+                logger.error("Error getTicket", ex);
+                timer.failed();
+            }
+
+            // an open ticket the index did not know, e.g. inserted outside the application.
+            if (index != null && ticket != null && !ticket.hasOutTime()) {
+                index.put(ticket);
+            }
+            return ticket;
+        } finally {
+            timer.stop(start);
+        }
+    }
+    
+    private Ticket readTicket(Connection con, String query, String vehicleRegNumber) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(query)) {
 
             // ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
             ps.setString(1, vehicleRegNumber);
 
             try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    ticket = new Ticket();
-                    ParkingSpot parkingSpot = new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(6)),false);
-                    ticket.setParkingSpot(parkingSpot);
-                    ticket.setId(rs.getInt(2));
-                    ticket.setVehicleRegNumber(vehicleRegNumber);
-                    ticket.setPrice(rs.getDouble(3));
-                    ticket.setInTime(rs.getTimestamp(4));
-                    ticket.setOutTime(rs.getTimestamp(5));
+                if (!rs.next()) {
+                    return null;
                 }
+                Ticket ticket = new Ticket();
+                ParkingSpot parkingSpot = new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(6)),false);
+                ticket.setParkingSpot(parkingSpot);
+                ticket.setId(rs.getInt(2));
+                ticket.setVehicleRegNumber(vehicleRegNumber);
+                ticket.setPrice(rs.getDouble(3));
+                ticket.setInTime(rs.getTimestamp(4));
+                ticket.setOutTime(rs.getTimestamp(5));
+                return ticket;
             }
+        }
+    }
 
-        } catch (Exception ex) {
-            logger.error("Error getTicket", ex);
+    public boolean updateTicket(Ticket ticket) {
+        Timer timer = UPDATE_TICKET_TIMER.of(dataBaseConfig.getFacilityId());
+        long start = timer.start();
+        try {
+            TicketWriteBehind journal = writeBehind;
+            if (journal != null) {
+                boolean[] result = journalTickets(journal, Collections.singletonList(ticket), false);
+                return result != null && result[0];
+            }
+            try (Connection con = dataBaseConfig.getConnection();
+                 PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_TICKET)) {
+
+                ps.setDouble(1, ticket.getPrice());
+                ps.setTimestamp(2, new Timestamp(ticket.getOutTimeMillis()));
+                ps.setInt(3, ticket.getId());
+                if (ps.executeUpdate() != 1) {
+                    // closed meanwhile by another exit.
+                    return false;
+                }
+                List<Ticket> updated = Collections.singletonList(ticket);
+                recordSpends(con, updated);
+                unindexClosedTickets(updated);
+                return true;
+
+            } catch (Exception ex) {
+                logger.error("Error updateTicket", ex);
+                timer.failed();
+                return false;
+            }
+        } finally {
+            timer.stop(start);
         }
+    }
+
+    /**
+     * Updates the price and exit time of several tickets in one JDBC batch.
+     *
+     * @param tickets the tickets to update.
+     * @return for each ticket, true if it was updated. null if the batch failed.
+     */
+    public boolean[] updateTickets(List<Ticket> tickets) {
+        Timer timer = UPDATE_TICKETS_TIMER.of(dataBaseConfig.getFacilityId());
+        long start = timer.start();
+        try {
+            TicketWriteBehind journal = writeBehind;
+            if (journal != null) {
+                return journalTickets(journal, tickets, false);
+            }
+            try (Connection con = dataBaseConfig.getConnection();
+                 PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_TICKET)) {
 
-        return ticket;
+                for (Ticket ticket : tickets) {
+                    ps.setDouble(1, ticket.getPrice());
+                    ps.setTimestamp(2, new Timestamp(ticket.getOutTimeMillis()));
+                    ps.setInt(3, ticket.getId());
+                    ps.addBatch();
+                }
+                boolean[] result = toSuccesses(ps.executeBatch(), tickets.size());
+                List<Ticket> updated = succeeded(tickets, result);
+                recordSpends(con, updated);
+                unindexClosedTickets(updated);
+                return result;
+
+            } catch (Exception ex) {
+                logger.error("Error updateTickets", ex);
+                timer.failed();
+                return null;
+            }
+        } finally {
+            timer.stop(start);
+        }
     }
-    
-    public boolean updateTicket(Ticket ticket) {
-        try (Connection con = dataBaseConfig.getConnection();
-             PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_TICKET)) {
 
-            ps.setDouble(1, ticket.getPrice());
-            ps.setTimestamp(2, new Timestamp(ticket.getOutTime().getTime()));
-            ps.setInt(3, ticket.getId());
-            ps.execute();
-            return true;
+    // write-behind : the tickets are only journaled, all or none, and the index changes as if they were written.
+    private boolean[] journalTickets(TicketWriteBehind journal, List<Ticket> tickets, boolean entry) {
+        boolean[] result = journal.append(tickets, entry);
+        if (result == null) {
+            return null;
+        }
+        List<Ticket> journaled = succeeded(tickets, result);
+        if (entry) {
+            indexOpenTickets(journaled);
+        } else {
+            unindexClosedTickets(journaled);
+        }
+        return result;
+    }
 
-        } catch (Exception ex) {
-            logger.error("Error updateTicket", ex);
-            return false;
+    // one row per statement, or no row count at all when the driver rewrites the batch.
+    static boolean[] toSuccesses(int[] updateCounts, int size) {
+        boolean[] result = new boolean[size];
+        for (int i = 0; i < size && i < updateCounts.length; i++) {
+            result[i] = (updateCounts[i] == 1 || updateCounts[i] == Statement.SUCCESS_NO_INFO);
         }
+        return result;
     }
 
-    public int getNbTicket(String vehicleRegNumber) {
-        int result = 0;
+    private static void readGeneratedIds(PreparedStatement ps, List<Ticket> tickets) throws SQLException {
+        try (ResultSet keys = ps.getGeneratedKeys()) {
+            for (int i = 0; keys != null && i < tickets.size() && keys.next(); i++) {
+                tickets.get(i).setId(keys.getInt(1));
+            }
+        }
+    }
 
-        try (Connection con = dataBaseConfig.getConnection();
-             PreparedStatement ps = con.prepareStatement(DBConstants.VEHICLE_REG_NUMBER_COUNT_TICKETS)) {
+    // the index only changes once the tickets are really written.
+    private void indexOpenTickets(List<Ticket> tickets) {
+        OpenTicketIndex index = openTicketIndex;
+        if (index == null || tickets.isEmpty()) {
+            return;
+        }
+        List<Ticket> open = new ArrayList<>(tickets.size());
+        for (Ticket ticket : tickets) {
+            if (!ticket.hasOutTime()) {
+                open.add(ticket);
+            }
+        }
+        UnitOfWork.afterCommit(() -> open.forEach(index::put));
+    }
 
-            ps.setString(1, vehicleRegNumber);
+    private void unindexClosedTickets(List<Ticket> tickets) {
+        OpenTicketIndex index = openTicketIndex;
+        if (index == null || tickets.isEmpty()) {
+            return;
+        }
+        List<Ticket> closed = new ArrayList<>(tickets);
+        UnitOfWork.afterCommit(() -> closed.forEach(index::remove));
+    }
 
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    result = rs.getInt("total");
+    private static List<Ticket> succeeded(List<Ticket> tickets, boolean[] successes) {
+        List<Ticket> result = new ArrayList<>(tickets.size());
+        for (int i = 0; i < successes.length; i++) {
+            if (successes[i]) {
+                result.add(tickets.get(i));
+            }
+        }
+        return result;
+    }
+
+    // the vehicle profile is kept in step with the tickets, in the same connection (and transaction if any).
+    private void recordVisits(Connection con, List<Ticket> tickets) throws SQLException {
+        if (tickets.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement ps = con.prepareStatement(DBConstants.RECORD_VEHICLE_VISIT)) {
+            for (Ticket ticket : tickets) {
+                ps.setString(1, ticket.getVehicleRegNumber());
+                ps.setTimestamp(2, new Timestamp(ticket.getInTimeMillis()));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private void recordSpends(Connection con, List<Ticket> tickets) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(DBConstants.RECORD_VEHICLE_SPEND)) {
+            int count = 0;
+            for (Ticket ticket : tickets) {
+                if (ticket.getVehicleRegNumber() == null) {
+                    continue;
+                }
+                ps.setDouble(1, ticket.getPrice());
+                ps.setTimestamp(2, new Timestamp(ticket.getOutTimeMillis()));
+                ps.setString(3, ticket.getVehicleRegNumber());
+                ps.addBatch();
+                count++;
+            }
+            if (count > 0) {
+                ps.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * @return the number of tickets of a vehicle, read from its profile (primary key lookup).
+     *         Vehicles without profile yet are counted in the ticket and archive tables. -1 if it could not be read.
+     */
+    public int getNbTicket(String vehicleRegNumber) {
+        Timer timer = GET_NB_TICKET_TIMER.of(dataBaseConfig.getFacilityId());
+        long start = timer.start();
+        try {
+            int result = 0;
+
+            try (Connection con = dataBaseConfig.getConnection()) {
+                result = readCount(con, DBConstants.GET_VEHICLE_VISIT_COUNT, vehicleRegNumber, 1);
+                if (result < 0) {
+                    result = Math.max(0, readCount(con, DBConstants.VEHICLE_REG_NUMBER_COUNT_TICKETS, vehicleRegNumber, 2));
                 }
+            } catch (Exception ex) {
+                logger.error("Error getNbTicket", ex);
+                timer.failed();
+                return -1;
             }
 
-        } catch (Exception ex) {
-            logger.error("Error getNbTicket", ex);
+            TicketWriteBehind journal = writeBehind;
+            if (journal != null) {
+                result += journal.getPendingEntryCount(vehicleRegNumber);
+            }
+            return result;
+        } finally {
+            timer.stop(start);
+        }
+    }
+
+    // -1 if the query returns no row. The vehicle is bound to each of the parameters.
+    private int readCount(Connection con, String query, String vehicleRegNumber, int parameterCount) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(query)) {
+
+            for (int i = 1; i <= parameterCount; i++) {
+                ps.setString(i, vehicleRegNumber);
+            }
+
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt("total") : -1;
+            }
         }
+    }
 
-        return result;
+    // The asynchronous variants run on the executor of dataBaseConfig, so outside any unit of work open
+    // on the calling thread : they read what is committed and write in autocommit mode.
+
+    public CompletableFuture<Boolean> saveTicketAsync(Ticket ticket) {
+        return CompletableFuture.supplyAsync(() -> saveTicket(ticket), dataBaseConfig.getExecutor());
+    }
+
+    public CompletableFuture<Ticket> getTicketAsync(String vehicleRegNumber) {
+        return CompletableFuture.supplyAsync(() -> getTicket(vehicleRegNumber), dataBaseConfig.getExecutor());
+    }
+
+    public CompletableFuture<Boolean> updateTicketAsync(Ticket ticket) {
+        return CompletableFuture.supplyAsync(() -> updateTicket(ticket), dataBaseConfig.getExecutor());
+    }
+
+    public CompletableFuture<Integer> getNbTicketAsync(String vehicleRegNumber) {
+        return CompletableFuture.supplyAsync(() -> getNbTicket(vehicleRegNumber), dataBaseConfig.getExecutor());
     }
 }
@@ -0,0 +1,341 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the ticket events, in memory-mapped segment files of a fixed size.
+ *
+ * The records of one append are written together as their length, a CRC32 of their content, then their
+ * content, so that they are all read back or none. A new segment is started when the current one is full. The checkpoint file holds the position up to which the records are in the
+ * database : the segments before it are deleted, the records after it are returned by open() to be replayed.
+ * A record cut by a crash fails its checksum and ends the reading of its segment.
+ *
+ * Each record gets a sequence number when appended, greater than all the previous ones and than the current time
+ * in microseconds : it stays unique even if the journal directory is lost. The records the database refused are
+ * moved to the dead letter file, in the same format, to be looked at by hand.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class TicketJournal implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("TicketJournal");
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final String DEAD_LETTER_FILE = "dead-letters.log";
+    // length and checksum.
+    private static final int HEADER_SIZE = 8;
+    // sequence, type, times, price, spot, spot type and length of the registration number.
+    private static final int RECORD_SIZE = 8 + 1 + 8 + 8 + 8 + 4 + 1 + 2;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean forceEachRecord;
+    private final Object checkpointLock = new Object();
+
+    private long segment;
+    private MappedByteBuffer buffer;
+    private long lastSequence;
+
+    /**
+     * @param directory where the segments and the checkpoint are written.
+     * @param segmentSize the size of a segment file, in bytes.
+     * @param forceEachRecord true to write each record to the disk before append() returns. Otherwise
+     *        the system writes the pages when it wants : a crash of the machine may lose the last records.
+     */
+    public TicketJournal(Path directory, int segmentSize, boolean forceEachRecord) {
+        if (directory == null || segmentSize < 1024) {
+            throw new IllegalArgumentException("Invalid argument in TicketJournal");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.forceEachRecord = forceEachRecord;
+    }
+
+    /**
+     * Reads the records not flushed yet, then starts a new segment for the next appends.
+     *
+     * @return the records after the checkpoint, in the order they were appended.
+     */
+    public synchronized List<JournalRecord> open() throws IOException {
+        if (buffer != null) {
+            throw new IllegalStateException("Ticket journal already open");
+        }
+        Files.createDirectories(directory);
+        long[] checkpoint = readCheckpoint();
+        lastSequence = checkpoint[2];
+        List<JournalRecord> result = new ArrayList<>();
+        long lastSegment = checkpoint[0];
+        for (long existing : listSegments()) {
+            if (existing < checkpoint[0]) {
+                Files.delete(segmentPath(existing));
+                continue;
+            }
+            readRecords(segmentPath(existing), existing, (existing == checkpoint[0]) ? (int) checkpoint[1] : 0, result);
+            lastSegment = Math.max(lastSegment, existing);
+        }
+        for (JournalRecord record : result) {
+            lastSequence = Math.max(lastSequence, record.getSequence());
+        }
+        // never appended to a segment read at startup : its end may hold a partial record.
+        segment = lastSegment + 1;
+        buffer = mapSegment(segment);
+        logger.info("Ticket journal opened in {} with {} records to replay", directory, result.size());
+        return result;
+    }
+
+    /**
+     * Appends a record and sets its position in the journal.
+     */
+    public void append(JournalRecord record) throws IOException {
+        append(Collections.singletonList(record));
+    }
+
+    /**
+     * Appends several records, all or none, and sets their position and sequence number in the journal.
+     */
+    public synchronized void append(List<JournalRecord> records) throws IOException {
+        if (buffer == null) {
+            throw new IllegalStateException("Ticket journal not open");
+        }
+        long sequence = lastSequence;
+        for (JournalRecord record : records) {
+            sequence = Math.max(sequence + 1, System.currentTimeMillis() * 1000);
+            record.setSequence(sequence);
+        }
+        byte[] content = encode(records);
+        int size = HEADER_SIZE + content.length;
+        if (size > segmentSize) {
+            throw new IOException("Journal record larger than a segment");
+        }
+        if (buffer.remaining() < size) {
+            buffer.force();
+            segment++;
+            buffer = mapSegment(segment);
+        }
+        int startOffset = buffer.position();
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        buffer.putInt(content.length);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(content);
+        if (forceEachRecord) {
+            buffer.force();
+        }
+        lastSequence = sequence;
+        setPositions(records, segment, startOffset, buffer.position());
+    }
+
+    // a checkpoint on a record before the last one of its append replays them all : a replay changes nothing.
+    private static void setPositions(List<JournalRecord> records, long segment, int startOffset, int endOffset) {
+        for (int i = 0; i < records.size(); i++) {
+            records.get(i).setPosition(segment, (i == records.size() - 1) ? endOffset : startOffset);
+        }
+    }
+
+    /**
+     * Records that the given record and all those before it are in the database.
+     * The segments before its own are deleted.
+     */
+    public void markFlushed(JournalRecord record) throws IOException {
+        synchronized (checkpointLock) {
+            // written aside then moved, so that a crash never leaves a partial checkpoint.
+            Path checkpointFile = directory.resolve(CHECKPOINT_FILE);
+            Path temporaryFile = directory.resolve(CHECKPOINT_FILE + ".tmp");
+            String content = record.getSegment() + " " + record.getEndOffset() + " " + record.getSequence();
+            Files.write(temporaryFile, content.getBytes(StandardCharsets.UTF_8));
+            Files.move(temporaryFile, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            for (long existing : listSegments()) {
+                if (existing < record.getSegment()) {
+                    Files.delete(segmentPath(existing));
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves a record the database refused to the dead letter file, written to the disk before it returns.
+     * It is still in its segment : markFlushed() then lets it be deleted.
+     */
+    public void deadLetter(JournalRecord record) throws IOException {
+        byte[] content = encode(Collections.singletonList(record));
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + content.length);
+        frame.putInt(content.length);
+        frame.putInt((int) crc.getValue());
+        frame.put(content);
+        frame.flip();
+        synchronized (checkpointLock) {
+            try (FileChannel channel = FileChannel.open(directory.resolve(DEAD_LETTER_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                while (frame.hasRemaining()) {
+                    channel.write(frame);
+                }
+                channel.force(false);
+            }
+        }
+    }
+
+    /**
+     * @return the records moved to the dead letter file, in the order they were moved.
+     */
+    public List<JournalRecord> readDeadLetters() throws IOException {
+        Path deadLetterFile = directory.resolve(DEAD_LETTER_FILE);
+        List<JournalRecord> result = new ArrayList<>();
+        synchronized (checkpointLock) {
+            if (Files.exists(deadLetterFile)) {
+                readRecords(deadLetterFile, 0, 0, result);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (buffer != null) {
+            buffer.force();
+            buffer = null;
+        }
+    }
+
+    private MappedByteBuffer mapSegment(long number) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentPath(number),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // the mapping stays valid once the channel is closed.
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    private void readRecords(Path file, long number, int fromOffset, List<JournalRecord> result) throws IOException {
+        ByteBuffer content;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            content = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        content.position(Math.min(fromOffset, content.limit()));
+        CRC32 crc = new CRC32();
+        while (content.remaining() >= HEADER_SIZE) {
+            int startOffset = content.position();
+            int length = content.getInt();
+            int checksum = content.getInt();
+            // 0 : the end of what was written.
+            if (length <= 0 || length > content.remaining()) {
+                break;
+            }
+            byte[] bytes = new byte[length];
+            content.get(bytes);
+            crc.reset();
+            crc.update(bytes);
+            if ((int) crc.getValue() != checksum) {
+                logger.warn("Invalid checksum in journal file {}, the rest of the file is ignored", file.getFileName());
+                break;
+            }
+            List<JournalRecord> records = decode(bytes);
+            setPositions(records, number, startOffset, content.position());
+            result.addAll(records);
+        }
+    }
+
+    private static byte[] encode(List<JournalRecord> records) {
+        byte[][] vehicleRegNumbers = new byte[records.size()][];
+        int size = 0;
+        for (int i = 0; i < vehicleRegNumbers.length; i++) {
+            vehicleRegNumbers[i] = records.get(i).getVehicleRegNumber().getBytes(StandardCharsets.UTF_8);
+            size += RECORD_SIZE + vehicleRegNumbers[i].length;
+        }
+        ByteBuffer content = ByteBuffer.allocate(size);
+        for (int i = 0; i < vehicleRegNumbers.length; i++) {
+            encode(records.get(i), vehicleRegNumbers[i], content);
+        }
+        return content.array();
+    }
+
+    private static void encode(JournalRecord record, byte[] vehicleRegNumber, ByteBuffer content) {
+        content.putLong(record.getSequence());
+        content.put((byte) record.getType().ordinal());
+        content.putLong(record.getInTime());
+        content.putLong(record.getOutTime());
+        content.putLong(record.getPriceCents());
+        content.putInt(record.getParkingNumber());
+        content.put((byte) record.getParkingType().ordinal());
+        content.putShort((short) vehicleRegNumber.length);
+        content.put(vehicleRegNumber);
+    }
+
+    private static List<JournalRecord> decode(byte[] bytes) {
+        ByteBuffer content = ByteBuffer.wrap(bytes);
+        List<JournalRecord> result = new ArrayList<>(1);
+        while (content.hasRemaining()) {
+            result.add(decode(content));
+        }
+        return result;
+    }
+
+    private static JournalRecord decode(ByteBuffer content) {
+        long sequence = content.getLong();
+        JournalRecord.Type type = JournalRecord.Type.values()[content.get()];
+        long inTime = content.getLong();
+        long outTime = content.getLong();
+        long priceCents = content.getLong();
+        int parkingNumber = content.getInt();
+        ParkingType parkingType = ParkingType.values()[content.get()];
+        byte[] vehicleRegNumber = new byte[content.getShort()];
+        content.get(vehicleRegNumber);
+        JournalRecord record = new JournalRecord(type, new String(vehicleRegNumber, StandardCharsets.UTF_8), parkingNumber,
+                parkingType, inTime, outTime, priceCents);
+        record.setSequence(sequence);
+        return record;
+    }
+
+    // segment, offset and sequence of the last record flushed, 0 0 0 when nothing was flushed yet.
+    private long[] readCheckpoint() throws IOException {
+        Path checkpointFile = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(checkpointFile)) {
+            return new long[] { 0, 0, 0 };
+        }
+        String content = new String(Files.readAllBytes(checkpointFile), StandardCharsets.UTF_8).trim();
+        String[] parts = content.split(" ");
+        try {
+            return new long[] { Long.parseLong(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2]) };
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Invalid journal checkpoint : " + content, e);
+        }
+    }
+
+    private List<Long> listSegments() throws IOException {
+        List<Long> result = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                result.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    private Path segmentPath(long number) {
+        // zero padded so that the files sort by name too.
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+}
@@ -0,0 +1,75 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Where the tickets are kept : the ticket table of the database (TicketDAO), or the embedded storage of
+ * the application. The services only use this interface.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public interface TicketRepository {
+
+    /**
+     * Saves a new ticket and sets its id.
+     *
+     * @return true if it was saved.
+     */
+    boolean saveTicket(Ticket ticket);
+
+    /**
+     * @return for each ticket, true if it was saved. null if the save failed.
+     */
+    boolean[] saveTickets(List<Ticket> tickets);
+
+    /**
+     * @return the most recent ticket of the vehicle, or null if the vehicle has no ticket.
+     */
+    Ticket getTicket(String vehicleRegNumber);
+
+    /**
+     * Updates the price and exit time of a ticket, if it is still open.
+     *
+     * @return true if it was updated, false if it was already closed or could not be written.
+     */
+    boolean updateTicket(Ticket ticket);
+
+    /**
+     * @return for each ticket, true if it was updated, false if it was already closed. null if the update failed.
+     */
+    boolean[] updateTickets(List<Ticket> tickets);
+
+    /**
+     * @return the number of tickets of a vehicle, or -1 if it could not be read.
+     */
+    int getNbTicket(String vehicleRegNumber);
+
+    CompletableFuture<Boolean> saveTicketAsync(Ticket ticket);
+
+    CompletableFuture<Ticket> getTicketAsync(String vehicleRegNumber);
+
+    CompletableFuture<Boolean> updateTicketAsync(Ticket ticket);
+
+    CompletableFuture<Integer> getNbTicketAsync(String vehicleRegNumber);
+
+    /**
+     * @return the tickets of the vehicles in the parking, or null if they are not kept in memory.
+     */
+    OpenTicketIndex getOpenTicketIndex();
+
+    /**
+     * @return the database of the tickets, or null when they are not kept in a database.
+     */
+    DataBaseConfig getDataBaseConfig();
+
+    /**
+     * @return true when the tickets are not written within a database transaction (write-behind journal,
+     *         embedded storage) : the gate operations then only keep their commit and rollback actions.
+     */
+    boolean writesOutsideTransaction();
+}
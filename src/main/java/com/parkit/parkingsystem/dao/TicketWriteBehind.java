@@ -0,0 +1,496 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.UnitOfWork;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.model.Ticket;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind of the tickets : the entries and exits are appended to the ticket journal and acknowledged
+ * at once, then a background thread writes them to the database by batches, one transaction per batch.
+ * Within a unit of work they are only appended when it commits, and forgotten if it is rolled back.
+ *
+ * The database is written in the journal order : tickets first, then the vehicle profiles, then the parking
+ * spots. Each record is applied only once even if it is replayed : an entry is inserted under its journal
+ * sequence number, and an exit closes the open ticket of its vehicle and entry time, since the id of a ticket
+ * is only known once it is inserted.
+ *
+ * A record the database cannot accept is refused before it is acknowledged. If the database still refuses a
+ * batch, and not for a transient reason (connection lost, deadlock, lock wait timeout), its records are written
+ * one by one : those refused are moved to the dead letter file of the journal, so they never block the next ones.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class TicketWriteBehind implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("TicketWriteBehind");
+
+    // MySQL lock wait timeout and deadlock : the transaction can be tried again.
+    private static final int ER_LOCK_WAIT_TIMEOUT = 1205;
+    private static final int ER_LOCK_DEADLOCK = 1213;
+
+    public DataBaseConfig dataBaseConfig = new DataBaseConfig();
+
+    /**
+     * The journaled events of a vehicle not written yet.
+     */
+    private static final class PendingVehicle {
+        private final int entries;
+        private final JournalRecord last;
+
+        private PendingVehicle(int entries, JournalRecord last) {
+            this.entries = entries;
+            this.last = last;
+        }
+    }
+
+    private interface Binder {
+        void bind(PreparedStatement ps, JournalRecord record) throws SQLException;
+    }
+
+    private final TicketJournal journal;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+
+    private final Object appendLock = new Object();
+    private final Object flushLock = new Object();
+    // in the journal order : records are queued under the append lock.
+    private final Queue<JournalRecord> queue = new ConcurrentLinkedQueue<>();
+    // the batch being written. After a failure it is retried as is, so the journal order is kept.
+    private final List<JournalRecord> inFlight = new ArrayList<>();
+    private final ConcurrentHashMap<String, PendingVehicle> pendingVehicles = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService flusher;
+    private volatile boolean closed;
+
+    /**
+     * @param journal the journal, not open yet.
+     * @param batchSize the maximum number of records written per transaction.
+     * @param flushIntervalMillis the delay between two flushes.
+     */
+    public TicketWriteBehind(TicketJournal journal, int batchSize, long flushIntervalMillis) {
+        if (journal == null || batchSize <= 0 || flushIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Invalid argument in TicketWriteBehind");
+        }
+        this.journal = journal;
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    /**
+     * Opens the journal, writes to the database what the previous run had not written, then starts the
+     * background flush. Call it before loading the parking spot allocator and the open ticket index.
+     *
+     * @return true if started, false if the journal could not be read or replayed.
+     */
+    public boolean start() {
+        try {
+            List<JournalRecord> recovered = journal.open();
+            if (!recovered.isEmpty()) {
+                logger.info("Replaying {} journaled ticket events", recovered.size());
+                queue.addAll(recovered);
+                if (!flush()) {
+                    return false;
+                }
+            }
+        } catch (Exception ex) {
+            logger.error("Error start", ex);
+            return false;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ticket-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (RuntimeException ex) {
+                // an exception would cancel the next flushes.
+                logger.error("Error flush", ex);
+            }
+        }, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    /**
+     * @return true once the entry is in the journal.
+     */
+    public boolean entered(Ticket ticket) {
+        boolean[] result = append(Collections.singletonList(ticket), true);
+        return result != null && result[0];
+    }
+
+    /**
+     * @return true once the exit is in the journal, false if the exit of this ticket is already in it.
+     */
+    public boolean exited(Ticket ticket) {
+        boolean[] result = append(Collections.singletonList(ticket), false);
+        return result != null && result[0];
+    }
+
+    /**
+     * Journals the entries or the exits of a gate operation, all or none. Within a unit of work they are
+     * appended to the journal when it commits, which fails if they cannot be, and forgotten if it is
+     * rolled back. Otherwise they are appended at once. Until then getPendingTicket and
+     * getPendingEntryCount already count them.
+     *
+     * @return for each ticket, true if it is journaled, false for the exit of a ticket already closed
+     *         in the journal. null if the journal could not be written, or if a ticket cannot be written
+     *         to the database.
+     */
+    public boolean[] append(List<Ticket> tickets, boolean entry) {
+        boolean[] result = new boolean[tickets.size()];
+        List<JournalRecord> candidates = new ArrayList<>(tickets.size());
+        for (Ticket ticket : tickets) {
+            JournalRecord record = entry ? JournalRecord.entry(ticket) : JournalRecord.exit(ticket);
+            if (!record.isWritable()) {
+                // acknowledged, it would never reach the database.
+                logger.error("Ticket of vehicle {} on spot {} not journaled : the database would refuse it",
+                        record.getVehicleRegNumber(), record.getParkingNumber());
+                return null;
+            }
+            candidates.add(record);
+        }
+        List<JournalRecord> records = new ArrayList<>(tickets.size());
+        List<JournalRecord> previousRecords = new ArrayList<>(tickets.size());
+        synchronized (appendLock) {
+            for (int i = 0; i < result.length; i++) {
+                JournalRecord record = candidates.get(i);
+                if (!entry && isPendingExit(record)) {
+                    continue;
+                }
+                previousRecords.add(reserve(record));
+                records.add(record);
+                result[i] = true;
+            }
+        }
+        if (records.isEmpty()) {
+            return result;
+        }
+        try {
+            UnitOfWork.beforeCommit(() -> appendToJournal(records));
+        } catch (Exception ex) {
+            logger.error("Error append", ex);
+            release(records, previousRecords);
+            return null;
+        }
+        UnitOfWork.onRollback(() -> release(records, previousRecords));
+        return result;
+    }
+
+    private void appendToJournal(List<JournalRecord> records) throws IOException {
+        synchronized (appendLock) {
+            journal.append(records);
+            queue.addAll(records);
+        }
+    }
+
+    // the record is known as the last event of its vehicle before it is journaled. Returns the previous last one.
+    private JournalRecord reserve(JournalRecord record) {
+        boolean entry = (record.getType() == JournalRecord.Type.ENTRY);
+        JournalRecord[] previous = new JournalRecord[1];
+        pendingVehicles.compute(record.getVehicleRegNumber(), (vehicleRegNumber, pending) -> {
+            previous[0] = (pending == null) ? null : pending.last;
+            return new PendingVehicle(((pending == null) ? 0 : pending.entries) + (entry ? 1 : 0), record);
+        });
+        return previous[0];
+    }
+
+    // undoes reserve() for records that will not be journaled, the last reserved first.
+    private void release(List<JournalRecord> records, List<JournalRecord> previousRecords) {
+        synchronized (appendLock) {
+            for (int i = records.size() - 1; i >= 0; i--) {
+                JournalRecord record = records.get(i);
+                JournalRecord previousRecord = previousRecords.get(i);
+                boolean entry = (record.getType() == JournalRecord.Type.ENTRY);
+                pendingVehicles.computeIfPresent(record.getVehicleRegNumber(), (vehicleRegNumber, pending) -> {
+                    JournalRecord last = pending.last;
+                    if (last == record) {
+                        // a previous event already in the database is not pending anymore.
+                        last = (previousRecord == null || previousRecord.isWritten()) ? null : previousRecord;
+                    }
+                    return (last == null) ? null : new PendingVehicle(pending.entries - (entry ? 1 : 0), last);
+                });
+            }
+        }
+    }
+
+    // the same ticket closed twice, by two exits that both found it open.
+    private boolean isPendingExit(JournalRecord record) {
+        PendingVehicle pending = pendingVehicles.get(record.getVehicleRegNumber());
+        return pending != null && pending.last.getType() == JournalRecord.Type.EXIT
+                && pending.last.getInTime() == record.getInTime();
+    }
+
+    /**
+     * @return the ticket of the vehicle as its last journaled event left it, or null if all its events are
+     *         in the database. Its id is 0.
+     */
+    public Ticket getPendingTicket(String vehicleRegNumber) {
+        PendingVehicle pending = (vehicleRegNumber == null) ? null : pendingVehicles.get(vehicleRegNumber);
+        return (pending == null) ? null : pending.last.toTicket();
+    }
+
+    /**
+     * @return the number of journaled entries of the vehicle not in the database yet.
+     */
+    public int getPendingEntryCount(String vehicleRegNumber) {
+        PendingVehicle pending = (vehicleRegNumber == null) ? null : pendingVehicles.get(vehicleRegNumber);
+        return (pending == null) ? 0 : pending.entries;
+    }
+
+    /**
+     * @return the number of journaled events not in the database yet.
+     */
+    public int getPendingCount() {
+        synchronized (flushLock) {
+            return queue.size() + inFlight.size();
+        }
+    }
+
+    /**
+     * Writes to the database all the records journaled so far.
+     *
+     * @return true if they are all written or moved to the dead letters, false if a batch failed for a
+     *         transient reason : it is retried by the next flush.
+     */
+    public boolean flush() {
+        synchronized (flushLock) {
+            while (true) {
+                if (inFlight.isEmpty()) {
+                    JournalRecord record;
+                    while (inFlight.size() < batchSize && (record = queue.poll()) != null) {
+                        inFlight.add(record);
+                    }
+                }
+                if (inFlight.isEmpty()) {
+                    return true;
+                }
+                try {
+                    write(inFlight);
+                    for (JournalRecord record : inFlight) {
+                        written(record);
+                    }
+                } catch (Exception ex) {
+                    if (isTransient(ex)) {
+                        logger.error("Error flush", ex);
+                        return false;
+                    }
+                    logger.warn("Batch of {} journaled ticket events refused, written one by one", inFlight.size(), ex);
+                    if (!writeOneByOne()) {
+                        return false;
+                    }
+                }
+                JournalRecord last = inFlight.get(inFlight.size() - 1);
+                inFlight.clear();
+                markFlushed(last);
+            }
+        }
+    }
+
+    // under flushLock. The records written or moved to the dead letters leave inFlight as the checkpoint passes them.
+    private boolean writeOneByOne() {
+        while (inFlight.size() > 1) {
+            JournalRecord record = inFlight.get(0);
+            if (!writeOrDeadLetter(record)) {
+                return false;
+            }
+            inFlight.remove(0);
+            markFlushed(record);
+        }
+        return writeOrDeadLetter(inFlight.get(0));
+    }
+
+    // false if the record could not be written for a transient reason, nor moved to the dead letters.
+    private boolean writeOrDeadLetter(JournalRecord record) {
+        try {
+            write(Collections.singletonList(record));
+        } catch (Exception ex) {
+            if (isTransient(ex)) {
+                logger.error("Error flush", ex);
+                return false;
+            }
+            try {
+                journal.deadLetter(record);
+            } catch (Exception deadLetterEx) {
+                logger.error("Error deadLetter", deadLetterEx);
+                return false;
+            }
+            logger.error("Journaled {} of vehicle {} on spot {} at {} refused by the database, moved to the dead letters",
+                    record.getType(), record.getVehicleRegNumber(), record.getParkingNumber(), new Timestamp(record.getInTime()), ex);
+        }
+        // not pending anymore : in the database or in the dead letters.
+        written(record);
+        return true;
+    }
+
+    private void markFlushed(JournalRecord record) {
+        try {
+            journal.markFlushed(record);
+        } catch (Exception ex) {
+            // the records are written : at worst they are replayed, which changes nothing.
+            logger.error("Error markFlushed", ex);
+        }
+    }
+
+    /**
+     * @return true if the database may accept the same statements later : the connection was lost, or the
+     *         transaction was chosen as a deadlock victim or waited too long for a lock. An error raised before
+     *         reaching the database, such as a timeout of the connection pool, has no SQL state and is transient too.
+     */
+    static boolean isTransient(Throwable ex) {
+        Throwable cause = ex;
+        while (cause != null) {
+            if (cause instanceof SQLTransientException || cause instanceof SQLRecoverableException) {
+                return true;
+            }
+            Throwable next = cause.getCause();
+            if (cause instanceof SQLException) {
+                SQLException sqlException = (SQLException) cause;
+                String sqlState = sqlException.getSQLState();
+                if (sqlState != null) {
+                    return sqlState.startsWith("08") || sqlState.startsWith("40")
+                            || sqlException.getErrorCode() == ER_LOCK_WAIT_TIMEOUT || sqlException.getErrorCode() == ER_LOCK_DEADLOCK;
+                }
+                // a batch error may only give the state of the statement that failed in the next one.
+                if (next == null) {
+                    next = sqlException.getNextException();
+                }
+            }
+            cause = next;
+        }
+        // not an error of the database : the flush is tried again.
+        return true;
+    }
+
+    private void written(JournalRecord record) {
+        record.setWritten();
+        boolean entry = (record.getType() == JournalRecord.Type.ENTRY);
+        // the last event written : the database knows all the vehicle did.
+        pendingVehicles.computeIfPresent(record.getVehicleRegNumber(), (vehicleRegNumber, pending) ->
+                (pending.last == record) ? null : new PendingVehicle(pending.entries - (entry ? 1 : 0), pending.last));
+    }
+
+    private void write(List<JournalRecord> records) throws Exception {
+        List<JournalRecord> entries = new ArrayList<>();
+        List<JournalRecord> exits = new ArrayList<>();
+        for (JournalRecord record : records) {
+            if (record.getType() == JournalRecord.Type.ENTRY) {
+                entries.add(record);
+            } else {
+                exits.add(record);
+            }
+        }
+
+        try (UnitOfWork unitOfWork = UnitOfWork.begin(dataBaseConfig)) {
+            Connection con = dataBaseConfig.getConnection();
+
+            boolean[] inserted = executeBatch(con, DBConstants.SAVE_TICKET_IF_ABSENT, entries, (ps, record) -> {
+                ps.setInt(1, record.getParkingNumber());
+                ps.setString(2, record.getVehicleRegNumber());
+                ps.setTimestamp(3, toSeconds(record.getInTime()));
+                ps.setLong(4, record.getSequence());
+                ps.setLong(5, record.getSequence());
+            });
+            // a visit is counted only by the insert of its ticket, not by a replay.
+            executeBatch(con, DBConstants.RECORD_VEHICLE_VISIT, succeeded(entries, inserted), (ps, record) -> {
+                ps.setString(1, record.getVehicleRegNumber());
+                ps.setTimestamp(2, new Timestamp(record.getInTime()));
+            });
+
+            boolean[] closed = executeBatch(con, DBConstants.CLOSE_TICKET, exits, (ps, record) -> {
+                ps.setDouble(1, record.getPriceCents() / 100.0);
+                ps.setTimestamp(2, new Timestamp(record.getOutTime()));
+                ps.setString(3, record.getVehicleRegNumber());
+                ps.setTimestamp(4, toSeconds(record.getInTime()));
+            });
+            executeBatch(con, DBConstants.RECORD_VEHICLE_SPEND, succeeded(exits, closed), (ps, record) -> {
+                ps.setDouble(1, record.getPriceCents() / 100.0);
+                ps.setTimestamp(2, new Timestamp(record.getOutTime()));
+                ps.setString(3, record.getVehicleRegNumber());
+            });
+
+            // in the journal order : a spot freed then taken again ends taken.
+            executeBatch(con, DBConstants.UPDATE_PARKING_SPOT, records, (ps, record) -> {
+                ps.setBoolean(1, record.getType() == JournalRecord.Type.EXIT);
+                ps.setInt(2, record.getParkingNumber());
+            });
+
+            unitOfWork.commit();
+        }
+    }
+
+    private static boolean[] executeBatch(Connection con, String query, List<JournalRecord> records, Binder binder) throws SQLException {
+        if (records.isEmpty()) {
+            return new boolean[0];
+        }
+        try (PreparedStatement ps = con.prepareStatement(query)) {
+            for (JournalRecord record : records) {
+                binder.bind(ps, record);
+                ps.addBatch();
+            }
+            return TicketDAO.toSuccesses(ps.executeBatch(), records.size());
+        }
+    }
+
+    private static List<JournalRecord> succeeded(List<JournalRecord> records, boolean[] successes) {
+        List<JournalRecord> result = new ArrayList<>(records.size());
+        for (int i = 0; i < successes.length; i++) {
+            if (successes[i]) {
+                result.add(records.get(i));
+            }
+        }
+        return result;
+    }
+
+    // the ticket table keeps whole seconds : the entry time is cut the same way to write and to find a ticket.
+    private static Timestamp toSeconds(long time) {
+        return new Timestamp(time - Math.floorMod(time, 1000L));
+    }
+
+    /**
+     * Stops the background flush, writes what is left and closes the journal.
+     * What cannot be written stays in the journal for the next start.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (!flush()) {
+            logger.warn("{} journaled ticket events not written, they will be replayed at the next start", getPendingCount());
+        }
+        journal.close();
+    }
+}
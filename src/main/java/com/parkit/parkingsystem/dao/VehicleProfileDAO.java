@@ -0,0 +1,81 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.metrics.PerFacility;
+import com.parkit.parkingsystem.metrics.Timer;
+import com.parkit.parkingsystem.model.VehicleProfile;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+/**
+ * Reads the vehicle profiles. They are written by TicketDAO each time a ticket is saved or updated.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class VehicleProfileDAO {
+
+    private static final Logger logger = LogManager.getLogger("VehicleProfileDAO");
+
+    private static final PerFacility<Timer> GET_VEHICLE_PROFILE_TIMER = Metrics.timers("VehicleProfileDAO", "getVehicleProfile");
+
+    public DataBaseConfig dataBaseConfig = new DataBaseConfig();
+
+    public VehicleProfile getVehicleProfile(String vehicleRegNumber) {
+        Timer timer = GET_VEHICLE_PROFILE_TIMER.of(dataBaseConfig.getFacilityId());
+        long start = timer.start();
+        try {
+            VehicleProfile vehicleProfile = null;
+
+            try (Connection con = dataBaseConfig.getConnection();
+                 PreparedStatement ps = con.prepareStatement(DBConstants.GET_VEHICLE_PROFILE)) {
+
+                ps.setString(1, vehicleRegNumber);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        vehicleProfile = new VehicleProfile();
+                        vehicleProfile.setVehicleRegNumber(rs.getString(1));
+                        vehicleProfile.setVisitCount(rs.getInt(2));
+                        vehicleProfile.setTotalSpent(rs.getDouble(3));
+                        vehicleProfile.setLastVisit(rs.getTimestamp(4));
+                    }
+                }
+
+            } catch (Exception ex) {
+                logger.error("Error getVehicleProfile", ex);
+                timer.failed();
+            }
+
+            return vehicleProfile;
+        } finally {
+            timer.stop(start);
+        }
+    }
+
+    /**
+     * Rebuilds the profile of every vehicle from the ticket table. Existing profiles are overwritten,
+     * so the job can be run again safely.
+     *
+     * @return the number of rows touched as reported by MySQL, or -1 on error.
+     */
+    public int backfillVehicleProfiles() {
+        try (Connection con = dataBaseConfig.getConnection();
+             PreparedStatement ps = con.prepareStatement(DBConstants.BACKFILL_VEHICLE_PROFILES)) {
+
+            int result = ps.executeUpdate();
+            logger.info("Vehicle profiles backfilled from the ticket table");
+            return result;
+
+        } catch (Exception ex) {
+            logger.error("Error backfillVehicleProfiles", ex);
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.parkit.parkingsystem.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A count of events, striped so that threads counting at the same time do not contend.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class Counter implements CounterMXBean {
+
+    private final LongAdder count = new LongAdder();
+
+    public void increment() {
+        count.increment();
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public void reset() {
+        count.reset();
+    }
+}
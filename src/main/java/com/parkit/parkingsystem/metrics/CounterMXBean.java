@@ -0,0 +1,14 @@
+package com.parkit.parkingsystem.metrics;
+
+/**
+ * The JMX view of a counter.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public interface CounterMXBean {
+
+    long getCount();
+
+    void reset();
+}
@@ -0,0 +1,113 @@
+package com.parkit.parkingsystem.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with log-linear buckets, in the manner of HdrHistogram : each power of two is split in
+ * 32 buckets, so a value is known within about 3 %, from 1 ns up to Long.MAX_VALUE, in a fixed array.
+ *
+ * Recording is a few arithmetic operations and atomic increments : no lock and no allocation. The reads
+ * are not a consistent snapshot while values are recorded, which is enough for monitoring.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    // the values below 2 * SUB_BUCKET_COUNT have a bucket each, then SUB_BUCKET_COUNT buckets per power of two.
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @param value in nanoseconds, negative values count as 0.
+     */
+    public void record(long value) {
+        long recorded = Math.max(0, value);
+        buckets.incrementAndGet(bucketIndex(recorded));
+        count.increment();
+        total.add(recorded);
+        max.accumulate(recorded);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return the mean of the recorded values, 0 if nothing was recorded.
+     */
+    public double getMean() {
+        long recorded = count.sum();
+        return (recorded == 0) ? 0 : (double) total.sum() / recorded;
+    }
+
+    /**
+     * @param percentile between 0 and 100, 99.9 for the p999.
+     * @return the highest value of the bucket holding this percentile, 0 if nothing was recorded.
+     */
+    public long getPercentile(double percentile) {
+        long[] counts = new long[BUCKET_COUNT];
+        long recorded = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            recorded += counts[i];
+        }
+        if (recorded == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * recorded - 1e-9));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                // never above the largest value really recorded.
+                return Math.min(highestValueOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Forgets the recorded values. Values recorded meanwhile may be partly kept.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        total.reset();
+        max.reset();
+    }
+
+    static int bucketIndex(long value) {
+        if (value < 2 * SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+        return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long highestValueOf(int bucketIndex) {
+        if (bucketIndex < 2 * SUB_BUCKET_COUNT) {
+            return bucketIndex;
+        }
+        int shift = bucketIndex / SUB_BUCKET_COUNT - 1;
+        long subBucket = SUB_BUCKET_COUNT + (bucketIndex % SUB_BUCKET_COUNT);
+        long highest = ((subBucket + 1) << shift) - 1;
+        // the last bucket ends at Long.MAX_VALUE.
+        return (highest < 0) ? Long.MAX_VALUE : highest;
+    }
+}
@@ -0,0 +1,125 @@
+package com.parkit.parkingsystem.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The timers and counters of the application, each registered as an MXBean under
+ * com.parkit.parkingsystem:type=Timer|Counter,group=...,name=... so that JConsole or any JMX client reads them.
+ * The metrics of a facility other than the default one also have a facility=... key.
+ *
+ * The classes keep their timers and counters in static fields : they are looked up once, not per call.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class Metrics {
+
+    private static final Logger logger = LogManager.getLogger("Metrics");
+
+    public static final String DOMAIN = "com.parkit.parkingsystem";
+
+    private static final ConcurrentHashMap<String, Timer> timers = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+
+    // prevent instantiation
+    private Metrics() {
+    }
+
+    /**
+     * @return the timer of this operation, created and registered on first use.
+     */
+    public static Timer timer(String group, String name) {
+        return timer(group, name, null);
+    }
+
+    /**
+     * @param facilityId the facility, null for the default facility.
+     * @return the timer of this operation in this facility, created and registered on first use.
+     */
+    public static Timer timer(String group, String name, String facilityId) {
+        return timers.computeIfAbsent(key(group, name, facilityId),
+                key -> register(new Timer(), "Timer", group, name, facilityId));
+    }
+
+    /**
+     * @return the timers of this operation, one per facility.
+     */
+    public static PerFacility<Timer> timers(String group, String name) {
+        return new PerFacility<>(facilityId -> timer(group, name, facilityId));
+    }
+
+    /**
+     * @return the counter of these events, created and registered on first use.
+     */
+    public static Counter counter(String group, String name) {
+        return counter(group, name, null);
+    }
+
+    /**
+     * @param facilityId the facility, null for the default facility.
+     * @return the counter of these events in this facility, created and registered on first use.
+     */
+    public static Counter counter(String group, String name, String facilityId) {
+        return counters.computeIfAbsent(key(group, name, facilityId),
+                key -> register(new Counter(), "Counter", group, name, facilityId));
+    }
+
+    /**
+     * @return the counters of these events, one per facility.
+     */
+    public static PerFacility<Counter> counters(String group, String name) {
+        return new PerFacility<>(facilityId -> counter(group, name, facilityId));
+    }
+
+    /**
+     * @return the timers by group.name, or group.name[facility] outside the default facility, sorted.
+     */
+    public static Map<String, Timer> getTimers() {
+        return Collections.unmodifiableMap(new TreeMap<>(timers));
+    }
+
+    /**
+     * @return the counters by group.name, or group.name[facility] outside the default facility, sorted.
+     */
+    public static Map<String, Counter> getCounters() {
+        return Collections.unmodifiableMap(new TreeMap<>(counters));
+    }
+
+    /**
+     * Resets every timer and counter, e.g. between two load tests.
+     */
+    public static void resetAll() {
+        timers.values().forEach(Timer::reset);
+        counters.values().forEach(Counter::reset);
+    }
+
+    private static String key(String group, String name, String facilityId) {
+        return (facilityId == null) ? group + "." + name : group + "." + name + "[" + facilityId + "]";
+    }
+
+    // a metric that cannot be registered still records : it is only missing from JMX.
+    private static <T> T register(T metric, String type, String group, String name, String facilityId) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            // a facility id is free text : quoted, it cannot break the object name.
+            String facility = (facilityId == null) ? "" : ",facility=" + ObjectName.quote(facilityId);
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type + facility + ",group=" + group + ",name=" + name);
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(metric, objectName);
+            }
+        } catch (JMException | SecurityException e) {
+            logger.warn("Unable to register the {} metric in JMX", key(group, name, facilityId), e);
+        }
+        return metric;
+    }
+}
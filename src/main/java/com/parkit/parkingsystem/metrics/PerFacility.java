@@ -0,0 +1,41 @@
+package com.parkit.parkingsystem.metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * A timer or counter kept apart for each facility, so that the metrics of one parking lot are not mixed
+ * with those of another. Used as :
+ * <pre>
+ * long start = TIMER.of(facilityId).start();
+ * </pre>
+ * The metric of a facility is created on first use, then found without allocating.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class PerFacility<T> {
+
+    // the key of the default facility.
+    private static final String DEFAULT_FACILITY = "";
+
+    private final ConcurrentHashMap<String, T> metrics = new ConcurrentHashMap<>();
+    private final Function<String, T> factory;
+
+    PerFacility(Function<String, T> factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * @param facilityId the facility, null for the default facility.
+     * @return the metric of this facility.
+     */
+    public T of(String facilityId) {
+        String key = (facilityId == null) ? DEFAULT_FACILITY : facilityId;
+        T metric = metrics.get(key);
+        if (metric == null) {
+            metric = metrics.computeIfAbsent(key, k -> factory.apply(facilityId));
+        }
+        return metric;
+    }
+}
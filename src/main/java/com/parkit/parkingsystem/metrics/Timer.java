@@ -0,0 +1,96 @@
+package com.parkit.parkingsystem.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The latencies and failures of one operation. Timed as :
+ * <pre>
+ * long start = timer.start();
+ * try {
+ *     ...
+ * } finally {
+ *     timer.stop(start);
+ * }
+ * </pre>
+ * and timer.failed() where the operation fails. Nothing is allocated per call.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class Timer implements TimerMXBean {
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * @return the start time, to give back to stop().
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    public void stop(long start) {
+        histogram.record(System.nanoTime() - start);
+    }
+
+    /**
+     * @param nanos a latency measured by the caller.
+     */
+    public void record(long nanos) {
+        histogram.record(nanos);
+    }
+
+    public void failed() {
+        failures.increment();
+    }
+
+    public LatencyHistogram getHistogram() {
+        return histogram;
+    }
+
+    @Override
+    public long getCount() {
+        return histogram.getCount();
+    }
+
+    @Override
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        return histogram.getMean() / 1000.0;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return histogram.getMax() / 1000.0;
+    }
+
+    @Override
+    public double getP50Micros() {
+        return histogram.getPercentile(50) / 1000.0;
+    }
+
+    @Override
+    public double getP90Micros() {
+        return histogram.getPercentile(90) / 1000.0;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return histogram.getPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public double getP999Micros() {
+        return histogram.getPercentile(99.9) / 1000.0;
+    }
+
+    @Override
+    public void reset() {
+        histogram.reset();
+        failures.reset();
+    }
+}
@@ -0,0 +1,28 @@
+package com.parkit.parkingsystem.metrics;
+
+/**
+ * The JMX view of a timer. The latencies are in microseconds.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public interface TimerMXBean {
+
+    long getCount();
+
+    long getFailureCount();
+
+    double getMeanMicros();
+
+    double getMaxMicros();
+
+    double getP50Micros();
+
+    double getP90Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    void reset();
+}
@@ -0,0 +1,85 @@
+package com.parkit.parkingsystem.model;
+
+import com.parkit.parkingsystem.constants.GateStatus;
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.util.Date;
+
+/**
+ * Answer of ParkingService.enter : where the vehicle parks and its ticket.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class EntryResult {
+    private final GateStatus status;
+    private final String vehicleRegNumber;
+    private final String errorMessage;
+    private final int parkingNumber;
+    private final ParkingType parkingType;
+    private final int ticketId;
+    private final boolean discount;
+    private final long inTimeMillis;
+
+    private EntryResult(GateStatus status, String vehicleRegNumber, String errorMessage, Ticket ticket, boolean discount) {
+        this.status = status;
+        this.vehicleRegNumber = vehicleRegNumber;
+        this.errorMessage = errorMessage;
+        this.parkingNumber = (ticket == null) ? 0 : ticket.getParkingSpot().getId();
+        this.parkingType = (ticket == null) ? null : ticket.getParkingSpot().getParkingType();
+        this.ticketId = (ticket == null) ? 0 : ticket.getId();
+        this.discount = discount;
+        this.inTimeMillis = (ticket == null) ? Ticket.NO_TIME : ticket.getInTimeMillis();
+    }
+
+    public static EntryResult succeed(Ticket ticket, boolean discount) {
+        return new EntryResult(GateStatus.OK, ticket.getVehicleRegNumber(), null, ticket, discount);
+    }
+
+    public static EntryResult fail(String vehicleRegNumber, GateStatus status, String errorMessage) {
+        return new EntryResult(status, vehicleRegNumber, errorMessage, null, false);
+    }
+
+    public boolean isSuccess() {
+        return status == GateStatus.OK;
+    }
+
+    public GateStatus getStatus() {
+        return status;
+    }
+
+    public String getVehicleRegNumber() {
+        return vehicleRegNumber;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public int getParkingNumber() {
+        return parkingNumber;
+    }
+
+    public ParkingType getParkingType() {
+        return parkingType;
+    }
+
+    public int getTicketId() {
+        return ticketId;
+    }
+
+    public boolean isDiscount() {
+        return discount;
+    }
+
+    /**
+     * @return the in-time in epoch milliseconds, or Ticket.NO_TIME on failure.
+     */
+    public long getInTimeMillis() {
+        return inTimeMillis;
+    }
+
+    public Date getInTime() {
+        return (inTimeMillis == Ticket.NO_TIME) ? null : new Date(inTimeMillis);
+    }
+}
@@ -0,0 +1,91 @@
+package com.parkit.parkingsystem.model;
+
+import com.parkit.parkingsystem.constants.GateStatus;
+
+import java.util.Date;
+
+/**
+ * Answer of ParkingService.exit : the fare to pay and the times of the visit.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class ExitResult {
+    private final GateStatus status;
+    private final String vehicleRegNumber;
+    private final String errorMessage;
+    private final int parkingNumber;
+    private final double fare;
+    private final boolean discount;
+    private final long inTimeMillis;
+    private final long outTimeMillis;
+
+    private ExitResult(GateStatus status, String vehicleRegNumber, String errorMessage, Ticket ticket, boolean discount) {
+        this.status = status;
+        this.vehicleRegNumber = vehicleRegNumber;
+        this.errorMessage = errorMessage;
+        this.parkingNumber = (ticket == null) ? 0 : ticket.getParkingSpot().getId();
+        this.fare = (ticket == null) ? 0 : ticket.getPrice();
+        this.discount = discount;
+        this.inTimeMillis = (ticket == null) ? Ticket.NO_TIME : ticket.getInTimeMillis();
+        this.outTimeMillis = (ticket == null) ? Ticket.NO_TIME : ticket.getOutTimeMillis();
+    }
+
+    public static ExitResult succeed(String vehicleRegNumber, Ticket ticket, boolean discount) {
+        return new ExitResult(GateStatus.OK, vehicleRegNumber, null, ticket, discount);
+    }
+
+    public static ExitResult fail(String vehicleRegNumber, GateStatus status, String errorMessage) {
+        return new ExitResult(status, vehicleRegNumber, errorMessage, null, false);
+    }
+
+    public boolean isSuccess() {
+        return status == GateStatus.OK;
+    }
+
+    public GateStatus getStatus() {
+        return status;
+    }
+
+    public String getVehicleRegNumber() {
+        return vehicleRegNumber;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public int getParkingNumber() {
+        return parkingNumber;
+    }
+
+    public double getFare() {
+        return fare;
+    }
+
+    public boolean isDiscount() {
+        return discount;
+    }
+
+    /**
+     * @return the in-time in epoch milliseconds, or Ticket.NO_TIME on failure.
+     */
+    public long getInTimeMillis() {
+        return inTimeMillis;
+    }
+
+    /**
+     * @return the out-time in epoch milliseconds, or Ticket.NO_TIME on failure.
+     */
+    public long getOutTimeMillis() {
+        return outTimeMillis;
+    }
+
+    public Date getInTime() {
+        return (inTimeMillis == Ticket.NO_TIME) ? null : new Date(inTimeMillis);
+    }
+
+    public Date getOutTime() {
+        return (outTimeMillis == Ticket.NO_TIME) ? null : new Date(outTimeMillis);
+    }
+}
@@ -0,0 +1,77 @@
+package com.parkit.parkingsystem.model;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.util.Date;
+
+/**
+ * What happened during one hour for one parking type : vehicles in and out, revenue and time spent parked.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class HourlyRollup {
+    private Date hour;
+    private ParkingType parkingType;
+    private long entries;
+    private long exits;
+    private long revenueCents;
+    private double occupiedMinutes;
+
+    /**
+     * @return the start of the hour.
+     */
+    public Date getHour() {
+        return hour;
+    }
+
+    public void setHour(Date hour) {
+        this.hour = hour;
+    }
+
+    public ParkingType getParkingType() {
+        return parkingType;
+    }
+
+    public void setParkingType(ParkingType parkingType) {
+        this.parkingType = parkingType;
+    }
+
+    public long getEntries() {
+        return entries;
+    }
+
+    public void setEntries(long entries) {
+        this.entries = entries;
+    }
+
+    public long getExits() {
+        return exits;
+    }
+
+    public void setExits(long exits) {
+        this.exits = exits;
+    }
+
+    /**
+     * @return the fares of the vehicles that left during the hour, in cents.
+     */
+    public long getRevenueCents() {
+        return revenueCents;
+    }
+
+    public void setRevenueCents(long revenueCents) {
+        this.revenueCents = revenueCents;
+    }
+
+    /**
+     * @return the minutes of the hour spent parked by the vehicles that have left, summed.
+     */
+    public double getOccupiedMinutes() {
+        return occupiedMinutes;
+    }
+
+    public void setOccupiedMinutes(double occupiedMinutes) {
+        this.occupiedMinutes = occupiedMinutes;
+    }
+}
@@ -0,0 +1,61 @@
+package com.parkit.parkingsystem.model;
+
+/**
+ * What a re-pricing run read and changed.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class RepricingReport {
+    private boolean dryRun;
+    private long ticketsRead;
+    private long ticketsChanged;
+    private long priceDifferenceCents;
+    private long lastTicketId;
+
+    public boolean isDryRun() {
+        return dryRun;
+    }
+
+    public void setDryRun(boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+
+    public long getTicketsRead() {
+        return ticketsRead;
+    }
+
+    public void setTicketsRead(long ticketsRead) {
+        this.ticketsRead = ticketsRead;
+    }
+
+    public long getTicketsChanged() {
+        return ticketsChanged;
+    }
+
+    public void setTicketsChanged(long ticketsChanged) {
+        this.ticketsChanged = ticketsChanged;
+    }
+
+    /**
+     * @return the sum of the new prices minus the sum of the old ones, in cents.
+     */
+    public long getPriceDifferenceCents() {
+        return priceDifferenceCents;
+    }
+
+    public void setPriceDifferenceCents(long priceDifferenceCents) {
+        this.priceDifferenceCents = priceDifferenceCents;
+    }
+
+    /**
+     * @return the id of the last ticket read, 0 if none.
+     */
+    public long getLastTicketId() {
+        return lastTicketId;
+    }
+
+    public void setLastTicketId(long lastTicketId) {
+        this.lastTicketId = lastTicketId;
+    }
+}
@@ -3,12 +3,19 @@ package com.parkit.parkingsystem.model;
 import java.util.Date;
 
 public class Ticket {
+
+    /**
+     * Value of a time not set, such as the out-time of a vehicle still parked.
+     */
+    public static final long NO_TIME = Long.MIN_VALUE;
+
     private int id;
     private ParkingSpot parkingSpot;
     private String vehicleRegNumber;
     private double price;
-    private Date inTime;
-    private Date outTime;
+    // epoch milliseconds : the gates, the fares and the DAOs read and write them without creating any Date.
+    private long inTimeMillis = NO_TIME;
+    private long outTimeMillis = NO_TIME;
 
     public int getId() {
         return id;
@@ -42,19 +49,59 @@ public class Ticket {
         this.price = price;
     }
 
+    /**
+     * @return the in-time in epoch milliseconds, or NO_TIME.
+     */
+    public long getInTimeMillis() {
+        return inTimeMillis;
+    }
+
+    public void setInTimeMillis(long inTimeMillis) {
+        this.inTimeMillis = inTimeMillis;
+    }
+
+    /**
+     * @return the out-time in epoch milliseconds, or NO_TIME while the vehicle is parked.
+     */
+    public long getOutTimeMillis() {
+        return outTimeMillis;
+    }
+
+    public void setOutTimeMillis(long outTimeMillis) {
+        this.outTimeMillis = outTimeMillis;
+    }
+
+    public boolean hasOutTime() {
+        return outTimeMillis != NO_TIME;
+    }
+
+    /**
+     * @return a new Date of the in-time, or null. Changing it does not change the ticket.
+     */
     public Date getInTime() {
-        return inTime;
+        return toDate(inTimeMillis);
     }
 
     public void setInTime(Date inTime) {
-        this.inTime = inTime;
+        this.inTimeMillis = toMillis(inTime);
     }
 
+    /**
+     * @return a new Date of the out-time, or null. Changing it does not change the ticket.
+     */
     public Date getOutTime() {
-        return outTime;
+        return toDate(outTimeMillis);
     }
 
     public void setOutTime(Date outTime) {
-        this.outTime = outTime;
+        this.outTimeMillis = toMillis(outTime);
+    }
+
+    private static Date toDate(long millis) {
+        return (millis == NO_TIME) ? null : new Date(millis);
+    }
+
+    private static long toMillis(Date date) {
+        return (date == null) ? NO_TIME : date.getTime();
     }
 }
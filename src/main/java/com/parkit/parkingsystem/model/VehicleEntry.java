@@ -0,0 +1,27 @@
+package com.parkit.parkingsystem.model;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+/**
+ * A vehicle presented at an entry gate.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class VehicleEntry {
+    private final String vehicleRegNumber;
+    private final ParkingType parkingType;
+
+    public VehicleEntry(String vehicleRegNumber, ParkingType parkingType) {
+        this.vehicleRegNumber = vehicleRegNumber;
+        this.parkingType = parkingType;
+    }
+
+    public String getVehicleRegNumber() {
+        return vehicleRegNumber;
+    }
+
+    public ParkingType getParkingType() {
+        return parkingType;
+    }
+}
@@ -0,0 +1,48 @@
+package com.parkit.parkingsystem.model;
+
+import java.util.Date;
+
+/**
+ * What is known about a vehicle across all its visits.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class VehicleProfile {
+    private String vehicleRegNumber;
+    private int visitCount;
+    private double totalSpent;
+    private Date lastVisit;
+
+    public String getVehicleRegNumber() {
+        return vehicleRegNumber;
+    }
+
+    public void setVehicleRegNumber(String vehicleRegNumber) {
+        this.vehicleRegNumber = vehicleRegNumber;
+    }
+
+    public int getVisitCount() {
+        return visitCount;
+    }
+
+    public void setVisitCount(int visitCount) {
+        this.visitCount = visitCount;
+    }
+
+    public double getTotalSpent() {
+        return totalSpent;
+    }
+
+    public void setTotalSpent(double totalSpent) {
+        this.totalSpent = totalSpent;
+    }
+
+    public Date getLastVisit() {
+        return lastVisit;
+    }
+
+    public void setLastVisit(Date lastVisit) {
+        this.lastVisit = lastVisit;
+    }
+}
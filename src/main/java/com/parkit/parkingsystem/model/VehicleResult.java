@@ -0,0 +1,54 @@
+package com.parkit.parkingsystem.model;
+
+/**
+ * Outcome of the entry or exit of one vehicle in a batch.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class VehicleResult {
+    private final String vehicleRegNumber;
+    private boolean success;
+    private Ticket ticket;
+    private boolean discount;
+    private String errorMessage;
+
+    public VehicleResult(String vehicleRegNumber) {
+        this.vehicleRegNumber = vehicleRegNumber;
+    }
+
+    public String getVehicleRegNumber() {
+        return vehicleRegNumber;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    /**
+     * @return the ticket written for this vehicle : parking spot, price and times.
+     */
+    public Ticket getTicket() {
+        return ticket;
+    }
+
+    public boolean isDiscount() {
+        return discount;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public void succeed(Ticket ticket, boolean discount) {
+        this.success = true;
+        this.ticket = ticket;
+        this.discount = discount;
+        this.errorMessage = null;
+    }
+
+    public void fail(String errorMessage) {
+        this.success = false;
+        this.errorMessage = errorMessage;
+    }
+}
@@ -0,0 +1,38 @@
+package com.parkit.parkingsystem.server;
+
+import com.parkit.parkingsystem.dao.ParkingSpotRepository;
+import com.parkit.parkingsystem.dao.TicketRepository;
+import com.parkit.parkingsystem.service.ParkingService;
+
+/**
+ * What the gate server needs to serve one facility : its service and repositories, on its own database.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class Facility {
+    private final ParkingService parkingService;
+    private final ParkingSpotRepository parkingSpotDAO;
+    private final TicketRepository ticketDAO;
+
+    public Facility(ParkingService parkingService, ParkingSpotRepository parkingSpotDAO, TicketRepository ticketDAO) {
+        if ((parkingService == null) || (parkingSpotDAO == null) || (ticketDAO == null)) {
+            throw new IllegalArgumentException("Invalid argument in Facility");
+        }
+        this.parkingService = parkingService;
+        this.parkingSpotDAO = parkingSpotDAO;
+        this.ticketDAO = ticketDAO;
+    }
+
+    public ParkingService getParkingService() {
+        return parkingService;
+    }
+
+    public ParkingSpotRepository getParkingSpotDAO() {
+        return parkingSpotDAO;
+    }
+
+    public TicketRepository getTicketDAO() {
+        return ticketDAO;
+    }
+}
@@ -0,0 +1,429 @@
+package com.parkit.parkingsystem.server;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.PoolStats;
+import com.parkit.parkingsystem.config.ShardRouter;
+import com.parkit.parkingsystem.constants.GateStatus;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.OpenTicketIndex;
+import com.parkit.parkingsystem.dao.ParkingSpotRepository;
+import com.parkit.parkingsystem.dao.TicketRepository;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.ExitResult;
+import com.parkit.parkingsystem.model.HourlyRollup;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.OccupancyService;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.service.RollupService;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.ToLongFunction;
+
+/**
+ * Serves every gate of a facility over HTTP, with the JDK built-in server, instead of one console per gate.
+ *
+ * POST /entry?plate=...&type=CAR|BIKE, POST /exit?plate=..., GET /status, GET /report?from=...&to=...
+ * and POST /reconcile, which sets the occupancy counters again from the parking table.
+ * The parameters may also be sent as a form in the body. The answers are JSON.
+ *
+ * One server may serve several facilities, each on its own database : the requests then name theirs with
+ * the facility parameter, which may be left out when there is only one.
+ *
+ * Each request runs on a fixed pool, sized like the connection pools : a request holds a connection for most
+ * of its time, so more threads would only wait for one. Virtual threads are opt-in : the JDBC driver and the
+ * ticket journal block inside synchronized code, which pins the carrier threads before Java 24, so they
+ * neither scale nor stay safe when the connection pool is exhausted.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class GateServer {
+
+    private static final Logger logger = LogManager.getLogger("GateServer");
+
+    private final Map<String, Facility> facilities;
+
+    private HttpServer httpServer;
+    private ExecutorService executor;
+
+    /**
+     * Serves a single facility.
+     */
+    public GateServer(ParkingService parkingService, ParkingSpotRepository parkingSpotDAO, TicketRepository ticketDAO) {
+        this(Collections.singletonMap(ShardRouter.DEFAULT_FACILITY_ID, new Facility(parkingService, parkingSpotDAO, ticketDAO)));
+    }
+
+    /**
+     * @param facilities the facilities served, by id.
+     */
+    public GateServer(Map<String, Facility> facilities) {
+        if (facilities == null || facilities.isEmpty()) {
+            throw new IllegalArgumentException("Invalid argument in GateServer");
+        }
+        this.facilities = new LinkedHashMap<>(facilities);
+    }
+
+    /**
+     * @param port the port to listen to, 0 for any free port.
+     * @param threads the size of the pool the requests run on.
+     */
+    public void start(int port, int threads) throws IOException {
+        start(port, threads, false);
+    }
+
+    /**
+     * @param port the port to listen to, 0 for any free port.
+     * @param threads the size of the pool used when virtual threads are not used.
+     * @param virtualThreads true to run each request on a virtual thread when the JDK has them.
+     */
+    public synchronized void start(int port, int threads, boolean virtualThreads) throws IOException {
+        if (httpServer != null) {
+            throw new IllegalStateException("Gate server already started");
+        }
+        executor = createExecutor(threads, virtualThreads);
+        httpServer = HttpServer.create(new InetSocketAddress(port), 0);
+        httpServer.setExecutor(executor);
+        httpServer.createContext("/entry", exchange -> handle(exchange, "POST", this::entry));
+        httpServer.createContext("/exit", exchange -> handle(exchange, "POST", this::exit));
+        httpServer.createContext("/status", exchange -> handle(exchange, "GET", this::status));
+        httpServer.createContext("/report", exchange -> handle(exchange, "GET", this::report));
+        httpServer.createContext("/reconcile", exchange -> handle(exchange, "POST", this::reconcile));
+        httpServer.start();
+        logger.info("Gate server listening on port {}", getPort());
+    }
+
+    /**
+     * Stops accepting requests and waits up to the given delay for those in progress.
+     */
+    public synchronized void stop(int delaySeconds) {
+        if (httpServer != null) {
+            httpServer.stop(delaySeconds);
+            executor.shutdown();
+            httpServer = null;
+            logger.info("Gate server stopped");
+        }
+    }
+
+    public synchronized int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    /**
+     * @return an executor starting a virtual thread per task if asked and the JDK has them, otherwise a fixed pool.
+     */
+    static ExecutorService createExecutor(int threads, boolean virtualThreads) {
+        if (!virtualThreads) {
+            logger.info("Gate requests run on {} threads", threads);
+            return Executors.newFixedThreadPool(threads);
+        }
+        try {
+            // the application is compiled for Java 8 : looked up at runtime.
+            ExecutorService result = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            logger.info("Gate requests run on virtual threads");
+            return result;
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            logger.info("Virtual threads not available, gate requests run on {} threads", threads);
+            return Executors.newFixedThreadPool(threads);
+        }
+    }
+
+    /**
+     * An answer : HTTP status and JSON body.
+     */
+    static final class Response {
+        final int status;
+        final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    private interface Handler {
+        Response handle(Map<String, String> parameters) throws Exception;
+    }
+
+    private void handle(HttpExchange exchange, String method, Handler handler) throws IOException {
+        Response response;
+        try {
+            if (!method.equals(exchange.getRequestMethod())) {
+                response = error(405, "Method not allowed");
+            } else {
+                response = handler.handle(readParameters(exchange));
+            }
+        } catch (IllegalArgumentException e) {
+            response = error(400, e.getMessage());
+        } catch (Exception e) {
+            logger.error("Error handling {}", exchange.getRequestURI(), e);
+            response = error(500, "Internal error");
+        }
+        byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(response.status, body.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+
+    private Response entry(Map<String, String> parameters) {
+        String vehicleRegNumber = getRequired(parameters, "plate");
+        ParkingType parkingType;
+        try {
+            parkingType = ParkingType.valueOf(getRequired(parameters, "type").toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown vehicle type : " + parameters.get("type"));
+        }
+        EntryResult result = getFacility(parameters).getParkingService().enter(parkingType, vehicleRegNumber);
+        if (!result.isSuccess()) {
+            return error(toHttpStatus(result.getStatus()), result.getErrorMessage());
+        }
+        return new Response(200, "{\"plate\":" + quote(vehicleRegNumber)
+                + ",\"parkingNumber\":" + result.getParkingNumber()
+                + ",\"ticketId\":" + result.getTicketId()
+                + ",\"discount\":" + result.isDiscount()
+                + ",\"inTime\":" + quoteMillis(result.getInTimeMillis()) + "}");
+    }
+
+    private Response exit(Map<String, String> parameters) {
+        String vehicleRegNumber = getRequired(parameters, "plate");
+        ExitResult result = getFacility(parameters).getParkingService().exit(vehicleRegNumber);
+        if (!result.isSuccess()) {
+            return error(toHttpStatus(result.getStatus()), result.getErrorMessage());
+        }
+        return new Response(200, "{\"plate\":" + quote(vehicleRegNumber)
+                + ",\"parkingNumber\":" + result.getParkingNumber()
+                + ",\"fare\":" + String.format(Locale.ROOT, "%.2f", result.getFare())
+                + ",\"discount\":" + result.isDiscount()
+                + ",\"inTime\":" + quoteMillis(result.getInTimeMillis())
+                + ",\"outTime\":" + quoteMillis(result.getOutTimeMillis()) + "}");
+    }
+
+    private static int toHttpStatus(GateStatus status) {
+        switch (status) {
+            case OK:
+                return 200;
+            case INVALID_REQUEST:
+                return 400;
+            case NOT_PARKED:
+                return 404;
+            case PARKING_FULL:
+            case ALREADY_PARKED:
+                return 409;
+            default:
+                return 500;
+        }
+    }
+
+    private Response status(Map<String, String> parameters) {
+        Facility facility = getFacility(parameters);
+        ParkingSpotRepository parkingSpotDAO = facility.getParkingSpotDAO();
+        TicketRepository ticketDAO = facility.getTicketDAO();
+        OccupancyService occupancyService = facility.getParkingService().getOccupancyService();
+        StringBuilder body = new StringBuilder("{\"availableSpots\":{");
+        if (occupancyService != null && occupancyService.isReconciled()) {
+            // the occupancy counters : no database access.
+            appendCounts(body, parkingType -> occupancyService.getFree(parkingType));
+            body.append("},\"usedSpots\":{");
+            appendCounts(body, parkingType -> occupancyService.getUsed(parkingType));
+        } else {
+            // the counts of the types are read at the same time.
+            List<CompletableFuture<Integer>> availableSlotCounts = new ArrayList<>();
+            for (ParkingType parkingType : ParkingType.values()) {
+                availableSlotCounts.add(parkingSpotDAO.getAvailableSlotCountAsync(parkingType));
+            }
+            appendCounts(body, parkingType -> availableSlotCounts.get(parkingType.ordinal()).join());
+        }
+        body.append('}');
+        OpenTicketIndex openTicketIndex = ticketDAO.getOpenTicketIndex();
+        if (openTicketIndex != null) {
+            body.append(",\"parkedVehicles\":").append(openTicketIndex.size());
+        }
+        DataBaseConfig dataBaseConfig = ticketDAO.getDataBaseConfig();
+        PoolStats poolStats = (dataBaseConfig == null) ? null : dataBaseConfig.getPoolStats();
+        if (poolStats != null) {
+            body.append(",\"connections\":{\"active\":").append(poolStats.getActive())
+                    .append(",\"idle\":").append(poolStats.getIdle())
+                    .append(",\"max\":").append(poolStats.getMaxSize())
+                    .append(",\"statementCacheHitRate\":").append(poolStats.getStatementCacheHitRate()).append('}');
+        }
+        return new Response(200, body.append('}').toString());
+    }
+
+    private Response report(Map<String, String> parameters) {
+        RollupService rollupService = getFacility(parameters).getParkingService().getRollupService();
+        if (rollupService == null) {
+            return error(404, "Hourly rollups not enabled");
+        }
+        Date from = getInstant(parameters, "from");
+        Date to = getInstant(parameters, "to");
+        List<HourlyRollup> rollups = rollupService.getRollups(from, to);
+        if (rollups == null) {
+            return error(500, "Unable to read the hourly rollups");
+        }
+        StringBuilder body = new StringBuilder("{\"hours\":[");
+        for (int i = 0; i < rollups.size(); i++) {
+            HourlyRollup rollup = rollups.get(i);
+            if (i > 0) {
+                body.append(',');
+            }
+            body.append("{\"hour\":").append(quote(rollup.getHour()))
+                    .append(",\"type\":").append(quote(rollup.getParkingType().toString()))
+                    .append(",\"entries\":").append(rollup.getEntries())
+                    .append(",\"exits\":").append(rollup.getExits())
+                    .append(",\"revenue\":").append(String.format(Locale.ROOT, "%.2f", rollup.getRevenueCents() / 100.0))
+                    .append(",\"occupiedMinutes\":").append(String.format(Locale.ROOT, "%.1f", rollup.getOccupiedMinutes()))
+                    .append('}');
+        }
+        return new Response(200, body.append("]}").toString());
+    }
+
+    private Response reconcile(Map<String, String> parameters) {
+        OccupancyService occupancyService = getFacility(parameters).getParkingService().getOccupancyService();
+        if (occupancyService == null) {
+            return error(404, "Occupancy counters not enabled");
+        }
+        if (!occupancyService.reconcile()) {
+            return error(500, "Unable to reconcile the occupancy counters");
+        }
+        StringBuilder body = new StringBuilder("{\"availableSpots\":{");
+        appendCounts(body, parkingType -> occupancyService.getFree(parkingType));
+        body.append("},\"usedSpots\":{");
+        appendCounts(body, parkingType -> occupancyService.getUsed(parkingType));
+        return new Response(200, body.append("}}").toString());
+    }
+
+    private static void appendCounts(StringBuilder body, ToLongFunction<ParkingType> count) {
+        for (ParkingType parkingType : ParkingType.values()) {
+            if (parkingType.ordinal() > 0) {
+                body.append(',');
+            }
+            body.append(quote(parkingType.toString())).append(':').append(count.applyAsLong(parkingType));
+        }
+    }
+
+    private static Response error(int status, String message) {
+        return new Response(status, "{\"error\":" + quote(message) + "}");
+    }
+
+    private static String getRequired(Map<String, String> parameters, String name) {
+        String value = parameters.get(name);
+        if (value == null || value.trim().isEmpty()) {
+            throw new IllegalArgumentException("Missing parameter : " + name);
+        }
+        return value.trim();
+    }
+
+    /**
+     * @return the facility named by the facility parameter, or the only one served if it is left out.
+     */
+    private Facility getFacility(Map<String, String> parameters) {
+        String facilityId = parameters.get("facility");
+        if ((facilityId == null || facilityId.trim().isEmpty()) && facilities.size() == 1) {
+            return facilities.values().iterator().next();
+        }
+        Facility facility = facilities.get(getRequired(parameters, "facility"));
+        if (facility == null) {
+            throw new IllegalArgumentException("Unknown facility : " + facilityId);
+        }
+        return facility;
+    }
+
+    private static Date getInstant(Map<String, String> parameters, String name) {
+        String value = getRequired(parameters, name);
+        try {
+            return Date.from(Instant.parse(value));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid instant for " + name + " : " + value);
+        }
+    }
+
+    /**
+     * @return the parameters of the query string, then those of a form body.
+     */
+    static Map<String, String> readParameters(HttpExchange exchange) throws IOException {
+        Map<String, String> result = new HashMap<>();
+        parseParameters(exchange.getRequestURI().getRawQuery(), result);
+        try (InputStream input = exchange.getRequestBody()) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = input.read(buffer)) > 0) {
+                body.write(buffer, 0, read);
+            }
+            parseParameters(new String(body.toByteArray(), StandardCharsets.UTF_8), result);
+        }
+        return result;
+    }
+
+    private static void parseParameters(String encoded, Map<String, String> result) throws UnsupportedEncodingException {
+        if (encoded == null || encoded.isEmpty()) {
+            return;
+        }
+        for (String pair : encoded.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                result.put(URLDecoder.decode(pair.substring(0, separator), "UTF-8"),
+                        URLDecoder.decode(pair.substring(separator + 1), "UTF-8"));
+            }
+        }
+    }
+
+    private static String quote(Date date) {
+        return (date == null) ? "null" : quote(date.toInstant().toString());
+    }
+
+    private static String quoteMillis(long epochMillis) {
+        return (epochMillis == Ticket.NO_TIME) ? "null" : quote(Instant.ofEpochMilli(epochMillis).toString());
+    }
+
+    static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder result = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"':
+                    result.append("\\\"");
+                    break;
+                case '\\':
+                    result.append("\\\\");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        result.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+                    } else {
+                        result.append(c);
+                    }
+            }
+        }
+        return result.append('"').toString();
+    }
+}
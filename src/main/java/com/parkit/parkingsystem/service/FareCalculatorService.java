@@ -7,9 +7,24 @@ import com.parkit.parkingsystem.util.MonetaryUtil;
 
 public class FareCalculatorService {
 
-    private double getHourlyRate (ParkingType type, boolean discount) {
+    private static final long MILLIS_PER_HOUR = 60 * 60 * 1000;
+    // less than 30 minutes, it's free.
+    private static final long FREE_DURATION_MILLIS = MILLIS_PER_HOUR / 2;
+
+    // hourly rates in cents by ParkingType ordinal, without and with discount.
+    private static final long[] HOURLY_RATE_CENTS = new long[ParkingType.values().length];
+    private static final long[] DISCOUNT_HOURLY_RATE_CENTS = new long[ParkingType.values().length];
+
+    static {
+        for (ParkingType type : ParkingType.values()) {
+            HOURLY_RATE_CENTS[type.ordinal()] = Math.round(getHourlyRate(type, false) * 100.0);
+            DISCOUNT_HOURLY_RATE_CENTS[type.ordinal()] = Math.round(getHourlyRate(type, true) * 100.0);
+        }
+    }
+
+    private static double getHourlyRate (ParkingType type, boolean discount) {
         double result = 0 ;
-        
+
         switch (type){
             case CAR: {
                 result = Fare.CAR_RATE_PER_HOUR;
@@ -25,42 +40,62 @@ public class FareCalculatorService {
         if (discount) {
             result *= Fare.RECURRING_USER_DISCOUNT;
         }
-        
+
         return MonetaryUtil.round(result);
     }
-    
-    // separated into several instructions for easier reading.
-    private double calculateTotalPrice (Ticket ticket, double decimalHour, boolean discount) {
-        ParkingType parkingType = ticket.getParkingSpot().getParkingType();
-        double hourlyRate = getHourlyRate (parkingType, discount);
-        return MonetaryUtil.round(decimalHour * hourlyRate);
+
+    /**
+     * Calculates a fare in cents, without creating any object.
+     *
+     * @param inTimeMillis the entry time in epoch milliseconds.
+     * @param outTimeMillis the exit time in epoch milliseconds.
+     * @param parkingTypeOrdinal the ordinal of the ParkingType.
+     * @param discount true for a recurring user.
+     * @return the fare in cents, rounded as the decimal fare always was.
+     */
+    public long calculateFareCents(long inTimeMillis, long outTimeMillis, int parkingTypeOrdinal, boolean discount) {
+        if (parkingTypeOrdinal < 0 || parkingTypeOrdinal >= HOURLY_RATE_CENTS.length) {
+            throw new IllegalArgumentException("Unkown Parking Type");
+        }
+        long duration = outTimeMillis - inTimeMillis;
+        if (duration < 0) {
+            throw new IllegalArgumentException("Out time is before in time");
+        }
+        if (duration < FREE_DURATION_MILLIS) {
+            return 0;
+        }
+        long rate = discount ? DISCOUNT_HOURLY_RATE_CENTS[parkingTypeOrdinal] : HOURLY_RATE_CENTS[parkingTypeOrdinal];
+        long product = duration * rate;
+        long cents = product / MILLIS_PER_HOUR;
+        long remainder = product % MILLIS_PER_HOUR;
+        if (remainder * 2 != MILLIS_PER_HOUR) {
+            return (remainder * 2 > MILLIS_PER_HOUR) ? cents + 1 : cents;
+        }
+        // exactly half a cent : the decimal fare rounded some of these down (41 minutes of car gave 1.02),
+        // the tie is settled the same way so that the fares stay unchanged.
+        return Math.round((double) duration / MILLIS_PER_HOUR * (rate / 100.0) * 100.0);
     }
-    
+
     public void calculateFare(Ticket ticket, boolean discount){
         if (ticket == null) {
             throw new IllegalArgumentException("Ticket cannot be null");
         }
-        if ((ticket.getOutTime() == null) || (ticket.getInTime() == null)) {
+        if ((ticket.getOutTimeMillis() == Ticket.NO_TIME) || (ticket.getInTimeMillis() == Ticket.NO_TIME)) {
             // do not display the time because ticket is null.
             throw new IllegalArgumentException("Out time or in time is incorrect"); // +ticket.getOutTime().toString()
         }
-        if (ticket.getOutTime().before(ticket.getInTime())){
+        if (ticket.getOutTimeMillis() < ticket.getInTimeMillis()){
             // do not display the time because ticket is null
-            throw new IllegalArgumentException("Out time is before in time"); 
+            throw new IllegalArgumentException("Out time is before in time");
         }
 
-        double decimalHour = (double) (ticket.getOutTime().getTime() - ticket.getInTime().getTime()) / (60 * 60 * 1000);
-        
-        // less than 30 minutes, it's free.
-        if (decimalHour < 0.5) {
-            ticket.setPrice(0) ;
-        } else {
-            ticket.setPrice(calculateTotalPrice (ticket, decimalHour, discount));
-        }
+        long cents = calculateFareCents(ticket.getInTimeMillis(), ticket.getOutTimeMillis(),
+                ticket.getParkingSpot().getParkingType().ordinal(), discount);
+        ticket.setPrice(cents / 100.0);
     }
 
     public void calculateFare(Ticket ticket) {
         calculateFare(ticket, false);
     }
-    
-}
\ No newline at end of file
+
+}
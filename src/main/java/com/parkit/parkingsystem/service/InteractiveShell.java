@@ -1,7 +1,9 @@
 package com.parkit.parkingsystem.service;
 
 import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.ParkingSpotRepository;
 import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.TicketRepository;
 import com.parkit.parkingsystem.util.InputReaderUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -11,14 +13,24 @@ public class InteractiveShell {
     private static final Logger logger = LogManager.getLogger("InteractiveShell");
 
     public static void loadInterface(){
+        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+        if (!parkingSpotDAO.loadParkingSpotAllocator()) {
+            logger.warn("Parking spot allocator not loaded, parking spots will be read from the database");
+        }
+        TicketDAO ticketDAO = new TicketDAO();
+        if (!ticketDAO.loadOpenTicketIndex()) {
+            logger.warn("Open ticket index not loaded, exits will read tickets from the database");
+        }
+        loadInterface(parkingSpotDAO, ticketDAO);
+    }
+
+    public static void loadInterface(ParkingSpotRepository parkingSpotRepository, TicketRepository ticketRepository){
         logger.info("App initialized!!!");
         System.out.println("Welcome to Parking System!");
 
         boolean continueApp = true;
         InputReaderUtil inputReaderUtil = new InputReaderUtil();
-        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
-        TicketDAO ticketDAO = new TicketDAO();
-        ParkingService parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
+        ParkingService parkingService = new ParkingService(inputReaderUtil, parkingSpotRepository, ticketRepository);
 
         while(continueApp){
             loadMenu();
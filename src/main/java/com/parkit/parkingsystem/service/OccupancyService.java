@@ -0,0 +1,172 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotRepository;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Free and used spots per parking type, kept in memory for the display boards and dashboards.
+ *
+ * The counters are striped (LongAdder), so gates updating them at the same time do not contend, and reading
+ * them never touches the database. ParkingService updates them once each claim or release is committed.
+ * reconcile() sets them again from the parking table, at startup or on demand while the gates are open.
+ * No lock is held : the gate operations count their start and their end, also striped. reconcile() takes the
+ * counters when no operation is in progress, reads the table, and if still no operation has started, adds
+ * the difference between the table and the counters taken. Otherwise it tries again, the gates never wait.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class OccupancyService {
+
+    private static final Logger logger = LogManager.getLogger("OccupancyService");
+
+    private static final int MAX_RECONCILE_ATTEMPTS = 50;
+    private static final long RECONCILE_RETRY_MILLIS = 10;
+
+    private final ParkingSpotRepository parkingSpotDAO;
+    // by parking type ordinal.
+    private final LongAdder[] free = newAdders(ParkingType.values().length);
+    private final LongAdder[] used = newAdders(ParkingType.values().length);
+    // the gate operations started and ended : equal when none is in progress.
+    private final LongAdder changesStarted = new LongAdder();
+    private final LongAdder changesEnded = new LongAdder();
+    // false until the first reconcile : the spots taken and freed before are not counted.
+    private volatile boolean reconciled;
+
+    public OccupancyService(ParkingSpotRepository parkingSpotDAO) {
+        if (parkingSpotDAO == null) {
+            throw new IllegalArgumentException("Invalid argument in OccupancyService");
+        }
+        this.parkingSpotDAO = parkingSpotDAO;
+    }
+
+    private static LongAdder[] newAdders(int length) {
+        LongAdder[] result = new LongAdder[length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = new LongAdder();
+        }
+        return result;
+    }
+
+    /**
+     * Sets the counters from the parking table : the capacity of each type, and the free spots as the
+     * allocator sees them when it is loaded.
+     *
+     * @return true if the counters could be set, false if the table could not be read, or if the gates
+     * kept changing spots during every read.
+     */
+    public boolean reconcile() {
+        for (int attempt = 0; attempt < MAX_RECONCILE_ATTEMPTS; attempt++) {
+            // ended is read first : an operation in progress always makes started the greatest.
+            long ended = changesEnded.sum();
+            long started = changesStarted.sum();
+            if (started == ended) {
+                long[] counted = new long[free.length * 2];
+                for (int i = 0; i < free.length; i++) {
+                    counted[i] = free[i].sum();
+                    counted[free.length + i] = used[i].sum();
+                }
+                long[] read = read();
+                if (read == null) {
+                    return false;
+                }
+                if (changesStarted.sum() == started) {
+                    // the counters taken and the table read see the same spots : the difference is the drift.
+                    for (int i = 0; i < free.length; i++) {
+                        free[i].add(read[i] - counted[i]);
+                        used[i].add(read[free.length + i] - counted[free.length + i]);
+                    }
+                    reconciled = true;
+                    logger.info("Occupancy reconciled after {} attempts", attempt + 1);
+                    return true;
+                }
+            }
+            try {
+                Thread.sleep(RECONCILE_RETRY_MILLIS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        logger.error("Occupancy not reconciled : the gates kept changing spots after {} attempts", MAX_RECONCILE_ATTEMPTS);
+        return false;
+    }
+
+    // the free then the used spots by parking type ordinal, or null if the table could not be read.
+    private long[] read() {
+        List<ParkingSpot> parkingSpots = parkingSpotDAO.getParkingSpots();
+        if (parkingSpots == null) {
+            return null;
+        }
+        long[] capacity = new long[free.length];
+        for (ParkingSpot parkingSpot : parkingSpots) {
+            capacity[parkingSpot.getParkingType().ordinal()]++;
+        }
+        long[] result = new long[free.length * 2];
+        for (ParkingType parkingType : ParkingType.values()) {
+            int available = parkingSpotDAO.getAvailableSlotCount(parkingType);
+            if (available < 0) {
+                return null;
+            }
+            result[parkingType.ordinal()] = available;
+            result[free.length + parkingType.ordinal()] = capacity[parkingType.ordinal()] - available;
+        }
+        return result;
+    }
+
+    public boolean isReconciled() {
+        return reconciled;
+    }
+
+    /**
+     * Called by a gate operation before it claims or frees spots : reconcile() does not use a read made
+     * until endChange().
+     */
+    public void beginChange() {
+        changesStarted.increment();
+    }
+
+    /**
+     * Called by a gate operation once it is committed and counted, or rolled back.
+     */
+    public void endChange() {
+        changesEnded.increment();
+    }
+
+    /**
+     * Records a spot of this type taken by a vehicle.
+     */
+    public void claimed(ParkingType parkingType) {
+        free[parkingType.ordinal()].decrement();
+        used[parkingType.ordinal()].increment();
+    }
+
+    /**
+     * Records a spot of this type freed by a vehicle.
+     */
+    public void released(ParkingType parkingType) {
+        used[parkingType.ordinal()].decrement();
+        free[parkingType.ordinal()].increment();
+    }
+
+    /**
+     * @return the free spots of this type, or -1 before the first reconcile.
+     */
+    public long getFree(ParkingType parkingType) {
+        return reconciled ? free[parkingType.ordinal()].sum() : -1;
+    }
+
+    /**
+     * @return the used spots of this type, or -1 before the first reconcile.
+     */
+    public long getUsed(ParkingType parkingType) {
+        return reconciled ? used[parkingType.ordinal()].sum() : -1;
+    }
+}
@@ -1,68 +1,177 @@
 package com.parkit.parkingsystem.service;
 
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.UnitOfWork;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.GateStatus;
 import com.parkit.parkingsystem.constants.ParkingType;
-import com.parkit.parkingsystem.dao.ParkingSpotDAO;
-import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.ParkingSpotRepository;
+import com.parkit.parkingsystem.dao.TicketRepository;
+import com.parkit.parkingsystem.metrics.Counter;
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.metrics.PerFacility;
+import com.parkit.parkingsystem.metrics.Timer;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.ExitResult;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.model.VehicleEntry;
+import com.parkit.parkingsystem.model.VehicleResult;
 import com.parkit.parkingsystem.util.InputReaderUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.util.Date;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 public class ParkingService {
 
     private static final Logger logger = LogManager.getLogger("ParkingService");
 
+    private static final PerFacility<Timer> ENTER_TIMER = Metrics.timers("ParkingService", "enter");
+    private static final PerFacility<Timer> EXIT_TIMER = Metrics.timers("ParkingService", "exit");
+    private static final PerFacility<Timer> PROCESS_INCOMING_VEHICLES_TIMER = Metrics.timers("ParkingService", "processIncomingVehicles");
+    private static final PerFacility<Timer> PROCESS_EXITING_VEHICLES_TIMER = Metrics.timers("ParkingService", "processExitingVehicles");
+    private static final PerFacility<Counter> FULL_REJECTIONS = Metrics.counters("ParkingService", "fullRejections");
+    private static final PerFacility<Counter> DISCOUNTS = Metrics.counters("ParkingService", "discounts");
+
     private static FareCalculatorService fareCalculatorService = new FareCalculatorService();
 
     private InputReaderUtil inputReaderUtil;
-    private ParkingSpotDAO parkingSpotDAO;
-    private TicketDAO ticketDAO;
+    private ParkingSpotRepository parkingSpotDAO;
+    private TicketRepository ticketDAO;
+    // shared by the DAOs, null when they are mocks or the storage is embedded.
+    private DataBaseConfig dataBaseConfig;
+    // null unless setOccupancyService() is called.
+    private volatile OccupancyService occupancyService;
+    // null unless setRollupService() is called.
+    private volatile RollupService rollupService;
 
     private boolean isDiscount (String vehicleRegNumber) {
         return ticketDAO.getNbTicket(vehicleRegNumber) > 1;
     }
     
-    public ParkingService(InputReaderUtil inputReaderUtil, ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO){
+    public ParkingService(InputReaderUtil inputReaderUtil, ParkingSpotRepository parkingSpotDAO, TicketRepository ticketDAO){
         if ((inputReaderUtil == null) || (parkingSpotDAO == null) || (ticketDAO == null)) {
             throw new IllegalArgumentException("Invalid argument in ParkingService");
         }
         this.inputReaderUtil = inputReaderUtil;
         this.parkingSpotDAO = parkingSpotDAO;
         this.ticketDAO = ticketDAO;
+        this.dataBaseConfig = ticketDAO.getDataBaseConfig();
+    }
+
+    /**
+     * From now on the occupancy counters follow the spots claimed and released by this service.
+     */
+    public void setOccupancyService(OccupancyService occupancyService) {
+        this.occupancyService = occupancyService;
+    }
+
+    public OccupancyService getOccupancyService() {
+        return occupancyService;
+    }
+
+    /**
+     * From now on the hourly rollups follow the entries and exits committed by this service.
+     */
+    public void setRollupService(RollupService rollupService) {
+        this.rollupService = rollupService;
     }
 
+    public RollupService getRollupService() {
+        return rollupService;
+    }
+
+    /**
+     * Console entry : asks the vehicle type and registration number, then lets the vehicle in with enter().
+     */
     public void processIncomingVehicle() {
-        try{
-            ParkingSpot parkingSpot = getNextParkingNumberIfAvailable();
-            if(parkingSpot !=null && parkingSpot.getId() > 0){
-                String vehicleRegNumber = getVehicleRegNumber();
-                parkingSpot.setAvailable(false);
-                parkingSpotDAO.updateParking(parkingSpot);//allot this parking space and mark it's availability as false
-                Date inTime = new Date();
-                Ticket ticket = new Ticket();
-                //ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
-                //ticket.setId(ticketID);
-                ticket.setParkingSpot(parkingSpot);
-                ticket.setVehicleRegNumber(vehicleRegNumber);
-                ticket.setPrice(0);
-                ticket.setInTime(inTime);
-                ticket.setOutTime(null);
-                ticketDAO.saveTicket(ticket);
-                System.out.println("Generated Ticket and saved in DB");
-                // warning for discount : > 1 because there is always at least one ticket, the current ticket.
-                if (isDiscount(vehicleRegNumber))
-                    System.out.println("Nice to see you again! To thank you for your loyalty, we are happy to offer you a 5% discount");
-                System.out.println("Please park your vehicle in spot number:"+parkingSpot.getId());
-                System.out.println("Recorded in-time for vehicle number:"+vehicleRegNumber+" is:"+inTime);
+        ParkingSpot parkingSpot = getNextParkingNumberIfAvailable();
+        if (parkingSpot == null || parkingSpot.getId() <= 0) {
+            return;
+        }
+        String vehicleRegNumber;
+        try {
+            vehicleRegNumber = getVehicleRegNumber();
+        } catch (Exception e) {
+            logger.error("Unable to process incoming vehicle", e);
+            return;
+        }
+        EntryResult result = enter(parkingSpot.getParkingType(), vehicleRegNumber);
+        if (!result.isSuccess()) {
+            logger.error("Unable to process incoming vehicle : {}", result.getErrorMessage());
+            return;
+        }
+        System.out.println("Generated Ticket and saved in DB");
+        if (result.isDiscount())
+            System.out.println("Nice to see you again! To thank you for your loyalty, we are happy to offer you a 5% discount");
+        System.out.println("Please park your vehicle in spot number:"+result.getParkingNumber());
+        System.out.println("Recorded in-time for vehicle number:"+vehicleRegNumber+" is:"+result.getInTime());
+    }
+
+    /**
+     * Lets a vehicle in : claims a spot of its type and saves its ticket, together or not at all.
+     * Nothing is read from or written to the console, so gates may call it concurrently.
+     *
+     * @return the spot, ticket id and discount of the vehicle, or why it could not enter.
+     */
+    public EntryResult enter(ParkingType parkingType, String vehicleRegNumber) {
+        Timer timer = ENTER_TIMER.of(facilityId());
+        long start = timer.start();
+        EntryResult result = doEnter(parkingType, vehicleRegNumber);
+        timer.stop(start);
+        countOutcome(timer, result.getStatus(), result.isDiscount());
+        return result;
+    }
+
+    private EntryResult doEnter(ParkingType parkingType, String vehicleRegNumber) {
+        if (parkingType == null || !isValidRegNumber(vehicleRegNumber)) {
+            return EntryResult.fail(vehicleRegNumber, GateStatus.INVALID_REQUEST, "Invalid vehicle registration number or type");
+        }
+        long inTimeMillis = System.currentTimeMillis();
+        OccupancyService occupancy = beginOccupancyChange();
+        try (UnitOfWork unitOfWork = beginUnitOfWork()) {
+            if (isParked(vehicleRegNumber)) {
+                return EntryResult.fail(vehicleRegNumber, GateStatus.ALREADY_PARKED, "Vehicle is already in the parking");
             }
-        }catch(Exception e){
-            logger.error("Unable to process incoming vehicle",e);
+            //allot a parking space of this type : another gate may have taken the one seen as free.
+            int parkingNumber = parkingSpotDAO.claimNextAvailableSlot(parkingType);
+            if (parkingNumber <= 0) {
+                return EntryResult.fail(vehicleRegNumber, GateStatus.PARKING_FULL, "Parking slots might be full");
+            }
+            countClaim(parkingType);
+            Ticket ticket = new Ticket();
+            //ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
+            ticket.setParkingSpot(new ParkingSpot(parkingNumber, parkingType, false));
+            ticket.setVehicleRegNumber(vehicleRegNumber);
+            ticket.setPrice(0);
+            ticket.setInTimeMillis(inTimeMillis);
+            if (!ticketDAO.saveTicket(ticket)) {
+                throw new Exception("Error saving ticket in DB");
+            }
+            recordEntry(ticket);
+            // warning for discount : > 1 because there is always at least one ticket, the current ticket.
+            boolean discount = isDiscount(vehicleRegNumber);
+            unitOfWork.commit();
+            return EntryResult.succeed(ticket, discount);
+        } catch (Exception e) {
+            logger.error("Unable to process incoming vehicle", e);
+            return EntryResult.fail(vehicleRegNumber, GateStatus.ERROR, "Unable to save ticket");
+        } finally {
+            endOccupancyChange(occupancy);
         }
     }
 
+    // the vehicle has an open ticket.
+    private boolean isParked(String vehicleRegNumber) {
+        Ticket ticket = ticketDAO.getTicket(vehicleRegNumber);
+        return ticket != null && !ticket.hasOutTime();
+    }
+
     private String getVehicleRegNumber() throws Exception {
         System.out.println("Please type the vehicle registration number and press enter key");
         return inputReaderUtil.readVehicleRegistrationNumber();
@@ -106,25 +215,352 @@ public class ParkingService {
         }
     }
 
+    /**
+     * Console exit : asks the registration number, then lets the vehicle out with exit().
+     */
     public void processExitingVehicle() {
-        try{
-            String vehicleRegNumber = getVehicleRegNumber();
+        String vehicleRegNumber;
+        try {
+            vehicleRegNumber = getVehicleRegNumber();
+        } catch (Exception e) {
+            logger.error("Unable to process exiting vehicle", e);
+            return;
+        }
+        ExitResult result = exit(vehicleRegNumber);
+        if (result.getStatus() == GateStatus.ERROR) {
+            System.out.println("Unable to update ticket information. Error occurred");
+            return;
+        }
+        if (!result.isSuccess()) {
+            logger.error("Unable to process exiting vehicle : {}", result.getErrorMessage());
+            return;
+        }
+        System.out.println("Please pay the parking fare:" + String.format("%.2f", result.getFare()));
+        System.out.println("Recorded out-time for vehicle number:" + vehicleRegNumber + " is:" + result.getOutTime());
+    }
+
+    /**
+     * Lets a vehicle out : prices its ticket and frees its spot, together or not at all.
+     * Nothing is read from or written to the console, so gates may call it concurrently.
+     *
+     * @return the fare and the times of the visit, or why the vehicle could not leave.
+     */
+    public ExitResult exit(String vehicleRegNumber) {
+        Timer timer = EXIT_TIMER.of(facilityId());
+        long start = timer.start();
+        ExitResult result = doExit(vehicleRegNumber);
+        timer.stop(start);
+        countOutcome(timer, result.getStatus(), result.isDiscount());
+        return result;
+    }
+
+    private ExitResult doExit(String vehicleRegNumber) {
+        if (!isValidRegNumber(vehicleRegNumber)) {
+            return ExitResult.fail(vehicleRegNumber, GateStatus.INVALID_REQUEST, "Invalid vehicle registration number");
+        }
+        long outTimeMillis = System.currentTimeMillis();
+        OccupancyService occupancy = beginOccupancyChange();
+        try (UnitOfWork unitOfWork = beginUnitOfWork()) {
             Ticket ticket = ticketDAO.getTicket(vehicleRegNumber);
-            Date outTime = new Date();
-            ticket.setOutTime(outTime);
+            if (ticket == null || ticket.hasOutTime()) {
+                return ExitResult.fail(vehicleRegNumber, GateStatus.NOT_PARKED, "Vehicle is not in the parking");
+            }
+            ticket.setOutTimeMillis(outTimeMillis);
             // warning for discount : > 1 because there is always at least one ticket, the current ticket.
-            fareCalculatorService.calculateFare(ticket, isDiscount(vehicleRegNumber));
-            if(ticketDAO.updateTicket(ticket)) {
+            boolean discount = readNbTicket(vehicleRegNumber) > 1;
+            fareCalculatorService.calculateFare(ticket, discount);
+            if (!ticketDAO.updateTicket(ticket)) {
+                // another exit closed the ticket first : nothing is freed or counted twice.
+                return ExitResult.fail(vehicleRegNumber, GateStatus.NOT_PARKED, "Vehicle is not in the parking");
+            }
+            ParkingSpot parkingSpot = ticket.getParkingSpot();
+            parkingSpot.setAvailable(true);
+            if (!parkingSpotDAO.updateParking(parkingSpot)) {
+                throw new Exception("Error freeing parking spot in DB");
+            }
+            countRelease(parkingSpot.getParkingType());
+            recordExit(ticket);
+            unitOfWork.commit();
+            return ExitResult.succeed(vehicleRegNumber, ticket, discount);
+        } catch (Exception e) {
+            logger.error("Unable to process exiting vehicle", e);
+            return ExitResult.fail(vehicleRegNumber, GateStatus.ERROR, "Unable to update ticket information");
+        } finally {
+            endOccupancyChange(occupancy);
+        }
+    }
+
+    /**
+     * Lets a burst of vehicles in, in one transaction. Each vehicle claims its own spot, then all the tickets
+     * are inserted with a single JDBC batch.
+     *
+     * @param vehicleEntries the vehicles at the gates.
+     * @return one result per vehicle, in the same order. If the batch cannot be written, every vehicle fails.
+     */
+    public List<VehicleResult> processIncomingVehicles(List<VehicleEntry> vehicleEntries) {
+        if (vehicleEntries == null) {
+            throw new IllegalArgumentException("Vehicle entries cannot be null");
+        }
+        Timer timer = PROCESS_INCOMING_VEHICLES_TIMER.of(facilityId());
+        long start = timer.start();
+        List<VehicleResult> results = doProcessIncomingVehicles(vehicleEntries);
+        timer.stop(start);
+        return results;
+    }
+
+    private List<VehicleResult> doProcessIncomingVehicles(List<VehicleEntry> vehicleEntries) {
+        List<VehicleResult> results = new ArrayList<>(vehicleEntries.size());
+        List<VehicleResult> admitted = new ArrayList<>();
+        List<Ticket> tickets = new ArrayList<>();
+        Set<String> entering = new HashSet<>();
+        OccupancyService occupancy = beginOccupancyChange();
+        try (UnitOfWork unitOfWork = beginUnitOfWork()) {
+            long inTimeMillis = System.currentTimeMillis();
+            for (VehicleEntry vehicleEntry : vehicleEntries) {
+                VehicleResult result = new VehicleResult(vehicleEntry.getVehicleRegNumber());
+                results.add(result);
+                if (!isValidRegNumber(vehicleEntry.getVehicleRegNumber()) || vehicleEntry.getParkingType() == null) {
+                    result.fail("Invalid vehicle registration number or type");
+                    continue;
+                }
+                // the same vehicle cannot enter twice, in one batch or while it is in the parking.
+                if (!entering.add(vehicleEntry.getVehicleRegNumber()) || isParked(vehicleEntry.getVehicleRegNumber())) {
+                    result.fail("Vehicle is already in the parking");
+                    continue;
+                }
+                int parkingNumber = parkingSpotDAO.claimNextAvailableSlot(vehicleEntry.getParkingType());
+                if (parkingNumber <= 0) {
+                    FULL_REJECTIONS.of(facilityId()).increment();
+                    result.fail("Parking slots might be full");
+                    continue;
+                }
+                countClaim(vehicleEntry.getParkingType());
+                Ticket ticket = new Ticket();
+                ticket.setParkingSpot(new ParkingSpot(parkingNumber, vehicleEntry.getParkingType(), false));
+                ticket.setVehicleRegNumber(vehicleEntry.getVehicleRegNumber());
+                ticket.setPrice(0);
+                ticket.setInTimeMillis(inTimeMillis);
+                tickets.add(ticket);
+                admitted.add(result);
+                result.succeed(ticket, false);
+            }
+            if (!tickets.isEmpty() && !allTrue(ticketDAO.saveTickets(tickets), tickets.size())) {
+                throw new Exception("Error saving tickets in DB");
+            }
+            for (Ticket ticket : tickets) {
+                recordEntry(ticket);
+            }
+            for (VehicleResult result : admitted) {
+                // > 1 because the ticket just saved is counted.
+                result.succeed(result.getTicket(), isDiscount(result.getVehicleRegNumber()));
+            }
+            unitOfWork.commit();
+            countDiscounts(admitted);
+        } catch (Exception e) {
+            logger.error("Unable to process incoming vehicles", e);
+            PROCESS_INCOMING_VEHICLES_TIMER.of(facilityId()).failed();
+            failAll(admitted, "Unable to save tickets");
+        } finally {
+            endOccupancyChange(occupancy);
+        }
+        return results;
+    }
+
+    /**
+     * Lets a burst of vehicles out, in one transaction. The tickets and the freed spots are each written
+     * with a single JDBC batch.
+     *
+     * @param vehicleRegNumbers the vehicles at the gates.
+     * @return one result per vehicle, in the same order. If the batch cannot be written, every vehicle fails.
+     */
+    public List<VehicleResult> processExitingVehicles(List<String> vehicleRegNumbers) {
+        if (vehicleRegNumbers == null) {
+            throw new IllegalArgumentException("Vehicle registration numbers cannot be null");
+        }
+        Timer timer = PROCESS_EXITING_VEHICLES_TIMER.of(facilityId());
+        long start = timer.start();
+        List<VehicleResult> results = doProcessExitingVehicles(vehicleRegNumbers);
+        timer.stop(start);
+        return results;
+    }
+
+    private List<VehicleResult> doProcessExitingVehicles(List<String> vehicleRegNumbers) {
+        List<VehicleResult> results = new ArrayList<>(vehicleRegNumbers.size());
+        List<VehicleResult> leaving = new ArrayList<>();
+        List<Ticket> tickets = new ArrayList<>();
+        List<ParkingSpot> parkingSpots = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        OccupancyService occupancy = beginOccupancyChange();
+        try (UnitOfWork unitOfWork = beginUnitOfWork()) {
+            long outTimeMillis = System.currentTimeMillis();
+            for (String vehicleRegNumber : vehicleRegNumbers) {
+                VehicleResult result = new VehicleResult(vehicleRegNumber);
+                results.add(result);
+                // the same vehicle cannot leave twice in one batch.
+                Ticket ticket = (isValidRegNumber(vehicleRegNumber) && seen.add(vehicleRegNumber)) ? ticketDAO.getTicket(vehicleRegNumber) : null;
+                if (ticket == null || ticket.hasOutTime()) {
+                    result.fail("Vehicle is not in the parking");
+                    continue;
+                }
+                tickets.add(ticket);
+                leaving.add(result);
+            }
+            for (int i = 0; i < tickets.size(); i++) {
+                Ticket ticket = tickets.get(i);
+                boolean discount = readNbTicket(leaving.get(i).getVehicleRegNumber()) > 1;
+                ticket.setOutTimeMillis(outTimeMillis);
+                fareCalculatorService.calculateFare(ticket, discount);
                 ParkingSpot parkingSpot = ticket.getParkingSpot();
                 parkingSpot.setAvailable(true);
-                parkingSpotDAO.updateParking(parkingSpot);
-                System.out.println("Please pay the parking fare:" + String.format("%.2f",ticket.getPrice()));
-                System.out.println("Recorded out-time for vehicle number:" + ticket.getVehicleRegNumber() + " is:" + outTime);
-            }else{
-                System.out.println("Unable to update ticket information. Error occurred");
+                parkingSpots.add(parkingSpot);
+                leaving.get(i).succeed(ticket, discount);
             }
-        }catch(Exception e){
-            logger.error("Unable to process exiting vehicle",e);
+            if (!tickets.isEmpty()) {
+                boolean[] updated = ticketDAO.updateTickets(tickets);
+                if (updated == null || updated.length != tickets.size()) {
+                    throw new Exception("Error updating tickets in DB");
+                }
+                // the tickets closed meanwhile by another exit : nothing is freed or counted twice.
+                for (int i = tickets.size() - 1; i >= 0; i--) {
+                    if (!updated[i]) {
+                        leaving.remove(i).fail("Vehicle is not in the parking");
+                        tickets.remove(i);
+                        parkingSpots.remove(i);
+                    }
+                }
+                if (!parkingSpots.isEmpty() && !allTrue(parkingSpotDAO.updateParkings(parkingSpots), parkingSpots.size())) {
+                    throw new Exception("Error freeing parking spots in DB");
+                }
+                for (ParkingSpot parkingSpot : parkingSpots) {
+                    countRelease(parkingSpot.getParkingType());
+                }
+                for (Ticket ticket : tickets) {
+                    recordExit(ticket);
+                }
+            }
+            unitOfWork.commit();
+            countDiscounts(leaving);
+        } catch (Exception e) {
+            logger.error("Unable to process exiting vehicles", e);
+            PROCESS_EXITING_VEHICLES_TIMER.of(facilityId()).failed();
+            failAll(leaving, "Unable to update tickets");
+        } finally {
+            endOccupancyChange(occupancy);
+        }
+        return results;
+    }
+
+    // the timer counts the failures, the full parking and the discounts have counters of their own.
+    private void countOutcome(Timer timer, GateStatus status, boolean discount) {
+        if (status == GateStatus.ERROR) {
+            timer.failed();
+        } else if (status == GateStatus.PARKING_FULL) {
+            FULL_REJECTIONS.of(facilityId()).increment();
+        } else if (status == GateStatus.OK && discount) {
+            DISCOUNTS.of(facilityId()).increment();
+        }
+    }
+
+    private void countDiscounts(List<VehicleResult> results) {
+        for (VehicleResult result : results) {
+            if (result.isDiscount()) {
+                DISCOUNTS.of(facilityId()).increment();
+            }
+        }
+    }
+
+    // read on the connection of the unit of work : a gate never holds two connections of the pool.
+    // A count that cannot be read fails the exit, rather than pricing it without the discount.
+    private int readNbTicket(String vehicleRegNumber) throws Exception {
+        int nbTicket = ticketDAO.getNbTicket(vehicleRegNumber);
+        if (nbTicket < 0) {
+            throw new Exception("Error reading the number of tickets in DB");
+        }
+        return nbTicket;
+    }
+
+    // the facility of the DAOs, null for the default facility or the embedded storage.
+    private String facilityId() {
+        return (dataBaseConfig == null) ? null : dataBaseConfig.getFacilityId();
+    }
+
+    // reconcile does not use a table read made while the operation claims or frees spots, not counted yet.
+    private OccupancyService beginOccupancyChange() {
+        OccupancyService occupancy = occupancyService;
+        if (occupancy != null) {
+            occupancy.beginChange();
+        }
+        return occupancy;
+    }
+
+    private static void endOccupancyChange(OccupancyService occupancy) {
+        if (occupancy != null) {
+            occupancy.endChange();
+        }
+    }
+
+    // the counters only change once the claim or the release is committed.
+    private void countClaim(ParkingType parkingType) {
+        OccupancyService occupancy = occupancyService;
+        if (occupancy != null) {
+            UnitOfWork.afterCommit(() -> occupancy.claimed(parkingType));
+        }
+    }
+
+    private void countRelease(ParkingType parkingType) {
+        OccupancyService occupancy = occupancyService;
+        if (occupancy != null) {
+            UnitOfWork.afterCommit(() -> occupancy.released(parkingType));
+        }
+    }
+
+    // like the counters, the rollups only change once the entry or the exit is committed.
+    private void recordEntry(Ticket ticket) {
+        RollupService rollups = rollupService;
+        if (rollups != null) {
+            ParkingType parkingType = ticket.getParkingSpot().getParkingType();
+            long inTimeMillis = ticket.getInTimeMillis();
+            UnitOfWork.afterCommit(() -> rollups.entered(parkingType, inTimeMillis));
+        }
+    }
+
+    private void recordExit(Ticket ticket) {
+        RollupService rollups = rollupService;
+        if (rollups != null) {
+            ParkingType parkingType = ticket.getParkingSpot().getParkingType();
+            long inTimeMillis = ticket.getInTimeMillis();
+            long outTimeMillis = ticket.getOutTimeMillis();
+            long priceCents = Math.round(ticket.getPrice() * 100);
+            UnitOfWork.afterCommit(() -> rollups.exited(parkingType, inTimeMillis, outTimeMillis, priceCents));
+        }
+    }
+
+    // write-behind or embedded storage : no database transaction is needed, only the commit and rollback actions.
+    private UnitOfWork beginUnitOfWork() throws ClassNotFoundException, SQLException {
+        return ticketDAO.writesOutsideTransaction() ? UnitOfWork.beginLocal() : UnitOfWork.begin(dataBaseConfig);
+    }
+
+    // a registration number longer than its column would be refused by the database once the gate has answered.
+    private static boolean isValidRegNumber(String vehicleRegNumber) {
+        return vehicleRegNumber != null && vehicleRegNumber.trim().length() > 0
+                && vehicleRegNumber.length() <= DBConstants.VEHICLE_REG_NUMBER_LENGTH;
+    }
+
+    private static boolean allTrue(boolean[] values, int expectedSize) {
+        if (values == null || values.length != expectedSize) {
+            return false;
+        }
+        for (boolean value : values) {
+            if (!value) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void failAll(List<VehicleResult> results, String errorMessage) {
+        for (VehicleResult result : results) {
+            result.fail(errorMessage);
         }
     }
 }
@@ -0,0 +1,275 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.UnitOfWork;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.RepricingReport;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Recomputes the price of the closed tickets with the current fares, after a tariff change or for a dispute.
+ *
+ * The tickets are streamed in id order on a connection of their own, so memory does not depend on the size
+ * of the table. They are priced by batches on a fork-join pool, and the changed prices are written back
+ * by batched updates, one transaction per batch. After each batch the id of its last ticket is saved in
+ * the checkpoint file, from which an interrupted run can resume.
+ *
+ * The ticket table is read first, then the archive : a ticket archived after it was read is not updated
+ * in the ticket table, and is repriced by the second pass.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class RepricingService {
+
+    private static final Logger logger = LogManager.getLogger("RepricingService");
+
+    // one pass per table, in this order.
+    private static final String[] TABLES = {"ticket", "ticket_archive"};
+    private static final String[] GET_CLOSED_TICKETS = {DBConstants.GET_CLOSED_TICKETS_FROM, DBConstants.GET_CLOSED_ARCHIVED_TICKETS_FROM};
+    private static final String[] REPRICE_TICKETS = {DBConstants.REPRICE_TICKET, DBConstants.REPRICE_ARCHIVED_TICKET};
+    // the checkpoint of the archive pass is prefixed by the table name, the one of the ticket pass is the id alone.
+    private static final String ARCHIVE_CHECKPOINT_PREFIX = TABLES[1] + ":";
+
+    public DataBaseConfig dataBaseConfig = new DataBaseConfig();
+
+    private final FareCalculatorService fareCalculatorService = new FareCalculatorService();
+    private final int batchSize;
+    private final int parallelism;
+    private final Path checkpointFile;
+
+    // one batch of tickets, reused from one batch to the next.
+    private final long[] ids;
+    private final String[] vehicleRegNumbers;
+    private final long[] inTimes;
+    private final long[] outTimes;
+    private final int[] parkingTypes;
+    private final boolean[] discounts;
+    private final long[] oldCents;
+    private final long[] newCents;
+
+    public RepricingService(int batchSize, int parallelism, Path checkpointFile) {
+        if (batchSize <= 0 || parallelism <= 0 || checkpointFile == null) {
+            throw new IllegalArgumentException("Invalid argument in RepricingService");
+        }
+        this.batchSize = batchSize;
+        this.parallelism = parallelism;
+        this.checkpointFile = checkpointFile;
+        ids = new long[batchSize];
+        vehicleRegNumbers = new String[batchSize];
+        inTimes = new long[batchSize];
+        outTimes = new long[batchSize];
+        parkingTypes = new int[batchSize];
+        discounts = new boolean[batchSize];
+        oldCents = new long[batchSize];
+        newCents = new long[batchSize];
+    }
+
+    /**
+     * @param dryRun true to only print the prices that would change, without writing anything.
+     * @param resume true to start after the ticket recorded in the checkpoint file, if any.
+     * @param diff where the changed prices are printed in dry run.
+     * @return what was read and changed, or null on error. After an error the checkpoint file is left as is.
+     */
+    public RepricingReport reprice(boolean dryRun, boolean resume, PrintStream diff) {
+        RepricingReport report = new RepricingReport();
+        report.setDryRun(dryRun);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        long startTime = System.nanoTime();
+
+        try {
+            String checkpoint = resume ? readCheckpoint() : null;
+            int firstPass = checkpoint != null && checkpoint.startsWith(ARCHIVE_CHECKPOINT_PREFIX) ? 1 : 0;
+            long fromId = checkpoint == null ? 0 : parseCheckpoint(checkpoint.substring(firstPass == 0 ? 0 : ARCHIVE_CHECKPOINT_PREFIX.length()));
+
+            report.setLastTicketId(fromId);
+
+            try (Connection con = dataBaseConfig.getConnection()) {
+                for (int pass = firstPass; pass < TABLES.length; pass++) {
+                    logger.info("Repricing closed tickets of {} after id {}{}", TABLES[pass], fromId, dryRun ? " (dry run)" : "");
+                    reprice(con, pass, fromId, dryRun, diff, pool, report, startTime);
+                    fromId = 0;
+                }
+            }
+
+            if (!dryRun) {
+                // the run is complete : the next one starts from the first ticket.
+                Files.deleteIfExists(checkpointFile);
+            }
+            logger.info("Repricing done : {} tickets read, {} changed, difference {} cents",
+                    report.getTicketsRead(), report.getTicketsChanged(), report.getPriceDifferenceCents());
+            return report;
+
+        } catch (Exception ex) {
+            logger.error("Error reprice", ex);
+            return null;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void reprice(Connection con, int pass, long fromId, boolean dryRun, PrintStream diff, ForkJoinPool pool,
+                         RepricingReport report, long startTime) throws Exception {
+        try (PreparedStatement ps = con.prepareStatement(GET_CLOSED_TICKETS[pass],
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+
+            // MySQL streams the rows one by one instead of loading the whole result.
+            ps.setFetchSize(Integer.MIN_VALUE);
+            ps.setLong(1, fromId);
+            try (ResultSet rs = ps.executeQuery()) {
+                int size;
+                while ((size = readBatch(rs)) > 0) {
+                    price(pool, size);
+                    int changed = countChanges(size);
+                    if (dryRun) {
+                        printChanges(size, diff);
+                    } else if (changed > 0) {
+                        writeChanges(size, pass);
+                        // the tickets no longer in the table were left unchanged.
+                        changed = countChanges(size);
+                    }
+                    updateReport(report, size, changed);
+                    if (!dryRun) {
+                        writeCheckpoint((pass == 0 ? "" : ARCHIVE_CHECKPOINT_PREFIX) + report.getLastTicketId());
+                    }
+                    logProgress(report, startTime);
+                }
+            }
+        }
+    }
+
+    private int readBatch(ResultSet rs) throws SQLException {
+        int size = 0;
+        while (size < batchSize && rs.next()) {
+            ids[size] = rs.getLong(1);
+            vehicleRegNumbers[size] = rs.getString(2);
+            oldCents[size] = Math.round(rs.getDouble(3) * 100.0);
+            inTimes[size] = rs.getTimestamp(4).getTime();
+            outTimes[size] = rs.getTimestamp(5).getTime();
+            parkingTypes[size] = ParkingType.valueOf(rs.getString(6)).ordinal();
+            discounts[size] = rs.getBoolean(7);
+            size++;
+        }
+        return size;
+    }
+
+    private void price(ForkJoinPool pool, int size) throws Exception {
+        pool.submit(() -> IntStream.range(0, size).parallel().forEach(i ->
+                newCents[i] = fareCalculatorService.calculateFareCents(inTimes[i], outTimes[i], parkingTypes[i], discounts[i])))
+                .get();
+    }
+
+    private int countChanges(int size) {
+        int changed = 0;
+        for (int i = 0; i < size; i++) {
+            if (newCents[i] != oldCents[i]) {
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    private void printChanges(int size, PrintStream diff) {
+        for (int i = 0; i < size; i++) {
+            if (newCents[i] != oldCents[i]) {
+                diff.println("Ticket " + ids[i] + " " + vehicleRegNumbers[i] + " : "
+                        + (oldCents[i] / 100.0) + " -> " + (newCents[i] / 100.0));
+            }
+        }
+    }
+
+    /**
+     * Writes the changed prices, and adjusts the spend of the vehicles for the tickets actually updated.
+     * The price of a ticket that was archived or deleted since it was read is set back to its old price.
+     */
+    private void writeChanges(int size, int pass) throws Exception {
+        try (UnitOfWork unitOfWork = UnitOfWork.begin(dataBaseConfig)) {
+            Connection con = dataBaseConfig.getConnection();
+            try (PreparedStatement repriceTicket = con.prepareStatement(REPRICE_TICKETS[pass]);
+                 PreparedStatement adjustSpend = con.prepareStatement(DBConstants.ADJUST_VEHICLE_SPEND)) {
+
+                for (int i = 0; i < size; i++) {
+                    if (newCents[i] != oldCents[i]) {
+                        repriceTicket.setDouble(1, newCents[i] / 100.0);
+                        repriceTicket.setLong(2, ids[i]);
+                        repriceTicket.addBatch();
+                    }
+                }
+                int[] updateCounts = repriceTicket.executeBatch();
+
+                int adjusted = 0;
+                for (int i = 0, k = 0; i < size; i++) {
+                    if (newCents[i] != oldCents[i]) {
+                        if (updateCounts[k++] == 1) {
+                            adjustSpend.setDouble(1, (newCents[i] - oldCents[i]) / 100.0);
+                            adjustSpend.setString(2, vehicleRegNumbers[i]);
+                            adjustSpend.addBatch();
+                            adjusted++;
+                        } else {
+                            newCents[i] = oldCents[i];
+                        }
+                    }
+                }
+                if (adjusted > 0) {
+                    adjustSpend.executeBatch();
+                }
+            }
+            unitOfWork.commit();
+        }
+    }
+
+    private void updateReport(RepricingReport report, int size, int changed) {
+        long difference = 0;
+        for (int i = 0; i < size; i++) {
+            difference += newCents[i] - oldCents[i];
+        }
+        report.setTicketsRead(report.getTicketsRead() + size);
+        report.setTicketsChanged(report.getTicketsChanged() + changed);
+        report.setPriceDifferenceCents(report.getPriceDifferenceCents() + difference);
+        report.setLastTicketId(ids[size - 1]);
+    }
+
+    private void logProgress(RepricingReport report, long startTime) {
+        long elapsedMillis = Math.max(1, (System.nanoTime() - startTime) / 1_000_000);
+        logger.info("Repricing : {} tickets read, {} changed, last id {}, {} tickets/s", report.getTicketsRead(),
+                report.getTicketsChanged(), report.getLastTicketId(), report.getTicketsRead() * 1000 / elapsedMillis);
+    }
+
+    private String readCheckpoint() throws IOException {
+        if (!Files.exists(checkpointFile)) {
+            return null;
+        }
+        return new String(Files.readAllBytes(checkpointFile), StandardCharsets.UTF_8).trim();
+    }
+
+    private static long parseCheckpoint(String lastTicketId) throws IOException {
+        try {
+            return Long.parseLong(lastTicketId);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid checkpoint : " + lastTicketId, e);
+        }
+    }
+
+    private void writeCheckpoint(String checkpoint) throws IOException {
+        // written aside then moved, so that a crash never leaves a partial checkpoint.
+        Path temporaryFile = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        Files.write(temporaryFile, checkpoint.getBytes(StandardCharsets.UTF_8));
+        Files.move(temporaryFile, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
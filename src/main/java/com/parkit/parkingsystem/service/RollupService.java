@@ -0,0 +1,226 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.RollupDAO;
+import com.parkit.parkingsystem.model.HourlyRollup;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Revenue and occupancy per hour and parking type, kept up to date at each entry and exit instead of being
+ * computed from the tickets when a report is asked.
+ *
+ * ParkingService records each committed entry and exit here. The changes are summed in memory per hour and
+ * type, then added to the hourly_rollup table by flush(), a few rows per hour whatever the traffic. A report
+ * reads the rows of the period and adds the changes not yet flushed.
+ *
+ * The exit and the fare count in the hour of the exit. The time parked is split over the hours of the visit,
+ * once the vehicle has left : the vehicles still parked are not counted yet.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class RollupService implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("RollupService");
+
+    private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final int TYPES = ParkingType.values().length;
+
+    private static final int ENTRIES = 0;
+    private static final int EXITS = 1;
+    private static final int REVENUE_CENTS = 2;
+    private static final int OCCUPIED_MILLIS = 3;
+
+    private final RollupDAO rollupDAO;
+    // the changes not yet flushed, by hour since the epoch * TYPES + ordinal of the type.
+    private final ConcurrentHashMap<Long, long[]> pending = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService scheduler;
+
+    public RollupService(RollupDAO rollupDAO) {
+        if (rollupDAO == null) {
+            throw new IllegalArgumentException("Invalid argument in RollupService");
+        }
+        this.rollupDAO = rollupDAO;
+    }
+
+    /**
+     * @param inTimeMillis the entry time in epoch milliseconds.
+     */
+    public void entered(ParkingType parkingType, long inTimeMillis) {
+        add(inTimeMillis / HOUR_MILLIS, parkingType, ENTRIES, 1);
+    }
+
+    /**
+     * @param inTimeMillis the entry time in epoch milliseconds.
+     * @param outTimeMillis the exit time in epoch milliseconds.
+     * @param priceCents the fare paid, in cents.
+     */
+    public void exited(ParkingType parkingType, long inTimeMillis, long outTimeMillis, long priceCents) {
+        long exitHour = outTimeMillis / HOUR_MILLIS;
+        add(exitHour, parkingType, EXITS, 1);
+        add(exitHour, parkingType, REVENUE_CENTS, priceCents);
+        long from = inTimeMillis;
+        long to = outTimeMillis;
+        while (from < to) {
+            long hour = from / HOUR_MILLIS;
+            long end = Math.min(to, (hour + 1) * HOUR_MILLIS);
+            add(hour, parkingType, OCCUPIED_MILLIS, end - from);
+            from = end;
+        }
+    }
+
+    // compute() locks the entry : the gates update it in turn, and flush() removes it whole.
+    private void add(long hour, ParkingType parkingType, int field, long value) {
+        pending.compute(hour * TYPES + parkingType.ordinal(), (key, values) -> {
+            long[] result = (values == null) ? new long[4] : values;
+            result[field] += value;
+            return result;
+        });
+    }
+
+    /**
+     * Adds the changes recorded since the last flush to the hourly_rollup table. On error they are kept
+     * for the next flush.
+     *
+     * @return true if everything was written.
+     */
+    public synchronized boolean flush() {
+        Map<Long, long[]> flushed = new TreeMap<>();
+        for (Long key : pending.keySet()) {
+            long[] values = pending.remove(key);
+            if (values != null) {
+                flushed.put(key, values);
+            }
+        }
+        if (flushed.isEmpty()) {
+            return true;
+        }
+        List<HourlyRollup> rollups = new ArrayList<>(flushed.size());
+        for (Map.Entry<Long, long[]> entry : flushed.entrySet()) {
+            rollups.add(toRollup(entry.getKey(), entry.getValue()));
+        }
+        if (rollupDAO.addRollups(rollups)) {
+            return true;
+        }
+        for (Map.Entry<Long, long[]> entry : flushed.entrySet()) {
+            long[] values = entry.getValue();
+            pending.merge(entry.getKey(), values, (current, failed) -> {
+                for (int i = 0; i < current.length; i++) {
+                    current[i] += failed[i];
+                }
+                return current;
+            });
+        }
+        return false;
+    }
+
+    /**
+     * Synchronized with flush(), so that a change is counted either from the table or from memory, never twice.
+     *
+     * @return the rollups of the hours from the one of from included to the one of to excluded, by hour then
+     *         type, or null if the table could not be read.
+     */
+    public synchronized List<HourlyRollup> getRollups(Date from, Date to) {
+        long fromHour = from.getTime() / HOUR_MILLIS;
+        long toHour = to.getTime() / HOUR_MILLIS;
+        List<HourlyRollup> stored = rollupDAO.getRollups(new Date(fromHour * HOUR_MILLIS), new Date(toHour * HOUR_MILLIS));
+        if (stored == null) {
+            return null;
+        }
+        TreeMap<Long, HourlyRollup> result = new TreeMap<>();
+        for (HourlyRollup rollup : stored) {
+            result.put(rollup.getHour().getTime() / HOUR_MILLIS * TYPES + rollup.getParkingType().ordinal(), rollup);
+        }
+        for (Long key : pending.keySet()) {
+            if (key < fromHour * TYPES || key >= toHour * TYPES) {
+                continue;
+            }
+            long[] values = new long[4];
+            // copied while the entry is locked : a gate may be updating it.
+            pending.computeIfPresent(key, (k, current) -> {
+                System.arraycopy(current, 0, values, 0, values.length);
+                return current;
+            });
+            HourlyRollup unflushed = toRollup(key, values);
+            HourlyRollup rollup = result.get(key);
+            if (rollup == null) {
+                result.put(key, unflushed);
+            } else {
+                rollup.setEntries(rollup.getEntries() + unflushed.getEntries());
+                rollup.setExits(rollup.getExits() + unflushed.getExits());
+                rollup.setRevenueCents(rollup.getRevenueCents() + unflushed.getRevenueCents());
+                rollup.setOccupiedMinutes(rollup.getOccupiedMinutes() + unflushed.getOccupiedMinutes());
+            }
+        }
+        return new ArrayList<>(result.values());
+    }
+
+    private static HourlyRollup toRollup(long key, long[] values) {
+        HourlyRollup rollup = new HourlyRollup();
+        rollup.setHour(new Date(key / TYPES * HOUR_MILLIS));
+        rollup.setParkingType(ParkingType.values()[(int) (key % TYPES)]);
+        rollup.setEntries(values[ENTRIES]);
+        rollup.setExits(values[EXITS]);
+        rollup.setRevenueCents(values[REVENUE_CENTS]);
+        rollup.setOccupiedMinutes(values[OCCUPIED_MILLIS] / 60000.0);
+        return rollup;
+    }
+
+    /**
+     * Runs flush() in the background every flushIntervalMillis.
+     */
+    public synchronized void start(long flushIntervalMillis) {
+        if (scheduler != null || flushIntervalMillis <= 0) {
+            throw new IllegalStateException("Rollup flush already started or without interval");
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rollup-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (RuntimeException ex) {
+                // an exception would cancel the next flushes.
+                logger.error("Error flush", ex);
+            }
+        }, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background flushes, then flushes what is left.
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService stopped;
+        synchronized (this) {
+            stopped = scheduler;
+            scheduler = null;
+        }
+        if (stopped != null) {
+            stopped.shutdown();
+            try {
+                stopped.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (!flush()) {
+            logger.error("Rollups not flushed on close : {} rows lost", pending.size());
+        }
+    }
+}
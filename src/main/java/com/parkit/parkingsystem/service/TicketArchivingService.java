@@ -0,0 +1,176 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.UnitOfWork;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.metrics.PerFacility;
+import com.parkit.parkingsystem.metrics.Timer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves the tickets closed for longer than a given age from the ticket table to the archive table, so that
+ * the ticket table only holds the recent tickets the gates read.
+ *
+ * The tickets are moved by batches, one transaction per batch : copied to the archive, then deleted, each
+ * by its id. Only these rows are locked, and the gates never write a closed ticket, so they are not blocked.
+ * After each batch the service pauses for the configured delay plus the time the batch took : it backs off
+ * when the database is slow and can run while the gates are live.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class TicketArchivingService implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("TicketArchivingService");
+
+    private static final PerFacility<Timer> ARCHIVE_BATCH_TIMER = Metrics.timers("TicketArchivingService", "archiveBatch");
+
+    public DataBaseConfig dataBaseConfig = new DataBaseConfig();
+
+    private final long minAgeMillis;
+    private final int batchSize;
+    private final long pauseMillis;
+
+    private ScheduledExecutorService scheduler;
+    private volatile boolean closed;
+
+    /**
+     * @param minAgeMillis the tickets closed for longer than this are archived.
+     * @param batchSize the maximum number of tickets moved per transaction.
+     * @param pauseMillis the minimum pause between two batches.
+     */
+    public TicketArchivingService(long minAgeMillis, int batchSize, long pauseMillis) {
+        if (minAgeMillis < 0 || batchSize <= 0 || pauseMillis < 0) {
+            throw new IllegalArgumentException("Invalid argument in TicketArchivingService");
+        }
+        this.minAgeMillis = minAgeMillis;
+        this.batchSize = batchSize;
+        this.pauseMillis = pauseMillis;
+    }
+
+    /**
+     * Archives the tickets closed before now minus the minimum age, batch after batch, until none is left.
+     *
+     * @return the number of tickets archived, or -1 if a batch failed : the batches before it are kept.
+     */
+    public int archive() {
+        Timestamp closedBefore = new Timestamp(System.currentTimeMillis() - minAgeMillis);
+        int total = 0;
+        while (!closed) {
+            long start = System.nanoTime();
+            int archived = archiveBatch(closedBefore);
+            if (archived < 0) {
+                return -1;
+            }
+            total += archived;
+            if (archived < batchSize) {
+                break;
+            }
+            try {
+                Thread.sleep(pauseMillis + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        logger.info("{} tickets closed before {} archived", total, closedBefore);
+        return total;
+    }
+
+    /**
+     * @return the number of tickets archived, or -1 on error.
+     */
+    int archiveBatch(Timestamp closedBefore) {
+        Timer timer = ARCHIVE_BATCH_TIMER.of(dataBaseConfig.getFacilityId());
+        long start = timer.start();
+        try (UnitOfWork unitOfWork = UnitOfWork.begin(dataBaseConfig)) {
+            Connection con = dataBaseConfig.getConnection();
+            List<Integer> ids = new ArrayList<>();
+            try (PreparedStatement ps = con.prepareStatement(DBConstants.GET_TICKETS_TO_ARCHIVE)) {
+                ps.setTimestamp(1, closedBefore);
+                // limits the rows read by the server.
+                ps.setMaxRows(batchSize);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        ids.add(rs.getInt(1));
+                    }
+                }
+            }
+            if (ids.isEmpty()) {
+                return 0;
+            }
+            executeBatch(con, DBConstants.ARCHIVE_TICKET, ids);
+            executeBatch(con, DBConstants.DELETE_ARCHIVED_TICKET, ids);
+            unitOfWork.commit();
+            return ids.size();
+        } catch (Exception ex) {
+            logger.error("Error archiveBatch", ex);
+            timer.failed();
+            return -1;
+        } finally {
+            timer.stop(start);
+        }
+    }
+
+    private static void executeBatch(Connection con, String query, List<Integer> ids) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(query)) {
+            for (int id : ids) {
+                ps.setInt(1, id);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * Runs archive() in the background every intervalMinutes, the first time after one interval.
+     */
+    public synchronized void start(long intervalMinutes) {
+        if (scheduler != null || intervalMinutes <= 0) {
+            throw new IllegalStateException("Ticket archiving already started or without interval");
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ticket-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                archive();
+            } catch (RuntimeException ex) {
+                // an exception would cancel the next runs.
+                logger.error("Error archive", ex);
+            }
+        }, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Stops the background runs. A run in progress stops after its current batch.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
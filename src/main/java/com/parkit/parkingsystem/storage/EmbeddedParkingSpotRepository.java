@@ -0,0 +1,140 @@
+package com.parkit.parkingsystem.storage;
+
+import com.parkit.parkingsystem.config.UnitOfWork;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotRepository;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The parking spots of the embedded store. The spots taken or freed during a unit of work are given back
+ * or taken again if it is rolled back.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class EmbeddedParkingSpotRepository implements ParkingSpotRepository {
+
+    private static final Logger logger = LogManager.getLogger("EmbeddedParkingSpotRepository");
+
+    private final EmbeddedStore store;
+
+    public EmbeddedParkingSpotRepository(EmbeddedStore store) {
+        if (store == null) {
+            throw new IllegalArgumentException("Invalid argument in EmbeddedParkingSpotRepository");
+        }
+        this.store = store;
+    }
+
+    @Override
+    public ParkingSpot getParkingSpot(int parkingNumber) {
+        return store.getParkingSpot(parkingNumber);
+    }
+
+    @Override
+    public List<ParkingSpot> getParkingSpots() {
+        return store.getParkingSpots();
+    }
+
+    @Override
+    public int getNextAvailableSlot(ParkingType parkingType) {
+        return store.getLowestAvailable(parkingType);
+    }
+
+    @Override
+    public int getAvailableSlotCount(ParkingType parkingType) {
+        return store.getAvailableCount(parkingType);
+    }
+
+    @Override
+    public boolean claimParking(ParkingSpot parkingSpot) {
+        try {
+            if (!store.claim(parkingSpot.getId())) {
+                return false;
+            }
+            UnitOfWork.onRollback(() -> setAvailable(parkingSpot.getId(), true));
+            return true;
+        } catch (Exception ex) {
+            logger.error("Error claimParking", ex);
+            return false;
+        }
+    }
+
+    @Override
+    public int claimNextAvailableSlot(ParkingType parkingType) {
+        try {
+            int parkingNumber = store.claimLowest(parkingType);
+            if (parkingNumber > 0) {
+                UnitOfWork.onRollback(() -> setAvailable(parkingNumber, true));
+            }
+            return parkingNumber;
+        } catch (Exception ex) {
+            logger.error("Error claimNextAvailableSlot", ex);
+            return -1;
+        }
+    }
+
+    @Override
+    public boolean updateParking(ParkingSpot parkingSpot) {
+        try {
+            Boolean previous = store.setAvailable(parkingSpot.getId(), parkingSpot.isAvailable());
+            if (previous == null) {
+                return false;
+            }
+            UnitOfWork.onRollback(() -> setAvailable(parkingSpot.getId(), previous));
+            return true;
+        } catch (Exception ex) {
+            logger.error("Error updateParking", ex);
+            return false;
+        }
+    }
+
+    @Override
+    public boolean[] updateParkings(List<ParkingSpot> parkingSpots) {
+        boolean[] result = new boolean[parkingSpots.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = updateParking(parkingSpots.get(i));
+        }
+        return result;
+    }
+
+    // the store answers from memory : the asynchronous variants complete at once.
+
+    @Override
+    public CompletableFuture<ParkingSpot> getParkingSpotAsync(int parkingNumber) {
+        return CompletableFuture.completedFuture(getParkingSpot(parkingNumber));
+    }
+
+    @Override
+    public CompletableFuture<Integer> getNextAvailableSlotAsync(ParkingType parkingType) {
+        return CompletableFuture.completedFuture(getNextAvailableSlot(parkingType));
+    }
+
+    @Override
+    public CompletableFuture<Integer> getAvailableSlotCountAsync(ParkingType parkingType) {
+        return CompletableFuture.completedFuture(getAvailableSlotCount(parkingType));
+    }
+
+    @Override
+    public CompletableFuture<Integer> claimNextAvailableSlotAsync(ParkingType parkingType) {
+        return CompletableFuture.completedFuture(claimNextAvailableSlot(parkingType));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> updateParkingAsync(ParkingSpot parkingSpot) {
+        return CompletableFuture.completedFuture(updateParking(parkingSpot));
+    }
+
+    private void setAvailable(int parkingNumber, boolean available) {
+        try {
+            store.setAvailable(parkingNumber, available);
+        } catch (Exception ex) {
+            logger.error("Error rollback", ex);
+        }
+    }
+}
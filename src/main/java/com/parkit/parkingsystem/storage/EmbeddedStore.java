@@ -0,0 +1,688 @@
+package com.parkit.parkingsystem.storage;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.OpenTicketIndex;
+import com.parkit.parkingsystem.dao.ParkingSpotAllocator;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Embedded storage of the parking spots and tickets, in the application process : the tables are kept in
+ * memory, each change is first appended to a write-ahead log, and a snapshot of the tables is written
+ * periodically so that the logs before it can be deleted.
+ *
+ * A log record is written as its length, a CRC32 of its content, then its content. Each record holds the
+ * whole new state of a spot or a ticket, so replaying it twice changes nothing. The log files are numbered
+ * by generation : a snapshot of generation G holds everything written to the logs before G. At open, the
+ * snapshot is loaded, then the logs from its generation are replayed. A record cut by a crash fails its
+ * checksum and ends the reading of its log.
+ *
+ * The methods are synchronized : a single-site lot does not need more, and each change is only a log
+ * append and a few map updates.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class EmbeddedStore implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("EmbeddedStore");
+
+    private static final String LOG_PREFIX = "wal-";
+    private static final String LOG_SUFFIX = ".log";
+    private static final String SNAPSHOT_FILE = "snapshot";
+    private static final int SNAPSHOT_MAGIC = 0x50534E50;
+    // length and checksum.
+    private static final int HEADER_SIZE = 8;
+
+    private static final byte SPOT = 1;
+    private static final byte TICKET = 2;
+    private static final byte DELETE_TICKET = 3;
+
+    /**
+     * A row of the ticket table. Never changed : an update replaces it.
+     */
+    private static final class TicketRow {
+        private final int id;
+        private final int parkingNumber;
+        private final ParkingType parkingType;
+        private final String vehicleRegNumber;
+        private final double price;
+        private final long inTime;
+        // -1 while the vehicle is in the parking.
+        private final long outTime;
+
+        private TicketRow(int id, int parkingNumber, ParkingType parkingType, String vehicleRegNumber, double price, long inTime, long outTime) {
+            this.id = id;
+            this.parkingNumber = parkingNumber;
+            this.parkingType = parkingType;
+            this.vehicleRegNumber = vehicleRegNumber;
+            this.price = price;
+            this.inTime = inTime;
+            this.outTime = outTime;
+        }
+
+        private static TicketRow of(int id, Ticket ticket) {
+            return new TicketRow(id, ticket.getParkingSpot().getId(), ticket.getParkingSpot().getParkingType(),
+                    ticket.getVehicleRegNumber(), ticket.getPrice(), ticket.getInTimeMillis(),
+                    ticket.hasOutTime() ? ticket.getOutTimeMillis() : -1);
+        }
+
+        private boolean isOpen() {
+            return outTime < 0;
+        }
+
+        private boolean isMoreRecentThan(TicketRow other) {
+            return (inTime != other.inTime) ? inTime > other.inTime : id > other.id;
+        }
+
+        private Ticket toTicket() {
+            Ticket ticket = new Ticket();
+            ticket.setId(id);
+            ticket.setParkingSpot(new ParkingSpot(parkingNumber, parkingType, false));
+            ticket.setVehicleRegNumber(vehicleRegNumber);
+            ticket.setPrice(price);
+            ticket.setInTimeMillis(inTime);
+            ticket.setOutTimeMillis(isOpen() ? Ticket.NO_TIME : outTime);
+            return ticket;
+        }
+    }
+
+    private final Path directory;
+    private final boolean forceEachWrite;
+    private final long snapshotIntervalSeconds;
+    // only one snapshot written at a time.
+    private final Object snapshotLock = new Object();
+
+    private final TreeMap<Integer, ParkingSpot> spots = new TreeMap<>();
+    private final ParkingSpotAllocator allocator = new ParkingSpotAllocator();
+    private final Map<Integer, TicketRow> tickets = new HashMap<>();
+    private final Map<String, TicketRow> latestTickets = new HashMap<>();
+    private final Map<String, Integer> ticketCounts = new HashMap<>();
+    private final OpenTicketIndex openTicketIndex = new OpenTicketIndex();
+    private int nextTicketId = 1;
+
+    private long generation;
+    private FileChannel log;
+    private ByteBuffer record = ByteBuffer.allocate(256);
+    private ScheduledExecutorService snapshotter;
+    private boolean closed;
+
+    /**
+     * @param directory where the logs and the snapshot are written.
+     * @param forceEachWrite true to write each change to the disk before it is acknowledged. Otherwise
+     *        a crash of the machine may lose the last changes.
+     * @param snapshotIntervalSeconds the delay between two snapshots, 0 to write one only on close.
+     */
+    public EmbeddedStore(Path directory, boolean forceEachWrite, long snapshotIntervalSeconds) {
+        if (directory == null || snapshotIntervalSeconds < 0) {
+            throw new IllegalArgumentException("Invalid argument in EmbeddedStore");
+        }
+        this.directory = directory;
+        this.forceEachWrite = forceEachWrite;
+        this.snapshotIntervalSeconds = snapshotIntervalSeconds;
+    }
+
+    /**
+     * @return the spots of Data.sql with other counts : the cars first, then the bikes, numbered from 1.
+     */
+    public static List<ParkingSpot> layout(int carSpots, int bikeSpots) {
+        List<ParkingSpot> result = new ArrayList<>();
+        for (int i = 1; i <= carSpots + bikeSpots; i++) {
+            result.add(new ParkingSpot(i, (i <= carSpots) ? ParkingType.CAR : ParkingType.BIKE, true));
+        }
+        return result;
+    }
+
+    /**
+     * Loads the snapshot and replays the logs written since, then starts a new log and the periodic snapshots.
+     *
+     * @param initialSpots the spots created when the store is empty, e.g. on the first start.
+     */
+    public synchronized void open(List<ParkingSpot> initialSpots) throws IOException {
+        if (log != null || closed) {
+            throw new IllegalStateException("Embedded store already open");
+        }
+        Files.createDirectories(directory);
+        long snapshotGeneration = readSnapshot();
+        long lastGeneration = snapshotGeneration - 1;
+        int replayed = 0;
+        for (long existing : listLogs()) {
+            if (existing < snapshotGeneration) {
+                // already in the snapshot : the previous run stopped before deleting it.
+                Files.deleteIfExists(logPath(existing));
+            } else {
+                replayed += replay(existing);
+                lastGeneration = existing;
+            }
+        }
+        rebuildIndexes();
+        generation = lastGeneration + 1;
+        log = openLog(generation);
+        if (spots.isEmpty() && initialSpots != null) {
+            for (ParkingSpot parkingSpot : initialSpots) {
+                putSpot(new ParkingSpot(parkingSpot.getId(), parkingSpot.getParkingType(), parkingSpot.isAvailable()));
+            }
+        }
+        logger.info("Embedded store opened with {} parking spots and {} tickets, {} changes replayed", spots.size(), tickets.size(), replayed);
+
+        if (snapshotIntervalSeconds > 0) {
+            snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "storage-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            snapshotter.scheduleWithFixedDelay(() -> {
+                try {
+                    snapshot();
+                } catch (Exception ex) {
+                    // an exception would cancel the next snapshots.
+                    logger.error("Error snapshot", ex);
+                }
+            }, snapshotIntervalSeconds, snapshotIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    public synchronized ParkingSpot getParkingSpot(int parkingNumber) {
+        ParkingSpot parkingSpot = spots.get(parkingNumber);
+        return (parkingSpot == null) ? null : copy(parkingSpot);
+    }
+
+    public synchronized List<ParkingSpot> getParkingSpots() {
+        List<ParkingSpot> result = new ArrayList<>(spots.size());
+        for (ParkingSpot parkingSpot : spots.values()) {
+            result.add(copy(parkingSpot));
+        }
+        return result;
+    }
+
+    /**
+     * @return the lowest available spot of this type, or -1 if there is none.
+     */
+    public synchronized int getLowestAvailable(ParkingType parkingType) {
+        return allocator.getLowestAvailable(parkingType);
+    }
+
+    public synchronized int getAvailableCount(ParkingType parkingType) {
+        return allocator.getAvailableCount(parkingType);
+    }
+
+    /**
+     * Takes a spot if it exists and is available.
+     *
+     * @return true if this call took it.
+     */
+    public synchronized boolean claim(int parkingNumber) throws IOException {
+        ParkingSpot parkingSpot = spots.get(parkingNumber);
+        if (parkingSpot == null || !parkingSpot.isAvailable()) {
+            return false;
+        }
+        putSpot(new ParkingSpot(parkingNumber, parkingSpot.getParkingType(), false));
+        return true;
+    }
+
+    /**
+     * Takes the lowest available spot of a type.
+     *
+     * @return the parking number taken, or -1 if there is none.
+     */
+    public synchronized int claimLowest(ParkingType parkingType) throws IOException {
+        int parkingNumber = allocator.getLowestAvailable(parkingType);
+        return (parkingNumber > 0 && claim(parkingNumber)) ? parkingNumber : -1;
+    }
+
+    /**
+     * @return the availability of the spot before this call, or null if the spot does not exist.
+     */
+    public synchronized Boolean setAvailable(int parkingNumber, boolean available) throws IOException {
+        ParkingSpot parkingSpot = spots.get(parkingNumber);
+        if (parkingSpot == null) {
+            return null;
+        }
+        boolean previous = parkingSpot.isAvailable();
+        if (previous != available) {
+            putSpot(new ParkingSpot(parkingNumber, parkingSpot.getParkingType(), available));
+        }
+        return previous;
+    }
+
+    /**
+     * Adds a new ticket.
+     *
+     * @return the id given to the ticket.
+     */
+    public synchronized int insertTicket(Ticket ticket) throws IOException {
+        int id = nextTicketId;
+        putTicket(TicketRow.of(id, ticket));
+        return id;
+    }
+
+    /**
+     * Sets the price and exit time of a ticket.
+     *
+     * @return the ticket as it was before, or null if there is no open ticket with this id.
+     */
+    public synchronized Ticket updateTicket(Ticket ticket) throws IOException {
+        TicketRow previous = tickets.get(ticket.getId());
+        if (previous == null || previous.outTime != -1) {
+            return null;
+        }
+        putTicket(new TicketRow(previous.id, previous.parkingNumber, previous.parkingType, previous.vehicleRegNumber,
+                ticket.getPrice(), previous.inTime, ticket.hasOutTime() ? ticket.getOutTimeMillis() : -1));
+        return previous.toTicket();
+    }
+
+    /**
+     * Writes a ticket back as it was, keeping its id. Used to undo an update.
+     */
+    public synchronized void restoreTicket(Ticket ticket) throws IOException {
+        putTicket(TicketRow.of(ticket.getId(), ticket));
+    }
+
+    /**
+     * @return true if the ticket existed. Used to undo an insert.
+     */
+    public synchronized boolean deleteTicket(int id) throws IOException {
+        if (!tickets.containsKey(id)) {
+            return false;
+        }
+        prepareRecord(DELETE_TICKET, 4).putInt(id);
+        append();
+        removeTicketRow(id);
+        return true;
+    }
+
+    /**
+     * @return the most recent ticket of the vehicle, or null if it has none.
+     */
+    public synchronized Ticket getTicket(String vehicleRegNumber) {
+        TicketRow row = (vehicleRegNumber == null) ? null : latestTickets.get(vehicleRegNumber);
+        return (row == null) ? null : row.toTicket();
+    }
+
+    public synchronized int getTicketCount(String vehicleRegNumber) {
+        Integer count = (vehicleRegNumber == null) ? null : ticketCounts.get(vehicleRegNumber);
+        return (count == null) ? 0 : count;
+    }
+
+    /**
+     * @return the open tickets, kept up to date by the store.
+     */
+    public OpenTicketIndex getOpenTicketIndex() {
+        return openTicketIndex;
+    }
+
+    /**
+     * Writes the tables to a new snapshot, then deletes the logs it holds. The changes keep going to a new
+     * log meanwhile : the tables are only locked to copy them.
+     */
+    public void snapshot() throws IOException {
+        synchronized (snapshotLock) {
+            long snapshotGeneration;
+            List<ParkingSpot> spotsCopy;
+            List<TicketRow> ticketsCopy;
+            int nextId;
+            synchronized (this) {
+                if (log == null) {
+                    throw new IllegalStateException("Embedded store not open");
+                }
+                FileChannel next = openLog(generation + 1);
+                closeLog();
+                log = next;
+                generation++;
+                snapshotGeneration = generation;
+                spotsCopy = getParkingSpots();
+                ticketsCopy = new ArrayList<>(tickets.values());
+                nextId = nextTicketId;
+            }
+            writeSnapshot(snapshotGeneration, nextId, spotsCopy, ticketsCopy);
+            for (long existing : listLogs()) {
+                if (existing < snapshotGeneration) {
+                    Files.deleteIfExists(logPath(existing));
+                }
+            }
+            logger.debug("Snapshot {} written with {} tickets", snapshotGeneration, ticketsCopy.size());
+        }
+    }
+
+    /**
+     * Stops the periodic snapshots, writes a last one so that the next open has nothing to replay, and
+     * closes the log.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed || log == null) {
+                closed = true;
+                return;
+            }
+        }
+        if (snapshotter != null) {
+            snapshotter.shutdown();
+            try {
+                snapshotter.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            snapshot();
+        } catch (Exception ex) {
+            // the logs are kept : they are replayed at the next open.
+            logger.error("Error snapshot", ex);
+        }
+        synchronized (this) {
+            closeLog();
+            log = null;
+            closed = true;
+        }
+    }
+
+    // ----- changes : written to the log, then to the tables.
+
+    private void putSpot(ParkingSpot parkingSpot) throws IOException {
+        ByteBuffer buffer = prepareRecord(SPOT, 6);
+        buffer.putInt(parkingSpot.getId());
+        buffer.put((byte) parkingSpot.getParkingType().ordinal());
+        buffer.put((byte) (parkingSpot.isAvailable() ? 1 : 0));
+        append();
+        spots.put(parkingSpot.getId(), parkingSpot);
+        allocator.update(parkingSpot);
+    }
+
+    private void putTicket(TicketRow row) throws IOException {
+        writeTicket(row);
+        append();
+        putTicketRow(row);
+    }
+
+    private void putTicketRow(TicketRow row) {
+        TicketRow previous = tickets.put(row.id, row);
+        nextTicketId = Math.max(nextTicketId, row.id + 1);
+        if (previous == null) {
+            ticketCounts.merge(row.vehicleRegNumber, 1, Integer::sum);
+        }
+        TicketRow latest = latestTickets.get(row.vehicleRegNumber);
+        if (latest == null || latest.id == row.id || row.isMoreRecentThan(latest)) {
+            latestTickets.put(row.vehicleRegNumber, row);
+        }
+        if (row.isOpen()) {
+            openTicketIndex.put(row.toTicket());
+        } else {
+            openTicketIndex.remove(row.toTicket());
+        }
+    }
+
+    private void removeTicketRow(int id) {
+        TicketRow removed = tickets.remove(id);
+        ticketCounts.computeIfPresent(removed.vehicleRegNumber, (vehicleRegNumber, count) -> (count > 1) ? count - 1 : null);
+        openTicketIndex.remove(removed.toTicket());
+        TicketRow latest = latestTickets.get(removed.vehicleRegNumber);
+        if (latest != null && latest.id == id) {
+            // only on rollback : the tickets of the vehicle are searched again.
+            latestTickets.remove(removed.vehicleRegNumber);
+            for (TicketRow row : tickets.values()) {
+                if (row.vehicleRegNumber.equals(removed.vehicleRegNumber)) {
+                    TicketRow current = latestTickets.get(row.vehicleRegNumber);
+                    if (current == null || row.isMoreRecentThan(current)) {
+                        latestTickets.put(row.vehicleRegNumber, row);
+                    }
+                }
+            }
+            TicketRow newLatest = latestTickets.get(removed.vehicleRegNumber);
+            if (newLatest != null && newLatest.isOpen()) {
+                openTicketIndex.put(newLatest.toTicket());
+            }
+        }
+    }
+
+    private void rebuildIndexes() {
+        allocator.load(spots.values());
+        latestTickets.clear();
+        ticketCounts.clear();
+        List<Ticket> openTickets = new ArrayList<>();
+        for (TicketRow row : tickets.values()) {
+            ticketCounts.merge(row.vehicleRegNumber, 1, Integer::sum);
+            TicketRow latest = latestTickets.get(row.vehicleRegNumber);
+            if (latest == null || row.isMoreRecentThan(latest)) {
+                latestTickets.put(row.vehicleRegNumber, row);
+            }
+            if (row.isOpen()) {
+                openTickets.add(row.toTicket());
+            }
+        }
+        openTicketIndex.load(openTickets);
+    }
+
+    // ----- records
+
+    /**
+     * @return the record buffer, cleared, with room for the header, the type and size more bytes.
+     */
+    private ByteBuffer prepareRecord(byte type, int size) {
+        if (record.capacity() < HEADER_SIZE + 1 + size) {
+            record = ByteBuffer.allocate(Math.max(2 * record.capacity(), HEADER_SIZE + 1 + size));
+        }
+        record.clear();
+        record.position(HEADER_SIZE);
+        record.put(type);
+        return record;
+    }
+
+    private void writeTicket(TicketRow row) {
+        byte[] vehicleRegNumber = row.vehicleRegNumber.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = prepareRecord(TICKET, 35 + vehicleRegNumber.length);
+        buffer.putInt(row.id);
+        buffer.putInt(row.parkingNumber);
+        buffer.put((byte) row.parkingType.ordinal());
+        buffer.putDouble(row.price);
+        buffer.putLong(row.inTime);
+        buffer.putLong(row.outTime);
+        buffer.putShort((short) vehicleRegNumber.length);
+        buffer.put(vehicleRegNumber);
+    }
+
+    /**
+     * Appends the prepared record to the log. On failure the log is cut back, so the next records
+     * are not written after a partial one.
+     */
+    private void append() throws IOException {
+        int length = record.position() - HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), HEADER_SIZE, length);
+        record.putInt(0, length);
+        record.putInt(4, (int) crc.getValue());
+        record.flip();
+        long position = log.position();
+        try {
+            while (record.hasRemaining()) {
+                log.write(record);
+            }
+            if (forceEachWrite) {
+                log.force(false);
+            }
+        } catch (IOException e) {
+            log.truncate(position);
+            log.position(position);
+            throw e;
+        }
+    }
+
+    /**
+     * Applies a record read from a log or a snapshot to the tables, without the indexes.
+     */
+    private void apply(ByteBuffer content) {
+        byte type = content.get();
+        if (type == SPOT) {
+            int parkingNumber = content.getInt();
+            ParkingType parkingType = ParkingType.values()[content.get()];
+            spots.put(parkingNumber, new ParkingSpot(parkingNumber, parkingType, content.get() != 0));
+        } else if (type == TICKET) {
+            int id = content.getInt();
+            int parkingNumber = content.getInt();
+            ParkingType parkingType = ParkingType.values()[content.get()];
+            double price = content.getDouble();
+            long inTime = content.getLong();
+            long outTime = content.getLong();
+            byte[] vehicleRegNumber = new byte[content.getShort()];
+            content.get(vehicleRegNumber);
+            tickets.put(id, new TicketRow(id, parkingNumber, parkingType, new String(vehicleRegNumber, StandardCharsets.UTF_8), price, inTime, outTime));
+            nextTicketId = Math.max(nextTicketId, id + 1);
+        } else if (type == DELETE_TICKET) {
+            tickets.remove(content.getInt());
+        } else {
+            throw new IllegalStateException("Unknown record type " + type);
+        }
+    }
+
+    // ----- files
+
+    private Path logPath(long logGeneration) {
+        return directory.resolve(String.format("%s%020d%s", LOG_PREFIX, logGeneration, LOG_SUFFIX));
+    }
+
+    private List<Long> listLogs() throws IOException {
+        List<Long> result = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, LOG_PREFIX + "*" + LOG_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                result.add(Long.parseLong(name.substring(LOG_PREFIX.length(), name.length() - LOG_SUFFIX.length())));
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    private FileChannel openLog(long logGeneration) throws IOException {
+        return FileChannel.open(logPath(logGeneration), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void closeLog() {
+        try {
+            log.close();
+        } catch (IOException e) {
+            logger.error("Error while closing the storage log", e);
+        }
+    }
+
+    /**
+     * @return the number of records replayed.
+     */
+    private int replay(long logGeneration) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(logPath(logGeneration)));
+        CRC32 crc = new CRC32();
+        int count = 0;
+        while (buffer.remaining() >= HEADER_SIZE) {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) {
+                break;
+            }
+            crc.reset();
+            crc.update(buffer.array(), buffer.position(), length);
+            if ((int) crc.getValue() != checksum) {
+                logger.warn("Storage log {} ends with a cut record, ignored", logGeneration);
+                break;
+            }
+            ByteBuffer content = buffer.slice();
+            content.limit(length);
+            apply(content);
+            buffer.position(buffer.position() + length);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return the generation of the snapshot, 0 if there is none.
+     */
+    private long readSnapshot() throws IOException {
+        Path path = directory.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        byte[] bytes = Files.readAllBytes(path);
+        // magic, generation, next ticket id and checksum.
+        if (bytes.length < 24) {
+            throw new IOException("Corrupted storage snapshot " + path);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 8);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (buffer.getInt() != SNAPSHOT_MAGIC || buffer.getLong(bytes.length - 8) != crc.getValue()) {
+            throw new IOException("Corrupted storage snapshot " + path);
+        }
+        long snapshotGeneration = buffer.getLong();
+        nextTicketId = buffer.getInt();
+        buffer.limit(bytes.length - 8);
+        while (buffer.hasRemaining()) {
+            apply(buffer);
+        }
+        return snapshotGeneration;
+    }
+
+    private void writeSnapshot(long snapshotGeneration, int nextId, List<ParkingSpot> spotsCopy, List<TicketRow> ticketsCopy) throws IOException {
+        Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temporary.toFile())) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file, 64 * 1024), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(snapshotGeneration);
+            out.writeInt(nextId);
+            // the records of the logs, without their header.
+            for (ParkingSpot parkingSpot : spotsCopy) {
+                out.writeByte(SPOT);
+                out.writeInt(parkingSpot.getId());
+                out.writeByte(parkingSpot.getParkingType().ordinal());
+                out.writeByte(parkingSpot.isAvailable() ? 1 : 0);
+            }
+            for (TicketRow row : ticketsCopy) {
+                byte[] vehicleRegNumber = row.vehicleRegNumber.getBytes(StandardCharsets.UTF_8);
+                out.writeByte(TICKET);
+                out.writeInt(row.id);
+                out.writeInt(row.parkingNumber);
+                out.writeByte(row.parkingType.ordinal());
+                out.writeDouble(row.price);
+                out.writeLong(row.inTime);
+                out.writeLong(row.outTime);
+                out.writeShort(vehicleRegNumber.length);
+                out.write(vehicleRegNumber);
+            }
+            out.flush();
+            // the checksum itself is not part of what it covers.
+            new DataOutputStream(file).writeLong(checked.getChecksum().getValue());
+            file.getChannel().force(true);
+        }
+        Files.move(temporary, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static ParkingSpot copy(ParkingSpot parkingSpot) {
+        return new ParkingSpot(parkingSpot.getId(), parkingSpot.getParkingType(), parkingSpot.isAvailable());
+    }
+}
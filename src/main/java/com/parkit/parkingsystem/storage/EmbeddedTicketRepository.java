@@ -0,0 +1,139 @@
+package com.parkit.parkingsystem.storage;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.UnitOfWork;
+import com.parkit.parkingsystem.dao.OpenTicketIndex;
+import com.parkit.parkingsystem.dao.TicketRepository;
+import com.parkit.parkingsystem.model.Ticket;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The tickets of the embedded store. The tickets saved or updated during a unit of work are deleted or
+ * written back as they were if it is rolled back.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class EmbeddedTicketRepository implements TicketRepository {
+
+    private static final Logger logger = LogManager.getLogger("EmbeddedTicketRepository");
+
+    private final EmbeddedStore store;
+
+    public EmbeddedTicketRepository(EmbeddedStore store) {
+        if (store == null) {
+            throw new IllegalArgumentException("Invalid argument in EmbeddedTicketRepository");
+        }
+        this.store = store;
+    }
+
+    @Override
+    public boolean saveTicket(Ticket ticket) {
+        try {
+            int id = store.insertTicket(ticket);
+            ticket.setId(id);
+            UnitOfWork.onRollback(() -> {
+                try {
+                    store.deleteTicket(id);
+                } catch (Exception ex) {
+                    logger.error("Error rollback", ex);
+                }
+            });
+            return true;
+        } catch (Exception ex) {
+            logger.error("Error saveTicket", ex);
+            return false;
+        }
+    }
+
+    @Override
+    public boolean[] saveTickets(List<Ticket> tickets) {
+        boolean[] result = new boolean[tickets.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = saveTicket(tickets.get(i));
+        }
+        return result;
+    }
+
+    @Override
+    public Ticket getTicket(String vehicleRegNumber) {
+        return store.getTicket(vehicleRegNumber);
+    }
+
+    @Override
+    public boolean updateTicket(Ticket ticket) {
+        try {
+            Ticket previous = store.updateTicket(ticket);
+            if (previous == null) {
+                return false;
+            }
+            UnitOfWork.onRollback(() -> {
+                try {
+                    store.restoreTicket(previous);
+                } catch (Exception ex) {
+                    logger.error("Error rollback", ex);
+                }
+            });
+            return true;
+        } catch (Exception ex) {
+            logger.error("Error updateTicket", ex);
+            return false;
+        }
+    }
+
+    @Override
+    public boolean[] updateTickets(List<Ticket> tickets) {
+        boolean[] result = new boolean[tickets.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = updateTicket(tickets.get(i));
+        }
+        return result;
+    }
+
+    @Override
+    public int getNbTicket(String vehicleRegNumber) {
+        return store.getTicketCount(vehicleRegNumber);
+    }
+
+    // the store answers from memory : the asynchronous variants complete at once.
+
+    @Override
+    public CompletableFuture<Boolean> saveTicketAsync(Ticket ticket) {
+        return CompletableFuture.completedFuture(saveTicket(ticket));
+    }
+
+    @Override
+    public CompletableFuture<Ticket> getTicketAsync(String vehicleRegNumber) {
+        return CompletableFuture.completedFuture(getTicket(vehicleRegNumber));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> updateTicketAsync(Ticket ticket) {
+        return CompletableFuture.completedFuture(updateTicket(ticket));
+    }
+
+    @Override
+    public CompletableFuture<Integer> getNbTicketAsync(String vehicleRegNumber) {
+        return CompletableFuture.completedFuture(getNbTicket(vehicleRegNumber));
+    }
+
+    @Override
+    public OpenTicketIndex getOpenTicketIndex() {
+        return store.getOpenTicketIndex();
+    }
+
+    @Override
+    public DataBaseConfig getDataBaseConfig() {
+        return null;
+    }
+
+    @Override
+    public boolean writesOutsideTransaction() {
+        return true;
+    }
+}
@@ -0,0 +1,55 @@
+package com.parkit.parkingsystem.tool;
+
+import java.util.Arrays;
+
+/**
+ * The latencies of one operation, in nanoseconds. Each gate records in its own recorder, merged at the end.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class LatencyRecorder {
+
+    private long[] values = new long[1024];
+    private int size;
+    private boolean sorted = true;
+
+    public void record(long nanos) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = nanos;
+        sorted = false;
+    }
+
+    public void addAll(LatencyRecorder other) {
+        for (int i = 0; i < other.size; i++) {
+            record(other.values[i]);
+        }
+    }
+
+    public int getCount() {
+        return size;
+    }
+
+    /**
+     * @param percentile between 0 and 100, 99.9 for the p999.
+     * @return the latency below which this percentage of the operations are, 0 if nothing was recorded.
+     */
+    public long getPercentile(double percentile) {
+        if (size == 0) {
+            return 0;
+        }
+        if (!sorted) {
+            Arrays.sort(values, 0, size);
+            sorted = true;
+        }
+        // nearest rank, without the rounding error of the double product (99 % of 2000 is 1980).
+        int rank = (int) Math.ceil(percentile * size / 100 - 1e-9);
+        return values[Math.min(size, Math.max(1, rank)) - 1];
+    }
+
+    public long getMax() {
+        return getPercentile(100);
+    }
+}
@@ -0,0 +1,267 @@
+package com.parkit.parkingsystem.tool;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.ExitResult;
+import com.parkit.parkingsystem.model.VehicleEntry;
+import com.parkit.parkingsystem.service.ParkingService;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Simulates several gates working at the same time against one ParkingService, to find the traffic at which
+ * it saturates.
+ *
+ * Each gate runs in its own thread and starts an operation at fixed intervals, an entry or an exit depending on
+ * the rates of the profile. The latency of an operation is measured from the time it should have started, so
+ * that a saturated service shows in the percentiles instead of only slowing the gates down. At the end the
+ * vehicles still parked are let out, without being measured.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class LoadGenerator {
+
+    private static final Logger logger = LogManager.getLogger("LoadGenerator");
+
+    private static final int DRAIN_BATCH_SIZE = 100;
+
+    /**
+     * A vehicle the generator let in, and the spot it was given.
+     */
+    static final class ParkedVehicle {
+        private final VehicleEntry vehicle;
+        private final int parkingNumber;
+
+        ParkedVehicle(VehicleEntry vehicle, int parkingNumber) {
+            this.vehicle = vehicle;
+            this.parkingNumber = parkingNumber;
+        }
+    }
+
+    /**
+     * A vehicle on a spot, followed by those given the same spot while it was still there. Only changed inside
+     * occupiedSpots.compute() for its spot.
+     */
+    private static final class SpotHolder {
+        private final String vehicleRegNumber;
+        // its exit has been called but has not returned yet.
+        private boolean exiting;
+        // given the spot while the vehicle before it was exiting : judged when that exit returns.
+        private boolean pendingReuse;
+        private SpotHolder next;
+
+        private SpotHolder(String vehicleRegNumber) {
+            this.vehicleRegNumber = vehicleRegNumber;
+        }
+    }
+
+    private final ParkingService parkingService;
+
+    private final Queue<ParkedVehicle> parkedVehicles = new ConcurrentLinkedQueue<>();
+    private final Queue<VehicleEntry> departedVehicles = new ConcurrentLinkedQueue<>();
+    // the vehicles on each spot, according to the results of the service.
+    private final ConcurrentHashMap<Integer, SpotHolder> occupiedSpots = new ConcurrentHashMap<>();
+    private final AtomicLong vehicleCount = new AtomicLong();
+    private final LongAdder failedEntries = new LongAdder();
+    private final LongAdder failedExits = new LongAdder();
+    private final LongAdder doubleAllocations = new LongAdder();
+
+    public LoadGenerator(ParkingService parkingService) {
+        if (parkingService == null) {
+            throw new IllegalArgumentException("Parking service cannot be null");
+        }
+        this.parkingService = parkingService;
+    }
+
+    public LoadReport run(LoadProfile loadProfile) throws Exception {
+        logger.info("Load test started : {}", loadProfile);
+        ExecutorService gates = Executors.newFixedThreadPool(loadProfile.getGates());
+        List<Future<LatencyRecorder[]>> gateResults = new ArrayList<>();
+        long startTime = System.nanoTime();
+        long endTime = startTime + loadProfile.getDurationMillis() * 1_000_000;
+        try {
+            for (int i = 0; i < loadProfile.getGates(); i++) {
+                gateResults.add(gates.submit(() -> runGate(loadProfile, startTime, endTime)));
+            }
+            LatencyRecorder entryLatencies = new LatencyRecorder();
+            LatencyRecorder exitLatencies = new LatencyRecorder();
+            for (Future<LatencyRecorder[]> gateResult : gateResults) {
+                entryLatencies.addAll(gateResult.get()[0]);
+                exitLatencies.addAll(gateResult.get()[1]);
+            }
+            long elapsedNanos = System.nanoTime() - startTime;
+            drain();
+            logger.info("Load test done");
+            return new LoadReport(loadProfile, elapsedNanos, entryLatencies, exitLatencies,
+                    failedEntries.sum(), failedExits.sum(), doubleAllocations.sum());
+        } finally {
+            gates.shutdownNow();
+        }
+    }
+
+    private LatencyRecorder[] runGate(LoadProfile loadProfile, long startTime, long endTime) {
+        LatencyRecorder entryLatencies = new LatencyRecorder();
+        LatencyRecorder exitLatencies = new LatencyRecorder();
+        double operationsPerSecond = loadProfile.getArrivalsPerSecond() + loadProfile.getDeparturesPerSecond();
+        double arrivalShare = loadProfile.getArrivalsPerSecond() / operationsPerSecond;
+        long intervalNanos = (long) (1e9 / operationsPerSecond);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        // the gates do not all start at the same instant.
+        long intendedStart = startTime + random.nextLong(intervalNanos);
+        while (intendedStart < endTime) {
+            long wait = intendedStart - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            ParkedVehicle leaving = (random.nextDouble() < arrivalShare) ? null : parkedVehicles.poll();
+            if (leaving == null) {
+                enter(nextVehicle(loadProfile, random));
+                entryLatencies.record(System.nanoTime() - intendedStart);
+            } else {
+                exit(leaving);
+                exitLatencies.record(System.nanoTime() - intendedStart);
+            }
+            intendedStart += intervalNanos;
+        }
+        return new LatencyRecorder[] {entryLatencies, exitLatencies};
+    }
+
+    private VehicleEntry nextVehicle(LoadProfile loadProfile, ThreadLocalRandom random) {
+        if (random.nextDouble() < loadProfile.getPlateReuseRatio()) {
+            VehicleEntry returning = departedVehicles.poll();
+            if (returning != null) {
+                return returning;
+            }
+        }
+        String vehicleRegNumber = "LT" + Long.toString(vehicleCount.incrementAndGet(), 36).toUpperCase(Locale.ROOT);
+        ParkingType parkingType = (random.nextDouble() < loadProfile.getCarRatio()) ? ParkingType.CAR : ParkingType.BIKE;
+        return new VehicleEntry(vehicleRegNumber, parkingType);
+    }
+
+    void enter(VehicleEntry vehicle) {
+        EntryResult result = parkingService.enter(vehicle.getParkingType(), vehicle.getVehicleRegNumber());
+        if (!result.isSuccess()) {
+            failedEntries.increment();
+            return;
+        }
+        int parkingNumber = result.getParkingNumber();
+        SpotHolder entering = new SpotHolder(vehicle.getVehicleRegNumber());
+        occupiedSpots.compute(parkingNumber, (spot, holder) -> {
+            if (holder == null) {
+                return entering;
+            }
+            SpotHolder last = holder;
+            while (last.next != null) {
+                last = last.next;
+            }
+            if (last.exiting) {
+                // the exit may have committed before the spot was claimed : only a failed exit makes it a double allocation.
+                entering.pendingReuse = true;
+            } else {
+                countDoubleAllocation(parkingNumber, entering.vehicleRegNumber, last.vehicleRegNumber);
+            }
+            last.next = entering;
+            return holder;
+        });
+        parkedVehicles.add(new ParkedVehicle(vehicle, parkingNumber));
+    }
+
+    void exit(ParkedVehicle parked) {
+        String vehicleRegNumber = parked.vehicle.getVehicleRegNumber();
+        // the vehicle keeps its spot until its exit is committed.
+        occupiedSpots.computeIfPresent(parked.parkingNumber, (spot, holder) -> {
+            SpotHolder leaving = find(holder, vehicleRegNumber);
+            if (leaving != null) {
+                leaving.exiting = true;
+            }
+            return holder;
+        });
+        ExitResult result = parkingService.exit(vehicleRegNumber);
+        occupiedSpots.computeIfPresent(parked.parkingNumber,
+                (spot, holder) -> exited(spot, holder, vehicleRegNumber, result.isSuccess()));
+        if (!result.isSuccess()) {
+            failedExits.increment();
+            // still parked : let out by the drain.
+            parkedVehicles.add(parked);
+            return;
+        }
+        departedVehicles.add(parked.vehicle);
+    }
+
+    long getDoubleAllocations() {
+        return doubleAllocations.sum();
+    }
+
+    private static SpotHolder find(SpotHolder holder, String vehicleRegNumber) {
+        for (SpotHolder current = holder; current != null; current = current.next) {
+            if (current.vehicleRegNumber.equals(vehicleRegNumber)) {
+                return current;
+            }
+        }
+        return null;
+    }
+
+    // the vehicles left on the spot once the exit has returned.
+    private SpotHolder exited(int parkingNumber, SpotHolder holder, String vehicleRegNumber, boolean committed) {
+        SpotHolder leaving = find(holder, vehicleRegNumber);
+        if (leaving == null) {
+            return holder;
+        }
+        leaving.exiting = false;
+        SpotHolder reusing = (leaving.next != null && leaving.next.pendingReuse) ? leaving.next : null;
+        if (reusing != null) {
+            reusing.pendingReuse = false;
+        }
+        if (!committed) {
+            if (reusing != null) {
+                // the spot was given while its vehicle was still parked.
+                countDoubleAllocation(parkingNumber, reusing.vehicleRegNumber, vehicleRegNumber);
+            }
+            return holder;
+        }
+        if (leaving == holder) {
+            return holder.next;
+        }
+        SpotHolder previous = holder;
+        while (previous.next != leaving) {
+            previous = previous.next;
+        }
+        previous.next = leaving.next;
+        return holder;
+    }
+
+    private void countDoubleAllocation(int parkingNumber, String vehicleRegNumber, String parkedVehicleRegNumber) {
+        doubleAllocations.increment();
+        logger.error("Spot {} given to {} while {} is parked on it", parkingNumber, vehicleRegNumber, parkedVehicleRegNumber);
+    }
+
+    private void drain() {
+        List<String> vehicleRegNumbers = new ArrayList<>();
+        ParkedVehicle parked;
+        while ((parked = parkedVehicles.poll()) != null) {
+            vehicleRegNumbers.add(parked.vehicle.getVehicleRegNumber());
+            if (vehicleRegNumbers.size() == DRAIN_BATCH_SIZE || parkedVehicles.isEmpty()) {
+                parkingService.processExitingVehicles(vehicleRegNumbers);
+                vehicleRegNumbers = new ArrayList<>();
+            }
+        }
+        occupiedSpots.clear();
+    }
+}
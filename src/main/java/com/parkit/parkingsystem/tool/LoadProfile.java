@@ -0,0 +1,84 @@
+package com.parkit.parkingsystem.tool;
+
+import com.parkit.parkingsystem.config.AppConfig;
+
+/**
+ * The traffic simulated by the load generator. The rates are those of one gate.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class LoadProfile {
+    private final int gates;
+    private final long durationMillis;
+    private final double arrivalsPerSecond;
+    private final double departuresPerSecond;
+    private final double plateReuseRatio;
+    private final double carRatio;
+
+    /**
+     * @param gates number of gates working at the same time, one thread each.
+     * @param durationMillis duration of the measure.
+     * @param arrivalsPerSecond vehicles entering by each gate per second.
+     * @param departuresPerSecond vehicles leaving by each gate per second, when there are vehicles parked.
+     * @param plateReuseRatio share of the arrivals made by a vehicle that already came, between 0 and 1.
+     * @param carRatio share of cars among the new vehicles, between 0 and 1, the others are bikes.
+     */
+    public LoadProfile(int gates, long durationMillis, double arrivalsPerSecond, double departuresPerSecond,
+            double plateReuseRatio, double carRatio) {
+        if (gates <= 0 || durationMillis <= 0 || arrivalsPerSecond <= 0 || departuresPerSecond <= 0
+                || plateReuseRatio < 0 || plateReuseRatio > 1 || carRatio < 0 || carRatio > 1) {
+            throw new IllegalArgumentException("Invalid argument in LoadProfile");
+        }
+        this.gates = gates;
+        this.durationMillis = durationMillis;
+        this.arrivalsPerSecond = arrivalsPerSecond;
+        this.departuresPerSecond = departuresPerSecond;
+        this.plateReuseRatio = plateReuseRatio;
+        this.carRatio = carRatio;
+    }
+
+    /**
+     * @return the profile described by the loadtest.* keys of config.properties.
+     */
+    public static LoadProfile fromConfig() {
+        return new LoadProfile(
+                AppConfig.getInt("loadtest.gates", 8),
+                AppConfig.getLong("loadtest.durationSeconds", 60) * 1000,
+                Double.parseDouble(AppConfig.getString("loadtest.arrivalsPerSecond", "10")),
+                Double.parseDouble(AppConfig.getString("loadtest.departuresPerSecond", "10")),
+                Double.parseDouble(AppConfig.getString("loadtest.plateReuseRatio", "0.3")),
+                Double.parseDouble(AppConfig.getString("loadtest.carRatio", "0.8")));
+    }
+
+    public int getGates() {
+        return gates;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public double getArrivalsPerSecond() {
+        return arrivalsPerSecond;
+    }
+
+    public double getDeparturesPerSecond() {
+        return departuresPerSecond;
+    }
+
+    public double getPlateReuseRatio() {
+        return plateReuseRatio;
+    }
+
+    public double getCarRatio() {
+        return carRatio;
+    }
+
+    @Override
+    public String toString() {
+        return gates + " gates for " + (durationMillis / 1000.0) + " s, " + arrivalsPerSecond + " arrivals/s and "
+                + departuresPerSecond + " departures/s per gate, " + (int) (plateReuseRatio * 100) + "% returning vehicles, "
+                + (int) (carRatio * 100) + "% cars";
+    }
+}
@@ -0,0 +1,76 @@
+package com.parkit.parkingsystem.tool;
+
+import java.io.PrintStream;
+
+/**
+ * What a load generator run measured.
+ *
+ * @author Cordier Laurent
+ * @version 1.0
+ */
+public class LoadReport {
+    private final LoadProfile loadProfile;
+    private final long elapsedNanos;
+    private final LatencyRecorder entryLatencies;
+    private final LatencyRecorder exitLatencies;
+    private final long failedEntries;
+    private final long failedExits;
+    private final long doubleAllocations;
+
+    public LoadReport(LoadProfile loadProfile, long elapsedNanos, LatencyRecorder entryLatencies, LatencyRecorder exitLatencies,
+            long failedEntries, long failedExits, long doubleAllocations) {
+        this.loadProfile = loadProfile;
+        this.elapsedNanos = elapsedNanos;
+        this.entryLatencies = entryLatencies;
+        this.exitLatencies = exitLatencies;
+        this.failedEntries = failedEntries;
+        this.failedExits = failedExits;
+        this.doubleAllocations = doubleAllocations;
+    }
+
+    public LatencyRecorder getEntryLatencies() {
+        return entryLatencies;
+    }
+
+    public LatencyRecorder getExitLatencies() {
+        return exitLatencies;
+    }
+
+    public long getFailedEntries() {
+        return failedEntries;
+    }
+
+    public long getFailedExits() {
+        return failedExits;
+    }
+
+    /**
+     * @return the number of times a spot was given to a vehicle while another one was parked on it.
+     */
+    public long getDoubleAllocations() {
+        return doubleAllocations;
+    }
+
+    /**
+     * @return the operations done per second, entries and exits together.
+     */
+    public double getThroughput() {
+        return (entryLatencies.getCount() + exitLatencies.getCount()) * 1e9 / elapsedNanos;
+    }
+
+    public void print(PrintStream out) {
+        out.println("Load test : " + loadProfile);
+        out.println(String.format("Throughput : %.1f operations/s (target %.1f)", getThroughput(),
+                loadProfile.getGates() * (loadProfile.getArrivalsPerSecond() + loadProfile.getDeparturesPerSecond())));
+        print(out, "Entry", entryLatencies, failedEntries);
+        print(out, "Exit", exitLatencies, failedExits);
+        out.println("Double allocations : " + doubleAllocations);
+    }
+
+    private void print(PrintStream out, String operation, LatencyRecorder latencies, long failed) {
+        out.println(String.format("%-5s : %d done, %d failed, %.1f/s, p50 %.2f ms, p99 %.2f ms, p999 %.2f ms, max %.2f ms",
+                operation, latencies.getCount(), failed, latencies.getCount() * 1e9 / elapsedNanos,
+                latencies.getPercentile(50) / 1e6, latencies.getPercentile(99) / 1e6,
+                latencies.getPercentile(99.9) / 1e6, latencies.getMax() / 1e6));
+    }
+}
@@ -0,0 +1,6 @@
+/* for databases created from Data.sql before the vehicle profiles existed */
+create table if not exists vehicle_profile(
+ VEHICLE_REG_NUMBER varchar(10) PRIMARY KEY,
+ VISIT_COUNT int NOT NULL,
+ TOTAL_SPENT double NOT NULL,
+ LAST_VISIT DATETIME NOT NULL);
@@ -0,0 +1,3 @@
+/* GET_TICKET : where VEHICLE_REG_NUMBER = ? order by IN_TIME desc limit 1, read backwards without filesort.
+   VEHICLE_REG_NUMBER_COUNT_TICKETS : count on the index prefix. */
+create index IDX_TICKET_VEHICLE_IN_TIME on ticket(VEHICLE_REG_NUMBER, IN_TIME);
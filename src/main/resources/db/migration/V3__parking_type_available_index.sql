@@ -0,0 +1,2 @@
+/* GET_NEXT_PARKING_SPOT : min(PARKING_NUMBER) where AVAILABLE = true and TYPE = ?, answered from the index. */
+create index IDX_PARKING_TYPE_AVAILABLE on parking(TYPE, AVAILABLE, PARKING_NUMBER);
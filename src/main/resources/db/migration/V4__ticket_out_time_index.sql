@@ -0,0 +1,2 @@
+/* GET_OPEN_TICKETS : the open tickets are read at startup to load the open ticket index. */
+create index IDX_TICKET_OUT_TIME on ticket(OUT_TIME);
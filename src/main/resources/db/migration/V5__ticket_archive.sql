@@ -0,0 +1,10 @@
+/* closed tickets moved out of the ticket table by TicketArchiver, with their ids.
+   GET_ARCHIVED_TICKET and VEHICLE_REG_NUMBER_COUNT_TICKETS : same index as the ticket table. */
+create table if not exists ticket_archive(
+ ID int PRIMARY KEY,
+ PARKING_NUMBER int NOT NULL,
+ VEHICLE_REG_NUMBER varchar(10) NOT NULL,
+ PRICE double,
+ IN_TIME DATETIME NOT NULL,
+ OUT_TIME DATETIME NOT NULL,
+ INDEX IDX_TICKET_ARCHIVE_VEHICLE_IN_TIME (VEHICLE_REG_NUMBER, IN_TIME));
@@ -0,0 +1,10 @@
+/* revenue and occupancy per hour and parking type, added to by RollupService.
+   GET_HOURLY_ROLLUPS : a range of the primary key. */
+create table if not exists hourly_rollup(
+ BUCKET_HOUR DATETIME NOT NULL,
+ TYPE varchar(10) NOT NULL,
+ ENTRIES int NOT NULL,
+ EXITS int NOT NULL,
+ REVENUE_CENTS bigint NOT NULL,
+ OCCUPIED_MINUTES double NOT NULL,
+ PRIMARY KEY (BUCKET_HOUR, TYPE));
@@ -0,0 +1,9 @@
+/* the vehicle profiles created empty by V1 : without their past visits, a regular would lose the discount
+   from the first visit recorded after the upgrade. Same statement as DBConstants.BACKFILL_VEHICLE_PROFILES,
+   which rewrites each profile from the tickets and the archive, so it is safe on profiles already filled. */
+insert into vehicle_profile(VEHICLE_REG_NUMBER, VISIT_COUNT, TOTAL_SPENT, LAST_VISIT)
+ select VEHICLE_REG_NUMBER, count(*), coalesce(sum(PRICE), 0), max(coalesce(OUT_TIME, IN_TIME))
+ from (select VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME from ticket
+       union all select VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME from ticket_archive) t
+ group by VEHICLE_REG_NUMBER
+ on duplicate key update VISIT_COUNT = values(VISIT_COUNT), TOTAL_SPENT = values(TOTAL_SPENT), LAST_VISIT = values(LAST_VISIT);
@@ -0,0 +1,4 @@
+/* write-behind : SAVE_TICKET_IF_ABSENT inserts the ticket of a journaled entry once, known by its journal sequence.
+   Null for the tickets saved without the journal. */
+alter table ticket add column JOURNAL_SEQ bigint;
+create unique index IDX_TICKET_JOURNAL_SEQ on ticket(JOURNAL_SEQ);
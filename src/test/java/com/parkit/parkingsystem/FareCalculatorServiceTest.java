@@ -149,4 +149,56 @@ public class FareCalculatorServiceTest {
         ticket.setInTime(null);
         assertThatThrownBy(() -> fareCalculatorService.calculateFare(ticket)).isInstanceOf(IllegalArgumentException.class).hasMessageContaining("Out time or in time is incorrect");
     }
+
+    @Test
+    @DisplayName("The fare in cents is the rounded fare of the ticket, for every minute over three days")
+    public void calculateFareCentsMatchesDecimalFare() {
+        for (ParkingType parkingType : ParkingType.values()) {
+            for (boolean discount : new boolean[] {false, true}) {
+                double hourlyRate = MonetaryUtil.round((parkingType == ParkingType.CAR ? Fare.CAR_RATE_PER_HOUR : Fare.BIKE_RATE_PER_HOUR)
+                        * (discount ? Fare.RECURRING_USER_DISCOUNT : 1));
+                for (long minutes = 30; minutes <= 72 * 60; minutes++) {
+                    long cents = fareCalculatorService.calculateFareCents(0, minutes * 60 * 1000, parkingType.ordinal(), discount);
+                    assertThat(cents / 100.0).isEqualTo(MonetaryUtil.round(minutes / 60.0 * hourlyRate));
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("The fare in cents is free under 30 minutes and keeps the rounding of half cents")
+    public void calculateFareCentsBoundaries() {
+        long halfHour = 30 * 60 * 1000;
+        assertThat(fareCalculatorService.calculateFareCents(0, halfHour - 1, ParkingType.CAR.ordinal(), false)).isEqualTo(0);
+        assertThat(fareCalculatorService.calculateFareCents(0, halfHour, ParkingType.CAR.ordinal(), false)).isEqualTo(75);
+        // 45 minutes of car : 112.5 cents, 41 minutes : 102.5 cents, as the decimal fare rounded them.
+        assertThat(fareCalculatorService.calculateFareCents(0, 45 * 60 * 1000, ParkingType.CAR.ordinal(), false)).isEqualTo(113);
+        assertThat(fareCalculatorService.calculateFareCents(0, 41 * 60 * 1000, ParkingType.CAR.ordinal(), false)).isEqualTo(102);
+        assertThat(fareCalculatorService.calculateFareCents(0, 60 * 60 * 1000, ParkingType.CAR.ordinal(), true)).isEqualTo(142);
+    }
+
+    @Test
+    @DisplayName("The fare in cents rejects an unknown type or an exit before the entry")
+    public void calculateFareCentsWithInvalidArguments() {
+        assertThatThrownBy(() -> fareCalculatorService.calculateFareCents(0, 60000, ParkingType.values().length, false))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("Unkown Parking Type");
+        assertThatThrownBy(() -> fareCalculatorService.calculateFareCents(60000, 0, ParkingType.CAR.ordinal(), false))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("Out time is before in time");
+    }
+
+    @Test
+    @DisplayName("The times set in epoch milliseconds give the same fare, and the Date getters are copies of them")
+    public void calculateFareWithEpochMillis() {
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setInTimeMillis(0);
+        ticket.setOutTimeMillis(45 * 60 * 1000);
+        fareCalculatorService.calculateFare(ticket);
+        assertThat(ticket.getPrice()).isEqualTo(1.13);
+
+        ticket.getOutTime().setTime(0);
+        assertThat(ticket.getOutTime()).isEqualTo(new Date(45 * 60 * 1000));
+        ticket.setOutTime(null);
+        assertThat(ticket.hasOutTime()).isFalse();
+        assertThat(ticket.getOutTimeMillis()).isEqualTo(Ticket.NO_TIME);
+    }
 }
@@ -0,0 +1,145 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.service.OccupancyService;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.mockito.Mockito.*;
+import static org.assertj.core.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+public class OccupancyServiceTest {
+
+    @Mock
+    private static ParkingSpotDAO parkingSpotDAO;
+
+    private OccupancyService occupancyService;
+
+    @BeforeEach
+    public void setUpPerTest() {
+        occupancyService = new OccupancyService(parkingSpotDAO);
+    }
+
+    @Test
+    @DisplayName("The counters are set from the parking table, then follow the claims and releases")
+    public void reconcileThenCount() {
+        // given : 3 car spots with 1 free, 2 bike spots both free.
+        when(parkingSpotDAO.getParkingSpots()).thenReturn(Arrays.asList(
+                new ParkingSpot(1, ParkingType.CAR, false),
+                new ParkingSpot(2, ParkingType.CAR, false),
+                new ParkingSpot(3, ParkingType.CAR, true),
+                new ParkingSpot(4, ParkingType.BIKE, true),
+                new ParkingSpot(5, ParkingType.BIKE, true)));
+        when(parkingSpotDAO.getAvailableSlotCount(ParkingType.CAR)).thenReturn(1);
+        when(parkingSpotDAO.getAvailableSlotCount(ParkingType.BIKE)).thenReturn(2);
+
+        // when :
+        boolean reconciled = occupancyService.reconcile();
+        occupancyService.claimed(ParkingType.BIKE);
+        occupancyService.released(ParkingType.CAR);
+
+        // then :
+        assertThat(reconciled).isTrue();
+        assertThat(occupancyService.getFree(ParkingType.CAR)).isEqualTo(2);
+        assertThat(occupancyService.getUsed(ParkingType.CAR)).isEqualTo(1);
+        assertThat(occupancyService.getFree(ParkingType.BIKE)).isEqualTo(1);
+        assertThat(occupancyService.getUsed(ParkingType.BIKE)).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("A reconcile adds the difference between the parking table and the counters")
+    public void reconcileAddsDifference() {
+        // given : 2 car spots, counted both free, while one was taken outside the application.
+        when(parkingSpotDAO.getParkingSpots()).thenReturn(Arrays.asList(
+                new ParkingSpot(1, ParkingType.CAR, true),
+                new ParkingSpot(2, ParkingType.CAR, true)));
+        when(parkingSpotDAO.getAvailableSlotCount(ParkingType.CAR)).thenReturn(2, 1);
+        when(parkingSpotDAO.getAvailableSlotCount(ParkingType.BIKE)).thenReturn(0);
+        occupancyService.reconcile();
+
+        // when :
+        boolean reconciled = occupancyService.reconcile();
+
+        // then :
+        assertThat(reconciled).isTrue();
+        assertThat(occupancyService.getFree(ParkingType.CAR)).isEqualTo(1);
+        assertThat(occupancyService.getUsed(ParkingType.CAR)).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("A reconcile never blocks the gates and reads the parking table again if a gate changed it meanwhile")
+    public void reconcileDoesNotBlockChanges() throws Exception {
+        // given : 1 car spot, free. The first read of the table waits until a gate has claimed it.
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch claimed = new CountDownLatch(1);
+        AtomicBoolean taken = new AtomicBoolean();
+        when(parkingSpotDAO.getParkingSpots()).thenAnswer(invocation -> {
+            reading.countDown();
+            claimed.await(5, TimeUnit.SECONDS);
+            return Arrays.asList(new ParkingSpot(1, ParkingType.CAR, !taken.get()));
+        });
+        when(parkingSpotDAO.getAvailableSlotCount(ParkingType.CAR)).thenAnswer(invocation -> taken.get() ? 0 : 1);
+        when(parkingSpotDAO.getAvailableSlotCount(ParkingType.BIKE)).thenReturn(0);
+
+        // when : the gate claims the spot while the table is read, the database write being seen by the read.
+        CompletableFuture<Boolean> reconciled = CompletableFuture.supplyAsync(occupancyService::reconcile);
+        assertThat(reading.await(5, TimeUnit.SECONDS)).isTrue();
+        occupancyService.beginChange();
+        taken.set(true);
+        occupancyService.claimed(ParkingType.CAR);
+        occupancyService.endChange();
+        claimed.countDown();
+
+        // then : the claim is counted once.
+        assertThat(reconciled.get(5, TimeUnit.SECONDS)).isTrue();
+        verify(parkingSpotDAO, times(2)).getParkingSpots();
+        assertThat(occupancyService.getFree(ParkingType.CAR)).isEqualTo(0);
+        assertThat(occupancyService.getUsed(ParkingType.CAR)).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("A reconcile gives up if a gate operation never ends")
+    public void reconcileWhileChangeInProgress() {
+        // given :
+        occupancyService.beginChange();
+
+        // when :
+        boolean reconciled = occupancyService.reconcile();
+
+        // then : the parking table is not read while the operation is in progress.
+        assertThat(reconciled).isFalse();
+        verify(parkingSpotDAO, never()).getParkingSpots();
+    }
+
+    @Test
+    @DisplayName("Nothing is counted until the parking table could be read")
+    public void notReconciled() {
+        // given : the database is down.
+        when(parkingSpotDAO.getParkingSpots()).thenReturn(null);
+
+        // when :
+        boolean reconciled = occupancyService.reconcile();
+        occupancyService.claimed(ParkingType.CAR);
+
+        // then :
+        assertThat(reconciled).isFalse();
+        assertThat(occupancyService.isReconciled()).isFalse();
+        assertThat(occupancyService.getFree(ParkingType.CAR)).isEqualTo(-1);
+        assertThat(occupancyService.getUsed(ParkingType.CAR)).isEqualTo(-1);
+    }
+}
@@ -1,10 +1,18 @@
 package com.parkit.parkingsystem;
 
+import com.parkit.parkingsystem.constants.Fare;
+import com.parkit.parkingsystem.constants.GateStatus;
 import com.parkit.parkingsystem.constants.ParkingType;
 import com.parkit.parkingsystem.dao.ParkingSpotDAO;
 import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.ExitResult;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.model.VehicleEntry;
+import com.parkit.parkingsystem.model.VehicleResult;
+import com.parkit.parkingsystem.service.OccupancyService;
 import com.parkit.parkingsystem.service.ParkingService;
 import com.parkit.parkingsystem.util.InputReaderUtil;
 import org.junit.jupiter.api.BeforeEach;
@@ -12,11 +20,14 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 
 import static org.mockito.Mockito.*;
 import static org.assertj.core.api.Assertions.*;
@@ -101,6 +112,190 @@ public class ParkingServiceTest {
         }
     }
 
+    @Nested
+    class GateApiTests {
+
+        @Test
+        @DisplayName("enter gives the spot, the ticket id and the discount without using the console")
+        public void enterWithSuccess() {
+            // given : spot 2 is free and the vehicle already came once.
+            when(parkingSpotDAO.claimNextAvailableSlot(ParkingType.BIKE)).thenReturn(2);
+            when(ticketDAO.saveTicket(any(Ticket.class))).thenAnswer(invocation -> {
+                invocation.getArgument(0, Ticket.class).setId(5);
+                return true;
+            });
+            when(ticketDAO.getNbTicket(VEHICULE_REG_NUMBER_TEST)).thenReturn(2);
+
+            // when :
+            EntryResult result = parkingService.enter(ParkingType.BIKE, VEHICULE_REG_NUMBER_TEST);
+
+            // then :
+            assertThat(result.getStatus()).isEqualTo(GateStatus.OK);
+            assertThat(result.getParkingNumber()).isEqualTo(2);
+            assertThat(result.getParkingType()).isEqualTo(ParkingType.BIKE);
+            assertThat(result.getTicketId()).isEqualTo(5);
+            assertThat(result.isDiscount()).isTrue();
+            assertThat(result.getInTime()).isNotNull();
+            verifyNoInteractions(inputReaderUtil);
+        }
+
+        @Test
+        @DisplayName("The occupancy counters follow the spots claimed and released")
+        public void enterAndExitUpdateOccupancy() {
+            // given :
+            OccupancyService occupancyService = mock(OccupancyService.class);
+            parkingService.setOccupancyService(occupancyService);
+            when(parkingSpotDAO.claimNextAvailableSlot(ParkingType.CAR)).thenReturn(1, -1);
+            when(ticketDAO.saveTicket(any(Ticket.class))).thenReturn(true);
+            Ticket ticket = new Ticket();
+            ticket.setInTime(new Date(System.currentTimeMillis() - (60*60*1000)));
+            ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+            // no open ticket when the vehicle enters.
+            when(ticketDAO.getTicket(VEHICULE_REG_NUMBER_TEST)).thenReturn(null, ticket);
+            when(ticketDAO.getNbTicket(VEHICULE_REG_NUMBER_TEST)).thenReturn(1);
+            when(ticketDAO.updateTicket(ticket)).thenReturn(true);
+            when(parkingSpotDAO.updateParking(any(ParkingSpot.class))).thenReturn(true);
+
+            // when : one vehicle enters, the next one finds the parking full, then the first one leaves.
+            parkingService.enter(ParkingType.CAR, VEHICULE_REG_NUMBER_TEST);
+            parkingService.enter(ParkingType.CAR, "OTHER");
+            parkingService.exit(VEHICULE_REG_NUMBER_TEST);
+
+            // then :
+            verify(occupancyService, Mockito.times(1)).claimed(ParkingType.CAR);
+            verify(occupancyService, Mockito.times(1)).released(ParkingType.CAR);
+        }
+
+        @Test
+        @DisplayName("enter refuses an invalid request and a full parking")
+        public void enterInvalidAndFull() {
+            // given :
+            when(parkingSpotDAO.claimNextAvailableSlot(ParkingType.CAR)).thenReturn(-1);
+            long fullRejections = Metrics.counter("ParkingService", "fullRejections").getCount();
+            long entries = Metrics.timer("ParkingService", "enter").getCount();
+
+            // when :
+            EntryResult invalid = parkingService.enter(null, VEHICULE_REG_NUMBER_TEST);
+            EntryResult tooLong = parkingService.enter(ParkingType.CAR, "ABCDEFGHIJK");
+            EntryResult full = parkingService.enter(ParkingType.CAR, VEHICULE_REG_NUMBER_TEST);
+
+            // then : all are timed, only the last one is a full parking.
+            assertThat(invalid.getStatus()).isEqualTo(GateStatus.INVALID_REQUEST);
+            assertThat(tooLong.getStatus()).isEqualTo(GateStatus.INVALID_REQUEST);
+            assertThat(full.getStatus()).isEqualTo(GateStatus.PARKING_FULL);
+            assertThat(Metrics.counter("ParkingService", "fullRejections").getCount()).isEqualTo(fullRejections + 1);
+            assertThat(Metrics.timer("ParkingService", "enter").getCount()).isEqualTo(entries + 3);
+            verify(ticketDAO, Mockito.never()).saveTicket(any(Ticket.class));
+        }
+
+        @Test
+        @DisplayName("exit gives the fare and the times of the visit")
+        public void exitWithSuccess() {
+            // given : one hour of car parking, first visit.
+            Ticket ticket = new Ticket();
+            ticket.setInTime(new Date(System.currentTimeMillis() - (60*60*1000)));
+            ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+            when(ticketDAO.getTicket(VEHICULE_REG_NUMBER_TEST)).thenReturn(ticket);
+            when(ticketDAO.getNbTicket(VEHICULE_REG_NUMBER_TEST)).thenReturn(1);
+            when(ticketDAO.updateTicket(ticket)).thenReturn(true);
+            when(parkingSpotDAO.updateParking(any(ParkingSpot.class))).thenReturn(true);
+
+            // when :
+            ExitResult result = parkingService.exit(VEHICULE_REG_NUMBER_TEST);
+
+            // then :
+            assertThat(result.getStatus()).isEqualTo(GateStatus.OK);
+            assertThat(result.getVehicleRegNumber()).isEqualTo(VEHICULE_REG_NUMBER_TEST);
+            assertThat(result.getParkingNumber()).isEqualTo(1);
+            assertThat(result.getFare()).isEqualTo(Fare.CAR_RATE_PER_HOUR);
+            assertThat(result.isDiscount()).isFalse();
+            assertThat(result.getOutTime()).isAfter(result.getInTime());
+            verifyNoInteractions(inputReaderUtil);
+            // the visit count is read in the unit of work, after the ticket : never on a second connection.
+            InOrder inOrder = inOrder(ticketDAO);
+            inOrder.verify(ticketDAO).getTicket(VEHICULE_REG_NUMBER_TEST);
+            inOrder.verify(ticketDAO).getNbTicket(VEHICULE_REG_NUMBER_TEST);
+            verify(ticketDAO, Mockito.never()).getNbTicketAsync(anyString());
+        }
+
+        @Test
+        @DisplayName("exit fails when the visit count cannot be read, instead of dropping the discount")
+        public void exitVisitCountUnreadable() {
+            // given :
+            Ticket ticket = new Ticket();
+            ticket.setInTime(new Date(System.currentTimeMillis() - (60*60*1000)));
+            ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+            when(ticketDAO.getTicket(VEHICULE_REG_NUMBER_TEST)).thenReturn(ticket);
+            when(ticketDAO.getNbTicket(VEHICULE_REG_NUMBER_TEST)).thenReturn(-1);
+
+            // when :
+            ExitResult result = parkingService.exit(VEHICULE_REG_NUMBER_TEST);
+            List<VehicleResult> results = parkingService.processExitingVehicles(Arrays.asList(VEHICULE_REG_NUMBER_TEST));
+
+            // then : no fare is committed.
+            assertThat(result.getStatus()).isEqualTo(GateStatus.ERROR);
+            assertThat(results.get(0).isSuccess()).isFalse();
+            verify(ticketDAO, Mockito.never()).updateTicket(any(Ticket.class));
+            verify(ticketDAO, Mockito.never()).updateTickets(anyList());
+            verify(parkingSpotDAO, Mockito.never()).updateParking(any(ParkingSpot.class));
+        }
+
+        @Test
+        @DisplayName("enter refuses a vehicle that is already parked")
+        public void enterAlreadyParked() {
+            // given :
+            Ticket ticket = new Ticket();
+            ticket.setInTime(new Date(System.currentTimeMillis() - (60*60*1000)));
+            ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+            when(ticketDAO.getTicket(VEHICULE_REG_NUMBER_TEST)).thenReturn(ticket);
+
+            // when :
+            EntryResult result = parkingService.enter(ParkingType.CAR, VEHICULE_REG_NUMBER_TEST);
+
+            // then : no spot is claimed.
+            assertThat(result.getStatus()).isEqualTo(GateStatus.ALREADY_PARKED);
+            verify(parkingSpotDAO, Mockito.never()).claimNextAvailableSlot(any(ParkingType.class));
+            verify(ticketDAO, Mockito.never()).saveTicket(any(Ticket.class));
+        }
+
+        @Test
+        @DisplayName("exit of a vehicle whose ticket another exit closed first")
+        public void exitAlreadyClosed() {
+            // given : both exits found the ticket open, the other one updated it first.
+            OccupancyService occupancyService = mock(OccupancyService.class);
+            parkingService.setOccupancyService(occupancyService);
+            Ticket ticket = new Ticket();
+            ticket.setInTime(new Date(System.currentTimeMillis() - (60*60*1000)));
+            ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+            when(ticketDAO.getTicket(VEHICULE_REG_NUMBER_TEST)).thenReturn(ticket);
+            when(ticketDAO.getNbTicket(VEHICULE_REG_NUMBER_TEST)).thenReturn(1);
+            when(ticketDAO.updateTicket(ticket)).thenReturn(false);
+
+            // when :
+            ExitResult result = parkingService.exit(VEHICULE_REG_NUMBER_TEST);
+
+            // then : the spot is not freed nor counted a second time.
+            assertThat(result.getStatus()).isEqualTo(GateStatus.NOT_PARKED);
+            verify(parkingSpotDAO, Mockito.never()).updateParking(any(ParkingSpot.class));
+            verify(occupancyService, Mockito.never()).released(any(ParkingType.class));
+        }
+
+        @Test
+        @DisplayName("exit of a vehicle that is not parked")
+        public void exitNotParked() {
+            // given :
+            when(ticketDAO.getTicket(VEHICULE_REG_NUMBER_TEST)).thenReturn(null);
+
+            // when :
+            ExitResult result = parkingService.exit(VEHICULE_REG_NUMBER_TEST);
+
+            // then :
+            assertThat(result.getStatus()).isEqualTo(GateStatus.NOT_PARKED);
+            verify(ticketDAO, Mockito.never()).updateTicket(any(Ticket.class));
+            verify(parkingSpotDAO, Mockito.never()).updateParking(any(ParkingSpot.class));
+        }
+    }
+
     @Nested
     class ProcessIncomingVehicleTests {
         
@@ -111,7 +306,7 @@ public class ParkingServiceTest {
                 when(ticketDAO.getNbTicket(VEHICULE_REG_NUMBER_TEST)).thenReturn(nbTicket);
                 when(ticketDAO.saveTicket(any(Ticket.class))).thenReturn(true);
                 when(parkingSpotDAO.getNextAvailableSlot(any(ParkingType.class))).thenReturn(1);
-                when(parkingSpotDAO.updateParking(any(ParkingSpot.class))).thenReturn(true);
+                when(parkingSpotDAO.claimNextAvailableSlot(any(ParkingType.class))).thenReturn(1);
             } catch (Exception e) {
                 e.printStackTrace();
                 throw new RuntimeException("Failed in CommonIncomingVehicle");
@@ -127,9 +322,9 @@ public class ParkingServiceTest {
             // when : the vehicle enters.
             parkingService.processIncomingVehicle();
               
-            // then : saveTicket and updateParking must have been called once.
+            // then : saveTicket and claimNextAvailableSlot must have been called once.
             verify(ticketDAO, Mockito.times(1)).saveTicket(any(Ticket.class)); 
-            verify(parkingSpotDAO, Mockito.times(1)).updateParking(any(ParkingSpot.class)); 
+            verify(parkingSpotDAO, Mockito.times(1)).claimNextAvailableSlot(ParkingType.CAR); 
         }
   
         @Test
@@ -141,9 +336,25 @@ public class ParkingServiceTest {
             // when : the vehicle enters.
             parkingService.processIncomingVehicle();
                    
-            // then : saveTicket and updateParking must have been called once.
+            // then : saveTicket and claimNextAvailableSlot must have been called once.
             verify(ticketDAO, Mockito.times(1)).saveTicket(any(Ticket.class)); 
-            verify(parkingSpotDAO, Mockito.times(1)).updateParking(any(ParkingSpot.class)); 
+            verify(parkingSpotDAO, Mockito.times(1)).claimNextAvailableSlot(ParkingType.CAR); 
+        }
+
+        @Test
+        @DisplayName("Another gate takes the last free parking space first")
+        public void processIncomingVehicleClaimLost() throws Exception {
+            // given : a free space is seen, but it is gone when claimed.
+            when(inputReaderUtil.readSelection()).thenReturn(1);
+            when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn(VEHICULE_REG_NUMBER_TEST);
+            when(parkingSpotDAO.getNextAvailableSlot(any(ParkingType.class))).thenReturn(1);
+            when(parkingSpotDAO.claimNextAvailableSlot(any(ParkingType.class))).thenReturn(-1);
+
+            // when : the vehicle enters.
+            parkingService.processIncomingVehicle();
+
+            // then : no ticket is saved.
+            verify(ticketDAO, Mockito.never()).saveTicket(any(Ticket.class));
         }
     }
     
@@ -210,6 +421,98 @@ public class ParkingServiceTest {
        }
     }
     
+    @Nested
+    class BatchTests {
+
+        @Test
+        @DisplayName("A burst of vehicles enters : all tickets are saved in one batch")
+        public void processIncomingVehicles() {
+            // given : two free car spots, then the lot is full for the bike.
+            when(parkingSpotDAO.claimNextAvailableSlot(ParkingType.CAR)).thenReturn(1, 2);
+            when(parkingSpotDAO.claimNextAvailableSlot(ParkingType.BIKE)).thenReturn(-1);
+            when(ticketDAO.saveTickets(anyList())).thenReturn(new boolean[] { true, true });
+            when(ticketDAO.getNbTicket(anyString())).thenReturn(1);
+
+            // when :
+            List<VehicleResult> results = parkingService.processIncomingVehicles(Arrays.asList(
+                    new VehicleEntry("AAA", ParkingType.CAR),
+                    new VehicleEntry("BBB", ParkingType.CAR),
+                    new VehicleEntry("CCC", ParkingType.BIKE)));
+
+            // then :
+            assertThat(results).extracting(VehicleResult::isSuccess).containsExactly(true, true, false);
+            assertThat(results.get(1).getTicket().getParkingSpot().getId()).isEqualTo(2);
+            verify(ticketDAO, Mockito.times(1)).saveTickets(argThat(tickets -> tickets.size() == 2));
+            verify(ticketDAO, Mockito.never()).saveTicket(any(Ticket.class));
+        }
+
+        @Test
+        @DisplayName("A burst of vehicles enters but the batch insert fails : every vehicle fails")
+        public void processIncomingVehiclesBatchFailure() {
+            // given :
+            when(parkingSpotDAO.claimNextAvailableSlot(ParkingType.CAR)).thenReturn(1);
+            when(ticketDAO.saveTickets(anyList())).thenReturn(null);
+
+            // when :
+            List<VehicleResult> results = parkingService.processIncomingVehicles(Arrays.asList(new VehicleEntry("AAA", ParkingType.CAR)));
+
+            // then :
+            assertThat(results.get(0).isSuccess()).isFalse();
+        }
+
+        @Test
+        @DisplayName("A burst of vehicles leaves : tickets and spots are updated in one batch each")
+        public void processExitingVehicles() {
+            // given : one vehicle parked for one hour, one unknown vehicle.
+            Ticket ticket = new Ticket();
+            ticket.setInTime(new Date(System.currentTimeMillis() - (60*60*1000)));
+            ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+            ticket.setVehicleRegNumber("AAA");
+            when(ticketDAO.getTicket("AAA")).thenReturn(ticket);
+            when(ticketDAO.getTicket("ZZZ")).thenReturn(null);
+            when(ticketDAO.getNbTicket("AAA")).thenReturn(1);
+            when(ticketDAO.updateTickets(anyList())).thenReturn(new boolean[] { true });
+            when(parkingSpotDAO.updateParkings(anyList())).thenReturn(new boolean[] { true });
+
+            // when :
+            List<VehicleResult> results = parkingService.processExitingVehicles(Arrays.asList("AAA", "ZZZ"));
+
+            // then :
+            assertThat(results).extracting(VehicleResult::isSuccess).containsExactly(true, false);
+            assertThat(results.get(0).getTicket().getPrice()).isGreaterThan(0);
+            assertThat(ticket.getParkingSpot().isAvailable()).isTrue();
+            verify(ticketDAO, Mockito.never()).updateTicket(any(Ticket.class));
+            verify(parkingSpotDAO, Mockito.times(1)).updateParkings(anyList());
+        }
+
+        @Test
+        @DisplayName("A burst of vehicles leaves : a ticket closed meanwhile by another exit frees nothing")
+        public void processExitingVehiclesAlreadyClosed() {
+            // given : two vehicles parked, the ticket of the second one is closed by another gate.
+            Ticket first = new Ticket();
+            first.setInTime(new Date(System.currentTimeMillis() - (60*60*1000)));
+            first.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+            first.setVehicleRegNumber("AAA");
+            Ticket second = new Ticket();
+            second.setInTime(new Date(System.currentTimeMillis() - (60*60*1000)));
+            second.setParkingSpot(new ParkingSpot(2, ParkingType.CAR, false));
+            second.setVehicleRegNumber("BBB");
+            when(ticketDAO.getTicket("AAA")).thenReturn(first);
+            when(ticketDAO.getTicket("BBB")).thenReturn(second);
+            when(ticketDAO.getNbTicket(anyString())).thenReturn(1);
+            when(ticketDAO.updateTickets(anyList())).thenReturn(new boolean[] { true, false });
+            when(parkingSpotDAO.updateParkings(anyList())).thenReturn(new boolean[] { true });
+
+            // when :
+            List<VehicleResult> results = parkingService.processExitingVehicles(Arrays.asList("AAA", "BBB"));
+
+            // then : only the spot of the first vehicle is freed.
+            assertThat(results).extracting(VehicleResult::isSuccess).containsExactly(true, false);
+            assertThat(results.get(1).getErrorMessage()).isEqualTo("Vehicle is not in the parking");
+            verify(parkingSpotDAO, Mockito.times(1)).updateParkings(argThat(spots -> spots.size() == 1 && spots.get(0).getId() == 1));
+        }
+    }
+
     @Test
     @DisplayName("Testing class ParkingService with null arguments")
     public void constructorWithNullArguments() {
@@ -0,0 +1,229 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.model.RepricingReport;
+import com.parkit.parkingsystem.service.RepricingService;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+
+import static org.mockito.Mockito.*;
+import static org.assertj.core.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+public class RepricingServiceTest {
+
+    private static final long HOUR = 60 * 60 * 1000;
+
+    @Mock
+    private static Connection readCon;
+    @Mock
+    private static Connection writeCon;
+    @Mock
+    private static PreparedStatement readPs;
+    @Mock
+    private static PreparedStatement archiveReadPs;
+    @Mock
+    private static PreparedStatement updateTicketPs;
+    @Mock
+    private static PreparedStatement updateArchivedTicketPs;
+    @Mock
+    private static PreparedStatement adjustSpendPs;
+    @Mock
+    private static ResultSet rs;
+    @Mock
+    private static ResultSet archiveRs;
+
+    @TempDir
+    Path tempDir;
+
+    private Path checkpointFile;
+    private RepricingService repricingService;
+
+    @BeforeEach
+    public void setUpPerTest() throws Exception {
+        checkpointFile = tempDir.resolve("repricing.checkpoint");
+        // one ticket per batch.
+        repricingService = new RepricingService(1, 2, checkpointFile);
+        repricingService.dataBaseConfig = new DataBaseConfig() {
+            private boolean reading = true;
+
+            @Override
+            protected Connection openConnection() {
+                // the first connection streams the tickets, the next ones write the changes.
+                Connection result = reading ? readCon : writeCon;
+                reading = false;
+                return result;
+            }
+        };
+        // lenient : a run resumed in the archive does not read the ticket table.
+        lenient().when(readCon.prepareStatement(DBConstants.GET_CLOSED_TICKETS_FROM, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY))
+                .thenReturn(readPs);
+        lenient().when(readPs.executeQuery()).thenReturn(rs);
+    }
+
+    private void givenNoArchivedTicket() throws Exception {
+        when(readCon.prepareStatement(DBConstants.GET_CLOSED_ARCHIVED_TICKETS_FROM, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY))
+                .thenReturn(archiveReadPs);
+        when(archiveReadPs.executeQuery()).thenReturn(archiveRs);
+        when(archiveRs.next()).thenReturn(false);
+    }
+
+    // ticket 1 : one hour of car recorded at 0, ticket 2 : two hours of car recorded at the right price.
+    private void givenTwoClosedTickets() throws Exception {
+        when(rs.next()).thenReturn(true, true, false);
+        when(rs.getLong(1)).thenReturn(1L, 2L);
+        when(rs.getString(2)).thenReturn("ABCDEF", "GHIJKL");
+        when(rs.getDouble(3)).thenReturn(0.0, 3.0);
+        when(rs.getTimestamp(4)).thenReturn(new Timestamp(0), new Timestamp(0));
+        when(rs.getTimestamp(5)).thenReturn(new Timestamp(HOUR), new Timestamp(2 * HOUR));
+        when(rs.getString(6)).thenReturn("CAR", "CAR");
+        when(rs.getBoolean(7)).thenReturn(false, false);
+    }
+
+    @Test
+    @DisplayName("Only the changed prices are written, and the checkpoint is removed at the end")
+    public void repriceWritesChangedTickets() throws Exception {
+        // given :
+        givenTwoClosedTickets();
+        givenNoArchivedTicket();
+        when(writeCon.prepareStatement(DBConstants.REPRICE_TICKET)).thenReturn(updateTicketPs);
+        when(writeCon.prepareStatement(DBConstants.ADJUST_VEHICLE_SPEND)).thenReturn(adjustSpendPs);
+        when(updateTicketPs.executeBatch()).thenReturn(new int[]{1});
+
+        // when :
+        RepricingReport report = repricingService.reprice(false, false, System.out);
+
+        // then :
+        assertThat(report).isNotNull();
+        assertThat(report.getTicketsRead()).isEqualTo(2);
+        assertThat(report.getTicketsChanged()).isEqualTo(1);
+        assertThat(report.getPriceDifferenceCents()).isEqualTo(150);
+        assertThat(report.getLastTicketId()).isEqualTo(2);
+        verify(readPs, Mockito.times(1)).setFetchSize(Integer.MIN_VALUE);
+        verify(readPs, Mockito.times(1)).setLong(1, 0);
+        verify(updateTicketPs, Mockito.times(1)).setDouble(1, 1.5);
+        verify(updateTicketPs, Mockito.times(1)).setLong(2, 1);
+        verify(updateTicketPs, Mockito.times(1)).executeBatch();
+        verify(adjustSpendPs, Mockito.times(1)).setDouble(1, 1.5);
+        verify(adjustSpendPs, Mockito.times(1)).setString(2, "ABCDEF");
+        verify(adjustSpendPs, Mockito.times(1)).executeBatch();
+        verify(writeCon, Mockito.times(1)).commit();
+        verify(archiveReadPs, Mockito.times(1)).setLong(1, 0);
+        assertThat(checkpointFile).doesNotExist();
+    }
+
+    @Test
+    @DisplayName("A ticket archived before its new price is written is repriced in the archive, and its spend adjusted once")
+    public void repriceTicketArchivedDuringRun() throws Exception {
+        // given :
+        when(rs.next()).thenReturn(true, false);
+        when(rs.getLong(1)).thenReturn(1L);
+        when(rs.getString(2)).thenReturn("ABCDEF");
+        when(rs.getDouble(3)).thenReturn(0.0);
+        when(rs.getTimestamp(4)).thenReturn(new Timestamp(0));
+        when(rs.getTimestamp(5)).thenReturn(new Timestamp(HOUR));
+        when(rs.getString(6)).thenReturn("CAR");
+        when(rs.getBoolean(7)).thenReturn(false);
+        when(readCon.prepareStatement(DBConstants.GET_CLOSED_ARCHIVED_TICKETS_FROM, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY))
+                .thenReturn(archiveReadPs);
+        when(archiveReadPs.executeQuery()).thenReturn(archiveRs);
+        when(archiveRs.next()).thenReturn(true, false);
+        when(archiveRs.getLong(1)).thenReturn(1L);
+        when(archiveRs.getString(2)).thenReturn("ABCDEF");
+        when(archiveRs.getDouble(3)).thenReturn(0.0);
+        when(archiveRs.getTimestamp(4)).thenReturn(new Timestamp(0));
+        when(archiveRs.getTimestamp(5)).thenReturn(new Timestamp(HOUR));
+        when(archiveRs.getString(6)).thenReturn("CAR");
+        when(archiveRs.getBoolean(7)).thenReturn(false);
+        when(writeCon.prepareStatement(DBConstants.REPRICE_TICKET)).thenReturn(updateTicketPs);
+        when(writeCon.prepareStatement(DBConstants.REPRICE_ARCHIVED_TICKET)).thenReturn(updateArchivedTicketPs);
+        when(writeCon.prepareStatement(DBConstants.ADJUST_VEHICLE_SPEND)).thenReturn(adjustSpendPs);
+        // archived between the read and the update of the ticket table.
+        when(updateTicketPs.executeBatch()).thenReturn(new int[]{0});
+        when(updateArchivedTicketPs.executeBatch()).thenReturn(new int[]{1});
+
+        // when :
+        RepricingReport report = repricingService.reprice(false, false, System.out);
+
+        // then :
+        assertThat(report.getTicketsRead()).isEqualTo(2);
+        assertThat(report.getTicketsChanged()).isEqualTo(1);
+        assertThat(report.getPriceDifferenceCents()).isEqualTo(150);
+        verify(updateArchivedTicketPs, Mockito.times(1)).setDouble(1, 1.5);
+        verify(updateArchivedTicketPs, Mockito.times(1)).setLong(2, 1);
+        verify(adjustSpendPs, Mockito.times(1)).setDouble(1, 1.5);
+        verify(adjustSpendPs, Mockito.times(1)).executeBatch();
+        assertThat(checkpointFile).doesNotExist();
+    }
+
+    @Test
+    @DisplayName("A dry run prints the changed prices and writes nothing")
+    public void repriceDryRun() throws Exception {
+        // given :
+        givenTwoClosedTickets();
+        givenNoArchivedTicket();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        // when :
+        RepricingReport report = repricingService.reprice(true, false, new PrintStream(output, true, "UTF-8"));
+
+        // then :
+        assertThat(report.isDryRun()).isTrue();
+        assertThat(report.getTicketsChanged()).isEqualTo(1);
+        assertThat(output.toString("UTF-8")).contains("Ticket 1 ABCDEF : 0.0 -> 1.5").doesNotContain("GHIJKL");
+        verifyNoInteractions(writeCon);
+        assertThat(checkpointFile).doesNotExist();
+    }
+
+    @Test
+    @DisplayName("A resumed run starts after the checkpoint, which is kept when the run fails")
+    public void repriceResumesFromCheckpoint() throws Exception {
+        // given :
+        Files.write(checkpointFile, "41".getBytes(StandardCharsets.UTF_8));
+        when(rs.next()).thenThrow(new RuntimeException("Connection lost"));
+
+        // when :
+        RepricingReport report = repricingService.reprice(false, true, System.out);
+
+        // then :
+        assertThat(report).isNull();
+        verify(readPs, Mockito.times(1)).setLong(1, 41);
+        assertThat(new String(Files.readAllBytes(checkpointFile), StandardCharsets.UTF_8)).isEqualTo("41");
+    }
+
+    @Test
+    @DisplayName("A run stopped in the archive pass resumes in the archive")
+    public void repriceResumesInArchive() throws Exception {
+        // given :
+        Files.write(checkpointFile, "ticket_archive:41".getBytes(StandardCharsets.UTF_8));
+        givenNoArchivedTicket();
+
+        // when :
+        RepricingReport report = repricingService.reprice(false, true, System.out);
+
+        // then :
+        assertThat(report.getTicketsRead()).isZero();
+        verify(archiveReadPs, Mockito.times(1)).setLong(1, 41);
+        verify(readCon, Mockito.never()).prepareStatement(DBConstants.GET_CLOSED_TICKETS_FROM, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        assertThat(checkpointFile).doesNotExist();
+    }
+}
@@ -0,0 +1,96 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.RollupDAO;
+import com.parkit.parkingsystem.model.HourlyRollup;
+import com.parkit.parkingsystem.service.RollupService;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.mockito.Mockito.*;
+import static org.assertj.core.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+public class RollupServiceTest {
+
+    private static final long HOUR = 60 * 60 * 1000L;
+    // an hour of the day : the rollups are by hour since the epoch.
+    private static final long TEN_O_CLOCK = 1000 * HOUR;
+
+    @Mock
+    private static RollupDAO rollupDAO;
+
+    private RollupService rollupService;
+
+    @BeforeEach
+    public void setUpPerTest() {
+        rollupService = new RollupService(rollupDAO);
+    }
+
+    @Test
+    @DisplayName("The exit and the fare count in the hour of the exit, the time parked in each hour of the visit")
+    @SuppressWarnings("unchecked")
+    public void flushSplitsVisitByHour() {
+        // given : a car from 10:30 to 12:15, a bike entering at 12:00.
+        rollupService.entered(ParkingType.CAR, TEN_O_CLOCK + 30 * 60 * 1000);
+        rollupService.exited(ParkingType.CAR, TEN_O_CLOCK + 30 * 60 * 1000, TEN_O_CLOCK + 2 * HOUR + 15 * 60 * 1000, 263);
+        rollupService.entered(ParkingType.BIKE, TEN_O_CLOCK + 2 * HOUR);
+        when(rollupDAO.addRollups(anyList())).thenReturn(true);
+
+        // when :
+        boolean flushed = rollupService.flush();
+
+        // then :
+        assertThat(flushed).isTrue();
+        ArgumentCaptor<List<HourlyRollup>> captor = ArgumentCaptor.forClass(List.class);
+        verify(rollupDAO).addRollups(captor.capture());
+        List<HourlyRollup> rollups = captor.getValue();
+        assertThat(rollups).extracting(rollup -> rollup.getHour().getTime(), HourlyRollup::getParkingType,
+                        HourlyRollup::getEntries, HourlyRollup::getExits, HourlyRollup::getRevenueCents, HourlyRollup::getOccupiedMinutes)
+                .containsExactly(
+                        tuple(TEN_O_CLOCK, ParkingType.CAR, 1L, 0L, 0L, 30.0),
+                        tuple(TEN_O_CLOCK + HOUR, ParkingType.CAR, 0L, 0L, 0L, 60.0),
+                        tuple(TEN_O_CLOCK + 2 * HOUR, ParkingType.CAR, 0L, 1L, 263L, 15.0),
+                        tuple(TEN_O_CLOCK + 2 * HOUR, ParkingType.BIKE, 1L, 0L, 0L, 0.0));
+        // nothing left to write.
+        assertThat(rollupService.flush()).isTrue();
+        verifyNoMoreInteractions(rollupDAO);
+    }
+
+    @Test
+    @DisplayName("After a failed flush, a report adds the changes kept in memory to the rows of the table")
+    public void reportMergesUnflushedChanges() {
+        // given :
+        rollupService.entered(ParkingType.CAR, TEN_O_CLOCK + 5 * 60 * 1000);
+        when(rollupDAO.addRollups(anyList())).thenReturn(false);
+        assertThat(rollupService.flush()).isFalse();
+        rollupService.entered(ParkingType.CAR, TEN_O_CLOCK + 10 * 60 * 1000);
+        // outside the period of the report.
+        rollupService.entered(ParkingType.CAR, TEN_O_CLOCK + 3 * HOUR);
+        HourlyRollup stored = new HourlyRollup();
+        stored.setHour(new Date(TEN_O_CLOCK));
+        stored.setParkingType(ParkingType.CAR);
+        stored.setEntries(4);
+        stored.setRevenueCents(1000);
+        when(rollupDAO.getRollups(new Date(TEN_O_CLOCK), new Date(TEN_O_CLOCK + 2 * HOUR))).thenReturn(Collections.singletonList(stored));
+
+        // when :
+        List<HourlyRollup> rollups = rollupService.getRollups(new Date(TEN_O_CLOCK + 20 * 60 * 1000), new Date(TEN_O_CLOCK + 2 * HOUR));
+
+        // then :
+        assertThat(rollups).hasSize(1);
+        assertThat(rollups.get(0).getEntries()).isEqualTo(6);
+        assertThat(rollups.get(0).getRevenueCents()).isEqualTo(1000);
+    }
+}
@@ -0,0 +1,98 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.service.TicketArchivingService;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+import static org.mockito.Mockito.*;
+import static org.assertj.core.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+public class TicketArchivingServiceTest {
+
+    @Mock
+    private static Connection con;
+    @Mock
+    private static PreparedStatement selectPs;
+    @Mock
+    private static PreparedStatement archivePs;
+    @Mock
+    private static PreparedStatement deletePs;
+    @Mock
+    private static ResultSet rs;
+
+    private TicketArchivingService archivingService;
+
+    @BeforeEach
+    public void setUpPerTest() throws Exception {
+        // two tickets per batch, no pause.
+        archivingService = new TicketArchivingService(0, 2, 0);
+        archivingService.dataBaseConfig = new DataBaseConfig() {
+            @Override
+            protected Connection openConnection() {
+                return con;
+            }
+        };
+        when(con.prepareStatement(DBConstants.GET_TICKETS_TO_ARCHIVE)).thenReturn(selectPs);
+        when(selectPs.executeQuery()).thenReturn(rs);
+    }
+
+    @Test
+    @DisplayName("The tickets are copied to the archive then deleted, batch after batch, until a batch is not full")
+    public void archiveByBatches() throws Exception {
+        // given : tickets 1 and 2, then ticket 3.
+        when(rs.next()).thenReturn(true, true, false, true, false);
+        when(rs.getInt(1)).thenReturn(1, 2, 3);
+        when(con.prepareStatement(DBConstants.ARCHIVE_TICKET)).thenReturn(archivePs);
+        when(con.prepareStatement(DBConstants.DELETE_ARCHIVED_TICKET)).thenReturn(deletePs);
+
+        // when :
+        int archived = archivingService.archive();
+
+        // then : one transaction per batch, the copy before the delete.
+        assertThat(archived).isEqualTo(3);
+        verify(selectPs, Mockito.times(2)).setMaxRows(2);
+        verify(selectPs, Mockito.times(2)).setTimestamp(eq(1), any(Timestamp.class));
+        verify(archivePs, Mockito.times(3)).addBatch();
+        verify(deletePs, Mockito.times(1)).setInt(1, 3);
+        InOrder inOrder = inOrder(archivePs, deletePs, con);
+        inOrder.verify(archivePs).executeBatch();
+        inOrder.verify(deletePs).executeBatch();
+        inOrder.verify(con).commit();
+        verify(con, Mockito.times(2)).commit();
+    }
+
+    @Test
+    @DisplayName("A failed batch is rolled back and stops the run")
+    public void archiveRollsBackFailedBatch() throws Exception {
+        // given :
+        when(rs.next()).thenReturn(true, false);
+        when(rs.getInt(1)).thenReturn(1);
+        when(con.prepareStatement(DBConstants.ARCHIVE_TICKET)).thenReturn(archivePs);
+        when(con.prepareStatement(DBConstants.DELETE_ARCHIVED_TICKET)).thenThrow(new SQLException("Lock wait timeout"));
+
+        // when :
+        int archived = archivingService.archive();
+
+        // then :
+        assertThat(archived).isEqualTo(-1);
+        verify(con, Mockito.times(1)).rollback();
+        verify(con, Mockito.never()).commit();
+    }
+}
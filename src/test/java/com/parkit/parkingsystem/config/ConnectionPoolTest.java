@@ -0,0 +1,201 @@
+package com.parkit.parkingsystem.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.Mockito.*;
+import static org.assertj.core.api.Assertions.*;
+
+public class ConnectionPoolTest {
+
+    private List<Connection> physicalConnections;
+    private ConnectionPool connectionPool;
+
+    @BeforeEach
+    public void setUpPerTest() {
+        physicalConnections = new ArrayList<>();
+    }
+
+    @AfterEach
+    public void tearDownPerTest() {
+        if (connectionPool != null) {
+            connectionPool.close();
+        }
+    }
+
+    private Connection newPhysicalConnection() throws SQLException {
+        Connection con = mock(Connection.class);
+        when(con.isValid(anyInt())).thenReturn(true);
+        when(con.getAutoCommit()).thenReturn(true);
+        physicalConnections.add(con);
+        return con;
+    }
+
+    private void makePool(int minSize, int maxSize, long idleTimeoutMillis, long acquireTimeoutMillis) {
+        connectionPool = new ConnectionPool(this::newPhysicalConnection, minSize, maxSize, idleTimeoutMillis,
+                acquireTimeoutMillis, 1);
+        connectionPool.start();
+    }
+
+    @Test
+    @DisplayName("A returned connection is reused instead of opening a new one")
+    public void borrowReusesConnection() throws Exception {
+        // given :
+        makePool(0, 2, 0, 100);
+
+        // when :
+        Connection first = connectionPool.borrow();
+        first.close();
+        Connection second = connectionPool.borrow();
+        second.close();
+
+        // then :
+        assertThat(physicalConnections).hasSize(1);
+        verify(physicalConnections.get(0), never()).close();
+        assertThat(connectionPool.getStats().getBorrowCount()).isEqualTo(2);
+        assertThat(connectionPool.getStats().getIdle()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Borrowing from an exhausted pool fails after the acquire timeout")
+    public void borrowTimesOutWhenExhausted() throws Exception {
+        // given :
+        makePool(0, 1, 0, 50);
+        Connection con = connectionPool.borrow();
+
+        // when then :
+        assertThatThrownBy(() -> connectionPool.borrow()).isInstanceOf(SQLException.class).hasMessageContaining("Timeout");
+        assertThat(connectionPool.getStats().getTimeoutCount()).isEqualTo(1);
+        assertThat(connectionPool.getStats().getActive()).isEqualTo(1);
+        con.close();
+        assertThat(connectionPool.getStats().getActive()).isEqualTo(0);
+    }
+
+    @Test
+    @DisplayName("An invalid idle connection is discarded on borrow")
+    public void borrowDiscardsInvalidConnection() throws Exception {
+        // given :
+        makePool(1, 2, 0, 100);
+        Connection broken = physicalConnections.get(0);
+        when(broken.isValid(anyInt())).thenReturn(false);
+
+        // when :
+        Connection con = connectionPool.borrow();
+
+        // then :
+        assertThat(physicalConnections).hasSize(2);
+        verify(broken, times(1)).close();
+        con.close();
+    }
+
+    @Test
+    @DisplayName("A transaction left open by a borrower is rolled back when the connection is returned")
+    public void giveBackRollsBackOpenTransaction() throws Exception {
+        // given :
+        makePool(0, 1, 0, 100);
+        Connection con = connectionPool.borrow();
+        when(physicalConnections.get(0).getAutoCommit()).thenReturn(false);
+
+        // when :
+        con.close();
+
+        // then :
+        verify(physicalConnections.get(0), times(1)).rollback();
+        verify(physicalConnections.get(0), times(1)).setAutoCommit(true);
+        assertThatThrownBy(() -> con.createStatement()).isInstanceOf(SQLException.class);
+    }
+
+    @Test
+    @DisplayName("Idle connections above the minimum size are evicted")
+    public void evictIdleConnectionsKeepsMinimum() throws Exception {
+        // given : three connections returned to the pool.
+        makePool(1, 3, 1, 100);
+        Connection first = connectionPool.borrow();
+        Connection second = connectionPool.borrow();
+        Connection third = connectionPool.borrow();
+        first.close();
+        second.close();
+        third.close();
+        Thread.sleep(5);
+
+        // when :
+        connectionPool.evictIdleConnections();
+
+        // then :
+        assertThat(connectionPool.getStats().getTotal()).isEqualTo(1);
+        assertThat(connectionPool.getStats().getIdle()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("A prepared statement closed by a borrower is reused by the next one")
+    public void preparedStatementIsReused() throws Exception {
+        // given :
+        connectionPool = new ConnectionPool(this::newPhysicalConnection, 0, 1, 0, 100, 1, 4);
+        connectionPool.start();
+        Connection first = connectionPool.borrow();
+        PreparedStatement statement = mock(PreparedStatement.class);
+        when(physicalConnections.get(0).prepareStatement("select 1", Statement.NO_GENERATED_KEYS)).thenReturn(statement);
+
+        // when :
+        first.prepareStatement("select 1").close();
+        first.close();
+        Connection second = connectionPool.borrow();
+        PreparedStatement reused = second.prepareStatement("select 1");
+        reused.setInt(1, 5);
+        reused.close();
+        second.close();
+
+        // then : prepared once, cleared for the next borrower.
+        verify(physicalConnections.get(0), times(1)).prepareStatement("select 1", Statement.NO_GENERATED_KEYS);
+        verify(statement, never()).close();
+        verify(statement, times(1)).setInt(1, 5);
+        verify(statement, times(2)).clearParameters();
+        assertThat(connectionPool.getStats().getStatementCacheHits()).isEqualTo(1);
+        assertThat(connectionPool.getStats().getStatementCacheHitRate()).isEqualTo(0.5);
+        assertThatThrownBy(() -> reused.executeQuery()).isInstanceOf(SQLException.class);
+    }
+
+    @Test
+    @DisplayName("The same statement prepared twice at once is not shared, and the least recently used is closed")
+    public void preparedStatementInUseIsNotShared() throws Exception {
+        // given : room for one statement.
+        connectionPool = new ConnectionPool(this::newPhysicalConnection, 0, 1, 0, 100, 1, 1);
+        connectionPool.start();
+        Connection con = connectionPool.borrow();
+        Connection physicalConnection = physicalConnections.get(0);
+        PreparedStatement kept = mock(PreparedStatement.class);
+        PreparedStatement second = mock(PreparedStatement.class);
+        PreparedStatement other = mock(PreparedStatement.class);
+        when(physicalConnection.prepareStatement("select 1", Statement.NO_GENERATED_KEYS)).thenReturn(kept, second);
+        when(physicalConnection.prepareStatement("select 2", Statement.NO_GENERATED_KEYS)).thenReturn(other);
+
+        // when :
+        PreparedStatement first = con.prepareStatement("select 1");
+        con.prepareStatement("select 1").close();
+        first.close();
+        con.prepareStatement("select 2").close();
+        con.close();
+
+        // then : the second one was a statement of its own, the first one was evicted by "select 2".
+        verify(second, times(1)).close();
+        verify(kept, times(1)).close();
+        verify(other, never()).close();
+        assertThat(connectionPool.getStats().getStatementCacheMisses()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Testing class ConnectionPool with invalid arguments")
+    public void constructorWithInvalidArguments() {
+        assertThatThrownBy(() -> new ConnectionPool(null, 0, 1, 0, 0, 0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new ConnectionPool(this::newPhysicalConnection, 2, 1, 0, 0, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
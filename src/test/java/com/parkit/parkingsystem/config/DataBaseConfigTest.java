@@ -0,0 +1,24 @@
+package com.parkit.parkingsystem.config;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.Executor;
+
+import static org.assertj.core.api.Assertions.*;
+
+public class DataBaseConfigTest {
+
+    @Test
+    @DisplayName("Each facility runs its asynchronous DAO calls on an executor of its own")
+    public void executorPerFacility() {
+        // when :
+        Executor north = new DataBaseConfig("north").getExecutor();
+        Executor south = new DataBaseConfig("south").getExecutor();
+
+        // then :
+        assertThat(new DataBaseConfig("north").getExecutor()).isSameAs(north);
+        assertThat(south).isNotSameAs(north);
+        assertThat(new DataBaseConfig().getExecutor()).isNotSameAs(north).isNotSameAs(south);
+    }
+}
@@ -0,0 +1,73 @@
+package com.parkit.parkingsystem.config;
+
+import com.parkit.parkingsystem.constants.DBConstants;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+public class SchemaMigratorTest {
+
+    @Test
+    @DisplayName("The migration scripts are loaded in version order")
+    public void loadMigrations() throws Exception {
+        // when :
+        List<SchemaMigrator.Migration> migrations = SchemaMigrator.loadMigrations();
+
+        // then :
+        assertThat(migrations).isNotEmpty();
+        assertThat(migrations).extracting(migration -> migration.version).isSorted().doesNotHaveDuplicates();
+        assertThat(migrations.get(0).version).isEqualTo(1);
+        assertThat(migrations).allSatisfy(migration -> assertThat(migration.checksum).hasSize(64));
+    }
+
+    @Test
+    @DisplayName("The profile backfill of the migrations is the one of --backfill-profiles")
+    public void backfillMigrationMatchesQuery() throws Exception {
+        // given :
+        SchemaMigrator.Migration backfill = SchemaMigrator.loadMigrations().stream()
+                .filter(migration -> migration.version == 7).findFirst().get();
+
+        // when :
+        List<String> statements = SchemaMigrator.splitStatements(backfill.script);
+
+        // then :
+        assertThat(statements).hasSize(1);
+        assertThat(statements.get(0).replaceAll("\\s+", " ").replace("( ", "(").trim())
+                .isEqualTo(DBConstants.BACKFILL_VEHICLE_PROFILES);
+    }
+
+    @Test
+    @DisplayName("The comments are removed and the statements split on ';'")
+    public void splitStatements() {
+        // given :
+        String script = "/* first ; line */\ncreate index A on t(X);\n-- second\ncreate index B on t(Y);\n";
+
+        // when :
+        List<String> statements = SchemaMigrator.splitStatements(script);
+
+        // then :
+        assertThat(statements).containsExactly("create index A on t(X)", "create index B on t(Y)");
+    }
+
+    @Test
+    @DisplayName("The checksum changes as soon as the script changes")
+    public void checksum() {
+        assertThat(SchemaMigrator.checksum("create index A on t(X)")).isEqualTo(SchemaMigrator.checksum("create index A on t(X)"));
+        assertThat(SchemaMigrator.checksum("create index A on t(X)")).isNotEqualTo(SchemaMigrator.checksum("create index A on t(Y)"));
+    }
+
+    @Test
+    @DisplayName("Only the filtering select and update queries of DBConstants are explained")
+    public void getExplainableQueries() throws Exception {
+        // when :
+        List<String> queries = QueryPlanChecker.getExplainableQueries();
+
+        // then :
+        assertThat(queries).contains(DBConstants.GET_TICKET, DBConstants.VEHICLE_REG_NUMBER_COUNT_TICKETS, DBConstants.UPDATE_TICKET);
+        assertThat(queries).doesNotContain(DBConstants.SAVE_TICKET, DBConstants.GET_PARKING_SPOTS);
+    }
+}
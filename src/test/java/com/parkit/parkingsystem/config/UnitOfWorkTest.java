@@ -0,0 +1,185 @@
+package com.parkit.parkingsystem.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Mockito.*;
+import static org.assertj.core.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+public class UnitOfWorkTest {
+
+    @Mock
+    private static Connection con;
+
+    private DataBaseConfig dataBaseConfig;
+
+    @BeforeEach
+    public void setUpPerTest() {
+        dataBaseConfig = new DataBaseConfig() {
+            @Override
+            protected Connection openConnection() {
+                return con;
+            }
+        };
+    }
+
+    @AfterEach
+    public void tearDownPerTest() {
+        // never leave a unit of work bound to the test thread.
+        assertThat(UnitOfWork.current()).isNull();
+    }
+
+    @Test
+    @DisplayName("DAO connections share the connection of the unit of work until it is committed")
+    public void commitSharesOneConnection() throws Exception {
+        // given :
+        AtomicInteger committed = new AtomicInteger();
+
+        // when :
+        try (UnitOfWork unitOfWork = UnitOfWork.begin(dataBaseConfig)) {
+            Connection first = dataBaseConfig.getConnection();
+            first.close();
+            Connection second = dataBaseConfig.getConnection();
+            second.prepareStatement("select 1");
+            UnitOfWork.afterCommit(committed::incrementAndGet);
+            assertThat(committed.get()).isEqualTo(0);
+            unitOfWork.commit();
+        }
+
+        // then : one transaction on one connection, closed once.
+        verify(con, Mockito.times(1)).setAutoCommit(false);
+        verify(con, Mockito.times(1)).prepareStatement("select 1");
+        verify(con, Mockito.times(1)).commit();
+        verify(con, Mockito.never()).rollback();
+        verify(con, Mockito.times(1)).close();
+        assertThat(committed.get()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("A unit of work closed without commit is rolled back")
+    public void closeWithoutCommitRollsBack() throws Exception {
+        // given :
+        AtomicInteger committed = new AtomicInteger();
+        AtomicInteger rolledBack = new AtomicInteger();
+
+        // when :
+        try (UnitOfWork unitOfWork = UnitOfWork.begin(dataBaseConfig)) {
+            assertThat(unitOfWork.isActive()).isTrue();
+            UnitOfWork.afterCommit(committed::incrementAndGet);
+            UnitOfWork.onRollback(rolledBack::incrementAndGet);
+        }
+
+        // then :
+        verify(con, Mockito.never()).commit();
+        verify(con, Mockito.times(1)).rollback();
+        verify(con, Mockito.times(1)).close();
+        assertThat(committed.get()).isEqualTo(0);
+        assertThat(rolledBack.get()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("A failed commit action rolls the unit of work back")
+    public void failedCommitActionRollsBack() throws Exception {
+        // given :
+        AtomicInteger committed = new AtomicInteger();
+        AtomicInteger rolledBack = new AtomicInteger();
+
+        // when :
+        try (UnitOfWork unitOfWork = UnitOfWork.begin(dataBaseConfig)) {
+            UnitOfWork.beforeCommit(() -> {
+                throw new IOException("Disk full");
+            });
+            UnitOfWork.afterCommit(committed::incrementAndGet);
+            UnitOfWork.onRollback(rolledBack::incrementAndGet);
+            assertThatThrownBy(unitOfWork::commit).isInstanceOf(SQLException.class).hasCauseInstanceOf(IOException.class);
+        }
+
+        // then :
+        verify(con, Mockito.never()).commit();
+        verify(con, Mockito.times(1)).rollback();
+        assertThat(committed.get()).isEqualTo(0);
+        assertThat(rolledBack.get()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Without database configuration the unit of work does nothing")
+    public void beginWithoutDataBaseConfig() throws Exception {
+        // given :
+        AtomicInteger committed = new AtomicInteger();
+
+        // when :
+        try (UnitOfWork unitOfWork = UnitOfWork.begin(null)) {
+            assertThat(unitOfWork.isActive()).isFalse();
+            // no unit of work bound : the action runs at once.
+            UnitOfWork.afterCommit(committed::incrementAndGet);
+            unitOfWork.commit();
+        }
+
+        // then :
+        assertThat(committed.get()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("A local unit of work keeps its actions but DAOs get connections of their own")
+    public void beginLocalKeepsActions() throws Exception {
+        // given :
+        AtomicInteger committed = new AtomicInteger();
+        AtomicInteger rolledBack = new AtomicInteger();
+
+        // when : one local unit of work committed, one closed without commit.
+        try (UnitOfWork unitOfWork = UnitOfWork.beginLocal()) {
+            assertThat(dataBaseConfig.getConnection()).isSameAs(con);
+            UnitOfWork.afterCommit(committed::incrementAndGet);
+            assertThat(committed.get()).isEqualTo(0);
+            unitOfWork.commit();
+        }
+        try (UnitOfWork unitOfWork = UnitOfWork.beginLocal()) {
+            assertThat(unitOfWork.isActive()).isTrue();
+            UnitOfWork.onRollback(rolledBack::incrementAndGet);
+        }
+
+        // then :
+        assertThat(committed.get()).isEqualTo(1);
+        assertThat(rolledBack.get()).isEqualTo(1);
+        verify(con, Mockito.never()).commit();
+        verify(con, Mockito.never()).setAutoCommit(anyBoolean());
+    }
+
+    @Test
+    @DisplayName("Units of work cannot be nested on the same thread")
+    public void nestedBeginFails() throws Exception {
+        try (UnitOfWork unitOfWork = UnitOfWork.begin(dataBaseConfig)) {
+            assertThat(unitOfWork.isActive()).isTrue();
+            assertThatThrownBy(() -> UnitOfWork.begin(dataBaseConfig)).isInstanceOf(IllegalStateException.class);
+        }
+    }
+
+    @Test
+    @DisplayName("The DAOs of another facility cannot use the connection of a unit of work")
+    public void otherFacilityCannotShareConnection() throws Exception {
+        DataBaseConfig otherFacility = new DataBaseConfig("south") {
+            @Override
+            protected Connection openConnection() {
+                return con;
+            }
+        };
+        try (UnitOfWork unitOfWork = UnitOfWork.begin(dataBaseConfig)) {
+            assertThat(unitOfWork.isActive()).isTrue();
+            assertThatThrownBy(otherFacility::getConnection).isInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("another facility");
+        }
+    }
+}
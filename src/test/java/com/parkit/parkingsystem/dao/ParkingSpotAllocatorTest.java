@@ -0,0 +1,253 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.assertj.core.api.Assertions.*;
+
+public class ParkingSpotAllocatorTest {
+
+    private ParkingSpotAllocator parkingSpotAllocator;
+
+    @BeforeEach
+    public void setUpPerTest() {
+        parkingSpotAllocator = new ParkingSpotAllocator();
+        parkingSpotAllocator.load(Arrays.asList(
+                new ParkingSpot(1, ParkingType.CAR, false),
+                new ParkingSpot(2, ParkingType.CAR, true),
+                new ParkingSpot(3, ParkingType.CAR, true),
+                new ParkingSpot(4, ParkingType.BIKE, true)));
+    }
+
+    @Test
+    @DisplayName("The lowest free spot of the requested type is returned")
+    public void getLowestAvailable() {
+        assertThat(parkingSpotAllocator.getLowestAvailable(ParkingType.CAR)).isEqualTo(2);
+        assertThat(parkingSpotAllocator.getLowestAvailable(ParkingType.BIKE)).isEqualTo(4);
+        assertThat(parkingSpotAllocator.getAvailableCount(ParkingType.CAR)).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("A free spot is claimed only once")
+    public void claimTakesAFreeSpotOnce() {
+        assertThat(parkingSpotAllocator.claim(new ParkingSpot(2, ParkingType.CAR, true))).isTrue();
+        assertThat(parkingSpotAllocator.claim(new ParkingSpot(2, ParkingType.CAR, true))).isFalse();
+        assertThat(parkingSpotAllocator.claim(new ParkingSpot(1, ParkingType.CAR, true))).isFalse();
+        assertThat(parkingSpotAllocator.getLowestAvailable(ParkingType.CAR)).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Taking and freeing a spot changes the lowest free spot")
+    public void updateChangesLowestAvailable() {
+        // when : spot 2 is taken.
+        parkingSpotAllocator.update(new ParkingSpot(2, ParkingType.CAR, false));
+        // then :
+        assertThat(parkingSpotAllocator.getLowestAvailable(ParkingType.CAR)).isEqualTo(3);
+
+        // when : spot 1 is freed.
+        parkingSpotAllocator.update(new ParkingSpot(1, ParkingType.CAR, true));
+        // then :
+        assertThat(parkingSpotAllocator.getLowestAvailable(ParkingType.CAR)).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("No free spot gives -1")
+    public void getLowestAvailableWhenFull() {
+        parkingSpotAllocator.update(new ParkingSpot(4, ParkingType.BIKE, false));
+        assertThat(parkingSpotAllocator.getLowestAvailable(ParkingType.BIKE)).isEqualTo(-1);
+    }
+
+    @Test
+    @DisplayName("Reloading replaces the previous content")
+    public void loadReplacesContent() {
+        parkingSpotAllocator.load(Collections.singletonList(new ParkingSpot(5, ParkingType.BIKE, true)));
+        assertThat(parkingSpotAllocator.getLowestAvailable(ParkingType.CAR)).isEqualTo(-1);
+        assertThat(parkingSpotAllocator.getLowestAvailable(ParkingType.BIKE)).isEqualTo(5);
+    }
+
+    @Test
+    @DisplayName("Testing class ParkingSpotAllocator with null arguments")
+    public void nullArguments() {
+        assertThatThrownBy(() -> parkingSpotAllocator.load(null)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> parkingSpotAllocator.getLowestAvailable(null)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> parkingSpotAllocator.update(null)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("A spot claimed while the table is read stays taken after the reload")
+    public void changeDuringLoadReplayed() {
+        // given : the table is read before the claim.
+        parkingSpotAllocator.beginLoad();
+        List<ParkingSpot> read = Arrays.asList(
+                new ParkingSpot(1, ParkingType.CAR, false),
+                new ParkingSpot(2, ParkingType.CAR, true),
+                new ParkingSpot(3, ParkingType.CAR, true));
+        assertThat(parkingSpotAllocator.claim(new ParkingSpot(2, ParkingType.CAR, true))).isTrue();
+        parkingSpotAllocator.update(new ParkingSpot(1, ParkingType.CAR, true));
+
+        // when :
+        parkingSpotAllocator.load(read);
+
+        // then : spot 2 is not resurrected and spot 1 is not lost.
+        assertThat(parkingSpotAllocator.getLowestAvailable(ParkingType.CAR)).isEqualTo(1);
+        assertThat(parkingSpotAllocator.claim(new ParkingSpot(2, ParkingType.CAR, true))).isFalse();
+        assertThat(parkingSpotAllocator.getAvailableCount(ParkingType.CAR)).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("A spot taken by a unit of work not committed yet stays taken after the reload")
+    public void uncommittedKeptTaken() {
+        // given : spot 2 is taken by a unit of work, the read cannot see it.
+        parkingSpotAllocator.addUncommitted(2);
+        parkingSpotAllocator.update(new ParkingSpot(2, ParkingType.CAR, false));
+
+        // when :
+        parkingSpotAllocator.beginLoad();
+        parkingSpotAllocator.load(Arrays.asList(
+                new ParkingSpot(2, ParkingType.CAR, true),
+                new ParkingSpot(3, ParkingType.CAR, true)));
+
+        // then :
+        assertThat(parkingSpotAllocator.getLowestAvailable(ParkingType.CAR)).isEqualTo(3);
+
+        // when : the unit of work is rolled back.
+        parkingSpotAllocator.removeUncommitted(new ParkingSpot(2, ParkingType.CAR, false));
+        parkingSpotAllocator.update(new ParkingSpot(2, ParkingType.CAR, true));
+
+        // then :
+        assertThat(parkingSpotAllocator.getLowestAvailable(ParkingType.CAR)).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("A unit of work ending while the table is read is followed by the reload")
+    public void endOfUnitOfWorkDuringLoad() {
+        // given : spots 2 and 3 are taken by units of work, the read cannot see them.
+        parkingSpotAllocator.addUncommitted(2);
+        parkingSpotAllocator.update(new ParkingSpot(2, ParkingType.CAR, false));
+        parkingSpotAllocator.addUncommitted(3);
+        parkingSpotAllocator.update(new ParkingSpot(3, ParkingType.CAR, false));
+        parkingSpotAllocator.beginLoad();
+        List<ParkingSpot> read = Arrays.asList(
+                new ParkingSpot(2, ParkingType.CAR, true),
+                new ParkingSpot(3, ParkingType.CAR, true));
+
+        // when : the first is committed and the second rolled back before load().
+        parkingSpotAllocator.removeUncommitted(new ParkingSpot(2, ParkingType.CAR, false));
+        parkingSpotAllocator.removeUncommitted(new ParkingSpot(3, ParkingType.CAR, false));
+        parkingSpotAllocator.update(new ParkingSpot(3, ParkingType.CAR, true));
+        parkingSpotAllocator.load(read);
+
+        // then :
+        assertThat(parkingSpotAllocator.getLowestAvailable(ParkingType.CAR)).isEqualTo(3);
+        assertThat(parkingSpotAllocator.getAvailableCount(ParkingType.CAR)).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Reloading while the gates claim and free spots neither loses nor resurrects a spot")
+    public void reloadDuringClaims() throws Exception {
+        // given : a parking table whose rows are free, taken by a unit of work not committed yet, or taken.
+        final int free = 0;
+        final int uncommitted = 1;
+        final int taken = 2;
+        int size = 20;
+        AtomicIntegerArray table = new AtomicIntegerArray(size + 1);
+        Object[] rowLocks = new Object[size + 1];
+        List<ParkingSpot> spots = new ArrayList<>();
+        for (int parkingNumber = 1; parkingNumber <= size; parkingNumber++) {
+            rowLocks[parkingNumber] = new Object();
+            spots.add(new ParkingSpot(parkingNumber, ParkingType.CAR, true));
+        }
+        ParkingSpotAllocator allocator = new ParkingSpotAllocator();
+        allocator.load(spots);
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+
+        // a row and the allocator hooks of its change are updated together, as the database orders them.
+        Runnable gate = () -> {
+            Random random = new Random();
+            while (running.get()) {
+                int parkingNumber = allocator.getLowestAvailable(ParkingType.CAR);
+                if (parkingNumber > 0) {
+                    ParkingSpot spot = new ParkingSpot(parkingNumber, ParkingType.CAR, false);
+                    boolean written;
+                    synchronized (rowLocks[parkingNumber]) {
+                        written = (table.get(parkingNumber) == free);
+                        if (written) {
+                            table.set(parkingNumber, uncommitted);
+                            allocator.addUncommitted(parkingNumber);
+                            allocator.update(spot);
+                        }
+                    }
+                    if (written) {
+                        Thread.yield();
+                        synchronized (rowLocks[parkingNumber]) {
+                            boolean commit = random.nextInt(3) > 0;
+                            table.set(parkingNumber, commit ? taken : free);
+                            allocator.removeUncommitted(spot);
+                            if (!commit) {
+                                allocator.update(new ParkingSpot(parkingNumber, ParkingType.CAR, true));
+                            }
+                        }
+                    }
+                }
+                int exiting = 1 + random.nextInt(size);
+                synchronized (rowLocks[exiting]) {
+                    if (table.get(exiting) == taken) {
+                        table.set(exiting, free);
+                        allocator.update(new ParkingSpot(exiting, ParkingType.CAR, true));
+                    }
+                }
+            }
+        };
+        // the read sees the rows taken by a unit of work not committed yet as free.
+        Runnable reload = () -> {
+            while (running.get()) {
+                allocator.beginLoad();
+                List<ParkingSpot> read = new ArrayList<>();
+                for (int parkingNumber = 1; parkingNumber <= size; parkingNumber++) {
+                    read.add(new ParkingSpot(parkingNumber, ParkingType.CAR, table.get(parkingNumber) != taken));
+                    Thread.yield();
+                }
+                allocator.load(read);
+            }
+        };
+
+        // when :
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(executor.submit(gate));
+        }
+        futures.add(executor.submit(reload));
+        Thread.sleep(500);
+        running.set(false);
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // then : the allocator offers exactly the free rows.
+        int freeRows = 0;
+        for (int parkingNumber = 1; parkingNumber <= size; parkingNumber++) {
+            boolean claimed = allocator.claim(new ParkingSpot(parkingNumber, ParkingType.CAR, true));
+            assertThat(claimed).as("spot %d", parkingNumber).isEqualTo(table.get(parkingNumber) == free);
+            freeRows += claimed ? 1 : 0;
+        }
+        assertThat(freeRows).isGreaterThan(0);
+    }
+}
@@ -1,5 +1,6 @@
 package com.parkit.parkingsystem.dao;
 
+import com.parkit.parkingsystem.constants.DBConstants;
 import com.parkit.parkingsystem.constants.ParkingType;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.config.DataBaseConfig;
@@ -11,10 +12,19 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.quality.Strictness;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
@@ -86,6 +96,21 @@ public class ParkingSpotDAOTest {
         verify(ps, Mockito.times(1)).executeQuery();
     }
     
+    @Test
+    public void getAvailableSlotCountWithSuccess() throws Exception {
+        // given :
+        when(ps.executeQuery()).thenReturn(rs);
+        when(rs.next()).thenReturn(true);
+        when(rs.getInt(1)).thenReturn(3);
+
+        // when :
+        int count = parkingSpotDAO.getAvailableSlotCount(ParkingType.BIKE);
+
+        // then :
+        assertThat(count).isEqualTo(3);
+        verify(ps, Mockito.times(1)).setString(1, "BIKE");
+    }
+
     @Test
     public void updateParkingWithSuccess() throws Exception {
         // given :
@@ -100,4 +125,145 @@ public class ParkingSpotDAOTest {
         assertThat(result).isTrue();
         verify(ps, Mockito.times(1)).executeUpdate();
     }
+
+    @Test
+    public void getParkingSpotsWithSuccess() throws Exception {
+        // given :
+        when(ps.executeQuery()).thenReturn(rs);
+        // two parking spots.
+        when(rs.next()).thenReturn(true, true, false);
+        when(rs.getInt(1)).thenReturn(PARKING_NUMBER_TEST, PARKING_NUMBER_TEST + 1);
+        when(rs.getBoolean(2)).thenReturn(true, false);
+        when(rs.getString(3)).thenReturn(NAME_CAR_TYPE_TEST);
+
+        // when :
+        List<ParkingSpot> parkingSpots = parkingSpotDAO.getParkingSpots();
+
+        // then :
+        assertThat(parkingSpots).hasSize(2);
+        assertThat(parkingSpots.get(0).isAvailable()).isTrue();
+        assertThat(parkingSpots.get(1).isAvailable()).isFalse();
+    }
+
+    @Test
+    public void getNextAvailableSlotFromAllocator() throws Exception {
+        // given : spots 1 and 2 loaded in memory, both free.
+        when(ps.executeQuery()).thenReturn(rs);
+        when(rs.next()).thenReturn(true, true, false);
+        when(rs.getInt(1)).thenReturn(PARKING_NUMBER_TEST, PARKING_NUMBER_TEST + 1);
+        when(rs.getBoolean(2)).thenReturn(true);
+        when(rs.getString(3)).thenReturn(NAME_CAR_TYPE_TEST);
+        assertThat(parkingSpotDAO.loadParkingSpotAllocator()).isTrue();
+        // spot 1 is taken.
+        when(ps.executeUpdate()).thenReturn(1);
+        parkingSpotDAO.updateParking(new ParkingSpot(PARKING_NUMBER_TEST, ParkingType.CAR, false));
+
+        // when :
+        int parkingNumber = parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR);
+
+        // then : no query other than the initial load.
+        assertThat(parkingNumber).isEqualTo(PARKING_NUMBER_TEST + 1);
+        assertThat(parkingSpotDAO.getNextAvailableSlot(ParkingType.BIKE)).isEqualTo(-1);
+        verify(ps, Mockito.times(1)).executeQuery();
+    }
+
+    @Test
+    public void claimParkingWithSuccess() throws Exception {
+        // given : the spot is still available, one row modified.
+        when(ps.executeUpdate()).thenReturn(1);
+
+        // when :
+        boolean result = parkingSpotDAO.claimParking(new ParkingSpot(PARKING_NUMBER_TEST, ParkingType.CAR, true));
+
+        // then :
+        assertThat(result).isTrue();
+        verify(ps, Mockito.times(1)).setInt(1, PARKING_NUMBER_TEST);
+    }
+
+    @Test
+    public void claimNextAvailableSlotRetriesOnConflict() throws Exception {
+        // given : spot 1 then spot 2 are found free, but spot 1 is taken by another gate in between.
+        when(ps.executeQuery()).thenReturn(rs);
+        when(rs.next()).thenReturn(true);
+        when(rs.getInt(1)).thenReturn(PARKING_NUMBER_TEST, PARKING_NUMBER_TEST + 1);
+        when(ps.executeUpdate()).thenReturn(0, 1);
+
+        // when :
+        int parkingNumber = parkingSpotDAO.claimNextAvailableSlot(ParkingType.CAR);
+
+        // then : the second spot is won.
+        assertThat(parkingNumber).isEqualTo(PARKING_NUMBER_TEST + 1);
+        verify(ps, Mockito.times(2)).executeUpdate();
+    }
+
+    @Test
+    public void concurrentClaimsWithoutAllocator() throws Exception {
+        // given : spots 1 and 2 are free. Each gate reads in a snapshot where spot 1 stays free, while the
+        // locking read and the claim see the latest rows. Both gates first find spot 1.
+        boolean[] free = { false, true, true };
+        CyclicBarrier bothRead = new CyclicBarrier(2);
+        AtomicInteger reads = new AtomicInteger();
+        when(con.prepareStatement(anyString())).thenAnswer(invocation -> {
+            String query = invocation.getArgument(0);
+            PreparedStatement statement = mock(PreparedStatement.class, withSettings().strictness(Strictness.LENIENT));
+            AtomicInteger parkingNumber = new AtomicInteger();
+            doAnswer(setInt -> {
+                parkingNumber.set(setInt.getArgument(1));
+                return null;
+            }).when(statement).setInt(eq(1), anyInt());
+            when(statement.executeUpdate()).thenAnswer(update -> {
+                synchronized (free) {
+                    if (!free[parkingNumber.get()]) {
+                        return 0;
+                    }
+                    free[parkingNumber.get()] = false;
+                    return 1;
+                }
+            });
+            when(statement.executeQuery()).thenAnswer(select -> {
+                int result = 1;
+                if (query.equals(DBConstants.LOCK_NEXT_PARKING_SPOT)) {
+                    synchronized (free) {
+                        result = free[1] ? 1 : (free[2] ? 2 : -1);
+                    }
+                }
+                if (reads.incrementAndGet() <= 2) {
+                    bothRead.await(5, TimeUnit.SECONDS);
+                }
+                ResultSet resultSet = mock(ResultSet.class, withSettings().strictness(Strictness.LENIENT));
+                when(resultSet.next()).thenReturn(result > 0);
+                when(resultSet.getInt(1)).thenReturn(result);
+                return resultSet;
+            });
+            return statement;
+        });
+        ExecutorService gates = Executors.newFixedThreadPool(2);
+
+        // when :
+        try {
+            Future<Integer> first = gates.submit(() -> parkingSpotDAO.claimNextAvailableSlot(ParkingType.CAR));
+            Future<Integer> second = gates.submit(() -> parkingSpotDAO.claimNextAvailableSlot(ParkingType.CAR));
+
+            // then : the gate that lost spot 1 gets spot 2, instead of finding the lot full.
+            assertThat(Arrays.asList(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS))).containsExactlyInAnyOrder(1, 2);
+        } finally {
+            gates.shutdownNow();
+        }
+        verify(con, Mockito.never()).prepareStatement(DBConstants.GET_NEXT_PARKING_SPOT);
+    }
+
+    @Test
+    public void claimNextAvailableSlotWhenFull() throws Exception {
+        // given : no free spot.
+        when(ps.executeQuery()).thenReturn(rs);
+        when(rs.next()).thenReturn(true);
+        when(rs.getInt(1)).thenReturn(0);
+
+        // when :
+        int parkingNumber = parkingSpotDAO.claimNextAvailableSlot(ParkingType.BIKE);
+
+        // then :
+        assertThat(parkingNumber).isEqualTo(-1);
+        verify(ps, Mockito.never()).executeUpdate();
+    }
 }
@@ -4,6 +4,7 @@ import com.parkit.parkingsystem.constants.ParkingType;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
 import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
 import com.parkit.parkingsystem.util.DateUtil;
 
 import org.junit.jupiter.api.BeforeEach;
@@ -18,6 +19,12 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.Timestamp;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.mockito.Mockito.*;
 import static org.assertj.core.api.Assertions.*;
@@ -64,15 +71,19 @@ public class TicketDAOTest {
         ticket.setPrice(0.0);
         ticket.setInTime(DateUtil.getDateNow());
         ticket.setOutTime(null);
-        // execution must succeed.
-        when(ps.execute()).thenReturn(true);
+        // execution must succeed : one row inserted.
+        when(con.prepareStatement(DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS)).thenReturn(ps);
+        when(ps.executeUpdate()).thenReturn(1);
 
         // when : 
         boolean result = ticketDAO.saveTicket(ticket);
 
-        // then :
+        // then : the ticket is inserted, then the visit is counted in the vehicle profile.
         assertThat(result).isTrue();
-        verify(ps, Mockito.times(1)).execute();
+        verify(ps, Mockito.times(1)).executeUpdate();
+        verify(con, Mockito.times(1)).prepareStatement(DBConstants.RECORD_VEHICLE_VISIT);
+        verify(ps, Mockito.times(1)).setString(1, VEHICULE_REG_NUMBER_TEST);
+        verify(ps, Mockito.times(1)).executeBatch();
     }
 
     @Test
@@ -99,6 +110,33 @@ public class TicketDAOTest {
         verify(ps, Mockito.times(1)).executeQuery();
     }
 
+    @Test
+    public void getTicketFromArchive() throws Exception {
+        // given : no ticket left in the ticket table, one in the archive.
+        PreparedStatement archivePs = mock(PreparedStatement.class);
+        ResultSet archiveRs = mock(ResultSet.class);
+        when(ps.executeQuery()).thenReturn(rs);
+        when(rs.next()).thenReturn(false);
+        when(con.prepareStatement(DBConstants.GET_ARCHIVED_TICKET)).thenReturn(archivePs);
+        when(archivePs.executeQuery()).thenReturn(archiveRs);
+        when(archiveRs.next()).thenReturn(true);
+        when(archiveRs.getInt(1)).thenReturn(1);
+        when(archiveRs.getInt(2)).thenReturn(2);
+        when(archiveRs.getTimestamp(4)).thenReturn(new Timestamp(DateUtil.getPastDate(120).getTime()));
+        when(archiveRs.getTimestamp(5)).thenReturn(new Timestamp(DateUtil.getPastDate(60).getTime()));
+        when(archiveRs.getString(6)).thenReturn(NAME_CAR_TYPE_TEST);
+
+        // when :
+        Ticket ticket = ticketDAO.getTicket(VEHICULE_REG_NUMBER_TEST);
+
+        // then :
+        assertThat(ticket).isNotNull();
+        assertThat(ticket.getId()).isEqualTo(2);
+        assertThat(ticket.getOutTime()).isNotNull();
+        verify(con, Mockito.times(1)).prepareStatement(DBConstants.GET_TICKET);
+        verify(archivePs, Mockito.times(1)).setString(1, VEHICULE_REG_NUMBER_TEST);
+    }
+
     @Test
     public void updateTicketWithSuccess() throws Exception {
         // given :
@@ -107,15 +145,34 @@ public class TicketDAOTest {
         ticket.setPrice(PRICE_TEST);
         ticket.setOutTime(DateUtil.getDateNow());
         ticket.setId(1);
-        // execution must succeed.
-        when(ps.execute()).thenReturn(true);
+        // the ticket is open : one row is updated.
+        when(ps.executeUpdate()).thenReturn(1);
 
         // when : 
         boolean result = ticketDAO.updateTicket(ticket);
 
         // then : 
         assertThat(result).isTrue();
-        verify(ps, Mockito.times(1)).execute();
+        verify(ps, Mockito.times(1)).executeUpdate();
+    }
+
+    @Test
+    public void updateTicketAlreadyClosed() throws Exception {
+        // given :
+        // ticket closed meanwhile by another exit : no row is updated.
+        Ticket ticket = new Ticket();
+        ticket.setVehicleRegNumber(VEHICULE_REG_NUMBER_TEST);
+        ticket.setPrice(PRICE_TEST);
+        ticket.setOutTime(DateUtil.getDateNow());
+        ticket.setId(1);
+        when(ps.executeUpdate()).thenReturn(0);
+
+        // when :
+        boolean result = ticketDAO.updateTicket(ticket);
+
+        // then : the spend of the vehicle is not recorded a second time.
+        assertThat(result).isFalse();
+        verify(con, Mockito.never()).prepareStatement(DBConstants.RECORD_VEHICLE_SPEND);
     }
 
     @Test
@@ -134,4 +191,146 @@ public class TicketDAOTest {
         assertThat(count).isEqualTo(NB_TICKET_TEST);
         verify(ps, Mockito.times(1)).executeQuery();
     }
+
+    @Test
+    public void getNbTicketError() throws Exception {
+        // given :
+        when(ps.executeQuery()).thenThrow(new SQLException("Timeout waiting for a DB connection"));
+
+        // when :
+        int count = ticketDAO.getNbTicket(VEHICULE_REG_NUMBER_TEST);
+
+        // then :
+        assertThat(count).isEqualTo(-1);
+    }
+
+    @Test
+    public void saveTicketsWithSuccess() throws Exception {
+        // given : two tickets.
+        Ticket first = new Ticket();
+        first.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        first.setVehicleRegNumber(VEHICULE_REG_NUMBER_TEST);
+        first.setInTime(DateUtil.getDateNow());
+        Ticket second = new Ticket();
+        second.setParkingSpot(new ParkingSpot(2, ParkingType.CAR, false));
+        second.setVehicleRegNumber(VEHICULE_REG_NUMBER_TEST + "2");
+        second.setInTime(DateUtil.getDateNow());
+        // the driver may not report row counts for a rewritten batch.
+        when(con.prepareStatement(DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS)).thenReturn(ps);
+        when(ps.executeBatch()).thenReturn(new int[] { 1, Statement.SUCCESS_NO_INFO });
+
+        // when :
+        boolean[] result = ticketDAO.saveTickets(Arrays.asList(first, second));
+
+        // then : one round trip for the tickets, one for the vehicle profiles.
+        assertThat(result).containsExactly(true, true);
+        verify(ps, Mockito.times(4)).addBatch();
+        verify(ps, Mockito.times(2)).executeBatch();
+    }
+
+    @Test
+    public void updateTicketsWithFailure() throws Exception {
+        // given :
+        Ticket ticket = new Ticket();
+        ticket.setPrice(PRICE_TEST);
+        ticket.setOutTime(DateUtil.getDateNow());
+        ticket.setId(1);
+        when(ps.executeBatch()).thenReturn(new int[] { Statement.EXECUTE_FAILED });
+
+        // when :
+        boolean[] result = ticketDAO.updateTickets(Arrays.asList(ticket));
+
+        // then :
+        assertThat(result).containsExactly(false);
+    }
+
+    @Test
+    public void getNbTicketAsyncRunsOnTheDataBaseExecutor() throws Exception {
+        // given :
+        String callingThread = Thread.currentThread().getName();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        when(dataBaseConfig.getExecutor()).thenReturn(executor);
+        when(rs.next()).thenReturn(true);
+        when(rs.getInt("total")).thenReturn(NB_TICKET_TEST);
+        when(ps.executeQuery()).thenAnswer(invocation -> {
+            // then : the query does not run on the calling thread.
+            assertThat(Thread.currentThread().getName()).isNotEqualTo(callingThread);
+            return rs;
+        });
+
+        try {
+            // when :
+            int count = ticketDAO.getNbTicketAsync(VEHICULE_REG_NUMBER_TEST).get(5, TimeUnit.SECONDS);
+
+            // then :
+            assertThat(count).isEqualTo(NB_TICKET_TEST);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void getNbTicketWithoutProfile() throws Exception {
+        // given : no profile yet for this vehicle, the tickets are counted.
+        when(ps.executeQuery()).thenReturn(rs);
+        when(rs.next()).thenReturn(false, true);
+        when(rs.getInt("total")).thenReturn(NB_TICKET_TEST);
+
+        // when :
+        int count = ticketDAO.getNbTicket(VEHICULE_REG_NUMBER_TEST);
+
+        // then :
+        assertThat(count).isEqualTo(NB_TICKET_TEST);
+        verify(con, Mockito.times(1)).prepareStatement(DBConstants.GET_VEHICLE_VISIT_COUNT);
+        verify(con, Mockito.times(1)).prepareStatement(DBConstants.VEHICLE_REG_NUMBER_COUNT_TICKETS);
+        // the ticket and archive tables are both counted.
+        verify(ps, Mockito.times(1)).setString(2, VEHICULE_REG_NUMBER_TEST);
+    }
+
+    @Test
+    public void getTicketFromOpenTicketIndex() throws Exception {
+        // given : one open ticket loaded at startup.
+        when(ps.executeQuery()).thenReturn(rs);
+        when(rs.next()).thenReturn(true, false);
+        when(rs.getInt(1)).thenReturn(1);
+        when(rs.getInt(2)).thenReturn(2);
+        when(rs.getString(3)).thenReturn(VEHICULE_REG_NUMBER_TEST);
+        when(rs.getTimestamp(4)).thenReturn(new Timestamp(DateUtil.getPastDate(60).getTime()));
+        when(rs.getString(5)).thenReturn(NAME_CAR_TYPE_TEST);
+        assertThat(ticketDAO.loadOpenTicketIndex()).isTrue();
+
+        // when :
+        Ticket ticket = ticketDAO.getTicket(VEHICULE_REG_NUMBER_TEST);
+
+        // then : no query other than the initial load.
+        assertThat(ticket).isNotNull();
+        assertThat(ticket.getId()).isEqualTo(2);
+        assertThat(ticket.getParkingSpot().getParkingType()).isEqualTo(ParkingType.CAR);
+        assertThat(ticket.getOutTime()).isNull();
+        assertThat(ticketDAO.getOpenTicketIndex().getHitCount()).isEqualTo(1);
+        verify(ps, Mockito.times(1)).executeQuery();
+    }
+
+    @Test
+    public void updateTicketRemovesFromOpenTicketIndex() throws Exception {
+        // given : an empty index, then a vehicle enters.
+        when(ps.executeQuery()).thenReturn(rs);
+        when(rs.next()).thenReturn(false);
+        assertThat(ticketDAO.loadOpenTicketIndex()).isTrue();
+        when(con.prepareStatement(DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS)).thenReturn(ps);
+        when(ps.executeUpdate()).thenReturn(1);
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber(VEHICULE_REG_NUMBER_TEST);
+        ticket.setInTime(DateUtil.getPastDate(60));
+        ticketDAO.saveTicket(ticket);
+        assertThat(ticketDAO.getOpenTicketIndex().size()).isEqualTo(1);
+
+        // when : the vehicle leaves.
+        ticket.setOutTime(DateUtil.getDateNow());
+        ticketDAO.updateTicket(ticket);
+
+        // then :
+        assertThat(ticketDAO.getOpenTicketIndex().size()).isEqualTo(0);
+    }
 }
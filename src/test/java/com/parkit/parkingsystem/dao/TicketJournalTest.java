@@ -0,0 +1,151 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.*;
+
+public class TicketJournalTest {
+
+    private static final long IN_TIME = 1_700_000_000_123L;
+
+    @TempDir
+    Path tempDir;
+
+    private static JournalRecord entry(String vehicleRegNumber, int parkingNumber) {
+        return new JournalRecord(JournalRecord.Type.ENTRY, vehicleRegNumber, parkingNumber, ParkingType.CAR, IN_TIME, 0, 0);
+    }
+
+    private List<Path> segments() throws Exception {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("segment-")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    @DisplayName("The records not flushed are read back at the next opening, in order")
+    public void openReturnsRecordsNotFlushed() throws Exception {
+        // given : an entry and an exit, never flushed.
+        TicketJournal journal = new TicketJournal(tempDir, 4096, true);
+        journal.open();
+        journal.append(entry("AB123", 1));
+        journal.append(new JournalRecord(JournalRecord.Type.EXIT, "AB123", 1, ParkingType.CAR, IN_TIME, IN_TIME + 3600000, 150));
+        journal.close();
+
+        // when :
+        List<JournalRecord> records = new TicketJournal(tempDir, 4096, true).open();
+
+        // then :
+        assertThat(records).hasSize(2);
+        assertThat(records.get(0).getType()).isEqualTo(JournalRecord.Type.ENTRY);
+        assertThat(records.get(1).getType()).isEqualTo(JournalRecord.Type.EXIT);
+        assertThat(records.get(1).getVehicleRegNumber()).isEqualTo("AB123");
+        assertThat(records.get(1).getParkingNumber()).isEqualTo(1);
+        assertThat(records.get(1).getParkingType()).isEqualTo(ParkingType.CAR);
+        assertThat(records.get(1).getInTime()).isEqualTo(IN_TIME);
+        assertThat(records.get(1).getOutTime()).isEqualTo(IN_TIME + 3600000);
+        assertThat(records.get(1).getPriceCents()).isEqualTo(150);
+    }
+
+    @Test
+    @DisplayName("Full segments are rotated, and the flushed ones are deleted")
+    public void markFlushedDeletesOldSegments() throws Exception {
+        // given : small segments, so that the records span several of them.
+        TicketJournal journal = new TicketJournal(tempDir, 1024, true);
+        journal.open();
+        JournalRecord[] records = new JournalRecord[60];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = entry("PLATE" + i, i + 1);
+            journal.append(records[i]);
+        }
+        assertThat(segments().size()).isGreaterThan(1);
+
+        // when : the first 50 records are in the database.
+        journal.markFlushed(records[49]);
+        journal.close();
+        List<JournalRecord> replayed = new TicketJournal(tempDir, 1024, true).open();
+
+        // then : only the last 10 are replayed.
+        assertThat(replayed).extracting(JournalRecord::getParkingNumber).containsExactly(51, 52, 53, 54, 55, 56, 57, 58, 59, 60);
+        assertThat(segments().get(0).getFileName().toString()).isNotEqualTo("segment-00000000000000000001.log");
+    }
+
+    @Test
+    @DisplayName("The records appended together are replayed together")
+    public void recordsAppendedTogetherAreReplayedTogether() throws Exception {
+        // given : two entries appended together, the first one in the database.
+        TicketJournal journal = new TicketJournal(tempDir, 4096, true);
+        journal.open();
+        JournalRecord first = entry("AB123", 1);
+        journal.append(Arrays.asList(first, entry("CD456", 2)));
+        journal.markFlushed(first);
+        journal.close();
+
+        // when :
+        List<JournalRecord> records = new TicketJournal(tempDir, 4096, true).open();
+
+        // then : both are replayed, the first one changes nothing.
+        assertThat(records).extracting(JournalRecord::getVehicleRegNumber).containsExactly("AB123", "CD456");
+    }
+
+    @Test
+    @DisplayName("A record damaged by a crash ends the replay of its segment")
+    public void damagedRecordIsIgnored() throws Exception {
+        // given : two records, the second one damaged.
+        TicketJournal journal = new TicketJournal(tempDir, 4096, true);
+        journal.open();
+        JournalRecord first = entry("AB123", 1);
+        journal.append(first);
+        journal.append(entry("CD456", 2));
+        journal.close();
+        try (RandomAccessFile file = new RandomAccessFile(segments().get(0).toFile(), "rw")) {
+            // the last byte of the registration number of the second record.
+            long position = first.getEndOffset() + 8 + 32 + 4;
+            file.seek(position);
+            file.write('X');
+        }
+
+        // when :
+        List<JournalRecord> records = new TicketJournal(tempDir, 4096, true).open();
+
+        // then :
+        assertThat(records).extracting(JournalRecord::getVehicleRegNumber).containsExactly("AB123");
+    }
+
+    @Test
+    @DisplayName("Each record gets a greater sequence number, kept across the restarts")
+    public void sequenceNumbers() throws Exception {
+        // given :
+        TicketJournal journal = new TicketJournal(tempDir, 4096, true);
+        journal.open();
+        JournalRecord first = entry("AB123", 1);
+        JournalRecord second = entry("AB123", 1);
+        journal.append(Arrays.asList(first, second));
+        journal.markFlushed(second);
+        journal.close();
+
+        // when :
+        TicketJournal reopened = new TicketJournal(tempDir, 4096, true);
+        reopened.open();
+        JournalRecord third = entry("AB123", 1);
+        reopened.append(third);
+        reopened.close();
+
+        // then :
+        assertThat(second.getSequence()).isGreaterThan(first.getSequence());
+        assertThat(third.getSequence()).isGreaterThan(second.getSequence());
+        assertThat(new TicketJournal(tempDir, 4096, true).open()).extracting(JournalRecord::getSequence)
+                .containsExactly(third.getSequence());
+    }
+}
@@ -0,0 +1,302 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.UnitOfWork;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Path;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.mockito.Mockito.*;
+import static org.assertj.core.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+public class TicketWriteBehindTest {
+
+    private static final String VEHICULE_REG_NUMBER_TEST = "ABCDEF";
+
+    @Mock
+    private static Connection con;
+    @Mock
+    private static PreparedStatement ps;
+
+    @TempDir
+    Path tempDir;
+
+    private TicketWriteBehind writeBehind;
+    private TicketDAO ticketDAO;
+
+    @BeforeEach
+    public void setUpPerTest() throws Exception {
+        DataBaseConfig dataBaseConfig = new DataBaseConfig() {
+            @Override
+            protected Connection openConnection() {
+                return con;
+            }
+        };
+        writeBehind = new TicketWriteBehind(new TicketJournal(tempDir, 4096, true), 100, 60000);
+        writeBehind.dataBaseConfig = dataBaseConfig;
+        assertThat(writeBehind.start()).isTrue();
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+    }
+
+    @AfterEach
+    public void tearDownPerTest() {
+        writeBehind.close();
+    }
+
+    // an empty ticket table : the open ticket index can be loaded.
+    private void loadEmptyOpenTicketIndex() throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        when(con.prepareStatement(DBConstants.GET_OPEN_TICKETS)).thenReturn(ps);
+        when(ps.executeQuery()).thenReturn(rs);
+        assertThat(ticketDAO.loadOpenTicketIndex()).isTrue();
+        assertThat(ticketDAO.enableWriteBehind(writeBehind)).isTrue();
+    }
+
+    private static Ticket newTicket() {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber(VEHICULE_REG_NUMBER_TEST);
+        ticket.setPrice(0);
+        ticket.setInTime(new Date(System.currentTimeMillis() - (60*60*1000)));
+        return ticket;
+    }
+
+    @Test
+    @DisplayName("Saved and updated tickets are only journaled, then written together by the flush")
+    public void ticketsAreWrittenBehind() throws Exception {
+        // given :
+        loadEmptyOpenTicketIndex();
+        when(con.prepareStatement(anyString())).thenReturn(ps);
+        when(ps.executeBatch()).thenReturn(new int[] { 1 }, new int[] { 1 }, new int[] { 1 }, new int[] { 1 }, new int[] { 1, 1 });
+
+        // when : the vehicle enters and leaves.
+        Ticket ticket = newTicket();
+        assertThat(ticketDAO.saveTicket(ticket)).isTrue();
+        Ticket parked = ticketDAO.getTicket(VEHICULE_REG_NUMBER_TEST);
+        parked.setOutTime(new Date());
+        parked.setPrice(1.5);
+        assertThat(ticketDAO.updateTicket(parked)).isTrue();
+        // a second exit that found the ticket open is refused.
+        assertThat(ticketDAO.updateTicket(parked)).isFalse();
+
+        // then : nothing is written yet, the exit is known and the visit counted.
+        verify(con, Mockito.never()).prepareStatement(DBConstants.SAVE_TICKET_IF_ABSENT);
+        assertThat(ticketDAO.getTicket(VEHICULE_REG_NUMBER_TEST).getOutTime()).isNotNull();
+        assertThat(writeBehind.getPendingEntryCount(VEHICULE_REG_NUMBER_TEST)).isEqualTo(1);
+
+        // when :
+        boolean flushed = writeBehind.flush();
+
+        // then : one transaction with the tickets, the profile and the spot.
+        assertThat(flushed).isTrue();
+        verify(con, Mockito.times(1)).prepareStatement(DBConstants.SAVE_TICKET_IF_ABSENT);
+        verify(con, Mockito.times(1)).prepareStatement(DBConstants.RECORD_VEHICLE_VISIT);
+        verify(con, Mockito.times(1)).prepareStatement(DBConstants.CLOSE_TICKET);
+        verify(con, Mockito.times(1)).prepareStatement(DBConstants.RECORD_VEHICLE_SPEND);
+        verify(con, Mockito.times(1)).prepareStatement(DBConstants.UPDATE_PARKING_SPOT);
+        verify(con, Mockito.times(1)).commit();
+        assertThat(writeBehind.getPendingCount()).isEqualTo(0);
+        assertThat(writeBehind.getPendingTicket(VEHICULE_REG_NUMBER_TEST)).isNull();
+    }
+
+    @Test
+    @DisplayName("The tickets of a unit of work are journaled when it commits")
+    public void ticketsAreJournaledAtCommit() throws Exception {
+        // given :
+        loadEmptyOpenTicketIndex();
+        Ticket second = newTicket();
+        second.setVehicleRegNumber("GHIJKL");
+
+        // when :
+        try (UnitOfWork unitOfWork = UnitOfWork.beginLocal()) {
+            assertThat(ticketDAO.saveTickets(Arrays.asList(newTicket(), second))).containsExactly(true, true);
+            // counted for the discount, but not in the journal yet.
+            assertThat(writeBehind.getPendingEntryCount(VEHICULE_REG_NUMBER_TEST)).isEqualTo(1);
+            assertThat(writeBehind.getPendingCount()).isEqualTo(0);
+            unitOfWork.commit();
+        }
+
+        // then :
+        assertThat(writeBehind.getPendingCount()).isEqualTo(2);
+        assertThat(ticketDAO.getOpenTicketIndex().size()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("A batch that fails halfway leaves nothing in the journal")
+    public void rolledBackBatchIsNotJournaled() throws Exception {
+        // given :
+        loadEmptyOpenTicketIndex();
+        Ticket second = newTicket();
+        second.setVehicleRegNumber("GHIJKL");
+
+        // when : the tickets are journaled, then the rest of the batch fails (spots not freed, ...).
+        try (UnitOfWork unitOfWork = UnitOfWork.beginLocal()) {
+            assertThat(unitOfWork.isActive()).isTrue();
+            assertThat(ticketDAO.saveTickets(Arrays.asList(newTicket(), second))).containsExactly(true, true);
+        }
+        writeBehind.close();
+
+        // then : nothing is pending, indexed, or left to replay at the next start.
+        assertThat(writeBehind.getPendingCount()).isEqualTo(0);
+        assertThat(writeBehind.getPendingTicket(VEHICULE_REG_NUMBER_TEST)).isNull();
+        assertThat(writeBehind.getPendingEntryCount(VEHICULE_REG_NUMBER_TEST)).isEqualTo(0);
+        assertThat(ticketDAO.getOpenTicketIndex().size()).isEqualTo(0);
+        verify(con, Mockito.never()).prepareStatement(DBConstants.SAVE_TICKET_IF_ABSENT);
+        assertThat(new TicketJournal(tempDir, 4096, true).open()).isEqualTo(Collections.emptyList());
+    }
+
+    @Test
+    @DisplayName("A failed flush keeps the records and writes them at the next flush")
+    public void failedFlushIsRetried() throws Exception {
+        // given : the database is down once.
+        when(con.prepareStatement(anyString())).thenReturn(ps);
+        when(ps.executeBatch()).thenThrow(new SQLException("Connection lost")).thenReturn(new int[] { 1 });
+        writeBehind.entered(newTicket());
+
+        // when :
+        boolean firstFlush = writeBehind.flush();
+
+        // then :
+        assertThat(firstFlush).isFalse();
+        verify(con, Mockito.times(1)).rollback();
+        assertThat(writeBehind.getPendingCount()).isEqualTo(1);
+        assertThat(writeBehind.getPendingTicket(VEHICULE_REG_NUMBER_TEST)).isNotNull();
+
+        // when :
+        boolean secondFlush = writeBehind.flush();
+
+        // then :
+        assertThat(secondFlush).isTrue();
+        assertThat(writeBehind.getPendingCount()).isEqualTo(0);
+        verify(con, Mockito.times(1)).commit();
+    }
+
+    @Test
+    @DisplayName("The records not written before a stop are replayed at the next start")
+    public void recordsAreReplayedAtStart() throws Exception {
+        // given : the database is down until the stop.
+        when(con.prepareStatement(anyString())).thenReturn(ps);
+        when(ps.executeBatch()).thenThrow(new SQLException("Connection lost"));
+        writeBehind.entered(newTicket());
+        writeBehind.close();
+
+        // when : the database is back.
+        Mockito.reset(ps);
+        when(ps.executeBatch()).thenReturn(new int[] { 1 });
+        TicketWriteBehind restarted = new TicketWriteBehind(new TicketJournal(tempDir, 4096, true), 100, 60000);
+        restarted.dataBaseConfig = writeBehind.dataBaseConfig;
+        boolean started = restarted.start();
+        restarted.close();
+
+        // then :
+        assertThat(started).isTrue();
+        assertThat(restarted.getPendingCount()).isEqualTo(0);
+        verify(con, Mockito.times(1)).commit();
+        verify(ps, Mockito.atLeastOnce()).setString(2, VEHICULE_REG_NUMBER_TEST);
+        assertThat(new TicketJournal(tempDir, 4096, true).open()).isEqualTo(Collections.emptyList());
+    }
+
+    @Test
+    @DisplayName("A ticket the database would refuse is not acknowledged")
+    public void invalidTicketIsRefused() throws Exception {
+        // given : a registration number longer than its column.
+        Ticket ticket = newTicket();
+        ticket.setVehicleRegNumber("ABCDEFGHIJK");
+
+        // when :
+        boolean entered = writeBehind.entered(ticket);
+
+        // then :
+        assertThat(entered).isFalse();
+        assertThat(writeBehind.getPendingCount()).isEqualTo(0);
+        assertThat(writeBehind.getPendingTicket("ABCDEFGHIJK")).isNull();
+    }
+
+    @Test
+    @DisplayName("A record the database refuses is moved to the dead letters, the next ones are written")
+    public void refusedRecordIsDeadLettered() throws Exception {
+        // given : the first entry is refused by the database, as the batch is, the second one is accepted.
+        SQLException refused = new SQLException("Data too long for column", "22001", 1406);
+        when(con.prepareStatement(anyString())).thenReturn(ps);
+        when(ps.executeBatch()).thenThrow(refused).thenThrow(refused).thenReturn(new int[] { 1 });
+        Ticket second = newTicket();
+        second.setVehicleRegNumber("GHIJKL");
+        writeBehind.entered(newTicket());
+        writeBehind.entered(second);
+
+        // when :
+        boolean flushed = writeBehind.flush();
+        writeBehind.close();
+
+        // then : nothing is left to retry or replay, the refused entry is kept aside.
+        assertThat(flushed).isTrue();
+        assertThat(writeBehind.getPendingCount()).isEqualTo(0);
+        assertThat(writeBehind.getPendingTicket(VEHICULE_REG_NUMBER_TEST)).isNull();
+        verify(con, Mockito.times(1)).commit();
+        List<JournalRecord> deadLetters = new TicketJournal(tempDir, 4096, true).readDeadLetters();
+        assertThat(deadLetters).hasSize(1);
+        assertThat(deadLetters.get(0).getVehicleRegNumber()).isEqualTo(VEHICULE_REG_NUMBER_TEST);
+        assertThat(new TicketJournal(tempDir, 4096, true).open()).isEqualTo(Collections.emptyList());
+    }
+
+    @Test
+    @DisplayName("Only a connection, deadlock or lock wait error is retried")
+    public void transientErrors() {
+        assertThat(TicketWriteBehind.isTransient(new SQLException("Timeout waiting for a DB connection"))).isTrue();
+        assertThat(TicketWriteBehind.isTransient(new SQLTransientConnectionException("Connection lost"))).isTrue();
+        assertThat(TicketWriteBehind.isTransient(new SQLException("Communications link failure", "08S01", 0))).isTrue();
+        assertThat(TicketWriteBehind.isTransient(new SQLException("Deadlock found", "40001", 1213))).isTrue();
+        assertThat(TicketWriteBehind.isTransient(new SQLException("Lock wait timeout exceeded", "HY000", 1205))).isTrue();
+        assertThat(TicketWriteBehind.isTransient(new SQLException("Data too long for column", "22001", 1406))).isFalse();
+        BatchUpdateException batch = new BatchUpdateException(new int[0]);
+        batch.setNextException(new SQLException("Duplicate entry", "23000", 1062));
+        assertThat(TicketWriteBehind.isTransient(batch)).isFalse();
+    }
+
+    @Test
+    @DisplayName("Two visits of a vehicle in the same second are two tickets")
+    public void entriesInTheSameSecondAreKeptApart() throws Exception {
+        // given :
+        when(con.prepareStatement(anyString())).thenReturn(ps);
+        when(ps.executeBatch()).thenReturn(new int[] { 1, 1 });
+        Ticket ticket = newTicket();
+        writeBehind.entered(ticket);
+        writeBehind.entered(ticket);
+
+        // when :
+        boolean flushed = writeBehind.flush();
+
+        // then : each entry is inserted under its own journal sequence.
+        assertThat(flushed).isTrue();
+        ArgumentCaptor<Long> sequences = ArgumentCaptor.forClass(Long.class);
+        verify(ps, Mockito.times(2)).setLong(eq(4), sequences.capture());
+        assertThat(sequences.getAllValues()).doesNotHaveDuplicates();
+    }
+}
@@ -1,5 +1,6 @@
 package com.parkit.parkingsystem.integration;
 
+import com.parkit.parkingsystem.config.UnitOfWork;
 import com.parkit.parkingsystem.constants.Fare;
 import com.parkit.parkingsystem.constants.ParkingType;
 import com.parkit.parkingsystem.dao.ParkingSpotDAO;
@@ -24,6 +25,12 @@ import org.apache.logging.log4j.Logger;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
 import static org.assertj.core.api.Assertions.*;
 import static org.mockito.Mockito.when;
 
@@ -176,5 +183,42 @@ public class ParkingDataBaseIT {
             
         logger.info("<----- END TEST 4");
     }
-    
+
+    @Test
+    @DisplayName("Integration test of two gates claiming the same spot without the allocator")
+    public void testConcurrentClaims() throws Exception {
+        // given : the second gate reads the parking table, so its snapshot has spot 1 free.
+        CountDownLatch snapshotRead = new CountDownLatch(1);
+        CountDownLatch firstCommitted = new CountDownLatch(1);
+        ExecutorService gates = Executors.newFixedThreadPool(2);
+        try {
+            Future<Integer> second = gates.submit(() -> {
+                try (UnitOfWork unitOfWork = UnitOfWork.begin(dataBaseTestConfig)) {
+                    assertThat(parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR)).isEqualTo(1);
+                    snapshotRead.countDown();
+                    firstCommitted.await(10, TimeUnit.SECONDS);
+                    int parkingNumber = parkingSpotDAO.claimNextAvailableSlot(ParkingType.CAR);
+                    unitOfWork.commit();
+                    return parkingNumber;
+                }
+            });
+            Future<Integer> first = gates.submit(() -> {
+                snapshotRead.await(10, TimeUnit.SECONDS);
+                try (UnitOfWork unitOfWork = UnitOfWork.begin(dataBaseTestConfig)) {
+                    int parkingNumber = parkingSpotDAO.claimNextAvailableSlot(ParkingType.CAR);
+                    unitOfWork.commit();
+                    return parkingNumber;
+                } finally {
+                    firstCommitted.countDown();
+                }
+            });
+
+            // when then : the first gate takes spot 1, the second one the next spot instead of finding the lot full.
+            assertThat(first.get(20, TimeUnit.SECONDS)).isEqualTo(1);
+            assertThat(second.get(20, TimeUnit.SECONDS)).isEqualTo(2);
+        } finally {
+            gates.shutdownNow();
+        }
+    }
+
 }
@@ -1,5 +1,6 @@
 package com.parkit.parkingsystem.integration.service;
 
+import com.parkit.parkingsystem.constants.DBConstants;
 import com.parkit.parkingsystem.constants.Fare;
 import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
 import com.parkit.parkingsystem.model.Ticket;
@@ -10,6 +11,7 @@ import java.util.Date;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.sql.Timestamp;
 
 /**
@@ -31,10 +33,17 @@ public class DataBasePrepareService {
             connection = dataBaseTestConfig.getConnection();
 
             //set parking entries to available
-            connection.prepareStatement("UPDATE parking SET available = TRUE").execute();
+            execute(connection, "UPDATE parking SET available = TRUE");
 
             //clear ticket entries;
-            connection.prepareStatement("TRUNCATE TABLE ticket").execute();
+            execute(connection, "TRUNCATE TABLE ticket");
+
+            //clear vehicle profiles;
+            execute(connection, "TRUNCATE TABLE vehicle_profile");
+
+            //clear archived tickets and hourly rollups : the ticket counts and the discounts read the archive.
+            execute(connection, "TRUNCATE TABLE ticket_archive");
+            execute(connection, "TRUNCATE TABLE hourly_rollup");
 
         }catch(Exception e){
             e.printStackTrace();
@@ -57,16 +66,16 @@ public class DataBasePrepareService {
         }
 
         Connection connection = null;
-        PreparedStatement ps = null;
         try{
             connection = dataBaseTestConfig.getConnection();
 
             // changes the entry time of a ticket.
-            ps = connection.prepareStatement("UPDATE ticket SET in_time = ? WHERE id = ?");
-            ps.setTimestamp(1, new Timestamp(inTime.getTime()));
-            ps.setInt(2,ticket.getId());                    
-            int rowsUpdated = ps.executeUpdate();
-            return rowsUpdated == 1;
+            try (PreparedStatement ps = connection.prepareStatement("UPDATE ticket SET in_time = ? WHERE id = ?")) {
+                ps.setTimestamp(1, new Timestamp(inTime.getTime()));
+                ps.setInt(2,ticket.getId());
+                int rowsUpdated = ps.executeUpdate();
+                return rowsUpdated == 1;
+            }
         }catch(Exception e){
             e.printStackTrace();
             return false;
@@ -85,7 +94,7 @@ public class DataBasePrepareService {
             connection = dataBaseTestConfig.getConnection();
 
             //set parking entries to not available.
-            connection.prepareStatement("UPDATE parking SET available = FALSE").execute();
+            execute(connection, "UPDATE parking SET available = FALSE");
         }catch(Exception e){
             e.printStackTrace();
         }finally {
@@ -97,7 +106,7 @@ public class DataBasePrepareService {
     * Inserts a pre-configured ticket for a specific vehicle registration number into the database.
     * 
     * @param vehicleRegNumber The registration number of the vehicle. Must not be null or empty.
-    * @return true if the ticket was successfully inserted into the database,
+    * @return true if the ticket and its vehicle profile were successfully inserted into the database,
     *         false in case of an exception.
     * @throws IllegalArgumentException if the provided vehicle registration number is null or empty.    
     */
@@ -106,18 +115,26 @@ public class DataBasePrepareService {
             throw new IllegalArgumentException("Invalid argument : vehiculeRegNumber cannot be null or empty");
         }
         Connection connection = null;
-        PreparedStatement ps = null;
         try{
             connection = dataBaseTestConfig.getConnection();
 
             //insert a old ticket for a registration number.
-            ps = connection.prepareStatement("INSERT INTO ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values(?,?,?,?,?)");
-            ps.setInt(1,1);
-            ps.setString(2, vehicleRegNumber);
-            ps.setDouble(3, MonetaryUtil.round(3 * Fare.CAR_RATE_PER_HOUR));
-            ps.setTimestamp(4, new Timestamp(DateUtil.getPastDate(240).getTime()));
-            ps.setTimestamp(5, new Timestamp(DateUtil.getPastDate(60).getTime()));
-            return ps.execute();
+            try (PreparedStatement ps = connection.prepareStatement("INSERT INTO ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values(?,?,?,?,?)")) {
+                ps.setInt(1,1);
+                ps.setString(2, vehicleRegNumber);
+                ps.setDouble(3, MonetaryUtil.round(3 * Fare.CAR_RATE_PER_HOUR));
+                ps.setTimestamp(4, new Timestamp(DateUtil.getPastDate(240).getTime()));
+                ps.setTimestamp(5, new Timestamp(DateUtil.getPastDate(60).getTime()));
+                ps.execute();
+            }
+
+            // the old visit is known by the vehicle profile, as if it had been saved by TicketDAO.
+            try (PreparedStatement ps = connection.prepareStatement(DBConstants.RECORD_VEHICLE_VISIT)) {
+                ps.setString(1, vehicleRegNumber);
+                ps.setTimestamp(2, new Timestamp(DateUtil.getPastDate(240).getTime()));
+                ps.execute();
+            }
+            return true;
         }catch(Exception e){
             e.printStackTrace();
             return false;
@@ -125,4 +142,10 @@ public class DataBasePrepareService {
             dataBaseTestConfig.closeConnection(connection);
         }
     }
+
+    private static void execute(Connection connection, String query) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(query)) {
+            ps.execute();
+        }
+    }
 }
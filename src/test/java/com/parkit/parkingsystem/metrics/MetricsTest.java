@@ -0,0 +1,86 @@
+package com.parkit.parkingsystem.metrics;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.assertj.core.api.Assertions.*;
+
+public class MetricsTest {
+
+    @Test
+    @DisplayName("The percentiles are known within the precision of a bucket")
+    public void histogramPercentiles() {
+        // given : 1 to 10000 microseconds.
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 10000; i++) {
+            histogram.record(i * 1000);
+        }
+
+        // then :
+        assertThat(histogram.getCount()).isEqualTo(10000);
+        assertThat(histogram.getMax()).isEqualTo(10000 * 1000L);
+        assertThat(histogram.getMean()).isCloseTo(5000.5 * 1000, within(1.0));
+        assertThat((double) histogram.getPercentile(50)).isCloseTo(5000 * 1000, withinPercentage(4));
+        assertThat((double) histogram.getPercentile(99)).isCloseTo(9900 * 1000, withinPercentage(4));
+        assertThat(histogram.getPercentile(100)).isEqualTo(10000 * 1000L);
+    }
+
+    @Test
+    @DisplayName("Every value falls in a bucket whose highest value is not below it")
+    public void histogramBuckets() {
+        long[] values = { 0, 1, 63, 64, 65, 1000, 123456789, Long.MAX_VALUE };
+        for (long value : values) {
+            int bucketIndex = LatencyHistogram.bucketIndex(value);
+            assertThat(LatencyHistogram.highestValueOf(bucketIndex)).isGreaterThanOrEqualTo(value);
+            if (bucketIndex > 0) {
+                assertThat(LatencyHistogram.highestValueOf(bucketIndex - 1)).isLessThan(value);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("A timer is registered once in JMX and its failures are counted")
+    public void timerIsExposedInJmx() throws Exception {
+        // given :
+        Timer timer = Metrics.timer("MetricsTest", "operation");
+        long start = timer.start();
+        timer.stop(start);
+        timer.failed();
+
+        // when :
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName(Metrics.DOMAIN + ":type=Timer,group=MetricsTest,name=operation");
+
+        // then :
+        assertThat(Metrics.timer("MetricsTest", "operation")).isSameAs(timer);
+        assertThat(server.getAttribute(objectName, "Count")).isEqualTo(1L);
+        assertThat(server.getAttribute(objectName, "FailureCount")).isEqualTo(1L);
+        server.invoke(objectName, "reset", null, null);
+        assertThat(timer.getCount()).isEqualTo(0);
+    }
+
+    @Test
+    @DisplayName("Each facility has its own timer, registered in JMX with its facility")
+    public void timersPerFacility() throws Exception {
+        // given :
+        PerFacility<Timer> timers = Metrics.timers("MetricsTest", "facilityOperation");
+
+        // when :
+        timers.of("north").record(1000);
+        timers.of("north").record(2000);
+        timers.of(null).record(1000);
+
+        // then :
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName north = new ObjectName(Metrics.DOMAIN + ":type=Timer,facility=\"north\",group=MetricsTest,name=facilityOperation");
+        assertThat(timers.of("north")).isSameAs(Metrics.timer("MetricsTest", "facilityOperation", "north"));
+        assertThat(timers.of(null)).isSameAs(Metrics.timer("MetricsTest", "facilityOperation"));
+        assertThat(timers.of("south").getCount()).isEqualTo(0);
+        assertThat(server.getAttribute(north, "Count")).isEqualTo(2L);
+        assertThat(Metrics.getTimers()).containsKeys("MetricsTest.facilityOperation", "MetricsTest.facilityOperation[north]");
+    }
+}
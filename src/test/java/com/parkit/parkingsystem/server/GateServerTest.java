@@ -0,0 +1,236 @@
+package com.parkit.parkingsystem.server;
+
+import com.parkit.parkingsystem.constants.GateStatus;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.ExitResult;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.OccupancyService;
+import com.parkit.parkingsystem.service.ParkingService;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static org.mockito.Mockito.*;
+import static org.assertj.core.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+public class GateServerTest {
+
+    @Mock
+    private static ParkingService parkingService;
+    @Mock
+    private static ParkingSpotDAO parkingSpotDAO;
+    @Mock
+    private static TicketDAO ticketDAO;
+    @Mock
+    private static ParkingService otherParkingService;
+
+    private GateServer gateServer;
+
+    @BeforeEach
+    public void setUpPerTest() throws Exception {
+        gateServer = new GateServer(parkingService, parkingSpotDAO, ticketDAO);
+        gateServer.start(0, 4);
+    }
+
+    @AfterEach
+    public void tearDownPerTest() {
+        gateServer.stop(0);
+    }
+
+    private String[] call(String method, String path) throws Exception {
+        return call(gateServer, method, path);
+    }
+
+    private static String[] call(GateServer server, String method, String path) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path).openConnection();
+        connection.setRequestMethod(method);
+        int status = connection.getResponseCode();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream input = (status < 400) ? connection.getInputStream() : connection.getErrorStream()) {
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = input.read(buffer)) > 0) {
+                body.write(buffer, 0, read);
+            }
+        }
+        return new String[] {Integer.toString(status), new String(body.toByteArray(), StandardCharsets.UTF_8)};
+    }
+
+    private static Ticket newTicket(String vehicleRegNumber, double price, Date outTime) {
+        Ticket ticket = new Ticket();
+        ticket.setId(7);
+        ticket.setParkingSpot(new ParkingSpot(3, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setPrice(price);
+        ticket.setInTime(new Date(0));
+        ticket.setOutTime(outTime);
+        return ticket;
+    }
+
+    @Test
+    @DisplayName("Without virtual threads asked, the requests run on a pool of the given size")
+    public void fixedPoolByDefault() {
+        // when :
+        ExecutorService executor = GateServer.createExecutor(4, false);
+
+        // then :
+        try {
+            assertThat(executor).isInstanceOf(ThreadPoolExecutor.class);
+            assertThat(((ThreadPoolExecutor) executor).getMaximumPoolSize()).isEqualTo(4);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("An entry gives the spot and the ticket of the vehicle, a full parking is a conflict")
+    public void entryWithSuccessAndFullParking() throws Exception {
+        // given :
+        when(parkingService.enter(ParkingType.CAR, "AB 12")).thenReturn(EntryResult.succeed(newTicket("AB 12", 0, null), true));
+        when(parkingService.enter(ParkingType.BIKE, "CD34"))
+                .thenReturn(EntryResult.fail("CD34", GateStatus.PARKING_FULL, "Parking slots might be full"));
+
+        // when :
+        String[] response = call("POST", "/entry?plate=AB+12&type=car");
+        String[] full = call("POST", "/entry?plate=CD34&type=BIKE");
+
+        // then :
+        assertThat(response[0]).isEqualTo("200");
+        assertThat(response[1]).isEqualTo("{\"plate\":\"AB 12\",\"parkingNumber\":3,\"ticketId\":7,\"discount\":true,\"inTime\":\"1970-01-01T00:00:00Z\"}");
+        assertThat(full[0]).isEqualTo("409");
+        assertThat(full[1]).isEqualTo("{\"error\":\"Parking slots might be full\"}");
+    }
+
+    @Test
+    @DisplayName("An exit gives the fare, and an unknown vehicle is not found")
+    public void exitWithSuccessAndUnknownVehicle() throws Exception {
+        // given :
+        when(parkingService.exit("AB12")).thenReturn(ExitResult.succeed("AB12", newTicket("AB12", 1.42, new Date(3600000)), true));
+        when(parkingService.exit("ZZ")).thenReturn(ExitResult.fail("ZZ", GateStatus.NOT_PARKED, "Vehicle is not in the parking"));
+
+        // when :
+        String[] response = call("POST", "/exit?plate=AB12");
+        String[] notFound = call("POST", "/exit?plate=ZZ");
+
+        // then :
+        assertThat(response[0]).isEqualTo("200");
+        assertThat(response[1]).contains("\"fare\":1.42", "\"outTime\":\"1970-01-01T01:00:00Z\"");
+        assertThat(notFound[0]).isEqualTo("404");
+        assertThat(notFound[1]).isEqualTo("{\"error\":\"Vehicle is not in the parking\"}");
+    }
+
+    @Test
+    @DisplayName("Status gives the available spots, and invalid requests are rejected")
+    public void statusAndInvalidRequests() throws Exception {
+        // given :
+        when(parkingSpotDAO.getAvailableSlotCountAsync(ParkingType.CAR)).thenReturn(CompletableFuture.completedFuture(2));
+        when(parkingSpotDAO.getAvailableSlotCountAsync(ParkingType.BIKE)).thenReturn(CompletableFuture.completedFuture(0));
+
+        // when :
+        String[] status = call("GET", "/status");
+        String[] missingPlate = call("POST", "/entry?type=CAR");
+        String[] unknownType = call("POST", "/entry?plate=AB12&type=TRUCK");
+        String[] wrongMethod = call("GET", "/exit?plate=AB12");
+
+        // then :
+        assertThat(status[0]).isEqualTo("200");
+        assertThat(status[1]).isEqualTo("{\"availableSpots\":{\"CAR\":2,\"BIKE\":0}}");
+        assertThat(missingPlate[0]).isEqualTo("400");
+        assertThat(unknownType[0]).isEqualTo("400");
+        assertThat(wrongMethod[0]).isEqualTo("405");
+        verify(parkingService, never()).enter(any(), anyString());
+        verify(parkingService, never()).exit(anyString());
+    }
+
+    @Test
+    @DisplayName("Reconcile sets the occupancy counters again and answers them")
+    public void reconcileOccupancyCounters() throws Exception {
+        // given :
+        OccupancyService occupancyService = mock(OccupancyService.class);
+        when(parkingService.getOccupancyService()).thenReturn(occupancyService);
+        when(occupancyService.reconcile()).thenReturn(true);
+        when(occupancyService.getFree(any(ParkingType.class))).thenReturn(2L);
+        when(occupancyService.getUsed(any(ParkingType.class))).thenReturn(0L);
+
+        // when :
+        String[] response = call("POST", "/reconcile");
+        String[] wrongMethod = call("GET", "/reconcile");
+
+        // then :
+        assertThat(response[0]).isEqualTo("200");
+        assertThat(response[1]).isEqualTo("{\"availableSpots\":{\"CAR\":2,\"BIKE\":2},\"usedSpots\":{\"CAR\":0,\"BIKE\":0}}");
+        assertThat(wrongMethod[0]).isEqualTo("405");
+        verify(occupancyService, times(1)).reconcile();
+    }
+
+    @Test
+    @DisplayName("Status reads the occupancy counters instead of the database when they are loaded")
+    public void statusFromOccupancyCounters() throws Exception {
+        // given :
+        OccupancyService occupancyService = mock(OccupancyService.class);
+        when(parkingService.getOccupancyService()).thenReturn(occupancyService);
+        when(occupancyService.isReconciled()).thenReturn(true);
+        when(occupancyService.getFree(any(ParkingType.class))).thenReturn(3L);
+        when(occupancyService.getUsed(any(ParkingType.class))).thenReturn(1L);
+
+        // when :
+        String[] status = call("GET", "/status");
+
+        // then :
+        assertThat(status[0]).isEqualTo("200");
+        assertThat(status[1]).isEqualTo("{\"availableSpots\":{\"CAR\":3,\"BIKE\":3},\"usedSpots\":{\"CAR\":1,\"BIKE\":1}}");
+        verifyNoInteractions(parkingSpotDAO);
+    }
+
+    @Test
+    @DisplayName("With several facilities, each request goes to the facility it names")
+    public void entryRoutedToFacility() throws Exception {
+        // given :
+        Map<String, Facility> facilities = new LinkedHashMap<>();
+        facilities.put("north", new Facility(parkingService, parkingSpotDAO, ticketDAO));
+        facilities.put("south", new Facility(otherParkingService, parkingSpotDAO, ticketDAO));
+        GateServer sharded = new GateServer(facilities);
+        sharded.start(0, 4);
+        when(otherParkingService.enter(ParkingType.CAR, "AB12")).thenReturn(EntryResult.succeed(newTicket("AB12", 0, null), false));
+
+        try {
+            // when :
+            String[] response = call(sharded, "POST", "/entry?plate=AB12&type=CAR&facility=south");
+            String[] missing = call(sharded, "POST", "/entry?plate=AB12&type=CAR");
+            String[] unknown = call(sharded, "POST", "/entry?plate=AB12&type=CAR&facility=east");
+
+            // then :
+            assertThat(response[0]).isEqualTo("200");
+            assertThat(missing[0]).isEqualTo("400");
+            assertThat(missing[1]).isEqualTo("{\"error\":\"Missing parameter : facility\"}");
+            assertThat(unknown[0]).isEqualTo("400");
+            assertThat(unknown[1]).isEqualTo("{\"error\":\"Unknown facility : east\"}");
+            verifyNoInteractions(parkingService);
+        } finally {
+            sharded.stop(0);
+        }
+    }
+}
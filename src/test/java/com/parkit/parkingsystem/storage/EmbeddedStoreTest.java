@@ -0,0 +1,131 @@
+package com.parkit.parkingsystem.storage;
+
+import com.parkit.parkingsystem.config.UnitOfWork;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.*;
+
+public class EmbeddedStoreTest {
+
+    private static final String VEHICULE_REG_NUMBER_TEST = "ABCDEF";
+
+    @TempDir
+    Path tempDir;
+
+    private EmbeddedStore openStore() throws Exception {
+        EmbeddedStore store = new EmbeddedStore(tempDir, false, 0);
+        store.open(EmbeddedStore.layout(3, 2));
+        return store;
+    }
+
+    private static Ticket newTicket(int parkingNumber, long inTime) {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(parkingNumber, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber(VEHICULE_REG_NUMBER_TEST);
+        ticket.setInTime(new Date(inTime));
+        return ticket;
+    }
+
+    @Test
+    @DisplayName("After a crash, the changes are replayed from the log")
+    public void replaysLogAfterCrash() throws Exception {
+        // given : a store never closed.
+        EmbeddedStore crashed = openStore();
+        assertThat(crashed.claimLowest(ParkingType.CAR)).isEqualTo(1);
+        Ticket ticket = newTicket(1, 1_000_000L);
+        ticket.setId(crashed.insertTicket(ticket));
+        ticket.setPrice(1.5);
+        ticket.setOutTime(new Date(4_600_000L));
+        assertThat(crashed.updateTicket(ticket)).isNotNull();
+        // a closed ticket is not closed again.
+        assertThat(crashed.updateTicket(ticket)).isNull();
+        crashed.setAvailable(1, true);
+        assertThat(crashed.claimLowest(ParkingType.CAR)).isEqualTo(1);
+        crashed.insertTicket(newTicket(1, 5_000_000L));
+
+        // when :
+        EmbeddedStore store = openStore();
+
+        // then :
+        assertThat(store.getParkingSpots()).hasSize(5);
+        assertThat(store.getAvailableCount(ParkingType.CAR)).isEqualTo(2);
+        assertThat(store.getLowestAvailable(ParkingType.CAR)).isEqualTo(2);
+        assertThat(store.getTicketCount(VEHICULE_REG_NUMBER_TEST)).isEqualTo(2);
+        Ticket latest = store.getTicket(VEHICULE_REG_NUMBER_TEST);
+        assertThat(latest.getId()).isEqualTo(2);
+        assertThat(latest.getOutTime()).isNull();
+        assertThat(store.getOpenTicketIndex().size()).isEqualTo(1);
+        assertThat(store.insertTicket(newTicket(2, 6_000_000L))).isEqualTo(3);
+        store.close();
+    }
+
+    @Test
+    @DisplayName("A snapshot replaces the logs before it, and a cut record at the end of a log is ignored")
+    public void snapshotThenCutRecord() throws Exception {
+        // given :
+        EmbeddedStore store = openStore();
+        store.claim(4);
+        store.insertTicket(newTicket(4, 1_000_000L));
+        store.snapshot();
+        store.claim(5);
+        store.close();
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertThat(files.filter(path -> path.getFileName().toString().startsWith("wal-"))).hasSize(1);
+        }
+        // a change half written when the process stopped.
+        EmbeddedStore reopened = openStore();
+        reopened.setAvailable(4, true);
+        try (Stream<Path> files = Files.list(tempDir)) {
+            Path log = files.filter(path -> path.getFileName().toString().startsWith("wal-")).sorted().reduce((first, second) -> second).get();
+            Files.write(log, new byte[] { 0, 0, 0, 40, 1, 2 }, StandardOpenOption.APPEND);
+        }
+
+        // when :
+        EmbeddedStore restarted = openStore();
+
+        // then :
+        assertThat(restarted.getParkingSpot(4).isAvailable()).isTrue();
+        assertThat(restarted.getParkingSpot(5).isAvailable()).isFalse();
+        assertThat(restarted.getAvailableCount(ParkingType.BIKE)).isEqualTo(1);
+        assertThat(restarted.getTicketCount(VEHICULE_REG_NUMBER_TEST)).isEqualTo(1);
+        restarted.close();
+    }
+
+    @Test
+    @DisplayName("The spot claimed and the ticket saved in a unit of work rolled back are undone")
+    public void rollbackUndoesChanges() throws Exception {
+        // given :
+        EmbeddedStore store = openStore();
+        EmbeddedParkingSpotRepository parkingSpotRepository = new EmbeddedParkingSpotRepository(store);
+        EmbeddedTicketRepository ticketRepository = new EmbeddedTicketRepository(store);
+        Ticket ticket = newTicket(1, 1_000_000L);
+
+        // when :
+        try (UnitOfWork unitOfWork = UnitOfWork.beginLocal()) {
+            assertThat(unitOfWork.isActive()).isTrue();
+            assertThat(parkingSpotRepository.claimNextAvailableSlot(ParkingType.CAR)).isEqualTo(1);
+            assertThat(ticketRepository.saveTicket(ticket)).isTrue();
+        }
+
+        // then :
+        assertThat(ticket.getId()).isEqualTo(1);
+        assertThat(parkingSpotRepository.getAvailableSlotCount(ParkingType.CAR)).isEqualTo(3);
+        assertThat(ticketRepository.getTicket(VEHICULE_REG_NUMBER_TEST)).isNull();
+        assertThat(ticketRepository.getNbTicket(VEHICULE_REG_NUMBER_TEST)).isEqualTo(0);
+        assertThat(ticketRepository.getOpenTicketIndex().size()).isEqualTo(0);
+        assertThat(ticketRepository.writesOutsideTransaction()).isTrue();
+        store.close();
+    }
+}
@@ -0,0 +1,103 @@
+package com.parkit.parkingsystem.tool;
+
+import com.parkit.parkingsystem.constants.GateStatus;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.ExitResult;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.model.VehicleEntry;
+import com.parkit.parkingsystem.service.ParkingService;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+
+import static org.mockito.Mockito.*;
+import static org.assertj.core.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+public class LoadGeneratorTest {
+
+    @Mock
+    private static ParkingService parkingService;
+
+    private static Ticket onSpot1(String vehicleRegNumber) {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        return ticket;
+    }
+
+    @Test
+    @DisplayName("A spot given to a vehicle while another one is parked on it is counted")
+    public void runCountsDoubleAllocations() throws Exception {
+        // given : the service always gives spot 1, and vehicles hardly ever leave.
+        when(parkingService.enter(any(ParkingType.class), anyString()))
+                .thenAnswer(invocation -> EntryResult.succeed(onSpot1(invocation.getArgument(1)), false));
+        lenient().when(parkingService.exit(anyString()))
+                .thenAnswer(invocation -> ExitResult.succeed(invocation.getArgument(0), onSpot1(invocation.getArgument(0)), false));
+        lenient().when(parkingService.processExitingVehicles(anyList())).thenReturn(new ArrayList<>());
+        LoadProfile loadProfile = new LoadProfile(2, 300, 200, 1e-9, 0.5, 0.8);
+
+        // when :
+        LoadReport report = new LoadGenerator(parkingService).run(loadProfile);
+
+        // then :
+        assertThat(report.getEntryLatencies().getCount()).isGreaterThan(1);
+        assertThat(report.getFailedEntries()).isEqualTo(0);
+        assertThat(report.getDoubleAllocations()).isEqualTo(report.getEntryLatencies().getCount() - 1);
+        assertThat(report.getThroughput()).isGreaterThan(0);
+    }
+
+    @Test
+    @DisplayName("A spot given again while its vehicle is exiting is counted only if the exit fails")
+    public void reuseDuringExitCountedOnlyIfExitFails() throws Exception {
+        // given : the service always gives spot 1, and another gate enters while each exit is in progress.
+        LoadGenerator loadGenerator = new LoadGenerator(parkingService);
+        when(parkingService.enter(any(ParkingType.class), anyString()))
+                .thenAnswer(invocation -> EntryResult.succeed(onSpot1(invocation.getArgument(1)), false));
+        when(parkingService.exit("AAA")).thenAnswer(invocation -> {
+            loadGenerator.enter(new VehicleEntry("BBB", ParkingType.CAR));
+            return ExitResult.succeed("AAA", onSpot1("AAA"), false);
+        });
+        when(parkingService.exit("BBB")).thenAnswer(invocation -> {
+            loadGenerator.enter(new VehicleEntry("CCC", ParkingType.CAR));
+            return ExitResult.fail("BBB", GateStatus.ERROR, "Unable to update ticket information");
+        });
+        VehicleEntry vehicle = new VehicleEntry("AAA", ParkingType.CAR);
+        loadGenerator.enter(vehicle);
+
+        // when : the exit of AAA commits, the one of BBB does not.
+        loadGenerator.exit(new LoadGenerator.ParkedVehicle(vehicle, 1));
+        long afterCommittedExit = loadGenerator.getDoubleAllocations();
+        loadGenerator.exit(new LoadGenerator.ParkedVehicle(new VehicleEntry("BBB", ParkingType.CAR), 1));
+
+        // then : CCC was given the spot of BBB, still parked.
+        assertThat(afterCommittedExit).isEqualTo(0);
+        assertThat(loadGenerator.getDoubleAllocations()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Percentiles are taken by nearest rank")
+    public void latencyRecorderPercentiles() {
+        // given :
+        LatencyRecorder latencyRecorder = new LatencyRecorder();
+        for (long i = 2000; i >= 1; i--) {
+            latencyRecorder.record(i);
+        }
+
+        // then :
+        assertThat(latencyRecorder.getCount()).isEqualTo(2000);
+        assertThat(latencyRecorder.getPercentile(50)).isEqualTo(1000);
+        assertThat(latencyRecorder.getPercentile(99)).isEqualTo(1980);
+        assertThat(latencyRecorder.getPercentile(99.9)).isEqualTo(1998);
+        assertThat(latencyRecorder.getMax()).isEqualTo(2000);
+        assertThat(new LatencyRecorder().getPercentile(99)).isEqualTo(0);
+    }
+}